@@ -0,0 +1,136 @@
+package benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates HTML pages shaped like real site pages, for the parser benchmarks.
+ *
+ * Each page has a head with meta tags, stylesheets and inline scripts, a navigation menu, article
+ * paragraphs with inline links, images of several types, comments holding markup, and a footer.  The
+ * links are a mix of absolute, root relative, relative, fragment and off site URLs.  The pages are
+ * generated from a fixed seed, so every run parses the same bytes.
+ *
+ * @author Ravindra Rishudeo.
+ */
+final class HtmlFixtures {
+
+    static final String BASE_URL = "http://www.example.com/blog/2016/index.html";
+
+    /**
+     * The page sizes used by the benchmarks.
+     */
+    enum Size {
+        /** About 5KB, like a landing page. */
+        SMALL(4, 3),
+        /** About 50KB, like a blog post with comments. */
+        MEDIUM(40, 30),
+        /** About 500KB, like a long archive or forum thread. */
+        LARGE(400, 300);
+
+        private final int sections;
+        private final int paragraphsPerSection;
+
+        Size(int sections, int paragraphsPerSection) {
+            this.sections = sections;
+            this.paragraphsPerSection = paragraphsPerSection / sections + 1;
+        }
+    }
+
+    private static final String[] WORDS = {
+            "crawler", "sitemap", "latency", "throughput", "queue", "frontier", "parser", "buffer",
+            "the", "a", "of", "and", "to", "in", "with", "for", "page", "link", "site", "host",
+    };
+
+    private HtmlFixtures() {
+    }
+
+    /**
+     * Generates a page.
+     *
+     * @param size the size of the page
+     * @return the UTF-8 bytes of the page
+     */
+    static byte[] page(Size size) {
+        Random random = new Random(size.ordinal());
+        StringBuilder html = new StringBuilder(1024 * 1024);
+        html.append("<!DOCTYPE html>\n<html lang=\"en\">\n<head>\n")
+                .append("<meta charset=\"utf-8\">\n")
+                .append("<meta name=\"viewport\" content=\"width=device-width, initial-scale=1\">\n")
+                .append("<title>Crawler notes &mdash; archive</title>\n")
+                .append("<link rel=\"stylesheet\" href=\"/assets/site.css\">\n")
+                .append("<link rel=\"canonical\" href=\"").append(BASE_URL).append("\">\n")
+                .append("<script>var links = '<a href=\"/not-a-link\">'; window.dataLayer = [];</script>\n")
+                .append("<style>a[href] { color: #333; } .nav > li { display: inline; }</style>\n")
+                .append("</head>\n<body class=\"post\">\n");
+
+        html.append("<nav><ul class=\"nav\">\n");
+        for (int i = 0; i < 12; i++) {
+            html.append("<li><a href=\"/section/").append(i).append("/\">Section ").append(i).append("</a></li>\n");
+        }
+        html.append("</ul></nav>\n<main>\n");
+
+        int link = 0;
+        for (int section = 0; section < size.sections; section++) {
+            html.append("<section id=\"s").append(section).append("\">\n<h2>Section ").append(section).append("</h2>\n");
+            for (int paragraph = 0; paragraph < size.paragraphsPerSection; paragraph++) {
+                html.append("<p>");
+                appendWords(html, random, 20 + random.nextInt(40));
+                html.append(' ');
+                appendLink(html, random, link++);
+                html.append(' ');
+                appendWords(html, random, 10 + random.nextInt(20));
+                html.append("</p>\n");
+            }
+            html.append("<figure><img src=\"").append(image(random, section)).append("\" alt=\"Figure ")
+                    .append(section).append("\" width=\"640\" height=\"480\"></figure>\n");
+            html.append("<!-- <a href=\"/draft/").append(section).append("\">draft</a> -->\n");
+            html.append("</section>\n");
+        }
+
+        html.append("</main>\n<footer>\n");
+        html.append("<a href=\"https://twitter.com/share?url=http%3A%2F%2Fwww.example.com%2F\">Share</a>\n");
+        html.append("<a href=\"mailto:someone@example.com\">Contact</a>\n");
+        html.append("<script src=\"/assets/site.js\" async></script>\n");
+        html.append("</footer>\n</body>\n</html>\n");
+        return html.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendWords(StringBuilder html, Random random, int count) {
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                html.append(' ');
+            }
+            html.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+    }
+
+    private static void appendLink(StringBuilder html, Random random, int link) {
+        html.append("<a href=\"");
+        switch (random.nextInt(6)) {
+            case 0:
+                html.append("http://www.example.com/blog/2015/post-").append(link).append(".html");
+                break;
+            case 1:
+                html.append("/tags/").append(WORDS[random.nextInt(WORDS.length)]).append('/');
+                break;
+            case 2:
+                html.append("post-").append(link).append(".html?page=").append(random.nextInt(5));
+                break;
+            case 3:
+                html.append("../2014/post-").append(link).append(".html#comments");
+                break;
+            case 4:
+                html.append("https://en.wikipedia.org/wiki/Web_crawler");
+                break;
+            default:
+                html.append("#footnote-").append(link);
+        }
+        html.append("\" class=\"inline\">").append(WORDS[random.nextInt(WORDS.length)]).append("</a>");
+    }
+
+    private static String image(Random random, int index) {
+        String[] types = {".png", ".jpg", ".jpeg", ".gif", ".svg", ".webp"};
+        return "/images/figure-" + index + types[random.nextInt(types.length)];
+    }
+}
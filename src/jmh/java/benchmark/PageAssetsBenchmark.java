@@ -0,0 +1,70 @@
+package benchmark;
+
+import http.PageAssets;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading all of the assets of a page through {@link PageAssets#getAllAssets()} with copying
+ * them into a new list, as getAllAssets did before it returned a view.
+ *
+ * Run with: mvn -P jmh test-compile exec:exec -Djmh.args="PageAssetsBenchmark -prof gc"
+ *
+ * @author Ravindra Rishudeo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageAssetsBenchmark {
+
+    @Param({"20", "200", "2000"})
+    private int links;
+
+    private PageAssets pageAssets;
+
+    @Setup
+    public void setUp() {
+        List<String> pageLinks = new ArrayList<>();
+        List<String> images = new ArrayList<>();
+        for (int i = 0; i < links; i++) {
+            pageLinks.add("http://www.example.com/post-" + i + ".html");
+            if (i % 4 == 0) {
+                images.add("http://www.example.com/images/" + i + ".png");
+            }
+        }
+        pageAssets = new PageAssets(pageLinks, images);
+    }
+
+    @Benchmark
+    public void iterateAllAssets(Blackhole blackhole) {
+        for (String asset : pageAssets.getAllAssets()) {
+            blackhole.consume(asset);
+        }
+    }
+
+    @Benchmark
+    public void iterateCopiedAssets(Blackhole blackhole) {
+        List<String> allAssets = new ArrayList<>(pageAssets.getLinksToOtherPages());
+        allAssets.addAll(pageAssets.getStaticContent());
+        for (String asset : allAssets) {
+            blackhole.consume(asset);
+        }
+    }
+}
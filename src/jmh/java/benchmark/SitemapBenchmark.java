@@ -0,0 +1,154 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import sitemap.MappedSitemapStore;
+import sitemap.Sitemap;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Measures the sitemap under contention from 1, 4 and 16 threads.
+ *
+ * processNewPage claims a page that has not been seen and adds its links, as a URL processor does for
+ * every page it fetches.  checkProcessedPage asks about a page that has already been processed, which
+ * is the common case once a crawl is under way.  The links are drawn from a fixed pool of URLs, so most
+ * of them are already interned, as they are in a real site.
+ *
+ * Run with: mvn -P jmh test-compile exec:exec -Djmh.args="SitemapBenchmark"
+ *
+ * @author Ravindra Rishudeo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SitemapBenchmark {
+
+    private static final int URL_POOL_SIZE = 1 << 16;
+    private static final int LINKS_PER_PAGE = 20;
+
+    @Param({"HEAP", "MAPPED"})
+    private String store;
+
+    private final String[] urlPool = new String[URL_POOL_SIZE];
+    private final List<List<String>> linkLists = new ArrayList<>();
+    private final AtomicInteger nextPage = new AtomicInteger();
+    private final AtomicInteger nextProcessedPage = new AtomicInteger();
+
+    private Path directory;
+    private Sitemap sitemap;
+
+    @Setup(Level.Trial)
+    public void createUrls() {
+        for (int i = 0; i < URL_POOL_SIZE; i++) {
+            urlPool[i] = "http://www.example.com/blog/" + (i % 97) + "/post-" + i + ".html";
+        }
+        for (int i = 0; i < 1024; i++) {
+            String[] links = new String[LINKS_PER_PAGE];
+            for (int link = 0; link < LINKS_PER_PAGE; link++) {
+                links[link] = urlPool[(i * 31 + link * 1031) & (URL_POOL_SIZE - 1)];
+            }
+            linkLists.add(Arrays.asList(links));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void createSitemap() throws IOException {
+        if ("MAPPED".equals(store)) {
+            directory = Files.createTempDirectory("sitemap-benchmark");
+            sitemap = new Sitemap(new MappedSitemapStore(directory));
+        } else {
+            sitemap = new Sitemap();
+        }
+        // The pool URLs are the pages that have already been processed
+        for (int i = 0; i < URL_POOL_SIZE; i++) {
+            sitemap.addLinks(urlPool[i], linkLists.get(i & 1023));
+        }
+        nextPage.set(0);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeSitemap() throws IOException {
+        sitemap.close();
+        if (directory != null) {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+            directory = null;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean processNewPage1Thread() {
+        return processNewPage();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean processNewPage4Threads() {
+        return processNewPage();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean processNewPage16Threads() {
+        return processNewPage();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean checkProcessedPage1Thread() {
+        return checkProcessedPage();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean checkProcessedPage4Threads() {
+        return checkProcessedPage();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean checkProcessedPage16Threads() {
+        return checkProcessedPage();
+    }
+
+    private boolean processNewPage() {
+        int page = nextPage.getAndIncrement();
+        String url = "http://www.example.com/new/page-" + page;
+        if (sitemap.hasBeenProcessed(url)) {
+            return false;
+        }
+        sitemap.addLinks(url, linkLists.get(page & 1023));
+        return true;
+    }
+
+    private boolean checkProcessedPage() {
+        return sitemap.hasBeenProcessed(urlPool[nextProcessedPage.getAndIncrement() & (URL_POOL_SIZE - 1)]);
+    }
+}
@@ -0,0 +1,95 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import url.UrlNormaliser;
+import url.Urls;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the same domain check and URL canonicalisation done with java.net.URI against {@link Urls}
+ * and {@link UrlNormaliser}, for the links found on one page.
+ *
+ * Run with: mvn -P jmh test-compile exec:exec -Djmh.args="UrlBenchmark -f 1 -prof gc"
+ *
+ * @author Ravindra Rishudeo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlBenchmark {
+
+    private static final String PAGE_URL = "http://www.example.com/blog/2016/index.html";
+
+    private static final String[] LINKS = {
+            "http://www.example.com/",
+            "http://www.example.com/blog/2016/post-1.html",
+            "http://example.com/about/../contact#form",
+            "https://WWW.Example.com:443/search?q=crawler&utm_source=feed",
+            "http://www.example.com/blog/2016/./post-2.html?page=2",
+            "http://cdn.example.net/assets/site.css",
+            "https://twitter.com/share?url=http%3A%2F%2Fwww.example.com%2F",
+            "mailto:someone@example.com",
+    };
+
+    private final UrlNormaliser urlNormaliser = new UrlNormaliser();
+
+    @Benchmark
+    public void sameDomainWithUri(Blackhole blackhole) {
+        String pageDomain = getDomainNameWithUri(PAGE_URL);
+        for (String link : LINKS) {
+            blackhole.consume(pageDomain.equals(getDomainNameWithUri(link)));
+        }
+    }
+
+    @Benchmark
+    public void sameDomainWithUrls(Blackhole blackhole) {
+        String pageDomain = Urls.getDomainName(PAGE_URL);
+        for (String link : LINKS) {
+            blackhole.consume(Urls.hasDomainName(link, pageDomain));
+        }
+    }
+
+    @Benchmark
+    public void normaliseWithUri(Blackhole blackhole) throws URISyntaxException {
+        for (String link : LINKS) {
+            blackhole.consume(new URI(link).normalize().toString());
+        }
+    }
+
+    @Benchmark
+    public void normaliseWithUrlNormaliser(Blackhole blackhole) {
+        for (String link : LINKS) {
+            blackhole.consume(urlNormaliser.normalise(link));
+        }
+    }
+
+    /**
+     * The original UrlProcessor implementation, with the missing host check added.
+     */
+    private static String getDomainNameWithUri(String url) {
+        try {
+            String domain = new URI(url).getHost();
+            if (domain == null) {
+                return "";
+            }
+            return domain.startsWith("www.") ? domain.substring(4) : domain;
+        } catch (URISyntaxException e) {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package benchmark;
+
+import frontier.Frontier;
+import frontier.FrontierEntry;
+import http.HttpClient;
+import http.PageAssets;
+import http.WebPageParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import service.CrawlContext;
+import service.UrlProcessor;
+import sitemap.Sitemap;
+import url.UrlNormaliser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the work a URL processor does for a page once it has the page's assets: adding them to the
+ * sitemap, checking the domain of each link, putting the links into canonical form and offering them to
+ * the frontier.  The parser returns the same links for every page, so after the first page they are all
+ * duplicates, as most links are in a real crawl.
+ *
+ * Run with: mvn -P jmh test-compile exec:exec -Djmh.args="UrlProcessorBenchmark -prof gc"
+ *
+ * @author Ravindra Rishudeo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlProcessorBenchmark {
+
+    private final DiscardingExecutorService executorService = new DiscardingExecutorService();
+    private final UrlNormaliser urlNormaliser = new UrlNormaliser();
+    private WebPageParser webPageParser;
+    private Sitemap sitemap;
+    private Frontier frontier;
+    private CrawlContext context;
+    private int page;
+
+    @Setup(Level.Trial)
+    public void createPage() {
+        List<String> links = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            switch (i % 4) {
+                case 0:
+                    links.add("http://www.example.com/blog/2016/post-" + i + ".html");
+                    break;
+                case 1:
+                    links.add("http://example.com/blog/2015/../2016/post-" + i + ".html#comments");
+                    break;
+                case 2:
+                    links.add("https://WWW.Example.com:443/tags/" + i + "/");
+                    break;
+                default:
+                    links.add("https://en.wikipedia.org/wiki/Page_" + i);
+            }
+        }
+        PageAssets assets = new PageAssets(links, Collections.singletonList("http://www.example.com/images/1.png"));
+        webPageParser = new WebPageParser(new HttpClient(null)) {
+            @Override
+            public PageAssets fetchAssets(String url) {
+                return assets;
+            }
+        };
+    }
+
+    @Setup(Level.Iteration)
+    public void createCrawl() {
+        sitemap = new Sitemap();
+        frontier = new Frontier();
+        context = CrawlContext.builder(webPageParser, sitemap, frontier, urlNormaliser)
+                .executorService(executorService).build();
+    }
+
+    @Benchmark
+    public String processPage() {
+        String url = "http://www.example.com/page-" + page++;
+        return new UrlProcessor(context, new FrontierEntry(url, 0)).call();
+    }
+
+    /**
+     * Accepts the child tasks without running them.
+     */
+    private static final class DiscardingExecutorService extends AbstractExecutorService {
+
+        @Override
+        public void execute(Runnable command) {
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+}
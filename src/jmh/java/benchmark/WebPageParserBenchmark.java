@@ -0,0 +1,82 @@
+package benchmark;
+
+import http.HttpClient;
+import http.PageAssets;
+import http.PageContentProcessor;
+import http.WebPageParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the extraction of links and images from pages of each fixture size, with each parser mode.
+ *
+ * The page is served from memory by a stub HTTP client, so only the parsing is measured.
+ *
+ * Run with: mvn -P jmh test-compile exec:exec -Djmh.args="WebPageParserBenchmark -prof gc"
+ *
+ * @author Ravindra Rishudeo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebPageParserBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    private String size;
+
+    @Param({"STREAMING", "JSOUP"})
+    private WebPageParser.Mode mode;
+
+    private WebPageParser webPageParser;
+
+    @Setup
+    public void setUp() {
+        byte[] page = HtmlFixtures.page(HtmlFixtures.Size.valueOf(size));
+        webPageParser = new WebPageParser(new InMemoryHttpClient(page), mode);
+    }
+
+    @Benchmark
+    public PageAssets getAssetsFromPage() {
+        return webPageParser.getAssetsFromPage(HtmlFixtures.BASE_URL);
+    }
+
+    /**
+     * Serves the same page for every URL.
+     */
+    private static final class InMemoryHttpClient extends HttpClient {
+
+        private final byte[] page;
+
+        InMemoryHttpClient(byte[] page) {
+            super(null);
+            this.page = page;
+        }
+
+        @Override
+        public <T> T processPageContent(String url, PageContentProcessor<T> processor) {
+            try {
+                return processor.process(new ByteArrayInputStream(page), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,444 @@
+package checkpoint;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Journals the progress of a crawl to an append only file.
+ *
+ * Each record is an int length followed by a type byte and the UTF-8 strings of the record, each
+ * an int length and the bytes.  A QUEUED record holds a URL and its int depth, and a COMPLETED record holds
+ * the page URL, the number of links and the links.  A record that was cut short when the process stopped is
+ * ignored, and a QUEUED record without a depth, from a log written before the depths were kept, is read as
+ * depth 0.
+ *
+ * The crawl threads only encode their records and put them on a queue.  A background thread writes
+ * them and flushes the file at most once a second, so the checkpoints cost the crawl threads almost
+ * nothing and a crash loses at most the last second of progress.  The queue holds at most
+ * {@link #MAX_WAITING_RECORDS}, and a crawl thread waits for room rather than the records filling the heap
+ * when the disk cannot keep up.
+ *
+ * The log is compacted, keeping the COMPLETED records and only the QUEUED records of the pages that are still
+ * pending, when a crawl is resumed and by the writer each time the records written since the last compaction
+ * reach the compaction threshold or the size of the compacted log, whichever is larger.  So the log does not
+ * grow without bound over a long crawl, and the cost of compacting it stays in proportion to what is written.
+ * A compaction streams the log into a new file that replaces it once it is on disk, so a crash while
+ * compacting does not lose it.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class CheckpointLog implements CrawlJournal {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CheckpointLog.class);
+
+    /** The most records waiting to be written before the crawl threads wait for the writer. */
+    public static final int MAX_WAITING_RECORDS = 4096;
+    /** The least bytes written between two compactions while the crawl runs. */
+    public static final long DEFAULT_COMPACTION_THRESHOLD_BYTES = 64L * 1024 * 1024;
+
+    private static final byte QUEUED = 1;
+    private static final byte COMPLETED = 2;
+
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] END_OF_LOG = new byte[0];
+
+    private final Path file;
+    private final long compactionThresholdBytes;
+    private final BlockingQueue<byte[]> records = new LinkedBlockingQueue<>(MAX_WAITING_RECORDS);
+    private final Thread writer;
+    private final LongAdder recordCount = new LongAdder();
+
+    // Only used by the writer thread once it has started
+    private FileOutputStream fileOut;
+    private DataOutputStream out;
+    private long compactedBytes;
+    private long bytesSinceCompaction;
+
+    private volatile int compactionCount;
+    private volatile boolean closed;
+    private volatile IOException failure;
+
+    private CheckpointLog(Path file, long compactedBytes, long compactionThresholdBytes) throws IOException {
+        this.file = file;
+        this.compactedBytes = compactedBytes;
+        this.compactionThresholdBytes = compactionThresholdBytes;
+        openForAppend();
+        this.writer = new Thread(this::writeRecords, "checkpoint-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Starts a new log, replacing the file if it exists.
+     *
+     * @param file the log file
+     * @return the log
+     * @throws IOException if the file could not be created
+     */
+    public static CheckpointLog open(Path file) throws IOException {
+        return open(file, new CrawlState());
+    }
+
+    /**
+     * Starts a log for a resumed crawl, which is compacted first.
+     *
+     * @param file the log file
+     * @param state the state of the crawl that is being resumed, as read from its log
+     * @return the log
+     * @throws IOException if the file could not be written
+     */
+    public static CheckpointLog open(Path file, CrawlState state) throws IOException {
+        return open(file, state, DEFAULT_COMPACTION_THRESHOLD_BYTES);
+    }
+
+    /**
+     * Starts a log for a resumed crawl, which is compacted first.
+     *
+     * @param file the log file
+     * @param state the state of the crawl that is being resumed, as read from its log
+     * @param compactionThresholdBytes the least bytes to write between two compactions while the crawl runs
+     * @return the log
+     * @throws IOException if the file could not be written
+     */
+    public static CheckpointLog open(Path file, CrawlState state, long compactionThresholdBytes) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        long compactedBytes = compact(state.getLog(), file);
+        return new CheckpointLog(file, compactedBytes, compactionThresholdBytes);
+    }
+
+    /**
+     * Reads the state of a crawl from its log.  The links of the completed pages are not kept, and are
+     * read again by {@link CrawlState#forEachCompletedPage}.
+     *
+     * @param file the log file
+     * @return the state of the crawl, which is empty if the file does not exist
+     * @throws IOException if the file could not be read
+     */
+    public static CrawlState read(Path file) throws IOException {
+        CrawlState state = new CrawlState(file);
+        forEachRecord(file, (type, url, record) -> {
+            if (type == QUEUED) {
+                state.queued(url, readDepth(record));
+            } else {
+                state.completed(url);
+            }
+        });
+        return state;
+    }
+
+    /**
+     * Reads the completed pages from a log, one at a time.
+     *
+     * @param file the log file
+     * @param pageConsumer is given the URL and the links of each completed page
+     * @throws IOException if the file could not be read
+     */
+    static void readCompletedPages(Path file, BiConsumer<String, List<String>> pageConsumer) throws IOException {
+        forEachRecord(file, (type, url, record) -> {
+            if (type == COMPLETED) {
+                int count = record.getInt();
+                List<String> links = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    links.add(readString(record));
+                }
+                pageConsumer.accept(url, links);
+            }
+        });
+    }
+
+    @Override
+    public void queued(String url, int depth) {
+        append(encodeQueued(url, depth));
+    }
+
+    @Override
+    public void completed(String url, List<String> links) {
+        append(encodeCompleted(url, links));
+    }
+
+    /**
+     * Gets the number of records written since the log was opened.
+     *
+     * @return the number of records
+     */
+    public long getRecordCount() {
+        return recordCount.sum();
+    }
+
+    /**
+     * Gets the number of times the log has been compacted while the crawl ran, not counting the compaction
+     * when it was opened.
+     *
+     * @return the number of compactions
+     */
+    public int getCompactionCount() {
+        return compactionCount;
+    }
+
+    /**
+     * Writes the remaining records, then flushes the log to disk and closes it.
+     *
+     * @throws IOException if the log could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            while (!records.offer(END_OF_LOG, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (!writer.isAlive()) {
+                    break;
+                }
+            }
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted closing the checkpoint log " + file, e);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CheckpointLog{file=%s, records=%d, compactions=%d}", file, getRecordCount(),
+                getCompactionCount());
+    }
+
+    private void append(byte[] record) {
+        boolean interrupted = false;
+        // Records from tasks that outlive the crawl are dropped
+        while (!closed && failure == null) {
+            try {
+                if (records.offer(record, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                // Still written, as a resumed crawl would lose the URL of a QUEUED record that was dropped
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeRecords() {
+        try {
+            long nextFlush = System.nanoTime() + FLUSH_INTERVAL_NANOS;
+            while (true) {
+                byte[] record = records.poll(Math.max(0, nextFlush - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (record == END_OF_LOG) {
+                    break;
+                }
+                if (record != null) {
+                    out.write(record);
+                    recordCount.increment();
+                    bytesSinceCompaction += record.length;
+                    if (bytesSinceCompaction >= Math.max(compactionThresholdBytes, compactedBytes)) {
+                        compactWhileRunning();
+                    }
+                }
+                if (System.nanoTime() >= nextFlush) {
+                    // Into the OS, so the records survive the JVM stopping
+                    out.flush();
+                    nextFlush = System.nanoTime() + FLUSH_INTERVAL_NANOS;
+                }
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        } catch (IOException e) {
+            LOGGER.error("Could not write the checkpoint log {}, the crawl will not be resumable.", file, e);
+            failure = e;
+            records.clear();
+        } catch (InterruptedException e) {
+            failure = new IOException("Interrupted writing the checkpoint log " + file, e);
+        } finally {
+            try {
+                out.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Compacts the log on the writer thread, so no record is written while the file is replaced.
+     */
+    private void compactWhileRunning() throws IOException {
+        out.close();
+        compactedBytes = compact(file, file);
+        bytesSinceCompaction = 0;
+        compactionCount++;
+        openForAppend();
+        LOGGER.debug("Compacted the checkpoint log {} to {} bytes", file, compactedBytes);
+    }
+
+    private void openForAppend() throws IOException {
+        fileOut = new FileOutputStream(file.toFile(), true);
+        out = new DataOutputStream(new BufferedOutputStream(fileOut, BUFFER_SIZE));
+    }
+
+    /**
+     * Writes the COMPLETED records of a log, then the QUEUED records of the pages that are still pending,
+     * to a new file that replaces the target once it is on disk.
+     *
+     * @param source the log to compact, or null to start an empty log
+     * @param target the log file to replace
+     * @return the size of the compacted log
+     */
+    private static long compact(Path source, Path target) throws IOException {
+        Path compacted = target.resolveSibling(target.getFileName() + ".compact");
+        CrawlState state = new CrawlState();
+        try (FileOutputStream compactedOut = new FileOutputStream(compacted.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(compactedOut, BUFFER_SIZE))) {
+            if (source != null) {
+                forEachRecord(source, (type, url, record) -> {
+                    if (type == QUEUED) {
+                        state.queued(url, readDepth(record));
+                    } else {
+                        state.completed(url);
+                        out.writeInt(record.limit());
+                        out.write(record.array(), 0, record.limit());
+                    }
+                });
+            }
+            for (Map.Entry<String, Integer> pending : state.getPendingUrls().entrySet()) {
+                out.write(encodeQueued(pending.getKey(), pending.getValue()));
+            }
+            out.flush();
+            compactedOut.getFD().sync();
+        }
+        Files.move(compacted, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return Files.size(target);
+    }
+
+    /**
+     * Reads each record of a log, up to the end of the log or a record that was cut short.
+     */
+    private static void forEachRecord(Path file, RecordHandler handler) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            byte[] record;
+            while ((record = readRecord(in)) != null) {
+                ByteBuffer buffer = ByteBuffer.wrap(record);
+                byte type = buffer.get();
+                if (type != QUEUED && type != COMPLETED) {
+                    throw new IOException("Unknown record type " + type + " in checkpoint log " + file);
+                }
+                handler.handle(type, readString(buffer), buffer);
+            }
+        }
+    }
+
+    private static int readDepth(ByteBuffer queuedRecord) {
+        return queuedRecord.remaining() >= 4 ? queuedRecord.getInt() : 0;
+    }
+
+    private static byte[] encodeQueued(String url, int depth) {
+        return encode(QUEUED, url, null, depth);
+    }
+
+    private static byte[] encodeCompleted(String url, List<String> links) {
+        return encode(COMPLETED, url, links, 0);
+    }
+
+    private static byte[] encode(byte type, String url, List<String> links, int depth) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + url.length());
+            DataOutputStream record = new DataOutputStream(bytes);
+            record.writeInt(0);
+            record.writeByte(type);
+            writeString(record, url);
+            if (links != null) {
+                record.writeInt(links.size());
+                for (String link : links) {
+                    writeString(record, link);
+                }
+            } else {
+                record.writeInt(depth);
+            }
+            byte[] encoded = bytes.toByteArray();
+            ByteBuffer.wrap(encoded).putInt(0, encoded.length - 4);
+            return encoded;
+        } catch (IOException e) {
+            // Not thrown by a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    /**
+     * Reads the next record, or returns null at the end of the log or at a record that was cut short.
+     */
+    private static byte[] readRecord(DataInputStream data) throws IOException {
+        int length;
+        try {
+            length = data.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length <= 0) {
+            return null;
+        }
+        byte[] record = new byte[length];
+        try {
+            data.readFully(record);
+        } catch (EOFException e) {
+            return null;
+        }
+        return record;
+    }
+
+    /**
+     * Handles a record of a log, given its type, its URL and the rest of the record.
+     */
+    private interface RecordHandler {
+        void handle(byte type, String url, ByteBuffer record) throws IOException;
+    }
+}
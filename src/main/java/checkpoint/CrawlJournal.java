@@ -0,0 +1,50 @@
+package checkpoint;
+
+import java.io.Closeable;
+import java.util.List;
+
+/**
+ * Records the progress of a crawl, so that it can be resumed if it stops.
+ *
+ * A URL must be recorded as queued before the page that links to it is recorded as completed,
+ * otherwise a resumed crawl could lose it.  This holds for pages processed at the same time that link
+ * to the same URL, as the URL is recorded while the frontier accepts it, before it returns to any other
+ * offer of the URL.  Implementations are thread safe.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public interface CrawlJournal extends Closeable {
+
+    /**
+     * A journal that records nothing, for crawls that cannot be resumed.
+     */
+    CrawlJournal NONE = new CrawlJournal() {
+        @Override
+        public void queued(String url, int depth) {
+        }
+
+        @Override
+        public void completed(String url, List<String> links) {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    /**
+     * Records that a URL has been accepted by the frontier and queued for processing.
+     *
+     * @param url the canonical URL
+     * @param depth the number of links from a start URL, so a resumed crawl queues the URL at the same depth
+     */
+    void queued(String url, int depth);
+
+    /**
+     * Records that a page has been processed and its links added to the sitemap.
+     *
+     * @param url the canonical URL of the page
+     * @param links the links from the page, as added to the sitemap
+     */
+    void completed(String url, List<String> links);
+}
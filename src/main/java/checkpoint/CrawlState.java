@@ -0,0 +1,94 @@
+package checkpoint;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * The progress of a crawl, as read back from its checkpoint log.
+ *
+ * Only the pending URLs are kept in memory.  The links of the completed pages are read from the log again
+ * when they are asked for, one page at a time, so resuming a crawl does not need memory in proportion to
+ * the site.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class CrawlState {
+
+    private final Path log;
+    private final Map<String, Integer> pendingUrls = new LinkedHashMap<>();
+    private long completedCount;
+
+    /**
+     * Constructor for the state of a crawl that has not started.
+     */
+    public CrawlState() {
+        this(null);
+    }
+
+    CrawlState(Path log) {
+        this.log = log;
+    }
+
+    void queued(String url, int depth) {
+        pendingUrls.putIfAbsent(url, depth);
+    }
+
+    void completed(String url) {
+        pendingUrls.remove(url);
+        completedCount++;
+    }
+
+    /**
+     * Gets the log the state was read from.
+     *
+     * @return the log file, or null if the crawl has not started
+     */
+    Path getLog() {
+        return log;
+    }
+
+    /**
+     * Reads the pages that were processed back from the log, with the links that were added to the sitemap
+     * for them, in the order they were completed.
+     *
+     * @param pageConsumer is given the URL and the links of each completed page
+     * @throws IOException if the log could not be read
+     */
+    public void forEachCompletedPage(BiConsumer<String, List<String>> pageConsumer) throws IOException {
+        if (log != null && completedCount > 0) {
+            CheckpointLog.readCompletedPages(log, pageConsumer);
+        }
+    }
+
+    /**
+     * Gets the number of pages that were processed.
+     *
+     * @return the number of completed pages
+     */
+    public long getCompletedCount() {
+        return completedCount;
+    }
+
+    /**
+     * Gets the URLs that were queued but not completed, including those that were being processed.
+     *
+     * @return the depth each pending URL was queued at, keyed by URL, in the order they were queued
+     */
+    public Map<String, Integer> getPendingUrls() {
+        return Collections.unmodifiableMap(pendingUrls);
+    }
+
+    public boolean isEmpty() {
+        return completedCount == 0 && pendingUrls.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CrawlState{completed=%d, pending=%d}", completedCount, pendingUrls.size());
+    }
+}
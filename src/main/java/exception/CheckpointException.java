@@ -0,0 +1,19 @@
+package exception;
+
+/**
+ * Exception to indicate that the checkpoint log of a crawl could not be read or written.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class CheckpointException extends RuntimeException {
+
+    /**
+     * Constructor.
+     *
+     * @param message exception message
+     * @param throwable cause
+     */
+    public CheckpointException(String message, Throwable throwable) {
+        super(message, throwable);
+    }
+}
@@ -0,0 +1,19 @@
+package exception;
+
+/**
+ * Exception to indicate that the event journal could not be opened.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class EventJournalException extends RuntimeException {
+
+    /**
+     * Constructor.
+     *
+     * @param message exception message
+     * @param throwable cause
+     */
+    public EventJournalException(String message, Throwable throwable) {
+        super(message, throwable);
+    }
+}
@@ -0,0 +1,19 @@
+package exception;
+
+/**
+ * Exception to indicate that frontier entries could not be written to or read from their spill files.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class FrontierSpillException extends RuntimeException {
+
+    /**
+     * Constructor.
+     *
+     * @param message exception message
+     * @param throwable cause
+     */
+    public FrontierSpillException(String message, Throwable throwable) {
+        super(message, throwable);
+    }
+}
@@ -0,0 +1,19 @@
+package exception;
+
+/**
+ * Exception to indicate that the page cache could not be opened.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class PageCacheException extends RuntimeException {
+
+    /**
+     * Constructor.
+     *
+     * @param message exception message
+     * @param throwable cause
+     */
+    public PageCacheException(String message, Throwable throwable) {
+        super(message, throwable);
+    }
+}
@@ -0,0 +1,19 @@
+package exception;
+
+/**
+ * Exception to indicate that the asynchronous page fetcher could not be started.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class PageFetcherException extends RuntimeException {
+
+    /**
+     * Constructor.
+     *
+     * @param message exception message
+     * @param throwable cause
+     */
+    public PageFetcherException(String message, Throwable throwable) {
+        super(message, throwable);
+    }
+}
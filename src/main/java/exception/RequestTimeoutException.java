@@ -0,0 +1,20 @@
+package exception;
+
+/**
+ * Exception to indicate that a request for a page timed out, connecting, waiting for a pooled
+ * connection, waiting for data or over its total deadline.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class RequestTimeoutException extends FailedToGetPageContentException {
+
+    /**
+     * Constructor.
+     *
+     * @param message exception message
+     * @param throwable cause
+     */
+    public RequestTimeoutException(String message, Throwable throwable) {
+        super(message, throwable);
+    }
+}
@@ -0,0 +1,32 @@
+package exception;
+
+/**
+ * Exception to indicate that the server is too busy to send a page now, with 429 Too Many Requests or
+ * 503 Service Unavailable, and that it may be requested again later.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class RetryLaterException extends FailedToGetPageContentException {
+
+    private final long retryAfterMillis;
+
+    /**
+     * Constructor.
+     *
+     * @param message exception message
+     * @param retryAfterMillis the time the server asked to wait with a Retry-After header, or -1 if it did not say
+     */
+    public RetryLaterException(String message, long retryAfterMillis) {
+        super(message);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * Gets the time the server asked to wait before the page is requested again.
+     *
+     * @return the time in milliseconds, or -1 if the server did not say
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,28 @@
+package exception;
+
+/**
+ * Exception to indicate that the sitemap could not be read from or written to its files.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class SitemapStorageException extends RuntimeException {
+
+    /**
+     * Constructor.
+     *
+     * @param message exception message
+     * @param throwable cause
+     */
+    public SitemapStorageException(String message, Throwable throwable) {
+        super(message, throwable);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param message exception message
+     */
+    public SitemapStorageException(String message) {
+        super(message);
+    }
+}
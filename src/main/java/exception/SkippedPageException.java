@@ -0,0 +1,18 @@
+package exception;
+
+/**
+ * Exception to indicate that a page was not downloaded because it is not HTML or is too large.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class SkippedPageException extends FailedToGetPageContentException {
+
+    /**
+     * Constructor.
+     *
+     * @param message exception message
+     */
+    public SkippedPageException(String message) {
+        super(message);
+    }
+}
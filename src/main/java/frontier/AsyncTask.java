@@ -0,0 +1,52 @@
+package frontier;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A task whose work goes on after it has been started, such as a page requested without blocking, so the
+ * thread that starts it is free again straight away.
+ *
+ * Whoever limits the tasks that are in progress, such as {@link HostScheduler} for each host, counts the
+ * task until it calls back that it has finished, rather than until its thread returns.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public interface AsyncTask extends Runnable {
+
+    /**
+     * Starts the task.
+     *
+     * @param finished to call once the task has finished, whether or not it succeeded
+     */
+    void start(Runnable finished);
+
+    /**
+     * Starts the task without waiting for it to finish.
+     */
+    @Override
+    default void run() {
+        start(() -> { });
+    }
+
+    /**
+     * Starts a task, making sure its callback runs exactly once, even if the task calls it twice or fails
+     * to start.
+     *
+     * @param task the task
+     * @param finished to call once the task has finished
+     */
+    static void start(AsyncTask task, Runnable finished) {
+        AtomicBoolean done = new AtomicBoolean();
+        Runnable once = () -> {
+            if (done.compareAndSet(false, true)) {
+                finished.run();
+            }
+        };
+        try {
+            task.start(once);
+        } catch (RuntimeException | Error e) {
+            once.run();
+            throw e;
+        }
+    }
+}
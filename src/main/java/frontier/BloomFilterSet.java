@@ -0,0 +1,82 @@
+package frontier;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A probabilistic set of URL fingerprints for very large crawls.
+ *
+ * The memory used is fixed when the filter is created, at around 1.2 bytes per expected URL for a 1%
+ * false positive rate.  The trade off is that a false positive makes the frontier reject a URL that
+ * has not actually been seen, so a small fraction of pages may not be crawled.
+ *
+ * Bits are set with compare and swap, so no locks are taken.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class BloomFilterSet implements SeenUrlSet {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * Constructor.
+     *
+     * @param expectedUrls the number of URLs the filter is sized for
+     * @param falsePositiveRate the false positive rate when the filter holds the expected number of URLs
+     */
+    public BloomFilterSet(long expectedUrls, double falsePositiveRate) {
+        if (expectedUrls <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("The expected number of URLs and false positive rate must be positive.");
+        }
+        long optimalBits = (long) Math.ceil(-expectedUrls * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, (optimalBits + 63) / 64);
+
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = words * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedUrls * Math.log(2)));
+    }
+
+    @Override
+    public boolean add(long fingerprint) {
+        boolean added = false;
+        long hash1 = fingerprint;
+        long hash2 = UrlFingerprint.mix(fingerprint) | 1;
+
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+
+            long current;
+            do {
+                current = bits.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, current, current | mask));
+            if ((current & mask) == 0) {
+                added = true;
+            }
+        }
+        return added;
+    }
+
+    @Override
+    public boolean contains(long fingerprint) {
+        long hash1 = fingerprint;
+        long hash2 = UrlFingerprint.mix(fingerprint) | 1;
+
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int getHashCount() {
+        return hashCount;
+    }
+}
@@ -0,0 +1,142 @@
+package frontier;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the health of one host, so that a host that keeps failing is given a rest instead of work.
+ *
+ * The circuit starts closed.  After a number of failures in a row, such as timeouts or refused
+ * connections, it opens, and the host gets no new requests for the open time.  Then it is half open:
+ * one request is let through as a probe.  If the probe succeeds the circuit closes again; if it fails the
+ * circuit opens for twice as long, up to a maximum.  A host whose probes have failed a number of times in
+ * a row is given up on, and the circuit stays that way.
+ *
+ * A failure counts against the host only when it had nothing to do with the page: a timeout, a connection
+ * that failed without a response, or a 429 Too Many Requests or 503 Service Unavailable response, with
+ * which the server says it is overloaded.  Any other response, even an error page such as 404 Not Found,
+ * is a success.  The circuit is not thread safe; each is guarded by its owner.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class CircuitBreaker {
+
+    /**
+     * The states of a circuit.
+     */
+    public enum State {
+        /** Requests are made as usual. */
+        CLOSED,
+        /** No requests are made until the open time has passed. */
+        OPEN,
+        /** One request at a time is made, to find out whether the host has recovered. */
+        HALF_OPEN,
+        /** The host has not recovered after the most tries, and its pages are not requested. */
+        ABANDONED
+    }
+
+    private final int failureThreshold;
+    private final long initialOpenNanos;
+    private final long maxOpenNanos;
+    private final int maxTrips;
+
+    private int consecutiveFailures;
+    private int trips;
+    private long openNanos;
+    private long openUntilNanos;
+    private boolean open;
+    private boolean abandoned;
+
+    /**
+     * Constructor.
+     *
+     * @param failureThreshold the number of failures in a row that opens the circuit
+     * @param openMillis the time the circuit first stays open
+     * @param maxOpenMillis the longest time the circuit stays open
+     * @param maxTrips the number of times in a row the circuit may open before the host is given up on
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis, long maxOpenMillis, int maxTrips) {
+        this.failureThreshold = failureThreshold;
+        this.initialOpenNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.maxOpenNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(openMillis, maxOpenMillis));
+        this.maxTrips = maxTrips;
+        this.openNanos = initialOpenNanos;
+    }
+
+    /**
+     * Gets the state of the circuit.
+     *
+     * @param now the time from {@link System#nanoTime()}
+     * @return the state
+     */
+    public State getState(long now) {
+        if (abandoned) {
+            return State.ABANDONED;
+        }
+        if (!open) {
+            return State.CLOSED;
+        }
+        return now - openUntilNanos < 0 ? State.OPEN : State.HALF_OPEN;
+    }
+
+    /**
+     * Gets the time until the circuit is half open.
+     *
+     * @param now the time from {@link System#nanoTime()}
+     * @return the time in nanoseconds, or 0 if the circuit is not open
+     */
+    public long getOpenNanos(long now) {
+        return getState(now) == State.OPEN ? openUntilNanos - now : 0;
+    }
+
+    /**
+     * Records a request that the host answered, which closes the circuit.
+     */
+    public void recordSuccess() {
+        if (abandoned) {
+            return;
+        }
+        consecutiveFailures = 0;
+        trips = 0;
+        open = false;
+        openNanos = initialOpenNanos;
+    }
+
+    /**
+     * Records a request that failed because of the host.
+     *
+     * @param now the time from {@link System#nanoTime()}
+     * @return true if the failure opened the circuit
+     */
+    public boolean recordFailure(long now) {
+        State state = getState(now);
+        if (state == State.OPEN || state == State.ABANDONED) {
+            // A request that was in flight when the circuit opened
+            return false;
+        }
+        consecutiveFailures++;
+        if (state == State.CLOSED && consecutiveFailures < failureThreshold) {
+            return false;
+        }
+        trips++;
+        if (trips > maxTrips) {
+            abandoned = true;
+            return false;
+        }
+        if (state == State.HALF_OPEN) {
+            openNanos = Math.min(maxOpenNanos, openNanos * 2);
+        }
+        open = true;
+        openUntilNanos = now + openNanos;
+        return true;
+    }
+
+    public int getTrips() {
+        return trips;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CircuitBreaker{open=%s, abandoned=%s, consecutiveFailures=%d, trips=%d}", open,
+                abandoned, consecutiveFailures, trips);
+    }
+}
@@ -0,0 +1,96 @@
+package frontier;
+
+import java.util.Comparator;
+
+/**
+ * The order that the queued URLs of a host are crawled in, most valuable first.
+ *
+ * Every order falls back on the order the URLs were accepted in, so none of them starves a URL.
+ * With a page budget the order decides which pages are fetched before the budget runs out.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public enum CrawlOrder implements Comparator<FrontierEntry> {
+
+    /**
+     * The order the URLs were accepted in, which is roughly breadth first.
+     */
+    BREADTH_FIRST("bfs") {
+        @Override
+        public int compare(FrontierEntry first, FrontierEntry second) {
+            return Long.compare(first.getSequence(), second.getSequence());
+        }
+    },
+
+    /**
+     * The fewest links from a start URL first, even when a deeper URL was accepted earlier.
+     */
+    SHALLOW_FIRST("shallow") {
+        @Override
+        public int compare(FrontierEntry first, FrontierEntry second) {
+            int byDepth = Integer.compare(first.getDepth(), second.getDepth());
+            return byDepth != 0 ? byDepth : BREADTH_FIRST.compare(first, second);
+        }
+    },
+
+    /**
+     * The fewest path segments first, so section pages come before deep pagination and archives.
+     */
+    FEWEST_SEGMENTS("segments") {
+        @Override
+        public int compare(FrontierEntry first, FrontierEntry second) {
+            int bySegments = Integer.compare(first.getPathSegments(), second.getPathSegments());
+            return bySegments != 0 ? bySegments : SHALLOW_FIRST.compare(first, second);
+        }
+    },
+
+    /**
+     * The URLs with the most links to them so far first, as the pages the site links to most are the most important.
+     */
+    MOST_LINKED("inlinks") {
+        @Override
+        public int compare(FrontierEntry first, FrontierEntry second) {
+            int byInLinks = Integer.compare(second.getInLinks(), first.getInLinks());
+            return byInLinks != 0 ? byInLinks : SHALLOW_FIRST.compare(first, second);
+        }
+
+        @Override
+        public boolean isInLinkCounted() {
+            return true;
+        }
+    };
+
+    private final String optionName;
+
+    CrawlOrder(String optionName) {
+        this.optionName = optionName;
+    }
+
+    /**
+     * Indicates whether the order uses the in-link counts, which the frontier only keeps when they are needed.
+     *
+     * @return true if the in-links of the queued URLs must be counted
+     */
+    public boolean isInLinkCounted() {
+        return false;
+    }
+
+    public String getOptionName() {
+        return optionName;
+    }
+
+    /**
+     * Finds the order for a command line option value.
+     *
+     * @param optionName the option value, e.g. "shallow"
+     * @return the crawl order
+     */
+    public static CrawlOrder fromOptionName(String optionName) {
+        for (CrawlOrder order : values()) {
+            if (order.optionName.equalsIgnoreCase(optionName)) {
+                return order;
+            }
+        }
+        throw new IllegalArgumentException("Unknown crawl order: " + optionName);
+    }
+}
@@ -0,0 +1,109 @@
+package frontier;
+
+/**
+ * An exact set of URL fingerprints.
+ *
+ * The fingerprints are held in open addressing hash tables of primitive longs, so each URL costs
+ * around 8 to 16 bytes rather than a String and a hash map entry.  The set is split into stripes,
+ * each with its own lock, so that concurrent URL processors rarely contend.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class FingerprintSet implements SeenUrlSet {
+
+    private static final int STRIPES = 64;
+    private static final int INITIAL_STRIPE_CAPACITY = 256;
+
+    // Zero marks an empty slot, so a zero fingerprint is stored as this value instead
+    private static final long ZERO_REPLACEMENT = 0x9e3779b97f4a7c15L;
+
+    private final Stripe[] stripes;
+
+    /**
+     * Constructor.
+     */
+    public FingerprintSet() {
+        stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    @Override
+    public boolean add(long fingerprint) {
+        long value = fingerprint == 0 ? ZERO_REPLACEMENT : fingerprint;
+        return stripeFor(value).add(value);
+    }
+
+    @Override
+    public boolean contains(long fingerprint) {
+        long value = fingerprint == 0 ? ZERO_REPLACEMENT : fingerprint;
+        return stripeFor(value).contains(value);
+    }
+
+    /**
+     * Gets the number of fingerprints in the set.
+     *
+     * @return the number of fingerprints
+     */
+    public long size() {
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    private Stripe stripeFor(long value) {
+        // The high bits choose the stripe and the low bits the slot within it
+        return stripes[(int) (value >>> 58) & (STRIPES - 1)];
+    }
+
+    private static final class Stripe {
+
+        private long[] slots = new long[INITIAL_STRIPE_CAPACITY];
+        private int size;
+
+        synchronized boolean add(long value) {
+            int index = indexOf(slots, value);
+            if (slots[index] == value) {
+                return false;
+            }
+            slots[index] = value;
+            if (++size > slots.length * 3 / 4) {
+                resize();
+            }
+            return true;
+        }
+
+        synchronized boolean contains(long value) {
+            return slots[indexOf(slots, value)] == value;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        private void resize() {
+            long[] resized = new long[slots.length * 2];
+            for (long value : slots) {
+                if (value != 0) {
+                    resized[indexOf(resized, value)] = value;
+                }
+            }
+            slots = resized;
+        }
+
+        /**
+         * Finds the slot holding the value, or the empty slot where it would go.
+         */
+        private static int indexOf(long[] table, long value) {
+            int mask = table.length - 1;
+            int index = (int) value & mask;
+            while (table[index] != 0 && table[index] != value) {
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+    }
+}
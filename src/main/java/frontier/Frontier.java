@@ -0,0 +1,328 @@
+package frontier;
+
+import url.Urls;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * The crawl frontier, which decides whether a URL becomes a task.
+ *
+ * A URL is only accepted the first time it is offered, so each page is queued for processing at
+ * most once, however many pages link to it.  The frontier keeps count of the queued URLs and of
+ * the duplicates it has rejected.
+ *
+ * Each accepted URL becomes a {@link FrontierEntry} with its depth, which the tasks are ordered by.
+ * URLs deeper than the maximum depth are rejected without being remembered, in case a shorter path
+ * to them is found later.  The page budget is spent when a queued entry starts processing rather
+ * than when it is accepted, so the entries that the crawl order puts first are the ones fetched;
+ * once it is spent no more URLs are accepted.
+ *
+ * The frontier can be told of each host as its first URL is accepted, so that work for the host, such as
+ * resolving its name, can start before its first page is fetched.
+ *
+ * An offer can also be given a listener for its URL being accepted, which is told before any other offer
+ * of that URL with a listener returns, so the URL can be journalled before a page that links to it is.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class Frontier {
+
+    /** The depth limit of a frontier without one. */
+    public static final int UNLIMITED_DEPTH = Integer.MAX_VALUE;
+    /** The page budget of a frontier without one. */
+    public static final long UNLIMITED_PAGES = Long.MAX_VALUE;
+
+    private static final int ACCEPT_LOCK_STRIPES = 64;
+
+    private final SeenUrlSet seenUrls;
+    private final int maxDepth;
+    private final long maxPages;
+    private final PriorityUpdater priorityUpdater;
+    /** The queued entries by fingerprint, only kept when their in-links are counted. */
+    private final Map<Long, FrontierEntry> queuedEntries;
+    private final Consumer<String> newHostListener;
+    /** The hosts with an accepted URL, only kept when there is a listener for new hosts. */
+    private final Set<String> seenHosts;
+    private final Object[] acceptLocks = new Object[ACCEPT_LOCK_STRIPES];
+
+    private final LongAdder acceptedCount = new LongAdder();
+    private final LongAdder duplicateCount = new LongAdder();
+    private final LongAdder depthLimitedCount = new LongAdder();
+    private final LongAdder budgetLimitedCount = new LongAdder();
+    private final LongAdder spilledCount = new LongAdder();
+    private final LongAdder requeuedCount = new LongAdder();
+    private final AtomicLong queueDepth = new AtomicLong();
+    private final AtomicLong pagesStarted = new AtomicLong();
+
+    /**
+     * Constructor for a frontier with an exact seen set.
+     */
+    public Frontier() {
+        this(new FingerprintSet());
+    }
+
+    /**
+     * Constructor for a breadth first frontier without limits.
+     *
+     * @param seenUrls the set of URLs seen by the frontier
+     */
+    public Frontier(SeenUrlSet seenUrls) {
+        this(seenUrls, CrawlOrder.BREADTH_FIRST, UNLIMITED_DEPTH, UNLIMITED_PAGES, PriorityUpdater.DIRECT);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param seenUrls the set of URLs seen by the frontier
+     * @param crawlOrder the order the queued entries are crawled in
+     * @param maxDepth the most links to follow from a start URL
+     * @param maxPages the most pages to process
+     * @param priorityUpdater changes the priority of queued entries, such as the scheduler that orders them
+     */
+    public Frontier(SeenUrlSet seenUrls, CrawlOrder crawlOrder, int maxDepth, long maxPages,
+                    PriorityUpdater priorityUpdater) {
+        this(seenUrls, crawlOrder, maxDepth, maxPages, priorityUpdater, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param seenUrls the set of URLs seen by the frontier
+     * @param crawlOrder the order the queued entries are crawled in
+     * @param maxDepth the most links to follow from a start URL
+     * @param maxPages the most pages to process
+     * @param priorityUpdater changes the priority of queued entries, such as the scheduler that orders them
+     * @param newHostListener is given the host of each URL accepted for a host not seen before, or null
+     */
+    public Frontier(SeenUrlSet seenUrls, CrawlOrder crawlOrder, int maxDepth, long maxPages,
+                    PriorityUpdater priorityUpdater, Consumer<String> newHostListener) {
+        this.seenUrls = seenUrls;
+        this.maxDepth = maxDepth;
+        this.maxPages = maxPages;
+        this.priorityUpdater = priorityUpdater;
+        this.queuedEntries = crawlOrder.isInLinkCounted() ? new ConcurrentHashMap<>() : null;
+        this.newHostListener = newHostListener;
+        this.seenHosts = newHostListener != null ? ConcurrentHashMap.newKeySet() : null;
+        for (int i = 0; i < ACCEPT_LOCK_STRIPES; i++) {
+            acceptLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Offers a start URL to the frontier.
+     *
+     * @param url the URL
+     * @return true if the URL has not been seen before and should be queued for processing
+     */
+    public boolean offer(String url) {
+        return offer(url, 0) != null;
+    }
+
+    /**
+     * Offers a URL to the frontier.
+     *
+     * @param url the URL
+     * @param depth the number of links from a start URL
+     * @return the entry to queue for processing, or null if the URL has been seen before or is out of bounds
+     */
+    public FrontierEntry offer(String url, int depth) {
+        return offer(url, depth, null);
+    }
+
+    /**
+     * Offers a URL to the frontier, and tells the listener if it is accepted before any other offer of the same
+     * URL returns.  So a record of the accepted URL, such as in a {@link checkpoint.CrawlJournal}, is always made
+     * before a page that found it as a duplicate can be recorded as completed, as long as that page offered its
+     * links with a listener too.
+     *
+     * @param url the URL
+     * @param depth the number of links from a start URL
+     * @param acceptListener is given the entry if the URL is accepted, or null
+     * @return the entry to queue for processing, or null if the URL has been seen before or is out of bounds
+     */
+    public FrontierEntry offer(String url, int depth, Consumer<FrontierEntry> acceptListener) {
+        if (depth > maxDepth) {
+            depthLimitedCount.increment();
+            return null;
+        }
+        if (pagesStarted.get() >= maxPages) {
+            budgetLimitedCount.increment();
+            return null;
+        }
+        long fingerprint = UrlFingerprint.of(url);
+        if (acceptListener == null) {
+            return accept(url, depth, fingerprint, null);
+        }
+        // Offers of the same URL share a stripe, so a duplicate waits until the listener has been told
+        synchronized (acceptLocks[(int) (fingerprint & (ACCEPT_LOCK_STRIPES - 1))]) {
+            return accept(url, depth, fingerprint, acceptListener);
+        }
+    }
+
+    private FrontierEntry accept(String url, int depth, long fingerprint, Consumer<FrontierEntry> acceptListener) {
+        if (seenUrls.add(fingerprint)) {
+            FrontierEntry entry = new FrontierEntry(url, depth);
+            if (queuedEntries != null) {
+                queuedEntries.put(fingerprint, entry);
+            }
+            acceptedCount.increment();
+            queueDepth.incrementAndGet();
+            if (newHostListener != null) {
+                String host = Urls.getHost(url);
+                if (host != null && seenHosts.add(host)) {
+                    newHostListener.accept(host);
+                }
+            }
+            if (acceptListener != null) {
+                acceptListener.accept(entry);
+            }
+            return entry;
+        }
+        duplicateCount.increment();
+        if (queuedEntries != null) {
+            FrontierEntry queued = queuedEntries.get(fingerprint);
+            if (queued != null) {
+                priorityUpdater.update(queued, queued::addInLink);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Takes an accepted entry off the queue and spends one page of the budget on it.
+     *
+     * @param entry the entry
+     * @return true if the entry should be processed, false if the page budget has been spent
+     */
+    public boolean startProcessing(FrontierEntry entry) {
+        queueDepth.decrementAndGet();
+        if (queuedEntries != null) {
+            queuedEntries.remove(UrlFingerprint.of(entry.getUrl()));
+        }
+        long started;
+        do {
+            started = pagesStarted.get();
+            if (started >= maxPages) {
+                budgetLimitedCount.increment();
+                return false;
+            }
+        } while (!pagesStarted.compareAndSet(started, started + 1));
+        return true;
+    }
+
+    /**
+     * Puts an entry that started processing back on the queue, such as a page whose download is to be retried,
+     * and gives back the page of the budget it spent.  Its in-links are no longer counted.
+     *
+     * @param entry the entry
+     */
+    public void requeue(FrontierEntry entry) {
+        queueDepth.incrementAndGet();
+        pagesStarted.decrementAndGet();
+        requeuedCount.increment();
+    }
+
+    /**
+     * Counts a queued entry that has been moved out of memory, and stops counting its in-links so the frontier
+     * does not keep it on the heap.
+     *
+     * @param entry the entry
+     */
+    public void spilled(FrontierEntry entry) {
+        spilledCount.increment();
+        if (queuedEntries != null) {
+            queuedEntries.remove(UrlFingerprint.of(entry.getUrl()), entry);
+        }
+    }
+
+    /**
+     * Marks an accepted URL as taken off the queue for processing, such as a page completed before a crawl
+     * was resumed.  It counts towards the page budget.
+     *
+     * @param url the URL
+     */
+    public void markProcessing(String url) {
+        queueDepth.decrementAndGet();
+        pagesStarted.incrementAndGet();
+    }
+
+    /**
+     * Gets the number of accepted URLs that are waiting to be processed.
+     *
+     * @return the queue depth
+     */
+    public long getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public long getAcceptedCount() {
+        return acceptedCount.sum();
+    }
+
+    public long getDuplicateCount() {
+        return duplicateCount.sum();
+    }
+
+    /**
+     * Gets the number of links rejected for being deeper than the maximum depth.
+     *
+     * @return the number of depth limited links
+     */
+    public long getDepthLimitedCount() {
+        return depthLimitedCount.sum();
+    }
+
+    /**
+     * Gets the number of links rejected, and queued entries dropped, because the page budget was spent.
+     *
+     * @return the number of budget limited links
+     */
+    public long getBudgetLimitedCount() {
+        return budgetLimitedCount.sum();
+    }
+
+    /**
+     * Gets the number of queued entries that have been moved out of memory.
+     *
+     * @return the number of spilled entries
+     */
+    public long getSpilledCount() {
+        return spilledCount.sum();
+    }
+
+    /**
+     * Gets the number of times an entry has been put back on the queue after it started processing.
+     *
+     * @return the number of requeued entries
+     */
+    public long getRequeuedCount() {
+        return requeuedCount.sum();
+    }
+
+    public long getPagesStarted() {
+        return pagesStarted.get();
+    }
+
+    /**
+     * Gets the fraction of offered URLs that were rejected as duplicates.
+     *
+     * @return the duplicate rate, between 0 and 1
+     */
+    public double getDuplicateRate() {
+        long duplicates = duplicateCount.sum();
+        long offered = duplicates + acceptedCount.sum();
+        return offered == 0 ? 0 : (double) duplicates / offered;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Frontier{accepted=%d, duplicates=%d, duplicateRate=%.1f%%, queueDepth=%d, "
+                        + "depthLimited=%d, budgetLimited=%d}", getAcceptedCount(), getDuplicateCount(),
+                getDuplicateRate() * 100, getQueueDepth(), getDepthLimitedCount(), getBudgetLimitedCount());
+    }
+}
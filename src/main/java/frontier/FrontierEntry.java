@@ -0,0 +1,98 @@
+package frontier;
+
+import url.Urls;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A URL accepted by the frontier, with what a {@link CrawlOrder} needs to decide when it is crawled.
+ *
+ * The depth is the number of links followed from a start URL.  The sequence number records the
+ * order the entries were created in, and is unique, so it settles every tie.  The in-link count is
+ * the number of links to the URL seen while it was queued; it is only changed through a
+ * {@link PriorityUpdater}, as a queue ordered by it must move the entry when it changes.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public final class FrontierEntry {
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final String url;
+    private final int depth;
+    private final long sequence;
+    private final AtomicInteger inLinks;
+    private int pathSegments = -1;
+
+    /**
+     * Constructor.
+     *
+     * @param url the canonical URL
+     * @param depth the number of links from a start URL
+     */
+    public FrontierEntry(String url, int depth) {
+        this(url, depth, depth > 0 ? 1 : 0);
+    }
+
+    /**
+     * Constructor for an entry read back from outside the heap, with the in-links it had.
+     *
+     * @param url the canonical URL
+     * @param depth the number of links from a start URL
+     * @param inLinks the number of links to the URL seen so far
+     */
+    FrontierEntry(String url, int depth, int inLinks) {
+        this.url = url;
+        this.depth = depth;
+        this.sequence = SEQUENCE.getAndIncrement();
+        this.inLinks = new AtomicInteger(inLinks);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public int getInLinks() {
+        return inLinks.get();
+    }
+
+    /**
+     * Gets the number of segments in the path of the URL, found the first time it is needed.
+     *
+     * @return the number of path segments
+     */
+    public int getPathSegments() {
+        if (pathSegments < 0) {
+            // A race only computes the same value twice
+            pathSegments = Urls.getPathSegmentCount(url);
+        }
+        return pathSegments;
+    }
+
+    /**
+     * Gets the host the URL is fetched from, which its task is queued under.
+     *
+     * @return the host and port, or null if the URL has no host
+     */
+    public String getHost() {
+        return Urls.getHostAndPort(url);
+    }
+
+    void addInLink() {
+        inLinks.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return "FrontierEntry{url=" + url + ", depth=" + depth + ", inLinks=" + inLinks + '}';
+    }
+}
@@ -0,0 +1,437 @@
+package frontier;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Schedules tasks so that each host is crawled politely.
+ *
+ * Every host has its own queue.  A host is ready when it has queued tasks, fewer than the maximum
+ * number of tasks per host running, and the minimum delay since its last task started has passed.
+ * Whenever a worker is free the next ready host, in round-robin order, gets it.  Only as many tasks
+ * as there are workers are handed to the worker executor, so a slow host can hold at most its own
+ * share of the workers and the other hosts carry on.
+ *
+ * An {@link AsyncTask} keeps its worker and its host's slot until it calls back that it has finished,
+ * although the worker thread is free as soon as the task has started.  The number of workers is then
+ * the number of tasks in progress, such as requests in flight, rather than a number of threads.
+ *
+ * With a crawl order, the tasks of each host that have a {@link FrontierEntry} are started best first
+ * rather than in the order they were queued, ahead of the host's tasks without one.  The order only
+ * applies within a host, as the hosts still take turns.  The scheduler is the {@link PriorityUpdater}
+ * for the entries it queues.
+ *
+ * Both limits can be changed while tasks are running, such as by a controller that adapts them to how
+ * the hosts respond.
+ *
+ * With circuit breakers, the outcome of each request to a host is recorded, and a host whose
+ * {@link CircuitBreaker} is open is not ready however many tasks it has: its tasks are parked until the
+ * circuit is half open, and then only one runs at a time until a request succeeds.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class HostScheduler implements PriorityUpdater {
+
+    private final Executor workers;
+    private final long minDelayNanos;
+    private final Comparator<FrontierEntry> crawlOrder;
+    private final Supplier<CircuitBreaker> circuitBreakers;
+
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+    private final Queue<HostQueue> readyHosts = new ArrayDeque<>();
+    private final ScheduledExecutorService timer;
+    private int maxConcurrentTasks;
+    private int maxTasksPerHost;
+    private int freeWorkers;
+    private int queuedTasks;
+
+    /**
+     * Constructor.
+     *
+     * @param workers runs the tasks
+     * @param maxConcurrentTasks the number of tasks that the workers run at once
+     * @param maxTasksPerHost the number of tasks for one host that may run at once
+     * @param minDelayMillis the minimum time between starting two tasks for the same host
+     */
+    public HostScheduler(Executor workers, int maxConcurrentTasks, int maxTasksPerHost, long minDelayMillis) {
+        this(workers, maxConcurrentTasks, maxTasksPerHost, minDelayMillis, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param workers runs the tasks
+     * @param maxConcurrentTasks the number of tasks that the workers run at once
+     * @param maxTasksPerHost the number of tasks for one host that may run at once
+     * @param minDelayMillis the minimum time between starting two tasks for the same host
+     * @param crawlOrder the order to start the tasks of a host in, or null for the order they are queued in
+     */
+    public HostScheduler(Executor workers, int maxConcurrentTasks, int maxTasksPerHost, long minDelayMillis,
+                         Comparator<FrontierEntry> crawlOrder) {
+        this(workers, maxConcurrentTasks, maxTasksPerHost, minDelayMillis, crawlOrder, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param workers runs the tasks
+     * @param maxConcurrentTasks the number of tasks that the workers run at once
+     * @param maxTasksPerHost the number of tasks for one host that may run at once
+     * @param minDelayMillis the minimum time between starting two tasks for the same host
+     * @param crawlOrder the order to start the tasks of a host in, or null for the order they are queued in
+     * @param circuitBreakers creates the circuit breaker of each host, or null to never park a host's tasks
+     */
+    public HostScheduler(Executor workers, int maxConcurrentTasks, int maxTasksPerHost, long minDelayMillis,
+                         Comparator<FrontierEntry> crawlOrder, Supplier<CircuitBreaker> circuitBreakers) {
+        this.workers = workers;
+        this.crawlOrder = crawlOrder;
+        this.circuitBreakers = circuitBreakers;
+        this.maxConcurrentTasks = maxConcurrentTasks;
+        this.freeWorkers = maxConcurrentTasks;
+        this.maxTasksPerHost = maxTasksPerHost;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+        this.timer = minDelayMillis > 0 || circuitBreakers != null ? Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "host-scheduler-timer");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * Queues a task for a host.
+     *
+     * @param host the host that the task fetches from
+     * @param task the task
+     */
+    public void execute(String host, Runnable task) {
+        execute(host, null, task);
+    }
+
+    /**
+     * Queues a task for a host, in the crawl order of its frontier entry.
+     *
+     * @param host the host that the task fetches from
+     * @param entry the entry that the task crawls, or null to queue the task in arrival order
+     * @param task the task
+     */
+    public void execute(String host, FrontierEntry entry, Runnable task) {
+        synchronized (this) {
+            HostQueue hostQueue = hosts.computeIfAbsent(host, this::createHostQueue);
+            if (entry != null && hostQueue.orderedTasks != null) {
+                hostQueue.orderedTasks.put(entry, task);
+            } else {
+                hostQueue.tasks.add(task);
+            }
+            queuedTasks++;
+            updateReadiness(hostQueue, System.nanoTime());
+        }
+        dispatch();
+    }
+
+    /**
+     * Changes the priority of an entry, moving its task if it is still queued.
+     *
+     * @param entry the entry
+     * @param change the change to the entry
+     */
+    @Override
+    public synchronized void update(FrontierEntry entry, Runnable change) {
+        String host = entry.getHost();
+        HostQueue hostQueue = host != null ? hosts.get(host) : null;
+        Runnable task = hostQueue != null && hostQueue.orderedTasks != null ? hostQueue.orderedTasks.remove(entry) : null;
+        change.run();
+        if (task != null) {
+            hostQueue.orderedTasks.put(entry, task);
+        }
+    }
+
+    /**
+     * Changes the number of tasks that the workers run at once.  When it is lowered, the running tasks
+     * finish and no more are started until fewer than the new number are running.
+     *
+     * @param maxConcurrentTasks the number of tasks that the workers run at once
+     */
+    public void setMaxConcurrentTasks(int maxConcurrentTasks) {
+        synchronized (this) {
+            freeWorkers += maxConcurrentTasks - this.maxConcurrentTasks;
+            this.maxConcurrentTasks = maxConcurrentTasks;
+        }
+        dispatch();
+    }
+
+    public synchronized int getMaxConcurrentTasks() {
+        return maxConcurrentTasks;
+    }
+
+    /**
+     * Changes the number of tasks for one host that may run at once.
+     *
+     * @param maxTasksPerHost the number of tasks for one host that may run at once
+     */
+    public void setMaxTasksPerHost(int maxTasksPerHost) {
+        synchronized (this) {
+            this.maxTasksPerHost = maxTasksPerHost;
+            long now = System.nanoTime();
+            for (HostQueue hostQueue : hosts.values()) {
+                updateReadiness(hostQueue, now);
+            }
+        }
+        dispatch();
+    }
+
+    public synchronized int getMaxTasksPerHost() {
+        return maxTasksPerHost;
+    }
+
+    /**
+     * Records a request that a host answered, which closes its circuit.
+     *
+     * @param host the host
+     */
+    public void recordSuccess(String host) {
+        if (circuitBreakers == null) {
+            return;
+        }
+        synchronized (this) {
+            HostQueue hostQueue = hosts.computeIfAbsent(host, this::createHostQueue);
+            hostQueue.circuit.recordSuccess();
+            updateReadiness(hostQueue, System.nanoTime());
+        }
+        dispatch();
+    }
+
+    /**
+     * Records a request that failed because of its host, which may open the host's circuit and park its tasks.
+     *
+     * @param host the host
+     * @return true if the failure opened the circuit
+     */
+    public synchronized boolean recordFailure(String host) {
+        if (circuitBreakers == null) {
+            return false;
+        }
+        return hosts.computeIfAbsent(host, this::createHostQueue).circuit.recordFailure(System.nanoTime());
+    }
+
+    /**
+     * Indicates whether a host has kept failing after its circuit has opened the most times, so its pages
+     * should not be requested.
+     *
+     * @param host the host
+     * @return true if the host has been given up on
+     */
+    public synchronized boolean isAbandoned(String host) {
+        HostQueue hostQueue = circuitBreakers != null ? hosts.get(host) : null;
+        return hostQueue != null && hostQueue.circuit.getState(System.nanoTime()) == CircuitBreaker.State.ABANDONED;
+    }
+
+    /**
+     * Gets the number of hosts whose circuit is open or half open.
+     *
+     * @return the number of hosts
+     */
+    public synchronized int getOpenCircuitCount() {
+        return countCircuits(CircuitBreaker.State.OPEN) + countCircuits(CircuitBreaker.State.HALF_OPEN);
+    }
+
+    /**
+     * Gets the number of hosts that have been given up on.
+     *
+     * @return the number of hosts
+     */
+    public synchronized int getAbandonedHostCount() {
+        return countCircuits(CircuitBreaker.State.ABANDONED);
+    }
+
+    private int countCircuits(CircuitBreaker.State state) {
+        if (circuitBreakers == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        return (int) hosts.values().stream().filter(hostQueue -> hostQueue.circuit.getState(now) == state).count();
+    }
+
+    /**
+     * Removes the tasks that have not been started.
+     *
+     * @return the removed tasks
+     */
+    public List<Runnable> drain() {
+        List<Runnable> drained = new ArrayList<>();
+        synchronized (this) {
+            for (HostQueue hostQueue : hosts.values()) {
+                if (hostQueue.orderedTasks != null) {
+                    drained.addAll(hostQueue.orderedTasks.values());
+                    hostQueue.orderedTasks.clear();
+                }
+                drained.addAll(hostQueue.tasks);
+                hostQueue.tasks.clear();
+            }
+            readyHosts.clear();
+            queuedTasks = 0;
+        }
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+        return drained;
+    }
+
+    /**
+     * Gets the number of tasks that are waiting for their host to become ready or for a free worker.
+     *
+     * @return the number of queued tasks
+     */
+    public synchronized int getQueuedTaskCount() {
+        return queuedTasks;
+    }
+
+    /**
+     * Gets the number of hosts that tasks have been queued for.
+     *
+     * @return the number of hosts
+     */
+    public synchronized int getHostCount() {
+        return hosts.size();
+    }
+
+    private void dispatch() {
+        List<Runnable> started = new ArrayList<>();
+        synchronized (this) {
+            long now = System.nanoTime();
+            while (freeWorkers > 0 && !readyHosts.isEmpty()) {
+                HostQueue hostQueue = readyHosts.poll();
+                hostQueue.ready = false;
+                if (hostQueue.running >= getMaxTasks(hostQueue, now) || getCircuitOpenNanos(hostQueue, now) > 0) {
+                    // The limit was lowered, or the circuit opened, after the host became ready
+                    updateReadiness(hostQueue, now);
+                    continue;
+                }
+                Runnable task = hostQueue.poll();
+                queuedTasks--;
+                freeWorkers--;
+                hostQueue.running++;
+                hostQueue.lastStartNanos = now;
+                hostQueue.started = true;
+                started.add(() -> run(hostQueue, task));
+                // Back of the queue, so the other ready hosts go first
+                updateReadiness(hostQueue, now);
+            }
+        }
+        started.forEach(workers::execute);
+    }
+
+    private void run(HostQueue hostQueue, Runnable task) {
+        if (task instanceof AsyncTask) {
+            AsyncTask.start((AsyncTask) task, () -> taskFinished(hostQueue));
+            return;
+        }
+        try {
+            task.run();
+        } finally {
+            taskFinished(hostQueue);
+        }
+    }
+
+    private void taskFinished(HostQueue hostQueue) {
+        synchronized (this) {
+            freeWorkers++;
+            hostQueue.running--;
+            updateReadiness(hostQueue, System.nanoTime());
+        }
+        dispatch();
+    }
+
+    /**
+     * Puts the host in the ready queue if it can start a task now, or sets a timer for when it can.
+     */
+    private void updateReadiness(HostQueue hostQueue, long now) {
+        if (hostQueue.ready || hostQueue.waiting || hostQueue.isEmpty()
+                || hostQueue.running >= getMaxTasks(hostQueue, now)) {
+            return;
+        }
+        long delay = hostQueue.started ? hostQueue.lastStartNanos + minDelayNanos - now : 0;
+        delay = Math.max(delay, getCircuitOpenNanos(hostQueue, now));
+        if (delay <= 0) {
+            hostQueue.ready = true;
+            readyHosts.add(hostQueue);
+        } else if (!timer.isShutdown()) {
+            hostQueue.waiting = true;
+            timer.schedule(() -> delayElapsed(hostQueue), delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Gets the number of tasks the host may run at once, which is one while its circuit is half open.
+     */
+    private int getMaxTasks(HostQueue hostQueue, long now) {
+        if (hostQueue.circuit != null && hostQueue.circuit.getState(now) == CircuitBreaker.State.HALF_OPEN) {
+            return 1;
+        }
+        return maxTasksPerHost;
+    }
+
+    private static long getCircuitOpenNanos(HostQueue hostQueue, long now) {
+        return hostQueue.circuit != null ? hostQueue.circuit.getOpenNanos(now) : 0;
+    }
+
+    private HostQueue createHostQueue(String host) {
+        return new HostQueue(host, crawlOrder, circuitBreakers != null ? circuitBreakers.get() : null);
+    }
+
+    private void delayElapsed(HostQueue hostQueue) {
+        synchronized (this) {
+            hostQueue.waiting = false;
+            updateReadiness(hostQueue, System.nanoTime());
+        }
+        dispatch();
+    }
+
+    /**
+     * The tasks and state of one host, guarded by the scheduler.
+     */
+    private static final class HostQueue {
+
+        private final String host;
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+        private final TreeMap<FrontierEntry, Runnable> orderedTasks;
+        private final CircuitBreaker circuit;
+        private int running;
+        private long lastStartNanos;
+        private boolean started;
+        private boolean ready;
+        private boolean waiting;
+
+        HostQueue(String host, Comparator<FrontierEntry> crawlOrder, CircuitBreaker circuit) {
+            this.host = host;
+            this.orderedTasks = crawlOrder != null ? new TreeMap<>(crawlOrder) : null;
+            this.circuit = circuit;
+        }
+
+        boolean isEmpty() {
+            return tasks.isEmpty() && (orderedTasks == null || orderedTasks.isEmpty());
+        }
+
+        Runnable poll() {
+            if (orderedTasks != null && !orderedTasks.isEmpty()) {
+                return orderedTasks.pollFirstEntry().getValue();
+            }
+            return tasks.poll();
+        }
+
+        @Override
+        public String toString() {
+            return host;
+        }
+    }
+}
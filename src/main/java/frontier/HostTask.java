@@ -0,0 +1,25 @@
+package frontier;
+
+/**
+ * A task that fetches from one host, so that it can be scheduled by {@link HostScheduler}.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public interface HostTask {
+
+    /**
+     * Gets the host that the task fetches from.
+     *
+     * @return the host and port, or null if it is not known
+     */
+    String getHost();
+
+    /**
+     * Gets the frontier entry that the task crawls, which orders it among the other tasks for its host.
+     *
+     * @return the entry, or null if the task is not ordered
+     */
+    default FrontierEntry getFrontierEntry() {
+        return null;
+    }
+}
@@ -0,0 +1,25 @@
+package frontier;
+
+/**
+ * Changes the priority of a queued {@link FrontierEntry}.
+ *
+ * A queue ordered by the priority takes the entry out before the change and puts it back after, all
+ * while holding its lock, so that the entry is never in the queue under a stale priority.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public interface PriorityUpdater {
+
+    /**
+     * Makes the change directly, for entries that are not in an ordered queue.
+     */
+    PriorityUpdater DIRECT = (entry, change) -> change.run();
+
+    /**
+     * Changes the priority of an entry.
+     *
+     * @param entry the entry, which may or may not still be queued
+     * @param change the change to the entry
+     */
+    void update(FrontierEntry entry, Runnable change);
+}
@@ -0,0 +1,27 @@
+package frontier;
+
+/**
+ * The set of URL fingerprints that have been seen by the frontier.
+ *
+ * Implementations are thread safe.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public interface SeenUrlSet {
+
+    /**
+     * Adds a URL fingerprint to the set.
+     *
+     * @param fingerprint the 64 bit fingerprint of the URL
+     * @return true if the fingerprint had not been seen before
+     */
+    boolean add(long fingerprint);
+
+    /**
+     * Indicates whether a URL fingerprint has been seen.
+     *
+     * @param fingerprint the 64 bit fingerprint of the URL
+     * @return true if the fingerprint has been seen (or may have been, for a probabilistic set)
+     */
+    boolean contains(long fingerprint);
+}
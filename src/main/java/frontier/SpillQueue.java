@@ -0,0 +1,251 @@
+package frontier;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A first in, first out queue of frontier entries kept in files rather than on the heap.
+ *
+ * The entries are appended to segment files in a directory, and read back from the oldest segment
+ * sequentially, through a buffer on each end.  A segment is closed once it reaches the segment size and
+ * deleted once it has been read, so the disk used follows the number of entries waiting.  Each record is
+ * the int length of the URL, the depth and the in-link count, then the UTF-8 bytes of the URL; nothing else
+ * of the entry or its task is kept.  An entry read back is a new entry with the same URL, depth and in-links.
+ *
+ * The queue is not thread safe, and the segments are not meant to outlive it: they are deleted, with the
+ * directory, when it is closed.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class SpillQueue implements Closeable {
+
+    /** The default size a segment grows to before the next one is started. */
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final int HEADER_BYTES = 12;
+
+    private final Path directory;
+    private final long segmentBytes;
+
+    private FileChannel writeChannel;
+    private int writeSegment;
+    private long writeSegmentSize;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+    private FileChannel readChannel;
+    private int readSegment;
+    private ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+    private long size;
+    private long spilledCount;
+    private long bytesWritten;
+
+    /**
+     * Constructor.
+     *
+     * @param directory the directory for the segment files, which is created if it does not exist and is only
+     *                  used by this queue
+     * @param segmentBytes the size a segment grows to before the next one is started
+     * @throws IOException if the first segment could not be created
+     */
+    public SpillQueue(Path directory, long segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        this.writeChannel = openSegment(0, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.readChannel = openSegment(0, StandardOpenOption.READ);
+        readBuffer.flip();
+    }
+
+    /**
+     * Appends an entry to the end of the queue.
+     *
+     * @param entry the entry
+     * @throws IOException if the entry could not be written
+     */
+    public void add(FrontierEntry entry) throws IOException {
+        byte[] url = entry.getUrl().getBytes(StandardCharsets.UTF_8);
+        int recordBytes = HEADER_BYTES + url.length;
+        if (writeSegmentSize >= segmentBytes) {
+            startNextSegment();
+        }
+        if (writeBuffer.remaining() < recordBytes) {
+            flush();
+        }
+        if (writeBuffer.remaining() < recordBytes) {
+            // Only a URL longer than the buffer is written directly
+            ByteBuffer record = ByteBuffer.allocate(recordBytes);
+            putRecord(record, entry, url);
+            record.flip();
+            write(record);
+        } else {
+            putRecord(writeBuffer, entry, url);
+        }
+        writeSegmentSize += recordBytes;
+        bytesWritten += recordBytes;
+        size++;
+        spilledCount++;
+    }
+
+    /**
+     * Takes the entry at the head of the queue.
+     *
+     * @return the entry, or null if the queue is empty
+     * @throws IOException if the entry could not be read
+     */
+    public FrontierEntry poll() throws IOException {
+        if (size == 0) {
+            return null;
+        }
+        if (!fill(HEADER_BYTES)) {
+            throw new IOException("Spilled frontier entry missing from segment " + segmentFile(readSegment));
+        }
+        int urlBytes = readBuffer.getInt(readBuffer.position());
+        if (!fill(HEADER_BYTES + urlBytes)) {
+            throw new IOException("Spilled frontier entry cut short in segment " + segmentFile(readSegment));
+        }
+        readBuffer.getInt();
+        int depth = readBuffer.getInt();
+        int inLinks = readBuffer.getInt();
+        byte[] url = new byte[urlBytes];
+        readBuffer.get(url);
+        size--;
+        return new FrontierEntry(new String(url, StandardCharsets.UTF_8), depth, inLinks);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the number of entries waiting in the queue.
+     *
+     * @return the number of entries
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of entries ever added to the queue.
+     *
+     * @return the number of entries spilled
+     */
+    public long getSpilledCount() {
+        return spilledCount;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Gets the number of segment files on disk.
+     *
+     * @return the number of segments
+     */
+    public int getSegmentCount() {
+        return writeSegment - readSegment + 1;
+    }
+
+    /**
+     * Closes the segments and deletes them and the directory, discarding any entries still queued.
+     *
+     * @throws IOException if a segment could not be closed or deleted
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            readChannel.close();
+            writeChannel.close();
+        } finally {
+            for (int segment = readSegment; segment <= writeSegment; segment++) {
+                Files.deleteIfExists(segmentFile(segment));
+            }
+            Files.deleteIfExists(directory);
+            size = 0;
+        }
+    }
+
+    /**
+     * Makes sure the read buffer holds at least the number of bytes, moving on to the next segment when the
+     * current one has been read.
+     */
+    private boolean fill(int bytes) throws IOException {
+        if (readBuffer.remaining() >= bytes) {
+            return true;
+        }
+        if (readBuffer.capacity() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocateDirect(bytes);
+            larger.put(readBuffer);
+            larger.flip();
+            readBuffer = larger;
+        }
+        if (readSegment == writeSegment) {
+            // The rest of the entries may still be in the write buffer
+            flush();
+        }
+        while (readBuffer.remaining() < bytes) {
+            readBuffer.compact();
+            int read = readChannel.read(readBuffer);
+            readBuffer.flip();
+            if (read < 0) {
+                // A record is never split between segments
+                if (readSegment == writeSegment || readBuffer.hasRemaining()) {
+                    return false;
+                }
+                nextReadSegment();
+            }
+        }
+        return true;
+    }
+
+    private void nextReadSegment() throws IOException {
+        readChannel.close();
+        Files.delete(segmentFile(readSegment));
+        readSegment++;
+        readChannel = openSegment(readSegment, StandardOpenOption.READ);
+        if (readSegment == writeSegment) {
+            flush();
+        }
+    }
+
+    private void startNextSegment() throws IOException {
+        flush();
+        writeChannel.close();
+        writeSegment++;
+        writeSegmentSize = 0;
+        writeChannel = openSegment(writeSegment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    private void flush() throws IOException {
+        writeBuffer.flip();
+        write(writeBuffer);
+        writeBuffer.clear();
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            writeChannel.write(buffer);
+        }
+    }
+
+    private static void putRecord(ByteBuffer buffer, FrontierEntry entry, byte[] url) {
+        buffer.putInt(url.length).putInt(entry.getDepth()).putInt(entry.getInLinks()).put(url);
+    }
+
+    private FileChannel openSegment(int segment, StandardOpenOption... options) throws IOException {
+        return FileChannel.open(segmentFile(segment), options);
+    }
+
+    private Path segmentFile(int segment) {
+        return directory.resolve(String.format("frontier-%06d.spill", segment));
+    }
+}
@@ -0,0 +1,171 @@
+package frontier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs tasks after a delay, for large numbers of tasks that do not need to run at an exact time.
+ *
+ * The wheel is a ring of buckets, one per tick.  A task goes into the bucket of the tick it is due in,
+ * with the number of turns of the wheel still to wait, so scheduling a task is constant time however
+ * many are waiting, rather than the logarithmic time of a priority queue.  A single thread wakes every
+ * tick and runs the due tasks of the bucket, so a task runs up to a tick late and should only hand work
+ * on, such as submitting it to an executor, rather than do it.
+ *
+ * New tasks are handed to the wheel thread through a lock free queue, and only that thread touches the
+ * buckets.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class TimerWheel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimerWheel.class);
+
+    private final long tickNanos;
+    private final int mask;
+    private final List<Queue<Timeout>> buckets;
+    private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Thread thread;
+    private final long startNanos;
+    private volatile boolean stopped;
+    private long tick;
+
+    /**
+     * Constructor, which starts the wheel thread.
+     *
+     * @param threadName the name of the wheel thread
+     * @param tickMillis the time between two ticks, which is how late a task may run
+     * @param ticksPerWheel the number of buckets, rounded up to a power of two
+     */
+    public TimerWheel(String threadName, long tickMillis, int ticksPerWheel) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        int size = Integer.highestOneBit(Math.max(1, ticksPerWheel - 1)) << 1;
+        this.mask = size - 1;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new ArrayDeque<>());
+        }
+        this.startNanos = System.nanoTime();
+        this.thread = new Thread(this::turn, threadName);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Runs a task on the wheel thread after a delay.
+     *
+     * @param task the task
+     * @param delay the delay
+     * @param unit the unit of the delay
+     */
+    public void schedule(Runnable task, long delay, TimeUnit unit) {
+        if (stopped) {
+            throw new IllegalStateException("The timer wheel has been stopped");
+        }
+        pending.incrementAndGet();
+        newTimeouts.add(new Timeout(task, System.nanoTime() + unit.toNanos(Math.max(0, delay))));
+    }
+
+    /**
+     * Gets the number of tasks waiting to run.
+     *
+     * @return the number of scheduled tasks
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * Stops the wheel thread.
+     *
+     * @return the tasks that had not run
+     */
+    public List<Runnable> stop() {
+        stopped = true;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Runnable> unrun = new ArrayList<>();
+        for (Queue<Timeout> bucket : buckets) {
+            bucket.forEach(timeout -> unrun.add(timeout.task));
+            bucket.clear();
+        }
+        newTimeouts.forEach(timeout -> unrun.add(timeout.task));
+        newTimeouts.clear();
+        pending.set(0);
+        return unrun;
+    }
+
+    private void turn() {
+        while (!stopped) {
+            long sleepNanos = startNanos + (tick + 1) * tickNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    // Stopped
+                    return;
+                }
+            }
+            transferNewTimeouts();
+            expire(buckets.get((int) (tick & mask)));
+            tick++;
+        }
+    }
+
+    private void transferNewTimeouts() {
+        Timeout timeout;
+        while ((timeout = newTimeouts.poll()) != null) {
+            // Tick n ends, and its bucket runs, at n + 1 ticks after the start, so a task never runs early
+            long dueTick = Math.max(tick, (timeout.deadlineNanos - startNanos + tickNanos - 1) / tickNanos - 1);
+            timeout.remainingRounds = (dueTick - tick) / buckets.size();
+            buckets.get((int) (dueTick & mask)).add(timeout);
+        }
+    }
+
+    private void expire(Queue<Timeout> bucket) {
+        Iterator<Timeout> timeouts = bucket.iterator();
+        while (timeouts.hasNext()) {
+            Timeout timeout = timeouts.next();
+            if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+                continue;
+            }
+            timeouts.remove();
+            pending.decrementAndGet();
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                LOGGER.error("Scheduled task failed.", e);
+            }
+        }
+    }
+
+    /**
+     * A task waiting in the wheel.
+     */
+    private static final class Timeout {
+
+        private final Runnable task;
+        private final long deadlineNanos;
+        private long remainingRounds;
+
+        Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package frontier;
+
+/**
+ * Computes 64 bit fingerprints of URLs.
+ *
+ * The fingerprint is an FNV-1a hash of the URL characters followed by the MurmurHash3 finalizer,
+ * so that all of the bits are well mixed for use as hash table and Bloom filter indexes.  With 64
+ * bits the chance of any two URLs colliding in a crawl of a hundred million pages is well under 0.1%.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public final class UrlFingerprint {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private UrlFingerprint() {
+    }
+
+    /**
+     * Computes the fingerprint of a URL.
+     *
+     * @param url the URL
+     * @return the 64 bit fingerprint
+     */
+    public static long of(CharSequence url) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            hash ^= c & 0xFF;
+            hash *= FNV_PRIME;
+            hash ^= c >>> 8;
+            hash *= FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * The MurmurHash3 64 bit finalizer.
+     */
+    static long mix(long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,209 @@
+package http;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+/**
+ * Fetches web pages with non-blocking I/O.
+ *
+ * The requests are run by the I/O reactor threads of the Apache async HTTP client, so the number of
+ * requests in flight is limited by its connection pool rather than by a thread per request.  Each response
+ * is received into memory and handed to the parse executor, which processes and parses the page and only
+ * needs to be sized to the number of CPUs.
+ *
+ * The connection of a response is closed as soon as its headers arrive if its content is not wanted, and
+ * as soon as its content goes past the maximum, so neither is downloaded.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class AsyncPageFetcher implements PageFetcher {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final byte[] NO_CONTENT = new byte[0];
+
+    private final CloseableHttpAsyncClient httpAsyncClient;
+    private final ExecutorService parseExecutor;
+
+    /**
+     * Constructor.
+     *
+     * @param httpAsyncClient the Apache async HTTP client, which is started if it is not already running
+     * @param parseExecutor processes the responses once they have been received, and is shut down with the fetcher
+     */
+    public AsyncPageFetcher(CloseableHttpAsyncClient httpAsyncClient, ExecutorService parseExecutor) {
+        this.httpAsyncClient = httpAsyncClient;
+        this.parseExecutor = parseExecutor;
+        if (!httpAsyncClient.isRunning()) {
+            httpAsyncClient.start();
+        }
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> fetch(HttpGet request, long maxBytes, Predicate<HttpResponse> download) {
+        BoundedResponseConsumer consumer = new BoundedResponseConsumer(maxBytes, download);
+        try {
+            Future<HttpResponse> exchange = httpAsyncClient.execute(HttpAsyncMethods.create(request), consumer,
+                    new FutureCallback<HttpResponse>() {
+                        @Override
+                        public void completed(HttpResponse response) {
+                            // Handed over when the result was built
+                        }
+
+                        @Override
+                        public void failed(Exception ex) {
+                            consumer.handOver(null, ex);
+                        }
+
+                        @Override
+                        public void cancelled() {
+                            consumer.handOver(null, new IOException("The request was cancelled"));
+                        }
+                    });
+            consumer.result.whenComplete((response, failure) -> {
+                if (consumer.result.isCancelled()) {
+                    exchange.cancel(true);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Such as a client that has been closed
+            consumer.handOver(null, e);
+        }
+        return consumer.result;
+    }
+
+    /**
+     * Closes the Apache async HTTP client and shuts down the parse executor.
+     *
+     * @throws IOException if the client could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            httpAsyncClient.close();
+        } finally {
+            parseExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Receives a response into memory, keeping at most one byte more than the maximum, and hands it to the parse
+     * executor once, whichever of the response, its content or a failure comes first.
+     */
+    private final class BoundedResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+
+        private final long maxBytes;
+        private final Predicate<HttpResponse> download;
+        private final CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        private final AtomicBoolean handedOver = new AtomicBoolean();
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private HttpResponse response;
+        private HttpEntity entity;
+        private ByteArrayOutputStream content;
+
+        BoundedResponseConsumer(long maxBytes, Predicate<HttpResponse> download) {
+            this.maxBytes = maxBytes;
+            this.download = download;
+        }
+
+        @Override
+        protected void onResponseReceived(HttpResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) {
+            this.entity = entity;
+            if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK && download.test(response)) {
+                long expectedBytes = entity.getContentLength() >= 0 ? entity.getContentLength() + 1 : BUFFER_SIZE;
+                int initialSize = (int) Math.min(Math.min(expectedBytes, maxBytes + 1), BUFFER_SIZE * 8);
+                content = new ByteArrayOutputStream(initialSize);
+            } else {
+                handOver(withContent(NO_CONTENT), null);
+            }
+        }
+
+        @Override
+        protected void onContentReceived(ContentDecoder decoder, IOControl ioControl) throws IOException {
+            if (content == null) {
+                // Already handed over without the rest of the content
+                ioControl.shutdown();
+                return;
+            }
+            int read;
+            while ((read = decoder.read(buffer)) > 0) {
+                content.write(buffer.array(), 0, (int) Math.min(read, maxBytes + 1 - content.size()));
+                buffer.clear();
+                if (content.size() > maxBytes) {
+                    handOver(withContent(content.toByteArray()), null);
+                    content = null;
+                    ioControl.shutdown();
+                    return;
+                }
+            }
+        }
+
+        @Override
+        protected HttpResponse buildResult(HttpContext context) {
+            // Not once the response is handed over, as the parse executor may be reading its entity
+            if (!handedOver.get()) {
+                handOver(withContent(content != null ? content.toByteArray() : NO_CONTENT), null);
+            }
+            return response;
+        }
+
+        @Override
+        protected void releaseResources() {
+            content = null;
+        }
+
+        /**
+         * Replaces the entity of the response with one that streams the received content, keeping its headers.
+         */
+        private HttpResponse withContent(byte[] bytes) {
+            if (entity != null) {
+                BasicHttpEntity received = new BasicHttpEntity();
+                received.setContent(new ByteArrayInputStream(bytes));
+                received.setContentLength(entity.getContentLength());
+                received.setContentType(entity.getContentType());
+                received.setContentEncoding(entity.getContentEncoding());
+                response.setEntity(received);
+            }
+            return response;
+        }
+
+        private void handOver(HttpResponse received, Exception failure) {
+            if (!handedOver.compareAndSet(false, true)) {
+                return;
+            }
+            Runnable completion = failure == null ? () -> result.complete(received)
+                    : () -> result.completeExceptionally(failure);
+            try {
+                parseExecutor.execute(completion);
+            } catch (RejectedExecutionException e) {
+                completion.run();
+            }
+        }
+    }
+}
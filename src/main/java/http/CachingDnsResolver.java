@@ -0,0 +1,258 @@
+package http;
+
+import metrics.Histogram;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Resolves host names for the connection manager, caching the addresses for the crawl's own time to live
+ * rather than relying on the JVM's DNS cache policy, which varies between deployments.
+ *
+ * A host that is not cached is looked up once however many connections want it at the same time: the
+ * first caller resolves it and the others wait for its result.  Hosts that could not be resolved are
+ * cached for a shorter time, so a missing host does not cost a lookup for every one of its links.  Hosts
+ * can be prefetched when they are first seen, such as when the frontier accepts their first URL, so the
+ * lookup is done before the first connection rather than while it waits.
+ *
+ * The lookups are made by another resolver, the system resolver by default, so a fake one can be used
+ * offline.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class CachingDnsResolver implements DnsResolver, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingDnsResolver.class);
+
+    public static final long DEFAULT_NEGATIVE_TTL_MILLIS = 10000;
+    private static final int PREFETCH_THREADS = 2;
+
+    private final DnsResolver resolver;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final ExecutorService prefetcher;
+    private final Map<String, CompletableFuture<Resolution>> cache = new ConcurrentHashMap<>();
+
+    private final Histogram resolveTime = new Histogram();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder sharedLookups = new LongAdder();
+    private final LongAdder prefetches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * Constructor for a cache of the system resolver.
+     *
+     * @param ttlMillis the time the addresses of a host are cached for
+     */
+    public CachingDnsResolver(long ttlMillis) {
+        this(SystemDefaultDnsResolver.INSTANCE, ttlMillis, DEFAULT_NEGATIVE_TTL_MILLIS,
+                Executors.newFixedThreadPool(PREFETCH_THREADS, CachingDnsResolver::newPrefetchThread));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param resolver looks up the hosts that are not cached
+     * @param ttlMillis the time the addresses of a host are cached for
+     * @param negativeTtlMillis the time a host that could not be resolved is remembered for
+     * @param prefetcher runs the prefetch lookups, and is shut down when the resolver is closed
+     */
+    public CachingDnsResolver(DnsResolver resolver, long ttlMillis, long negativeTtlMillis, ExecutorService prefetcher) {
+        this.resolver = resolver;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMillis);
+        this.prefetcher = prefetcher;
+    }
+
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        String key = host.toLowerCase();
+        CompletableFuture<Resolution> lookup = getLookup(key, true);
+        Resolution resolution;
+        try {
+            resolution = lookup.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UnknownHostException("Interrupted resolving " + host);
+        } catch (ExecutionException e) {
+            // The lookups complete with a resolution, even when the host is unknown
+            throw new IllegalStateException(e.getCause());
+        }
+        if (resolution.failure != null) {
+            // A new exception, as the cached one may be thrown to several threads at once
+            throw new UnknownHostException(resolution.failure.getMessage());
+        }
+        // The callers may change the array
+        return resolution.addresses.clone();
+    }
+
+    /**
+     * Looks up a host in the background, if it is not already cached, so its first connection does not wait
+     * for it.
+     *
+     * @param host the host
+     */
+    public void prefetch(String host) {
+        String key = host.toLowerCase();
+        CompletableFuture<Resolution> cached = cache.get(key);
+        if (cached != null && !isExpired(cached, System.nanoTime())) {
+            return;
+        }
+        try {
+            prefetcher.execute(() -> {
+                prefetches.increment();
+                getLookup(key, false);
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Not prefetching {}, the resolver has been closed.", host);
+        }
+    }
+
+    /**
+     * Gets the cached lookup of a host, or starts one if there is none or it has expired.  Of the threads that
+     * find the lookup missing, only the one whose future is cached resolves it.
+     */
+    private CompletableFuture<Resolution> getLookup(String host, boolean counted) {
+        CompletableFuture<Resolution> cached = cache.get(host);
+        long now = System.nanoTime();
+        if (cached != null && !isExpired(cached, now)) {
+            if (counted) {
+                if (cached.isDone()) {
+                    hits.increment();
+                } else {
+                    sharedLookups.increment();
+                }
+            }
+            return cached;
+        }
+        CompletableFuture<Resolution> lookup = new CompletableFuture<>();
+        CompletableFuture<Resolution> winner = cached == null
+                ? cache.putIfAbsent(host, lookup)
+                : (cache.replace(host, cached, lookup) ? null : cache.get(host));
+        if (winner != null) {
+            // Another thread started a lookup first
+            if (counted) {
+                sharedLookups.increment();
+            }
+            return winner;
+        }
+        if (counted) {
+            misses.increment();
+        }
+        lookup.complete(lookUp(host));
+        return lookup;
+    }
+
+    private Resolution lookUp(String host) {
+        long startNanos = System.nanoTime();
+        try {
+            InetAddress[] addresses = resolver.resolve(host);
+            return new Resolution(addresses, null, System.nanoTime() + ttlNanos);
+        } catch (UnknownHostException e) {
+            failures.increment();
+            return new Resolution(null, e, System.nanoTime() + negativeTtlNanos);
+        } catch (RuntimeException e) {
+            failures.increment();
+            UnknownHostException failure = new UnknownHostException("Unable to resolve " + host + ": " + e);
+            return new Resolution(null, failure, System.nanoTime() + negativeTtlNanos);
+        } finally {
+            resolveTime.recordSince(startNanos);
+        }
+    }
+
+    private static boolean isExpired(CompletableFuture<Resolution> lookup, long now) {
+        // A lookup still in progress is shared rather than started again
+        return lookup.isDone() && now - lookup.join().expiresNanos >= 0;
+    }
+
+    private static Thread newPrefetchThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "dns-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Gets the time taken by the lookups that were not cached.
+     *
+     * @return the resolve times in nanoseconds
+     */
+    public Histogram getResolveTime() {
+        return resolveTime;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the number of times a connection waited for a lookup that another had already started, rather than
+     * making its own.
+     *
+     * @return the number of shared lookups
+     */
+    public long getSharedLookups() {
+        return sharedLookups.sum();
+    }
+
+    public long getPrefetches() {
+        return prefetches.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public int getCachedHostCount() {
+        return cache.size();
+    }
+
+    /**
+     * Stops the prefetch lookups.  Hosts can still be resolved.
+     */
+    @Override
+    public void close() {
+        prefetcher.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CachingDnsResolver{hosts=%d, hits=%d, misses=%d, sharedLookups=%d, prefetches=%d, "
+                        + "failures=%d, resolveTime=%s}", getCachedHostCount(), getHits(), getMisses(),
+                getSharedLookups(), getPrefetches(), getFailures(), resolveTime.toMillisString());
+    }
+
+    /**
+     * The outcome of a lookup, and when it expires.
+     */
+    private static final class Resolution {
+
+        private final InetAddress[] addresses;
+        private final UnknownHostException failure;
+        private final long expiresNanos;
+
+        Resolution(InetAddress[] addresses, UnknownHostException failure, long expiresNanos) {
+            this.addresses = addresses;
+            this.failure = failure;
+            this.expiresNanos = expiresNanos;
+        }
+    }
+}
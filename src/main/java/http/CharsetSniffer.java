@@ -0,0 +1,150 @@
+package http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+
+/**
+ * Determines the charset of an HTML page from its bytes, without decoding the page.
+ *
+ * The charset is taken from, in order of precedence, a byte order mark, the charset of the
+ * Content-Type header, or a &lt;meta charset&gt; / &lt;meta http-equiv&gt; declaration within the
+ * first kilobyte of the page.  UTF-8 is used if none of these are present.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public final class CharsetSniffer {
+
+    static final int SNIFF_LENGTH = 1024;
+
+    private static final Charset DEFAULT_CHARSET = StandardCharsets.UTF_8;
+
+    private CharsetSniffer() {
+    }
+
+    /**
+     * Determines the charset of the page.
+     *
+     * If there is a byte order mark it is consumed, otherwise the stream is left at its original position.
+     *
+     * @param content the page content, which must support mark and reset
+     * @param declaredCharset the charset from the Content-Type header, or null
+     * @return the charset of the page
+     * @throws IOException if the content could not be read
+     */
+    public static Charset detect(InputStream content, Charset declaredCharset) throws IOException {
+        byte[] prefix = new byte[SNIFF_LENGTH];
+        content.mark(SNIFF_LENGTH);
+        int length = readFully(content, prefix);
+        content.reset();
+
+        Charset bomCharset = getByteOrderMarkCharset(prefix, length);
+        if (bomCharset != null) {
+            content.skip(bomCharset == StandardCharsets.UTF_8 ? 3 : 2);
+            return bomCharset;
+        }
+        if (declaredCharset != null) {
+            return declaredCharset;
+        }
+        Charset metaCharset = getMetaCharset(prefix, length);
+        return metaCharset != null ? metaCharset : DEFAULT_CHARSET;
+    }
+
+    private static Charset getByteOrderMarkCharset(byte[] prefix, int length) {
+        if (length >= 3 && (prefix[0] & 0xFF) == 0xEF && (prefix[1] & 0xFF) == 0xBB && (prefix[2] & 0xFF) == 0xBF) {
+            return StandardCharsets.UTF_8;
+        } else if (length >= 2 && (prefix[0] & 0xFF) == 0xFE && (prefix[1] & 0xFF) == 0xFF) {
+            return StandardCharsets.UTF_16BE;
+        } else if (length >= 2 && (prefix[0] & 0xFF) == 0xFF && (prefix[1] & 0xFF) == 0xFE) {
+            return StandardCharsets.UTF_16LE;
+        }
+        return null;
+    }
+
+    /**
+     * Finds "charset=..." inside a meta tag.  This covers both &lt;meta charset="x"&gt; and
+     * &lt;meta http-equiv="Content-Type" content="text/html; charset=x"&gt;.
+     */
+    static Charset getMetaCharset(byte[] prefix, int length) {
+        for (int meta = indexOf(prefix, length, "<meta", 0); meta >= 0; meta = indexOf(prefix, length, "<meta", meta + 1)) {
+            int end = indexOf(prefix, length, ">", meta);
+            int tagEnd = end < 0 ? length : end;
+            int charset = indexOf(prefix, tagEnd, "charset", meta);
+            if (charset < 0) {
+                continue;
+            }
+
+            int i = skipWhitespace(prefix, tagEnd, charset + "charset".length());
+            if (i >= tagEnd || prefix[i] != '=') {
+                continue;
+            }
+            i = skipWhitespace(prefix, tagEnd, i + 1);
+            while (i < tagEnd && (prefix[i] == '"' || prefix[i] == '\'')) {
+                i++;
+            }
+            int start = i;
+            while (i < tagEnd && isCharsetNameByte(prefix[i])) {
+                i++;
+            }
+            Charset found = forName(new String(prefix, start, i - start, StandardCharsets.US_ASCII));
+            if (found != null) {
+                // A page that declares UTF-16 in a meta tag can not really be UTF-16, as the tag was readable as ASCII
+                return found.name().startsWith("UTF-16") ? StandardCharsets.UTF_8 : found;
+            }
+        }
+        return null;
+    }
+
+    private static Charset forName(String name) {
+        try {
+            return name.isEmpty() ? null : Charset.forName(name);
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+            return null;
+        }
+    }
+
+    private static boolean isCharsetNameByte(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+                || b == '-' || b == '_' || b == '.' || b == ':';
+    }
+
+    private static int skipWhitespace(byte[] bytes, int length, int from) {
+        int i = from;
+        while (i < length && (bytes[i] == ' ' || bytes[i] == '\t' || bytes[i] == '\n' || bytes[i] == '\r' || bytes[i] == '\f')) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Case insensitive search for an ASCII lower case string.
+     */
+    private static int indexOf(byte[] bytes, int length, String lowerCase, int from) {
+        outer:
+        for (int i = from; i <= length - lowerCase.length(); i++) {
+            for (int j = 0; j < lowerCase.length(); j++) {
+                int b = bytes[i + j];
+                if (b >= 'A' && b <= 'Z') {
+                    b += 'a' - 'A';
+                }
+                if (b != lowerCase.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static int readFully(InputStream content, byte[] buffer) throws IOException {
+        int length = 0;
+        int read;
+        while (length < buffer.length && (read = content.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+        }
+        return length;
+    }
+}
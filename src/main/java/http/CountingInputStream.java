@@ -0,0 +1,96 @@
+package http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read from a stream, and optionally ends the stream after a maximum number of bytes.
+ *
+ * When the maximum is reached the stream reads one more byte to find out whether there was more to
+ * come, and if there was it reports the end of the stream and marks itself as truncated.
+ *
+ * @author Ravindra Rishudeo.
+ */
+class CountingInputStream extends FilterInputStream {
+
+    private final long limit;
+    private long count;
+    private boolean limitChecked;
+    private boolean truncated;
+
+    CountingInputStream(InputStream in) {
+        this(in, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param in the stream
+     * @param limit the maximum number of bytes to read
+     */
+    CountingInputStream(InputStream in, long limit) {
+        super(in);
+        this.limit = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (count >= limit) {
+            return endAtLimit();
+        }
+        int b = super.read();
+        if (b >= 0) {
+            count++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (count >= limit) {
+            return endAtLimit();
+        }
+        int read = super.read(buffer, offset, (int) Math.min(length, limit - count));
+        if (read > 0) {
+            count += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(Math.min(n, limit - count));
+        count += skipped;
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * Indicates whether the stream had more bytes than the limit.
+     *
+     * @return true if the stream was cut short
+     */
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    private int endAtLimit() throws IOException {
+        if (!limitChecked) {
+            limitChecked = true;
+            truncated = in.read() >= 0;
+        }
+        return -1;
+    }
+}
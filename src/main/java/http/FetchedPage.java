@@ -0,0 +1,131 @@
+package http;
+
+import exception.FailedToGetPageContentException;
+
+import java.nio.charset.Charset;
+
+/**
+ * A page that has been downloaded but not yet parsed, so that fetching and parsing can run on different threads.
+ *
+ * A page either has its content, or already has its assets: those of a page that was not modified since
+ * it was cached, or none for a page that could not be downloaded.  A page that could not be downloaded keeps
+ * the reason, so the fetch can be retried.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public final class FetchedPage {
+
+    private final String url;
+    private final byte[] content;
+    private final Charset charset;
+    private final PageValidators validators;
+    private final PageAssets assets;
+    private final FailedToGetPageContentException failure;
+
+    private FetchedPage(String url, byte[] content, Charset charset, PageValidators validators, PageAssets assets,
+                        FailedToGetPageContentException failure) {
+        this.url = url;
+        this.content = content;
+        this.charset = charset;
+        this.validators = validators;
+        this.assets = assets;
+        this.failure = failure;
+    }
+
+    /**
+     * Creates a downloaded page.
+     *
+     * @param url the URL of the page
+     * @param content the content, which may have been cut off at the maximum page size
+     * @param charset the charset of the content
+     * @return the page
+     */
+    public static FetchedPage downloaded(String url, byte[] content, Charset charset) {
+        return new FetchedPage(url, content, charset, null, null, null);
+    }
+
+    /**
+     * Creates a page whose assets are already known, without any content.
+     *
+     * @param url the URL of the page
+     * @param assets the assets of the page
+     * @return the page
+     */
+    public static FetchedPage withAssets(String url, PageAssets assets) {
+        return new FetchedPage(url, null, null, null, assets, null);
+    }
+
+    /**
+     * Creates a page that could not be downloaded.
+     *
+     * @param url the URL of the page
+     * @return the page, which has no assets
+     */
+    public static FetchedPage failed(String url) {
+        return failed(url, null);
+    }
+
+    /**
+     * Creates a page that could not be downloaded, with the reason.
+     *
+     * @param url the URL of the page
+     * @param failure why the page could not be downloaded, or null if it is not known
+     * @return the page, which has no assets
+     */
+    public static FetchedPage failed(String url, FailedToGetPageContentException failure) {
+        return new FetchedPage(url, null, null, null, new PageAssets(), failure);
+    }
+
+    /**
+     * Gets a copy of this downloaded page with the validators to cache its assets with once it has been parsed.
+     *
+     * @param validators the validators sent with the page
+     * @return the page
+     */
+    FetchedPage withValidators(PageValidators validators) {
+        return new FetchedPage(url, content, charset, validators, assets, failure);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public PageValidators getValidators() {
+        return validators;
+    }
+
+    /**
+     * Gets why the page could not be downloaded.
+     *
+     * @return the failure, or null if the page was downloaded or has not been modified
+     */
+    public FailedToGetPageContentException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Gets the assets of a page that does not need parsing.
+     *
+     * @return the assets, or null if the content must be parsed
+     */
+    public PageAssets getAssets() {
+        return assets;
+    }
+
+    /**
+     * Indicates whether the content of the page must be parsed to find its assets.
+     *
+     * @return true for a downloaded page
+     */
+    public boolean needsParsing() {
+        return assets == null;
+    }
+}
@@ -2,30 +2,163 @@ package http;
 
 
 import exception.FailedToGetPageContentException;
+import exception.RequestTimeoutException;
+import exception.RetryLaterException;
+import exception.SkippedPageException;
+import metrics.Histogram;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
 import org.apache.http.ParseException;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.util.EntityUtils;
 
+import java.io.BufferedInputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Retrieves the content of a web page.
  *
+ * A response that is not HTML, or whose Content-Length is over the maximum page size, is skipped as soon
+ * as its headers arrive, and its connection is closed rather than the body downloaded.  A response
+ * without a Content-Length, such as a chunked one, is cut off at the maximum page size and the part
+ * that was read is parsed.  A response without a Content-Type is assumed to be HTML.
+ *
+ * Each request can be given a total deadline, covering the response and reading the content, after
+ * which it is aborted.  This bounds the time a server that trickles its response can hold a worker,
+ * which the socket timeout alone does not.  Requests that time out are counted apart from other failures.
+ *
+ * A 429 Too Many Requests or 503 Service Unavailable response fails with a {@link RetryLaterException},
+ * carrying the time from its Retry-After header, so the page can be requested again later.
+ *
+ * Given a {@link PageFetcher}, a page can also be requested without blocking the calling thread.  The
+ * response is received by the fetcher and then processed in the same way as a blocking one, on the
+ * thread the fetcher completes it on.  Only blocking requests wait for a request permit; the connection
+ * pool of the fetcher limits the asynchronous ones.
+ *
+ * The requests are measured: the time waiting for a request permit, the time until the
+ * response headers arrive, the bytes of content read, the requests in flight, the number of
+ * responses with each status code and the skipped and truncated pages.
+ *
  * @author Ravindra Rishudeo.
  */
-public class HttpClient {
+public class HttpClient implements Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    public static final long DEFAULT_MAX_PAGE_BYTES = 10L * 1024 * 1024;
+
+    private static final Set<String> HTML_MIME_TYPES = new HashSet<>(Arrays.asList("text/html", "application/xhtml+xml"));
+
+    /** Aborts the requests that are past their deadline, shared as it is idle almost all of the time. */
+    private static final ScheduledThreadPoolExecutor DEADLINES = createDeadlineScheduler();
 
     private final CloseableHttpClient httpClient;
+    private final PageFetcher pageFetcher;
+    private final Semaphore requestPermits;
+    private final long maxPageBytes;
+    private final long requestTimeoutMillis;
+
+    private final Histogram permitWait = new Histogram();
+    private final Histogram fetchLatency = new Histogram();
+    private final LongAdder bytesDownloaded = new LongAdder();
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+    private final Map<Integer, LongAdder> statusCounts = new ConcurrentHashMap<>();
+    private final LongAdder failureCount = new LongAdder();
+    private final LongAdder skippedCount = new LongAdder();
+    private final LongAdder truncatedCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
 
     /**
      * Constructor.
      * @param httpClient the Apache HTTP Client with connection pooling
      */
     public HttpClient(CloseableHttpClient httpClient) {
+        this(httpClient, 0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * The concurrent request limit is independent of the number of threads making requests, which
+     * matters when every URL is processed on its own virtual thread.
+     *
+     * @param httpClient the Apache HTTP Client with connection pooling
+     * @param maxConcurrentRequests the maximum number of requests in flight, or 0 for no limit
+     */
+    public HttpClient(CloseableHttpClient httpClient, int maxConcurrentRequests) {
+        this(httpClient, maxConcurrentRequests, DEFAULT_MAX_PAGE_BYTES);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param httpClient the Apache HTTP Client with connection pooling
+     * @param maxConcurrentRequests the maximum number of requests in flight, or 0 for no limit
+     * @param maxPageBytes the most bytes of a page to download
+     */
+    public HttpClient(CloseableHttpClient httpClient, int maxConcurrentRequests,
+                      long maxPageBytes) {
+        this(httpClient, maxConcurrentRequests, maxPageBytes, 0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param httpClient the Apache HTTP Client with connection pooling
+     * @param maxConcurrentRequests the maximum number of requests in flight, or 0 for no limit
+     * @param maxPageBytes the most bytes of a page to download
+     * @param requestTimeoutMillis the total time a request may take, or 0 for no limit
+     */
+    public HttpClient(CloseableHttpClient httpClient, int maxConcurrentRequests,
+                      long maxPageBytes, long requestTimeoutMillis) {
+        this(httpClient, maxConcurrentRequests, maxPageBytes, requestTimeoutMillis, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param httpClient the Apache HTTP Client with connection pooling
+     * @param maxConcurrentRequests the maximum number of blocking requests in flight, or 0 for no limit
+     * @param maxPageBytes the most bytes of a page to download
+     * @param requestTimeoutMillis the total time a request may take, or 0 for no limit
+     * @param pageFetcher the fetcher for asynchronous requests, or null to make them with the blocking client
+     */
+    public HttpClient(CloseableHttpClient httpClient, int maxConcurrentRequests,
+                      long maxPageBytes, long requestTimeoutMillis, PageFetcher pageFetcher) {
         this.httpClient = httpClient;
+        this.pageFetcher = pageFetcher;
+        this.requestPermits = maxConcurrentRequests > 0 ? new Semaphore(maxConcurrentRequests, true) : null;
+        this.maxPageBytes = maxPageBytes;
+        this.requestTimeoutMillis = requestTimeoutMillis;
     }
 
 
@@ -36,27 +169,407 @@ public class HttpClient {
      * @return the content of the web page as a string.
      */
     public String getPageContent(String url) throws FailedToGetPageContentException {
-        HttpGet httpGet = new HttpGet(url);
+        return processPageContent(url, (content, charset) -> {
+            StringBuilder pageContent = new StringBuilder();
+            Reader reader = new InputStreamReader(content, charset);
+            char[] buffer = new char[BUFFER_SIZE];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                pageContent.append(buffer, 0, read);
+            }
+            return pageContent.toString();
+        });
+    }
 
+    /**
+     * Streams the contents of a web page to a processor, without holding the whole page in memory.
+     *
+     * The charset passed to the processor comes from the byte order mark, the Content-Type header or
+     * a meta tag.  See {@link CharsetSniffer}.
+     *
+     * @param url the URL of the web page
+     * @param processor processes the page content as it is downloaded
+     * @param <T> the result of processing the page
+     * @return the result of the processor
+     */
+    public <T> T processPageContent(String url, PageContentProcessor<T> processor) throws FailedToGetPageContentException {
+        return processPageContent(url, null, processor).getContent();
+    }
+
+    /**
+     * Streams the contents of a web page to a processor, unless it has not changed since it was cached.
+     *
+     * The validators of the cached page are sent as If-None-Match and If-Modified-Since headers.  If the
+     * server answers 304 Not Modified, the processor is not called.
+     *
+     * @param url the URL of the web page
+     * @param cachedValidators the validators of the cached page, or null if it is not cached
+     * @param processor processes the page content as it is downloaded
+     * @param <T> the result of processing the page
+     * @return the processed page and its new validators, or a not modified response
+     */
+    public <T> PageResponse<T> processPageContent(String url, PageValidators cachedValidators,
+                                                  PageContentProcessor<T> processor) throws FailedToGetPageContentException {
+        HttpGet httpGet = createRequest(url, cachedValidators);
+        acquireRequestPermit(url);
+        inFlightRequests.incrementAndGet();
+        long startNanos = System.nanoTime();
+        Deadline deadline = startDeadline(httpGet, null);
         try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
-            if (response.getStatusLine().getStatusCode() == 200) {
-                HttpEntity entity = response.getEntity();
+            fetchLatency.recordSince(startNanos);
+            return processResponse(url, httpGet, response, cachedValidators, processor);
+        } catch (IOException | ParseException e) {
+            throw requestFailed(url, e, deadline);
+        } finally {
+            requestFinished(deadline);
+            if (requestPermits != null) {
+                requestPermits.release();
+            }
+        }
+    }
+
+    /**
+     * Streams the contents of a web page to a processor without blocking the calling thread, unless it has
+     * not changed since it was cached.
+     *
+     * The response is handled in the same way as by
+     * {@link #processPageContent(String, PageValidators, PageContentProcessor)}, and the processor is called
+     * on the thread that the page fetcher completes the response on.  If no page fetcher has been configured,
+     * the request is made on the calling thread with the blocking client and an already completed future
+     * is returned.
+     *
+     * @param url the URL of the web page
+     * @param cachedValidators the validators of the cached page, or null if it is not cached
+     * @param processor processes the page content
+     * @param <T> the result of processing the page
+     * @return the processed page and its new validators, or a not modified response, completed exceptionally
+     * with a {@link FailedToGetPageContentException} if the page could not be retrieved
+     */
+    public <T> CompletableFuture<PageResponse<T>> processPageContentAsync(String url, PageValidators cachedValidators,
+                                                                        PageContentProcessor<T> processor) {
+        if (pageFetcher == null) {
+            CompletableFuture<PageResponse<T>> result = new CompletableFuture<>();
+            try {
+                result.complete(processPageContent(url, cachedValidators, processor));
+            } catch (FailedToGetPageContentException e) {
+                result.completeExceptionally(e);
+            }
+            return result;
+        }
+
+        HttpGet httpGet = createRequest(url, cachedValidators);
+        inFlightRequests.incrementAndGet();
+        long startNanos = System.nanoTime();
+        CompletableFuture<HttpResponse> fetched = pageFetcher.fetch(httpGet, maxPageBytes,
+                response -> getSkipReason(response.getEntity()) == null);
+        Deadline deadline = startDeadline(httpGet, fetched);
+        return fetched.handle((response, failure) -> {
+            try {
+                if (failure != null) {
+                    throw requestFailed(url, failure, deadline);
+                }
+                fetchLatency.recordSince(startNanos);
+                return processResponse(url, httpGet, response, cachedValidators, processor);
+            } catch (IOException | ParseException e) {
+                throw new CompletionException(requestFailed(url, e, deadline));
+            } catch (FailedToGetPageContentException e) {
+                throw new CompletionException(e);
+            } finally {
+                requestFinished(deadline);
+            }
+        });
+    }
+
+    private static HttpGet createRequest(String url, PageValidators cachedValidators) {
+        HttpGet httpGet = new HttpGet(url);
+        if (cachedValidators != null) {
+            if (cachedValidators.getEtag() != null) {
+                httpGet.setHeader(HttpHeaders.IF_NONE_MATCH, cachedValidators.getEtag());
+            }
+            if (cachedValidators.getLastModified() != null) {
+                httpGet.setHeader(HttpHeaders.IF_MODIFIED_SINCE, cachedValidators.getLastModified());
+            }
+        }
+        return httpGet;
+    }
+
+    private <T> PageResponse<T> processResponse(String url, HttpGet httpGet, HttpResponse response,
+                                                PageValidators cachedValidators, PageContentProcessor<T> processor)
+            throws FailedToGetPageContentException, IOException {
+        int statusCode = response.getStatusLine().getStatusCode();
+        statusCounts.computeIfAbsent(statusCode, code -> new LongAdder()).increment();
+        if (statusCode == 200) {
+            HttpEntity entity = response.getEntity();
+            String skipReason = getSkipReason(entity);
+            if (skipReason != null) {
+                skippedCount.increment();
+                // Closes the connection instead of reading the body to reuse it
+                httpGet.abort();
+                throw new SkippedPageException("Skipped " + url + ": " + skipReason);
+            }
+
+            // Closing the content stream consumes the rest of the entity, so the connection can be reused
+            CountingInputStream counted = new CountingInputStream(entity.getContent(), maxPageBytes);
+            try (InputStream content = new BufferedInputStream(counted, BUFFER_SIZE)) {
+                Charset charset = CharsetSniffer.detect(content, getDeclaredCharset(entity));
+                T processed = processor.process(content, charset);
+                if (counted.isTruncated()) {
+                    truncatedCount.increment();
+                    httpGet.abort();
+                }
+                return PageResponse.modified(processed, getValidators(response));
+            } finally {
+                bytesDownloaded.add(counted.getCount());
+            }
+
+        } else if (statusCode == 304 && cachedValidators != null) {
+            return PageResponse.notModified();
+
+        } else if (statusCode == 429 || statusCode == 503) {
+            throw new RetryLaterException(String.format("The server is too busy to send URL: %s.  Response code is: %d",
+                    url, statusCode), getRetryAfterMillis(response));
+
+        } else {
+            String errorMessage = String.format("Unable to retrieve page content for URL: %s.  Response code is: %d", url,
+                    statusCode);
+            throw new FailedToGetPageContentException(errorMessage);
+        }
+    }
+
+    /**
+     * Counts a request that failed without a response, or whose content could not be read.
+     *
+     * @return the exception to fail the request with
+     */
+    private FailedToGetPageContentException requestFailed(String url, Throwable failure, Deadline deadline) {
+        if (failure instanceof ParseException) {
+            failureCount.increment();
+            return new FailedToGetPageContentException("Unable to parse Content for URL: " + url, failure);
+        }
+        // Connect, lease and socket timeouts, and aborted requests, are all interrupted I/O
+        if (failure instanceof InterruptedIOException || failure instanceof CancellationException
+                || (deadline != null && deadline.expired)) {
+            timeoutCount.increment();
+            return new RequestTimeoutException("Timed out getting Page Content for URL: " + url, failure);
+        }
+        failureCount.increment();
+        return new FailedToGetPageContentException("Unable to get Page Content for URL: " + url, failure);
+    }
+
+    private void requestFinished(Deadline deadline) {
+        if (deadline != null) {
+            deadline.cancel();
+        }
+        inFlightRequests.decrementAndGet();
+    }
+
+    private Deadline startDeadline(HttpGet httpGet, Future<?> fetched) {
+        if (requestTimeoutMillis <= 0) {
+            return null;
+        }
+        Deadline deadline = new Deadline(httpGet, fetched);
+        deadline.future = DEADLINES.schedule(deadline, requestTimeoutMillis, TimeUnit.MILLISECONDS);
+        return deadline;
+    }
+
+    private static ScheduledThreadPoolExecutor createDeadlineScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "request-deadlines");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Almost every deadline is cancelled, so do not keep them queued until they would have run
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    /**
+     * Gets the reason not to download a page from its headers.
+     *
+     * @return the reason, or null to download the page
+     */
+    private String getSkipReason(HttpEntity entity) {
+        if (entity == null) {
+            return null;
+        }
+        ContentType contentType = ContentType.getLenient(entity);
+        if (contentType != null && !HTML_MIME_TYPES.contains(contentType.getMimeType().toLowerCase(Locale.ROOT))) {
+            return "the content type is " + contentType.getMimeType();
+        }
+        if (entity.getContentLength() > maxPageBytes) {
+            return "the content length of " + entity.getContentLength() + " bytes is over " + maxPageBytes;
+        }
+        return null;
+    }
+
+    /**
+     * Gets the time to wait from a Retry-After header, which is either a number of seconds or an HTTP date.
+     *
+     * @return the time in milliseconds, or -1 if there is no valid header
+     */
+    static long getRetryAfterMillis(HttpResponse response) {
+        Header retryAfter = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+        if (retryAfter == null) {
+            return -1;
+        }
+        String value = retryAfter.getValue().trim();
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(value);
+            return date != null ? Math.max(0, date.getTime() - System.currentTimeMillis()) : -1;
+        }
+    }
+
+    private static PageValidators getValidators(HttpResponse response) {
+        Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+        Header lastModified = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+        return new PageValidators(etag != null ? etag.getValue() : null,
+                lastModified != null ? lastModified.getValue() : null);
+    }
+
+    private void acquireRequestPermit(String url) throws FailedToGetPageContentException {
+        if (requestPermits == null) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        try {
+            requestPermits.acquire();
+            permitWait.recordSince(startNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FailedToGetPageContentException("Interrupted waiting to request URL: " + url, e);
+        }
+    }
+
+    static Charset getDeclaredCharset(HttpEntity entity) {
+        ContentType contentType = ContentType.getLenient(entity);
+        return contentType != null ? contentType.getCharset() : null;
+    }
 
-                return EntityUtils.toString(entity);
+    /**
+     * Gets the time that requests waited for a permit, when the concurrent requests are limited.
+     *
+     * @return the wait times in nanoseconds
+     */
+    public Histogram getPermitWait() {
+        return permitWait;
+    }
 
-            } else {
-                String errorMessage = String.format("Unable to retrieve page content for URL: %s.  Response code is: %d", url,
-                        response.getStatusLine().getStatusCode());
-                throw new FailedToGetPageContentException(errorMessage);
+    /**
+     * Gets the time from sending a request to receiving the response headers.  Reading the
+     * content is part of parsing the page, as the page is parsed as it is downloaded.
+     *
+     * @return the latencies in nanoseconds
+     */
+    public Histogram getFetchLatency() {
+        return fetchLatency;
+    }
+
+    /**
+     * Gets the number of bytes of page content read, before any decoding of the character set.
+     *
+     * @return the number of bytes
+     */
+    public long getBytesDownloaded() {
+        return bytesDownloaded.sum();
+    }
+
+    public int getInFlightRequests() {
+        return inFlightRequests.get();
+    }
+
+    /**
+     * Gets the number of responses with each status code.
+     *
+     * @return the counts, keyed by status code
+     */
+    public Map<Integer, Long> getStatusCounts() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        statusCounts.forEach((statusCode, count) -> counts.put(statusCode, count.sum()));
+        return counts;
+    }
+
+    /**
+     * Gets the number of pages that were not downloaded because they were not HTML or were too large.
+     *
+     * @return the number of skipped pages
+     */
+    public long getSkippedCount() {
+        return skippedCount.sum();
+    }
+
+    /**
+     * Gets the number of pages without a Content-Length that were cut off at the maximum page size.
+     *
+     * @return the number of truncated pages
+     */
+    public long getTruncatedCount() {
+        return truncatedCount.sum();
+    }
+
+    /**
+     * Gets the number of requests that timed out.
+     *
+     * @return the number of timeouts
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    /**
+     * Closes the Apache HTTP Client, which stops its idle connection evictor, and the page fetcher.
+     *
+     * @throws IOException if a client could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (httpClient != null) {
+                httpClient.close();
+            }
+        } finally {
+            if (pageFetcher != null) {
+                pageFetcher.close();
             }
-        } catch (IOException ioe) {
-            throw new FailedToGetPageContentException("Unable to get Page Content for URL: " + url, ioe);
-        } catch (ParseException pe) {
-            throw new FailedToGetPageContentException("Unable to parse Content for URL: " + url, pe);
         }
     }
 
+    /**
+     * Gets the number of requests that failed without a response, or whose content could not be read.
+     *
+     * @return the number of failures
+     */
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    /**
+     * Aborts a request, and cancels its asynchronous fetch, when it is due, unless it is cancelled first.
+     */
+    private static final class Deadline implements Runnable {
+
+        private final HttpGet httpGet;
+        private final Future<?> fetched;
+        private volatile boolean expired;
+        private ScheduledFuture<?> future;
 
+        Deadline(HttpGet httpGet, Future<?> fetched) {
+            this.httpGet = httpGet;
+            this.fetched = fetched;
+        }
 
+        @Override
+        public void run() {
+            expired = true;
+            httpGet.abort();
+            if (fetched != null) {
+                fetched.cancel(true);
+            }
+        }
 
+        void cancel() {
+            future.cancel(false);
+        }
+    }
 }
@@ -1,6 +1,6 @@
 package http;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.Collections;
 import java.util.List;
 
@@ -46,13 +46,22 @@ public class PageAssets {
     /**
      * Retireies all assets - both page links and static content.
      *
+     * The assets are not copied, the list is a read only view of the links followed by the static content.
+     *
      * @return all assets
      */
     public List<String> getAllAssets() {
-        List<String> allAssets = new ArrayList<>();
-        allAssets.addAll(linksToOtherPages);
-        allAssets.addAll(staticContent);
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                int links = linksToOtherPages.size();
+                return index < links ? linksToOtherPages.get(index) : staticContent.get(index - links);
+            }
 
-        return allAssets;
+            @Override
+            public int size() {
+                return linksToOtherPages.size() + staticContent.size();
+            }
+        };
     }
 }
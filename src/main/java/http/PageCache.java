@@ -0,0 +1,294 @@
+package http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Persistent cache of the validators and assets of crawled pages, keyed by canonical URL.
+ *
+ * The pages are appended to a log file, and only the validators and the file position of each page
+ * are kept in memory.  The assets are read back from the file when the server says the page has not
+ * been modified.  Each record is an int length followed by the URL, ETag, Last-Modified, links and
+ * images, where each string is an int length (-1 for null) and UTF-8 bytes.  The latest record for a
+ * URL wins, and the log is compacted when it is opened if most of it has been superseded.  A record
+ * cut short by a crash is dropped.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class PageCache implements Closeable {
+
+    private final Path file;
+    private final FileChannel channel;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private long end;
+
+    private final LongAdder notModifiedCount = new LongAdder();
+    private final LongAdder modifiedCount = new LongAdder();
+
+    private PageCache(Path file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+    }
+
+    /**
+     * Opens the cache file, creating it if it does not exist.
+     *
+     * @param file the cache file
+     * @return the cache
+     * @throws IOException if the file could not be read
+     */
+    public static PageCache open(Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        PageCache pageCache = new PageCache(file, FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        long liveBytes = pageCache.load();
+        if (pageCache.end > 2 * liveBytes + 4096) {
+            pageCache.close();
+            compact(file);
+            pageCache = new PageCache(file, FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE));
+            pageCache.load();
+        }
+        return pageCache;
+    }
+
+    /**
+     * Gets the validators of a cached page.
+     *
+     * @param url the canonical URL of the page
+     * @return the validators, or null if the page is not cached
+     */
+    public PageValidators getValidators(String url) {
+        Entry entry = entries.get(url);
+        return entry != null ? entry.validators : null;
+    }
+
+    /**
+     * Reads the assets of a cached page and counts it as not modified.
+     *
+     * @param url the canonical URL of the page
+     * @return the assets, or null if the page is not cached
+     * @throws IOException if the assets could not be read
+     */
+    public PageAssets getAssets(String url) throws IOException {
+        Entry entry = entries.get(url);
+        if (entry == null) {
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.allocate(entry.length);
+        while (record.hasRemaining()) {
+            if (channel.read(record, entry.position + record.position()) < 0) {
+                throw new IOException("The page cache is truncated: " + file);
+            }
+        }
+        record.flip();
+
+        readString(record);
+        readString(record);
+        readString(record);
+        List<String> links = readStrings(record);
+        List<String> images = readStrings(record);
+        notModifiedCount.increment();
+        return new PageAssets(links, images);
+    }
+
+    /**
+     * Caches a page that has been downloaded.  Pages without validators are not cached, as they cannot be
+     * requested conditionally, but are still counted.
+     *
+     * @param url the canonical URL of the page
+     * @param validators the validators sent with the page
+     * @param assets the assets of the page
+     * @throws IOException if the page could not be written
+     */
+    public void put(String url, PageValidators validators, PageAssets assets) throws IOException {
+        modifiedCount.increment();
+        if (validators == null || validators.isEmpty()) {
+            return;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        writeString(out, url);
+        writeString(out, validators.getEtag());
+        writeString(out, validators.getLastModified());
+        writeStrings(out, assets.getLinksToOtherPages());
+        writeStrings(out, assets.getStaticContent());
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        record.putInt(0, record.capacity() - 4);
+
+        synchronized (this) {
+            long position = end;
+            while (record.hasRemaining()) {
+                channel.write(record, position + record.position());
+            }
+            end += record.capacity();
+            entries.put(url, new Entry(validators, position + 4, record.capacity() - 4));
+        }
+    }
+
+    /**
+     * Gets the number of pages that were not downloaded because they had not changed.
+     *
+     * @return the number of not modified pages
+     */
+    public long getNotModifiedCount() {
+        return notModifiedCount.sum();
+    }
+
+    /**
+     * Gets the number of pages that were downloaded.
+     *
+     * @return the number of modified pages
+     */
+    public long getModifiedCount() {
+        return modifiedCount.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.force(false);
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PageCache{pages=%d, notModified=%d, modified=%d}",
+                size(), getNotModifiedCount(), getModifiedCount());
+    }
+
+    /**
+     * Reads the index of the log into memory.
+     *
+     * @return the number of bytes in the latest record of each URL
+     */
+    private long load() throws IOException {
+        long liveBytes = 0;
+        long position = 0;
+        long size = channel.size();
+        ByteBuffer length = ByteBuffer.allocate(4);
+        while (position + 4 <= size) {
+            length.clear();
+            readFully(length, position);
+            int recordLength = length.getInt(0);
+            if (recordLength <= 0 || position + 4 + recordLength > size) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.allocate(recordLength);
+            readFully(record, position + 4);
+            record.flip();
+
+            String url = readString(record);
+            PageValidators validators = new PageValidators(readString(record), readString(record));
+            Entry previous = entries.put(url, new Entry(validators, position + 4, recordLength));
+            liveBytes += 4 + recordLength - (previous != null ? 4 + previous.length : 0);
+            position += 4 + recordLength;
+        }
+        if (position < size) {
+            // Drop the record that was being written when the process stopped
+            channel.truncate(position);
+        }
+        end = position;
+        return liveBytes;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of the page cache: " + file);
+            }
+        }
+    }
+
+    /**
+     * Rewrites the log with only the latest record of each URL.
+     */
+    private static void compact(Path file) throws IOException {
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        Files.deleteIfExists(compacted);
+
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            PageCache pageCache = new PageCache(file, source);
+            pageCache.load();
+            try (FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                for (Entry entry : pageCache.entries.values()) {
+                    source.transferTo(entry.position - 4, entry.length + 4, target);
+                }
+                target.force(false);
+            }
+        }
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static String readString(ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(record.array(), record.arrayOffset() + record.position(), length, StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        return value;
+    }
+
+    private static List<String> readStrings(ByteBuffer record) {
+        int count = record.getInt();
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(readString(record));
+        }
+        return values;
+    }
+
+    /**
+     * Where the latest record of a URL is in the log.
+     */
+    private static final class Entry {
+
+        private final PageValidators validators;
+        private final long position;
+        private final int length;
+
+        Entry(PageValidators validators, long position, int length) {
+            this.validators = validators;
+            this.position = position;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Processes the content of a web page while it is being downloaded.
+ *
+ * @param <T> the result of processing the page
+ * @author Ravindra Rishudeo.
+ */
+@FunctionalInterface
+public interface PageContentProcessor<T> {
+
+    /**
+     * Processes the page content.
+     *
+     * The stream is only valid for the duration of the call and is closed afterwards.
+     *
+     * @param content the raw bytes of the page, positioned after any byte order mark
+     * @param charset the charset of the page content
+     * @return the result of processing the page
+     * @throws IOException if the content could not be read
+     */
+    T process(InputStream content, Charset charset) throws IOException;
+}
@@ -0,0 +1,35 @@
+package http;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+
+/**
+ * Sends requests for web pages without blocking the calling thread.
+ *
+ * The fetcher only moves the bytes: what a response means, such as whether the page was skipped, has not
+ * been modified or should be retried, is decided by the {@link HttpClient} that it sends the requests for,
+ * in the same way as for a blocking request.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public interface PageFetcher extends Closeable {
+
+    /**
+     * Sends a request and receives the response into memory.
+     *
+     * The content of a 200 OK response is only received if the download test passes on its headers, and at
+     * most one byte more than the maximum is kept, so the caller can tell that the page was cut short.  The
+     * entity of the response returned keeps the Content-Type and Content-Length of the original.
+     *
+     * @param request the request, which is aborted if the returned future is cancelled
+     * @param maxBytes the most bytes of the content to download
+     * @param download decides from the headers of a 200 OK response whether to receive its content
+     * @return the response, completed on the thread that is to process it, or completed exceptionally with
+     * the reason the request failed
+     */
+    CompletableFuture<HttpResponse> fetch(HttpGet request, long maxBytes, Predicate<HttpResponse> download);
+}
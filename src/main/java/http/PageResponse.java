@@ -0,0 +1,64 @@
+package http;
+
+/**
+ * The result of a conditional request for a page.
+ *
+ * @param <T> the result of processing the page content
+ * @author Ravindra Rishudeo.
+ */
+public class PageResponse<T> {
+
+    private final T content;
+    private final PageValidators validators;
+    private final boolean notModified;
+
+    private PageResponse(T content, PageValidators validators, boolean notModified) {
+        this.content = content;
+        this.validators = validators;
+        this.notModified = notModified;
+    }
+
+    /**
+     * Creates the response for a page that was downloaded.
+     *
+     * @param content the processed page content
+     * @param validators the validators sent with the page
+     * @param <T> the result of processing the page content
+     * @return the response
+     */
+    public static <T> PageResponse<T> modified(T content, PageValidators validators) {
+        return new PageResponse<>(content, validators, false);
+    }
+
+    /**
+     * Creates the response for a page that has not changed since it was cached.
+     *
+     * @param <T> the result of processing the page content
+     * @return the response
+     */
+    public static <T> PageResponse<T> notModified() {
+        return new PageResponse<>(null, null, true);
+    }
+
+    /**
+     * Gets the processed page content.
+     *
+     * @return the content, or null if the page has not been modified
+     */
+    public T getContent() {
+        return content;
+    }
+
+    /**
+     * Gets the validators sent with the page.
+     *
+     * @return the validators, or null if the page has not been modified
+     */
+    public PageValidators getValidators() {
+        return validators;
+    }
+
+    public boolean isNotModified() {
+        return notModified;
+    }
+}
@@ -0,0 +1,61 @@
+package http;
+
+import java.util.Objects;
+
+/**
+ * The validators of a cached page, which are sent back to the server to ask whether the page has changed.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class PageValidators {
+
+    private final String etag;
+    private final String lastModified;
+
+    /**
+     * Constructor.
+     *
+     * @param etag the ETag header of the page, or null
+     * @param lastModified the Last-Modified header of the page, or null
+     */
+    public PageValidators(String etag, String lastModified) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Indicates whether there is anything to validate the page with.
+     *
+     * @return true if neither header was sent
+     */
+    public boolean isEmpty() {
+        return etag == null && lastModified == null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PageValidators that = (PageValidators) o;
+        return Objects.equals(etag, that.etag) &&
+                Objects.equals(lastModified, that.lastModified);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(etag, lastModified);
+    }
+
+    @Override
+    public String toString() {
+        return "PageValidators{etag=" + etag + ", lastModified=" + lastModified + "}";
+    }
+}
@@ -0,0 +1,410 @@
+package http;
+
+import org.jsoup.parser.Parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Extracts the links and images from HTML in a single pass, without building a document tree.
+ *
+ * Only the tag structure is tokenized.  Text, comments and the contents of raw text elements
+ * (script, style etc.) are skipped, and only the a[href], img[src] and base[href] attribute
+ * values are kept.  URLs are resolved against the page URL, or the first &lt;base href&gt;,
+ * in the same way as Jsoup's "abs:" attributes so that the output matches the Jsoup parser.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class StreamingLinkExtractor {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int EOF = -1;
+    private static final int NONE = -2;
+
+    private static final String[] RAW_TEXT_TAGS =
+            {"script", "style", "title", "textarea", "xmp", "iframe", "noembed", "noframes"};
+
+    private static final String[] IMAGE_EXTENSIONS = {"png", "jpg", "jpeg", "gif"};
+
+    /**
+     * Extracts the assets from the HTML.
+     *
+     * @param html the HTML of the page
+     * @param baseUrl the URL of the page, used to resolve relative links
+     * @return the page assets
+     * @throws IOException if the HTML could not be read
+     */
+    public PageAssets extract(Reader html, String baseUrl) throws IOException {
+        return new Tokenizer(html, baseUrl).extract();
+    }
+
+    /**
+     * Resolves a URL against a base URL in the same way as Jsoup's {@code absUrl}.
+     *
+     * @param base the base URL, or null if the base URL is not valid
+     * @param relativeUrl the URL to resolve
+     * @return the absolute URL, or an empty string if it cannot be resolved
+     */
+    static String resolve(URL base, String relativeUrl) {
+        try {
+            if (base == null) {
+                return new URL(relativeUrl).toExternalForm();
+            }
+            // Same workaround as Jsoup: java resolves '//path/file + ?foo' to '//path/?foo'
+            String url = relativeUrl.startsWith("?") ? base.getPath() + relativeUrl : relativeUrl;
+            return new URL(base, url).toExternalForm();
+
+        } catch (MalformedURLException e) {
+            return "";
+        }
+    }
+
+    /**
+     * Equivalent of the {@code (?i)\.(png|jpe?g|gif)} find in the image selector, without the regex.
+     */
+    static boolean hasImageExtension(String src) {
+        for (int dot = src.indexOf('.'); dot >= 0; dot = src.indexOf('.', dot + 1)) {
+            for (String extension : IMAGE_EXTENSIONS) {
+                if (src.regionMatches(true, dot + 1, extension, 0, extension.length())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static URL toUrl(String url) {
+        try {
+            return new URL(url);
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+
+    private static boolean isLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static char toLowerCase(int c) {
+        return (char) (c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c);
+    }
+
+    /**
+     * Single use tokenizer state for one page.
+     */
+    private static final class Tokenizer {
+
+        private final Reader reader;
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private int position;
+        private int limit;
+        private int pushedBack = NONE;
+
+        private final StringBuilder tagName = new StringBuilder();
+        private final StringBuilder attributeName = new StringBuilder();
+        private final StringBuilder attributeValue = new StringBuilder();
+        private String targetValue;
+
+        private final String pageUrl;
+        private URL base;
+        private boolean baseSetFromDocument;
+
+        private final List<String> links = new ArrayList<>();
+        private final List<String> images = new ArrayList<>();
+
+        Tokenizer(Reader reader, String pageUrl) {
+            this.reader = reader;
+            this.pageUrl = pageUrl;
+            this.base = toUrl(pageUrl);
+        }
+
+        PageAssets extract() throws IOException {
+            int c;
+            while ((c = read()) != EOF) {
+                if (c == '<' && !markup()) {
+                    break;
+                }
+            }
+            return new PageAssets(links, images);
+        }
+
+        /**
+         * Handles the markup following a '&lt;'.
+         *
+         * @return false if the rest of the document should be skipped
+         */
+        private boolean markup() throws IOException {
+            int c = read();
+            if (isLetter(c)) {
+                unread(c);
+                return startTag();
+            } else if (c == '/') {
+                endTag();
+            } else if (c == '!') {
+                declarationOrComment();
+            } else if (c == '?') {
+                skipPast('>');
+            } else {
+                unread(c);
+            }
+            return true;
+        }
+
+        private boolean startTag() throws IOException {
+            readTagName();
+            if (!readAttributes(targetAttribute())) {
+                return false;
+            }
+
+            emit(targetValue);
+
+            if (contentEquals(tagName, "plaintext")) {
+                return false;
+            }
+            for (String rawTextTag : RAW_TEXT_TAGS) {
+                if (contentEquals(tagName, rawTextTag)) {
+                    skipRawText(rawTextTag);
+                    break;
+                }
+            }
+            return true;
+        }
+
+        private void emit(String value) {
+            if (value == null) {
+                return;
+            }
+            if (contentEquals(tagName, "a")) {
+                links.add(resolve(base, value));
+            } else if (contentEquals(tagName, "img")) {
+                if (hasImageExtension(value)) {
+                    images.add(resolve(base, value));
+                }
+            } else if (contentEquals(tagName, "base") && !baseSetFromDocument) {
+                // Only the first <base href> is used, as with Jsoup
+                String href = resolve(toUrl(pageUrl), value);
+                if (!href.isEmpty()) {
+                    base = toUrl(href);
+                    baseSetFromDocument = true;
+                }
+            }
+        }
+
+        private String targetAttribute() {
+            if (contentEquals(tagName, "a") || contentEquals(tagName, "base")) {
+                return "href";
+            } else if (contentEquals(tagName, "img")) {
+                return "src";
+            }
+            return null;
+        }
+
+        private void endTag() throws IOException {
+            int c = read();
+            if (isLetter(c)) {
+                unread(c);
+                readTagName();
+                readAttributes(null);
+            } else if (c != '>' && c != EOF) {
+                skipPast('>');
+            }
+        }
+
+        private void declarationOrComment() throws IOException {
+            int c = read();
+            if (c == '-') {
+                int next = read();
+                if (next == '-') {
+                    skipComment();
+                    return;
+                }
+                unread(next);
+            }
+            if (c != '>') {
+                skipPast('>');
+            }
+        }
+
+        private void skipComment() throws IOException {
+            // Starting at two dashes also closes the empty comments "<!-->" and "<!--->"
+            int dashes = 2;
+            int c = read();
+            while (c != EOF) {
+                if (c == '-') {
+                    dashes++;
+                } else if (c == '>' && dashes >= 2) {
+                    return;
+                } else {
+                    dashes = 0;
+                }
+                c = read();
+            }
+        }
+
+        private void skipRawText(String name) throws IOException {
+            int c = read();
+            while (c != EOF) {
+                if (c != '<') {
+                    c = read();
+                    continue;
+                }
+                c = read();
+                if (c != '/') {
+                    continue;
+                }
+                int matched = 0;
+                while (matched < name.length() && toLowerCase(c = read()) == name.charAt(matched)) {
+                    matched++;
+                }
+                if (matched == name.length()) {
+                    c = read();
+                    if (isWhitespace(c) || c == '/' || c == '>') {
+                        unread(c);
+                        readAttributes(null);
+                        return;
+                    }
+                }
+            }
+        }
+
+        private void readTagName() throws IOException {
+            tagName.setLength(0);
+            int c;
+            while ((c = read()) != EOF && !isWhitespace(c) && c != '/' && c != '>') {
+                tagName.append(toLowerCase(c));
+            }
+            unread(c);
+        }
+
+        /**
+         * Reads the attributes of a tag up to and including the closing '&gt;'.
+         *
+         * The value of the target attribute is left in targetValue, or null if it is not present.
+         *
+         * @param target the name of the attribute to capture, or null
+         * @return false if the document ended before the tag was closed, in which case the tag is dropped
+         */
+        private boolean readAttributes(String target) throws IOException {
+            targetValue = null;
+            int c = read();
+            while (true) {
+                while (isWhitespace(c) || c == '/') {
+                    c = read();
+                }
+                if (c == '>') {
+                    return true;
+                } else if (c == EOF) {
+                    return false;
+                }
+
+                attributeName.setLength(0);
+                do {
+                    attributeName.append(toLowerCase(c));
+                    c = read();
+                } while (c != EOF && !isWhitespace(c) && c != '/' && c != '>' && c != '=');
+
+                while (isWhitespace(c)) {
+                    c = read();
+                }
+
+                boolean isTarget = target != null && contentEquals(attributeName, target);
+                if (c != '=') {
+                    if (isTarget) {
+                        targetValue = "";
+                    }
+                    continue;
+                }
+
+                c = read();
+                while (isWhitespace(c)) {
+                    c = read();
+                }
+                if (c == EOF) {
+                    return false;
+                } else if (c == '>') {
+                    if (isTarget) {
+                        targetValue = "";
+                    }
+                    return true;
+                }
+
+                attributeValue.setLength(0);
+                if (c == '"' || c == '\'') {
+                    int quote = c;
+                    while ((c = read()) != quote) {
+                        if (c == EOF) {
+                            return false;
+                        }
+                        if (isTarget) {
+                            attributeValue.append((char) c);
+                        }
+                    }
+                    c = read();
+                } else {
+                    do {
+                        if (isTarget) {
+                            attributeValue.append((char) c);
+                        }
+                        c = read();
+                    } while (c != EOF && !isWhitespace(c) && c != '>');
+                }
+                if (isTarget) {
+                    targetValue = decode(attributeValue);
+                }
+            }
+        }
+
+        private String decode(StringBuilder value) {
+            String raw = value.toString();
+            return raw.indexOf('&') >= 0 ? Parser.unescapeEntities(raw, true) : raw;
+        }
+
+        private void skipPast(char end) throws IOException {
+            int c;
+            while ((c = read()) != EOF && c != end) {
+                // skip
+            }
+        }
+
+        private int read() throws IOException {
+            if (pushedBack != NONE) {
+                int c = pushedBack;
+                pushedBack = NONE;
+                return c;
+            }
+            if (position == limit) {
+                limit = reader.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return EOF;
+                }
+            }
+            return buffer[position++];
+        }
+
+        private void unread(int c) {
+            pushedBack = c;
+        }
+
+        private static boolean contentEquals(StringBuilder sb, String s) {
+            if (sb.length() != s.length()) {
+                return false;
+            }
+            for (int i = 0; i < s.length(); i++) {
+                if (sb.charAt(i) != s.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -1,32 +1,88 @@
 package http;
 
 import exception.FailedToGetPageContentException;
+import exception.SkippedPageException;
+import metrics.Histogram;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 /**
  * Retrieves the content of a web page and parses the content.
  *
+ * A page is normally parsed as it is downloaded.  It can also be downloaded into memory with
+ * {@link #fetchPage(String)} and parsed later with {@link #parsePage(FetchedPage)}, so that the
+ * downloads and the parsing can be given their own threads.  Or it can be fetched without blocking
+ * with {@link #fetchAssetsAsync(String)}, and parsed on the thread that its response is completed on.
+ *
  * @author Ravindra Rishudeo.
  */
-public class WebPageParser {
+public class WebPageParser implements Closeable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(WebPageParser.class);
+    private static final int DOWNLOAD_BUFFER_BYTES = 8192;
+
+    /**
+     * How the HTML of a page is parsed.
+     */
+    public enum Mode {
+        /** Single pass tokenizer that only extracts the links and images. */
+        STREAMING,
+        /** Full Jsoup document parse, kept as a fallback. */
+        JSOUP
+    }
 
     private final HttpClient httpClient;
+    private final Mode mode;
+    private final StreamingLinkExtractor streamingLinkExtractor;
+    private final PageCache pageCache;
+
+    private final Histogram parseTime = new Histogram();
+    private final LongAdder linksExtracted = new LongAdder();
+    private final LongAdder imagesExtracted = new LongAdder();
 
     /**
      * Constructor.
      * @param httpClient to retrieve the page contents
      */
     public WebPageParser(HttpClient httpClient) {
+        this(httpClient, Mode.STREAMING);
+    }
+
+    /**
+     * Constructor.
+     * @param httpClient to retrieve the page contents
+     * @param mode how the page HTML is parsed
+     */
+    public WebPageParser(HttpClient httpClient, Mode mode) {
+        this(httpClient, mode, null);
+    }
+
+    /**
+     * Constructor.
+     * @param httpClient to retrieve the page contents
+     * @param mode how the page HTML is parsed
+     * @param pageCache the pages from previous crawls, which are requested conditionally, or null for no cache
+     */
+    public WebPageParser(HttpClient httpClient, Mode mode, PageCache pageCache) {
         this.httpClient = httpClient;
+        this.mode = mode;
+        this.streamingLinkExtractor = new StreamingLinkExtractor();
+        this.pageCache = pageCache;
     }
 
     /**
@@ -37,18 +93,210 @@ public class WebPageParser {
      */
     public PageAssets getAssetsFromPage(String url) {
         try {
-            String pageContent = httpClient.getPageContent(url);
-            return getAssetsFromHtml(pageContent, url);
+            return fetchAssets(url);
+        } catch (FailedToGetPageContentException e) {
+            logFailure(e);
+            return new PageAssets();
+        }
+    }
+
+    /**
+     * Retrieve the links from a web page, failing if the page could not be retrieved so the caller can decide
+     * whether to try again.
+     *
+     * @param url the URL of the web page
+     * @return the page assets
+     * @throws FailedToGetPageContentException if the page content could not be retrieved
+     */
+    public PageAssets fetchAssets(String url) throws FailedToGetPageContentException {
+        if (pageCache != null) {
+            return getAssetsFromCachedPage(url);
+        }
+        return httpClient.processPageContent(url, (content, charset) -> getAssetsFromHtml(content, charset, url));
+    }
+
+    /**
+     * Retrieve the links from a web page without blocking the calling thread.  The page is requested
+     * conditionally if there is a page cache, in the same way as by {@link #fetchAssets(String)}.
+     *
+     * @param url the URL of the web page
+     * @return the page assets, failing with a {@link FailedToGetPageContentException}, possibly wrapped in a
+     * {@link java.util.concurrent.CompletionException}, if the page content could not be retrieved
+     */
+    public CompletableFuture<PageAssets> fetchAssetsAsync(String url) {
+        PageContentProcessor<PageAssets> parser = (content, charset) -> getAssetsFromHtml(content, charset, url);
+        if (pageCache == null) {
+            return httpClient.processPageContentAsync(url, null, parser).thenApply(PageResponse::getContent);
+        }
+        return httpClient.processPageContentAsync(url, pageCache.getValidators(url), parser)
+                .thenCompose(response -> {
+                    PageAssets cachedAssets = response.isNotModified() ? getCachedAssets(url) : null;
+                    if (cachedAssets != null) {
+                        return CompletableFuture.completedFuture(cachedAssets);
+                    }
+                    CompletableFuture<PageResponse<PageAssets>> modified = response.isNotModified()
+                            ? httpClient.processPageContentAsync(url, null, parser)
+                            : CompletableFuture.completedFuture(response);
+                    return modified.thenApply(page -> cache(url, page));
+                });
+    }
+
+    /**
+     * Downloads a web page without parsing it, so that it can be parsed by another thread with
+     * {@link #parsePage(FetchedPage)}.  A page that has not been modified since it was cached is not downloaded.
+     *
+     * @param url the URL of the web page
+     * @return the downloaded page, or a page with no assets and the failure, which is left to the caller to
+     * log, if it could not be downloaded
+     */
+    public FetchedPage fetchPage(String url) {
+        try {
+            if (pageCache != null) {
+                return fetchCachedPage(url);
+            }
+            return httpClient.processPageContent(url, (content, charset) -> download(url, content, charset));
 
         } catch (FailedToGetPageContentException e) {
-            LOGGER.error("Unable to get page content.", e);
+            return FetchedPage.failed(url, e);
+        }
+    }
+
+    /**
+     * Finds the assets of a page downloaded by {@link #fetchPage(String)}, and caches them if there is a page cache.
+     *
+     * @param page the downloaded page
+     * @return the page assets, which are empty if the page could not be parsed
+     */
+    public PageAssets parsePage(FetchedPage page) {
+        if (!page.needsParsing()) {
+            return page.getAssets();
+        }
+        PageAssets assets;
+        try {
+            assets = getAssetsFromHtml(new ByteArrayInputStream(page.getContent()), page.getCharset(), page.getUrl());
+        } catch (IOException e) {
+            LOGGER.error("Unable to parse page content of {}.", page.getUrl(), e);
             return new PageAssets();
         }
+        if (pageCache != null && page.getValidators() != null) {
+            try {
+                pageCache.put(page.getUrl(), page.getValidators(), assets);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to cache page {}.", page.getUrl(), e);
+            }
+        }
+        return assets;
+    }
+
+    private FetchedPage fetchCachedPage(String url) throws FailedToGetPageContentException {
+        PageResponse<FetchedPage> response = httpClient.processPageContent(url, pageCache.getValidators(url),
+                (content, charset) -> download(url, content, charset));
+
+        if (response.isNotModified()) {
+            try {
+                PageAssets assets = pageCache.getAssets(url);
+                if (assets != null) {
+                    return FetchedPage.withAssets(url, assets);
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Unable to read cached page {}, downloading it again.", url, e);
+            }
+            response = httpClient.processPageContent(url, null, (content, charset) -> download(url, content, charset));
+        }
+        return response.getContent().withValidators(response.getValidators());
     }
 
-    private PageAssets getAssetsFromHtml(String pageContent, String baseUrl) {
-        Document document = Jsoup.parse(pageContent);
-        document.setBaseUri(baseUrl);
+    private static FetchedPage download(String url, InputStream content, Charset charset) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(DOWNLOAD_BUFFER_BYTES);
+        byte[] buffer = new byte[DOWNLOAD_BUFFER_BYTES];
+        int read;
+        while ((read = content.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return FetchedPage.downloaded(url, bytes.toByteArray(), charset);
+    }
+
+    /**
+     * Logs why a page could not be retrieved, on one line at a level that depends on the reason.  The stack
+     * trace is left out, as the failures of a crawl are expected and are kept in its event journal.
+     *
+     * @param e the failure
+     */
+    public static void logFailure(FailedToGetPageContentException e) {
+        if (e instanceof SkippedPageException) {
+            LOGGER.debug(e.getMessage());
+        } else {
+            LOGGER.warn(describeFailure(e));
+        }
+    }
+
+    /**
+     * Describes why a page could not be retrieved in one line, with the cause of the failure if it has one.
+     *
+     * @param e the failure
+     * @return the description
+     */
+    public static String describeFailure(FailedToGetPageContentException e) {
+        return e.getCause() != null ? e.getMessage() + " (" + e.getCause() + ")" : e.getMessage();
+    }
+
+    /**
+     * Requests the page conditionally, and reuses the cached assets if it has not been modified.
+     */
+    private PageAssets getAssetsFromCachedPage(String url) throws FailedToGetPageContentException {
+        PageValidators validators = pageCache.getValidators(url);
+        PageResponse<PageAssets> response = httpClient.processPageContent(url, validators,
+                (content, charset) -> getAssetsFromHtml(content, charset, url));
+
+        if (response.isNotModified()) {
+            PageAssets assets = getCachedAssets(url);
+            if (assets != null) {
+                return assets;
+            }
+            response = httpClient.processPageContent(url, null,
+                    (content, charset) -> getAssetsFromHtml(content, charset, url));
+        }
+        return cache(url, response);
+    }
+
+    /**
+     * Gets the assets of a page that has not been modified.
+     *
+     * @return the cached assets, or null if they are missing or could not be read, so the page is downloaded again
+     */
+    private PageAssets getCachedAssets(String url) {
+        try {
+            return pageCache.getAssets(url);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to read cached page {}, downloading it again.", url, e);
+            return null;
+        }
+    }
+
+    private PageAssets cache(String url, PageResponse<PageAssets> response) {
+        try {
+            pageCache.put(url, response.getValidators(), response.getContent());
+        } catch (IOException e) {
+            LOGGER.warn("Unable to cache page {}.", url, e);
+        }
+        return response.getContent();
+    }
+
+    private PageAssets getAssetsFromHtml(InputStream content, Charset charset, String baseUrl) throws IOException {
+        long startNanos = System.nanoTime();
+        PageAssets assets = parseHtml(content, charset, baseUrl);
+        parseTime.recordSince(startNanos);
+        linksExtracted.add(assets.getLinksToOtherPages().size());
+        imagesExtracted.add(assets.getStaticContent().size());
+        return assets;
+    }
+
+    private PageAssets parseHtml(InputStream content, Charset charset, String baseUrl) throws IOException {
+        if (mode == Mode.STREAMING) {
+            return streamingLinkExtractor.extract(new InputStreamReader(content, charset), baseUrl);
+        }
+
+        Document document = Jsoup.parse(content, charset.name(), baseUrl);
 
         List<String> links = getLinksFromHtml(document);
         List<String> images = getImagesFromHtml(document);
@@ -56,6 +304,51 @@ public class WebPageParser {
         return new PageAssets(links, images);
     }
 
+    /**
+     * Gets the time taken to parse each page.  Unless the page was fetched with {@link #fetchPage(String)},
+     * it is parsed as it is downloaded, so this includes reading the content after the response headers.
+     *
+     * @return the parse times in nanoseconds
+     */
+    public Histogram getParseTime() {
+        return parseTime;
+    }
+
+    public long getLinksExtracted() {
+        return linksExtracted.sum();
+    }
+
+    public long getImagesExtracted() {
+        return imagesExtracted.sum();
+    }
+
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public PageCache getPageCache() {
+        return pageCache;
+    }
+
+    /**
+     * Closes the page cache, if there is one, and the HTTP client.
+     *
+     * @throws IOException if the cache or the client could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (pageCache != null) {
+                LOGGER.info("{}", pageCache);
+                pageCache.close();
+            }
+        } finally {
+            if (httpClient != null) {
+                httpClient.close();
+            }
+        }
+    }
+
     private List<String> getLinksFromHtml(Document document) {
         Elements links = document.select("a[href]");
 
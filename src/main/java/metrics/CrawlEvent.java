@@ -0,0 +1,74 @@
+package metrics;
+
+/**
+ * Something that happened to a page during a crawl, as recorded in an {@link EventJournal}.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public final class CrawlEvent {
+
+    /**
+     * What happened to the page.
+     */
+    public enum Type {
+        /** The page was downloaded. */
+        FETCHED,
+        /** The page was not downloaded, such as when it is not HTML or the page budget has been spent. */
+        SKIPPED,
+        /** The page could not be downloaded. */
+        FAILED,
+        /** The page could not be downloaded and will be tried again. */
+        RETRYING,
+        /** The page had already been processed. */
+        DUPLICATE
+    }
+
+    private final Type type;
+    private final String url;
+    private final long timeMillis;
+    private final long elapsedNanos;
+    private final String detail;
+
+    /**
+     * Constructor.
+     *
+     * @param type what happened to the page
+     * @param url the URL of the page
+     * @param timeMillis when it happened, from {@link System#currentTimeMillis()}
+     * @param elapsedNanos how long it took, or 0
+     * @param detail why it happened, or null
+     */
+    public CrawlEvent(Type type, String url, long timeMillis, long elapsedNanos, String detail) {
+        this.type = type;
+        this.url = url;
+        this.timeMillis = timeMillis;
+        this.elapsedNanos = elapsedNanos;
+        this.detail = detail;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public String getDetail() {
+        return detail;
+    }
+
+    @Override
+    public String toString() {
+        return "CrawlEvent{type=" + type + ", url='" + url + "', elapsedNanos=" + elapsedNanos + ", detail='" + detail
+                + "'}";
+    }
+}
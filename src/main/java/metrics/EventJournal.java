@@ -0,0 +1,35 @@
+package metrics;
+
+import java.io.Closeable;
+
+/**
+ * Records what happened to each page of a crawl, as an audit trail that does not slow the crawl down the
+ * way logging every page to the console does.  Implementations are thread safe and do not block.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public interface EventJournal extends Closeable {
+
+    /**
+     * A journal that records nothing.
+     */
+    EventJournal NONE = new EventJournal() {
+        @Override
+        public void record(CrawlEvent.Type type, String url, long elapsedNanos, String detail) {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    /**
+     * Records an event.
+     *
+     * @param type what happened to the page
+     * @param url the URL of the page
+     * @param elapsedNanos how long it took, or 0
+     * @param detail why it happened, or null
+     */
+    void record(CrawlEvent.Type type, String url, long elapsedNanos, String detail);
+}
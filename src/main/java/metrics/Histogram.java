@@ -0,0 +1,143 @@
+package metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent histogram of non-negative values, such as latencies in nanoseconds or sizes in bytes.
+ *
+ * As in an HDR histogram, each power of two is divided into 32 linear sub-buckets, so every value is
+ * counted in a bucket no more than about 3% wider than the value, from 0 up to Long.MAX_VALUE, in a
+ * fixed 15KB of counts.  Recording a value is one atomic increment of its bucket and of two striped
+ * counters, with no locks or allocation.  The percentiles are read from the buckets, so they are an
+ * upper bound within the bucket precision.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_VALUES = 2 * SUB_BUCKETS;
+    private static final int BUCKET_COUNT = LINEAR_VALUES + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a value.  Negative values are recorded as 0.
+     *
+     * @param value the value
+     */
+    public void record(long value) {
+        long recorded = Math.max(0, value);
+        counts.incrementAndGet(indexOf(recorded));
+        count.increment();
+        sum.add(recorded);
+        max.accumulate(recorded);
+    }
+
+    /**
+     * Records the time since a start time.
+     *
+     * @param startNanos the start time from {@link System#nanoTime()}
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Gets the total of the recorded values, so the mean of the values recorded between two readings can be found.
+     *
+     * @return the sum of the values
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Gets the value that a percentage of the recorded values are no greater than.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the highest value in the bucket of the percentile, or 0 if nothing has been recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Formats the count and the main percentiles of a histogram of nanoseconds in milliseconds.
+     *
+     * @return the summary
+     */
+    public String toMillisString() {
+        return String.format("{count=%d, mean=%.2fms, p50=%.2fms, p90=%.2fms, p99=%.2fms, max=%.2fms}", getCount(),
+                getMean() / 1e6, millis(getPercentile(50)), millis(getPercentile(90)), millis(getPercentile(99)),
+                millis(getMax()));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("{count=%d, mean=%.1f, p50=%d, p90=%d, p99=%d, max=%d}", getCount(), getMean(),
+                getPercentile(50), getPercentile(90), getPercentile(99), getMax());
+    }
+
+    static int indexOf(long value) {
+        if (value < LINEAR_VALUES) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return LINEAR_VALUES + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueOf(int index) {
+        if (index < LINEAR_VALUES) {
+            return index;
+        }
+        int exponent = (index - LINEAR_VALUES) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+        int subBucket = (index - LINEAR_VALUES) % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        long lowest = (long) (SUB_BUCKETS + subBucket) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,228 @@
+package metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Journals the events of a crawl to a file of JSON lines, one object per event, such as
+ * <pre>{"time":1700000000000,"event":"fetched","url":"http://example.com/","micros":5120}</pre>
+ * with a "detail" saying why a page was skipped or failed.
+ *
+ * The crawl threads only put their events on a {@link RingBuffer}, which takes no lock, and a background
+ * thread writes them, so the journal neither slows the crawl threads nor makes them wait for each other
+ * the way logging every page to the console does.  If the writer falls so far behind that the ring
+ * fills, events are dropped and counted rather than waited for.  The file is flushed whenever the
+ * writer runs out of events, and the writer then sleeps for longer the longer there are none.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class JsonLinesEventJournal implements EventJournal {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JsonLinesEventJournal.class);
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static final long MIN_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MAX_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Path file;
+    private final Writer out;
+    private final RingBuffer<CrawlEvent> events;
+    private final Thread writer;
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+
+    private volatile boolean closed;
+    private volatile IOException failure;
+
+    private JsonLinesEventJournal(Path file, int capacity) throws IOException {
+        this.file = file;
+        this.out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8),
+                BUFFER_SIZE);
+        this.events = new RingBuffer<>(capacity);
+        this.writer = new Thread(this::writeEvents, "event-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Starts a new journal with the default capacity, replacing the file if it exists.
+     *
+     * @param file the journal file
+     * @return the journal
+     * @throws IOException if the file could not be created
+     */
+    public static JsonLinesEventJournal open(Path file) throws IOException {
+        return open(file, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Starts a new journal, replacing the file if it exists.
+     *
+     * @param file the journal file
+     * @param capacity the number of events that can be waiting to be written before more are dropped
+     * @return the journal
+     * @throws IOException if the file could not be created
+     */
+    public static JsonLinesEventJournal open(Path file, int capacity) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        return new JsonLinesEventJournal(file, capacity);
+    }
+
+    @Override
+    public void record(CrawlEvent.Type type, String url, long elapsedNanos, String detail) {
+        // Events from tasks that outlive the crawl are dropped
+        if (closed || failure != null) {
+            dropped.increment();
+            return;
+        }
+        if (events.offer(new CrawlEvent(type, url, System.currentTimeMillis(), elapsedNanos, detail))) {
+            recorded.increment();
+        } else {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Gets the number of events put on the ring to be written.
+     *
+     * @return the number of events
+     */
+    public long getRecordedCount() {
+        return recorded.sum();
+    }
+
+    /**
+     * Gets the number of events that were not written, because the ring was full or the journal was closed.
+     *
+     * @return the number of events
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    /**
+     * Writes the remaining events, then closes the file.
+     *
+     * @throws IOException if the journal could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted closing the event journal " + file, e);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("JsonLinesEventJournal{file=%s, written=%d, dropped=%d}", file, getWrittenCount(),
+                getDroppedCount());
+    }
+
+    private void writeEvents() {
+        try {
+            boolean unflushed = false;
+            long idleParkNanos = MIN_IDLE_PARK_NANOS;
+            while (true) {
+                // Read before polling, so the events recorded before the journal was closed are all written
+                boolean closing = closed;
+                CrawlEvent event = events.poll();
+                if (event != null) {
+                    write(event);
+                    written.increment();
+                    unflushed = true;
+                    idleParkNanos = MIN_IDLE_PARK_NANOS;
+                } else if (closing) {
+                    break;
+                } else {
+                    if (unflushed) {
+                        out.flush();
+                        unflushed = false;
+                    }
+                    // Waits longer while the crawl is quiet, so the writer does not take the crawl threads' CPU
+                    LockSupport.parkNanos(this, idleParkNanos);
+                    idleParkNanos = Math.min(MAX_IDLE_PARK_NANOS, idleParkNanos * 2);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Could not write the event journal {}, no more events will be recorded.", file, e);
+            failure = e;
+        } finally {
+            try {
+                out.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+    }
+
+    private void write(CrawlEvent event) throws IOException {
+        out.write("{\"time\":");
+        out.write(Long.toString(event.getTimeMillis()));
+        out.write(",\"event\":\"");
+        out.write(event.getType().name().toLowerCase(Locale.ROOT));
+        out.write("\",\"url\":");
+        writeString(event.getUrl());
+        if (event.getElapsedNanos() > 0) {
+            out.write(",\"micros\":");
+            out.write(Long.toString(TimeUnit.NANOSECONDS.toMicros(event.getElapsedNanos())));
+        }
+        if (event.getDetail() != null) {
+            out.write(",\"detail\":");
+            writeString(event.getDetail());
+        }
+        out.write("}\n");
+    }
+
+    private void writeString(String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.write('\\');
+                out.write(c);
+            } else if (c < 0x20) {
+                out.write("\\u00");
+                out.write(HEX[c >> 4]);
+                out.write(HEX[c & 0xF]);
+            } else {
+                out.write(c);
+            }
+        }
+        out.write('"');
+    }
+}
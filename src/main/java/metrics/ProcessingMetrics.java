@@ -0,0 +1,77 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The measurements of the URL processors of a crawl, which are shared by all of its processors, and the
+ * journal they record what happened to each page in.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class ProcessingMetrics {
+
+    private final Histogram pageTime = new Histogram();
+    private final LongAdder pagesProcessed = new LongAdder();
+    private final LongAdder offDomainLinks = new LongAdder();
+    private final long startNanos = System.nanoTime();
+    private final EventJournal events;
+
+    /**
+     * Constructor for a crawl whose events are not journalled.
+     */
+    public ProcessingMetrics() {
+        this(EventJournal.NONE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param events records what happened to each page
+     */
+    public ProcessingMetrics(EventJournal events) {
+        this.events = events;
+    }
+
+    /**
+     * Records a processed page.
+     *
+     * @param startNanos when processing started, from {@link System#nanoTime()}
+     * @param offDomainLinks the number of links to other domains, which are not crawled
+     */
+    public void recordPage(long startNanos, int offDomainLinks) {
+        pageTime.recordSince(startNanos);
+        pagesProcessed.increment();
+        this.offDomainLinks.add(offDomainLinks);
+    }
+
+    /**
+     * Gets the time taken to process each page, from fetching it to queueing its links.
+     *
+     * @return the processing times in nanoseconds
+     */
+    public Histogram getPageTime() {
+        return pageTime;
+    }
+
+    public EventJournal getEvents() {
+        return events;
+    }
+
+    public long getPagesProcessed() {
+        return pagesProcessed.sum();
+    }
+
+    public long getOffDomainLinks() {
+        return offDomainLinks.sum();
+    }
+
+    /**
+     * Gets the number of pages processed per second since the measurements were created.
+     *
+     * @return the pages per second
+     */
+    public double getPagesPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds > 0 ? getPagesProcessed() / seconds : 0;
+    }
+}
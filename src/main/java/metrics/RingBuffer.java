@@ -0,0 +1,93 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded queue for many producers and one consumer that never blocks or takes a lock.
+ *
+ * Each slot has a sequence number that says whose turn it is.  A producer claims the next slot by moving
+ * the tail on with a compare and set, but only if the slot's sequence shows that the consumer has emptied
+ * it, and then publishes the element by advancing the sequence.  The consumer takes the element at the
+ * head once its sequence shows it has been published, and hands the slot back for the next turn of the
+ * ring.  When the ring is full an element is refused rather than waited for, so a producer never stalls
+ * behind a slow consumer.
+ *
+ * @param <E> the type of the elements
+ * @author Ravindra Rishudeo.
+ */
+public class RingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity the number of elements the ring holds, rounded up to a power of two
+     */
+    public RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds an element, from any thread.
+     *
+     * @param element the element
+     * @return false if the ring is full and the element was not added
+     */
+    public boolean offer(E element) {
+        while (true) {
+            long position = tail.get();
+            int slot = (int) (position & mask);
+            long sequence = sequences.get(slot);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(slot, element);
+                    sequences.set(slot, position + 1);
+                    return true;
+                }
+            } else if (sequence < position) {
+                // The consumer has not emptied the slot since the last turn of the ring
+                return false;
+            }
+            // Another producer claimed the slot first
+        }
+    }
+
+    /**
+     * Takes the oldest element, from the consumer thread only.
+     *
+     * @return the element, or null if there is none ready
+     */
+    public E poll() {
+        int slot = (int) (head & mask);
+        if (sequences.get(slot) != head + 1) {
+            return null;
+        }
+        E element = elements.get(slot);
+        elements.lazySet(slot, null);
+        sequences.set(slot, head + mask + 1);
+        head++;
+        return element;
+    }
+
+    /**
+     * Gets the number of elements the ring holds.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+}
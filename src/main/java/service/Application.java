@@ -1,19 +1,78 @@
 package service;
 
+import ch.qos.logback.classic.LoggerContext;
+import checkpoint.CheckpointLog;
+import checkpoint.CrawlJournal;
+import checkpoint.CrawlState;
+import exception.CheckpointException;
+import exception.EventJournalException;
+import exception.FrontierSpillException;
+import exception.PageCacheException;
+import exception.PageFetcherException;
+import exception.SitemapStorageException;
+import frontier.BloomFilterSet;
+import frontier.CircuitBreaker;
+import frontier.FingerprintSet;
+import frontier.Frontier;
+import frontier.FrontierEntry;
+import frontier.HostScheduler;
+import frontier.PriorityUpdater;
+import frontier.SeenUrlSet;
+import frontier.SpillQueue;
+import http.AsyncPageFetcher;
+import http.CachingDnsResolver;
 import http.HttpClient;
+import http.PageCache;
+import http.PageFetcher;
 import http.WebPageParser;
+import metrics.EventJournal;
+import metrics.JsonLinesEventJournal;
+import metrics.ProcessingMetrics;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.slf4j.ILoggerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sitemap.CsvSitemapWriter;
+import sitemap.JsonLinesSitemapWriter;
+import sitemap.MappedSitemapStore;
 import sitemap.Sitemap;
+import sitemap.SitemapWriter;
+import sitemap.XmlSitemapWriter;
+import url.UrlNormaliser;
 
+import java.io.IOException;
 import java.net.URI;
-import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
 
 /**
  * Application Entry point.
@@ -24,29 +83,102 @@ public class Application {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Application.class);
 
-    private static final int NUMBER_OF_THREADS_IN_POOL = 10;
-    private static final int NUMBER_OF_CONECTIONS_IN_POOL = 10;
+    private static final int TERMINATION_TIMEOUT_SECONDS = 15;
+    private static final double BLOOM_FILTER_FALSE_POSITIVE_RATE = 0.001;
+    private static final int IDLE_CONNECTION_TIMEOUT_SECONDS = 30;
+    private static final int VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60000;
+    private static final long MAX_CIRCUIT_OPEN_MILLIS = 60000;
+    private static final int MAX_CIRCUIT_TRIPS = 5;
 
-    private final ThreadPoolExecutor executorService;
+    private final CrawlExecutorService executorService;
     private final Sitemap sitemap;
     private final WebPageParser webPageParser;
+    private final Frontier frontier;
+    private final UrlNormaliser urlNormaliser;
+    private final CrawlState resumedState;
+    private final CrawlJournal crawlJournal;
+    private final List<SitemapWriter> sitemapWriters;
+    private final EventJournal eventJournal;
+    private final ProcessingMetrics processingMetrics;
+    private final SpillingFrontierQueue frontierQueue;
+    private final CrawlPipeline crawlPipeline;
+    private final CrawlContext crawlContext;
+    private final boolean asynchronous;
+    private final ConcurrencyController concurrencyController;
+    private final CrawlRetries crawlRetries;
+    private final CachingDnsResolver dnsResolver;
+    private final CrawlMetrics crawlMetrics;
+    private final StatsServer statsServer;
 
     /**
      * Constructor.
      *
      * NB. If I did not have any time constraints then I would use
      * wire the beans with a framework.  Possibly Spring.
+     *
+     * @param options the crawl options
      */
-    public Application() {
-        this.executorService = createExecutorService();
-        this.webPageParser = createWebPageParser();
-        this.sitemap = new Sitemap();
+    public Application(CrawlOptions options) {
+        this.dnsResolver = options.getDnsTtlSeconds() > 0
+                ? new CachingDnsResolver(TimeUnit.SECONDS.toMillis(options.getDnsTtlSeconds())) : null;
+        PoolingHttpClientConnectionManager connectionManager = createConnectionManager(options);
+        ExecutorService workers = options.getExecutionMode().createExecutorService(options.getNumberOfThreads());
+        HostScheduler hostScheduler = createHostScheduler(options, workers);
+        this.executorService = new CrawlExecutorService(workers, hostScheduler);
+        HttpClient httpClient = createHttpClient(options, connectionManager);
+        this.webPageParser = new WebPageParser(httpClient, WebPageParser.Mode.STREAMING, createPageCache(options));
+        this.concurrencyController = createConcurrencyController(options, httpClient, workers, hostScheduler,
+                connectionManager);
+        this.sitemap = createSitemap(options);
+        this.frontier = createFrontier(options, hostScheduler);
+        this.crawlRetries = createCrawlRetries(options, hostScheduler);
+        this.urlNormaliser = new UrlNormaliser(options.getStrippedQueryParameters(), options.isSortQueryParameters());
+        this.resumedState = readCrawlState(options);
+        this.crawlJournal = createCrawlJournal(options, resumedState);
+        this.sitemapWriters = createSitemapWriters(options);
+        this.eventJournal = createEventJournal(options);
+        this.processingMetrics = new ProcessingMetrics(eventJournal);
+        this.frontierQueue = createFrontierQueue(options);
+        this.crawlPipeline = options.isPipelined() ? new CrawlPipeline(executorService,
+                frontierQueue != null ? frontierQueue::submit : null, webPageParser, sitemap, frontier, urlNormaliser,
+                crawlJournal, processingMetrics, options.getParserThreads(), options.getPipelineQueueCapacity(),
+                crawlRetries) : null;
+        this.asynchronous = options.getFetcherMode() == FetcherMode.ASYNC;
+        this.crawlContext = createCrawlContext();
+        this.crawlMetrics = new CrawlMetrics(processingMetrics, webPageParser, frontier, sitemap, executorService,
+                connectionManager, crawlPipeline, dnsResolver);
+        this.statsServer = createStatsServer(options, crawlMetrics);
+    }
+
+    Application(CrawlExecutorService executorService, Sitemap sitemap, WebPageParser webPageParser, Frontier frontier,
+                UrlNormaliser urlNormaliser) {
+        this(executorService, sitemap, webPageParser, frontier, urlNormaliser, new CrawlState(), CrawlJournal.NONE,
+                Collections.emptyList());
     }
 
-    Application(ThreadPoolExecutor executorService, Sitemap sitemap, WebPageParser webPageParser) {
+    Application(CrawlExecutorService executorService, Sitemap sitemap, WebPageParser webPageParser, Frontier frontier,
+                UrlNormaliser urlNormaliser, CrawlState resumedState, CrawlJournal crawlJournal,
+                List<SitemapWriter> sitemapWriters) {
         this.executorService = executorService;
         this.sitemap = sitemap;
         this.webPageParser = webPageParser;
+        this.frontier = frontier;
+        this.urlNormaliser = urlNormaliser;
+        this.resumedState = resumedState;
+        this.crawlJournal = crawlJournal;
+        this.sitemapWriters = sitemapWriters;
+        this.eventJournal = EventJournal.NONE;
+        this.processingMetrics = new ProcessingMetrics();
+        this.frontierQueue = null;
+        this.crawlPipeline = null;
+        this.concurrencyController = null;
+        this.crawlRetries = null;
+        this.asynchronous = false;
+        this.crawlContext = createCrawlContext();
+        this.dnsResolver = null;
+        this.crawlMetrics = null;
+        this.statsServer = null;
     }
 
     /**
@@ -54,77 +186,520 @@ public class Application {
      *
      * @param startUrl the URL to start crawling
      */
-    void crawlSite(String startUrl) {
+    public void crawlSite(String startUrl) {
+        if (crawlMetrics != null) {
+            crawlMetrics.register();
+        }
+
+        if (crawlPipeline != null) {
+            crawlPipeline.start();
+        }
+        if (concurrencyController != null) {
+            concurrencyController.start();
+        }
+
+        resumeCrawl();
+
         startCrawlingSite(startUrl);
 
         waitUntilSiteHasBeenCrawled();
 
+        if (concurrencyController != null) {
+            concurrencyController.close();
+            LOGGER.info(concurrencyController.toString());
+        }
         shutDownExecutor();
+        if (crawlPipeline != null) {
+            crawlPipeline.close();
+        }
+        closeFrontierQueue();
+
+        LOGGER.info(frontier.toString());
+        if (crawlRetries != null) {
+            LOGGER.info(crawlRetries.toString());
+        }
+        if (crawlMetrics != null) {
+            LOGGER.info(crawlMetrics.toString());
+        }
+        writeSitemap();
+
+        closeSitemap();
+        closeWebPageParser();
+        closeDnsResolver();
+        closeCrawlJournal();
+        closeEventJournal();
+        closeMetrics();
+    }
+
+    /**
+     * Streams the sitemap to the output files, or to the log if there are none, one page at a time.
+     */
+    private void writeSitemap() {
+        if (sitemapWriters.isEmpty()) {
+            for (Map.Entry<String, List<String>> page : sitemap.getSiteLinks().entrySet()) {
+                LOGGER.info("{} : {}", page.getKey(), page.getValue());
+            }
+            return;
+        }
+        for (SitemapWriter sitemapWriter : sitemapWriters) {
+            try (SitemapWriter writer = sitemapWriter) {
+                sitemap.writeTo(writer);
+            } catch (IOException e) {
+                LOGGER.error("Could not write the sitemap.", e);
+            }
+        }
+    }
 
-        LOGGER.info(sitemap.toString());
+    private void closeSitemap() {
+        try {
+            sitemap.close();
+        } catch (IOException e) {
+            LOGGER.error("Could not close the sitemap.", e);
+        }
+    }
+
+    private void closeFrontierQueue() {
+        if (frontierQueue == null) {
+            return;
+        }
+        try {
+            frontierQueue.close();
+        } catch (IOException e) {
+            LOGGER.error("Could not delete the frontier spill files.", e);
+        }
+    }
+
+    private void closeWebPageParser() {
+        try {
+            webPageParser.close();
+        } catch (IOException e) {
+            LOGGER.error("Could not close the page cache or the HTTP client.", e);
+        }
+    }
+
+    private void closeDnsResolver() {
+        if (dnsResolver != null) {
+            LOGGER.info(dnsResolver.toString());
+            dnsResolver.close();
+        }
+    }
+
+    private void closeCrawlJournal() {
+        try {
+            crawlJournal.close();
+        } catch (IOException e) {
+            LOGGER.error("Could not close the checkpoint log.", e);
+        }
+    }
+
+    private void closeEventJournal() {
+        if (eventJournal == EventJournal.NONE) {
+            return;
+        }
+        try {
+            eventJournal.close();
+            LOGGER.info(eventJournal.toString());
+        } catch (IOException e) {
+            LOGGER.error("Could not close the event journal.", e);
+        }
+    }
+
+    private void closeMetrics() {
+        if (statsServer != null) {
+            statsServer.close();
+        }
+        if (crawlMetrics != null) {
+            crawlMetrics.unregister();
+        }
+    }
+
+    /**
+     * Puts back the pages that an earlier run of the crawl completed, and queues the ones it did not.
+     */
+    private void resumeCrawl() {
+        if (resumedState.isEmpty()) {
+            return;
+        }
+        LOGGER.info("Resuming crawl: {}", resumedState);
+
+        try {
+            // Read back from the checkpoint log one page at a time, rather than held in memory
+            resumedState.forEachCompletedPage((url, links) -> {
+                frontier.offer(url);
+                frontier.markProcessing(url);
+                // A sitemap kept on disk may already have the links
+                if (!sitemap.hasBeenProcessed(url)) {
+                    sitemap.addLinks(url, links);
+                }
+            });
+        } catch (IOException e) {
+            throw new CheckpointException("Could not read the completed pages back from the checkpoint log", e);
+        }
+        // At the depth they were journalled at, so the maximum depth and the crawl order still apply to them
+        for (Map.Entry<String, Integer> pending : resumedState.getPendingUrls().entrySet()) {
+            String url = pending.getKey();
+            int depth = pending.getValue();
+            FrontierEntry entry = frontier.offer(url, depth);
+            sitemap.release(url);
+            // Queued even if a Bloom filter mistakes it for a completed page, as it was accepted before
+            submit(entry != null ? entry : new FrontierEntry(url, depth));
+        }
     }
 
     private void startCrawlingSite(String startUrl) {
-        UrlProcessor urlProcessor = new UrlProcessor(executorService, webPageParser, startUrl, sitemap);
-        executorService.submit(urlProcessor);
+        String canonicalStartUrl = urlNormaliser.normalise(startUrl);
+        // Already queued if the crawl has been resumed
+        FrontierEntry entry = frontier.offer(canonicalStartUrl, 0, UrlProcessor.getQueuedJournaller(crawlJournal));
+        if (entry != null) {
+            submit(entry);
+        }
+    }
+
+    private void submit(FrontierEntry entry) {
+        if (crawlPipeline != null) {
+            crawlPipeline.submit(entry);
+        } else if (frontierQueue != null) {
+            frontierQueue.submit(entry);
+        } else if (asynchronous) {
+            executorService.execute(new UrlProcessor(crawlContext, entry).toAsyncTask());
+        } else {
+            executorService.submit(new UrlProcessor(crawlContext, entry));
+        }
+    }
+
+    /**
+     * Creates the task for an entry that a spilling frontier queue lets into memory.
+     */
+    private Runnable createTask(FrontierEntry entry) {
+        if (crawlPipeline != null) {
+            return crawlPipeline.createFetchTask(entry);
+        }
+        UrlProcessor urlProcessor = new UrlProcessor(crawlContext, entry);
+        return asynchronous ? urlProcessor.toAsyncTask() : urlProcessor::call;
+    }
+
+    /**
+     * Creates the context the URL processors of the crawl share.  They queue the child links on the spilling
+     * frontier queue if there is one, and on the executor service otherwise.
+     */
+    private CrawlContext createCrawlContext() {
+        CrawlContext.Builder builder = CrawlContext.builder(webPageParser, sitemap, frontier, urlNormaliser)
+                .crawlJournal(crawlJournal)
+                .processingMetrics(processingMetrics)
+                .crawlRetries(crawlRetries)
+                .asynchronous(asynchronous);
+        return frontierQueue != null ? builder.linkSubmitter(frontierQueue::submit).build()
+                : builder.executorService(executorService).build();
+    }
+
+    private SpillingFrontierQueue createFrontierQueue(CrawlOptions options) {
+        if (options.getFrontierMemoryPages() == 0) {
+            return null;
+        }
+        try {
+            // A directory of its own, which is deleted with the spill files
+            Path directory;
+            if (options.getSpillDirectory() != null) {
+                Path parent = Files.createDirectories(Paths.get(options.getSpillDirectory()));
+                directory = Files.createTempDirectory(parent, "frontier");
+            } else {
+                directory = Files.createTempDirectory("frontier");
+            }
+            return new SpillingFrontierQueue(executorService, this::createTask, frontier,
+                    new SpillQueue(directory, SpillQueue.DEFAULT_SEGMENT_BYTES), options.getFrontierMemoryPages());
+        } catch (IOException e) {
+            throw new FrontierSpillException("Could not create the frontier spill files", e);
+        }
     }
 
     private void shutDownExecutor() {
         try {
             executorService.shutdown();
-            executorService.awaitTermination(15, TimeUnit.SECONDS);
+            if (!executorService.awaitTermination(TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                List<Runnable> abandoned = executorService.shutdownNow();
+                LOGGER.warn("Executor service did not terminate, {} queued tasks abandoned.", abandoned.size());
+            }
         } catch (InterruptedException e) {
             LOGGER.error("Stopping executor service has been interrupted.", e);
         }
     }
 
     private void waitUntilSiteHasBeenCrawled() {
-        while (executorService.getActiveCount() > 0) {
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-                LOGGER.error("Crawling has been interrupted.", e);
+        try {
+            if (crawlPipeline != null) {
+                crawlPipeline.awaitCompletion();
+            }
+            executorService.awaitQuiescence();
+        } catch (InterruptedException e) {
+            LOGGER.error("Crawling has been interrupted.", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Creates the controller that sizes the workers, the scheduler and the connection pool of an adaptive crawl,
+     * and applies its starting limit.
+     */
+    private ConcurrencyController createConcurrencyController(CrawlOptions options, HttpClient httpClient,
+                                                              ExecutorService workers, HostScheduler hostScheduler,
+                                                              PoolingHttpClientConnectionManager connectionManager) {
+        if (!options.isAdaptive()) {
+            return null;
+        }
+        int initialLimit = Math.max(options.getMinConcurrency(),
+                Math.min(options.getMaxConcurrency(), options.getNumberOfThreads()));
+        IntConsumer limitSetter = limit -> applyConcurrencyLimit(limit, options.getHostConcurrency(), workers,
+                hostScheduler, connectionManager);
+        limitSetter.accept(initialLimit);
+        return new ConcurrencyController(httpClient, hostScheduler::getQueuedTaskCount, limitSetter,
+                options.getMinConcurrency(), options.getMaxConcurrency(), initialLimit);
+    }
+
+    /**
+     * Lets the number of requests in flight grow or shrink to the limit, and the requests to one host too, but
+     * never past the host concurrency the crawl was given.
+     *
+     * @param limit the number of requests in flight
+     * @param hostConcurrency the most requests in flight to one host
+     * @param workers the worker threads
+     * @param hostScheduler schedules the requests to each host
+     * @param connectionManager the connection pool
+     */
+    static void applyConcurrencyLimit(int limit, int hostConcurrency, ExecutorService workers,
+                                      HostScheduler hostScheduler, PoolingHttpClientConnectionManager connectionManager) {
+        int hostLimit = Math.min(limit, hostConcurrency);
+        if (workers instanceof ThreadPoolExecutor) {
+            // The core size may never be more than the maximum size
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) workers;
+            if (limit > pool.getMaximumPoolSize()) {
+                pool.setMaximumPoolSize(limit);
+                pool.setCorePoolSize(limit);
+            } else {
+                pool.setCorePoolSize(limit);
+                pool.setMaximumPoolSize(limit);
             }
         }
+        connectionManager.setMaxTotal(limit);
+        connectionManager.setDefaultMaxPerRoute(hostLimit);
+        hostScheduler.setMaxTasksPerHost(hostLimit);
+        hostScheduler.setMaxConcurrentTasks(limit);
     }
 
-    private WebPageParser createWebPageParser() {
-        return new WebPageParser(createHttpClient());
+    private PageCache createPageCache(CrawlOptions options) {
+        if (options.getCacheFile() == null) {
+            return null;
+        }
+        try {
+            return PageCache.open(Paths.get(options.getCacheFile()));
+        } catch (IOException e) {
+            throw new PageCacheException("Could not open the page cache " + options.getCacheFile(), e);
+        }
     }
 
-    private HttpClient createHttpClient() {
-        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
-        connectionManager.setMaxTotal(NUMBER_OF_CONECTIONS_IN_POOL);
-        connectionManager.setDefaultMaxPerRoute(NUMBER_OF_CONECTIONS_IN_POOL);
+    private PoolingHttpClientConnectionManager createConnectionManager(CrawlOptions options) {
+        // The same socket factories as the default connection manager, with the crawl's resolver
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create()
+                        .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                        .register("https", SSLConnectionSocketFactory.getSocketFactory())
+                        .build(),
+                dnsResolver != null ? dnsResolver : SystemDefaultDnsResolver.INSTANCE);
+        connectionManager.setMaxTotal(options.getNumberOfConnections());
+        connectionManager.setDefaultMaxPerRoute(Math.min(options.getHostConcurrency(), options.getNumberOfConnections()));
+        // A connection the server closed while it was idle is found before a request is sent on it
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MILLIS);
+        return connectionManager;
+    }
 
+    private HttpClient createHttpClient(CrawlOptions options, PoolingHttpClientConnectionManager connectionManager) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(options.getConnectTimeoutMillis())
+                .setSocketTimeout(options.getSocketTimeoutMillis())
+                .setConnectionRequestTimeout(options.getLeaseTimeoutMillis())
+                .build();
         CloseableHttpClient apacheHttpClient = HttpClients.custom()
                 .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(IDLE_CONNECTION_TIMEOUT_SECONDS, TimeUnit.SECONDS)
                 .build();
 
-        return new HttpClient(apacheHttpClient);
+        // The connection pool limits the requests of an adaptive crawl, so the permits only need to cover its maximum
+        int maxConcurrentRequests = options.isAdaptive() ? options.getMaxConcurrency() : options.getNumberOfConnections();
+        PageFetcher pageFetcher = options.getFetcherMode() == FetcherMode.ASYNC
+                ? createPageFetcher(options, requestConfig, maxConcurrentRequests) : null;
+        return new HttpClient(apacheHttpClient, maxConcurrentRequests, options.getMaxPageBytes(),
+                options.getRequestTimeoutMillis(), pageFetcher);
     }
 
-    private ThreadPoolExecutor createExecutorService() {
-        return (ThreadPoolExecutor) Executors.newFixedThreadPool(NUMBER_OF_THREADS_IN_POOL);
+    /**
+     * Creates the fetcher of an asynchronous crawl, with its own connection pool that uses the crawl's resolver,
+     * and the pool of parser threads that its responses are processed on.  The host scheduler limits the
+     * requests in flight, as the fetcher takes no request permits.
+     */
+    private PageFetcher createPageFetcher(CrawlOptions options, RequestConfig requestConfig, int maxConnections) {
+        PoolingNHttpClientConnectionManager connectionManager;
+        try {
+            connectionManager = new PoolingNHttpClientConnectionManager(
+                    new DefaultConnectingIOReactor(IOReactorConfig.DEFAULT), null,
+                    RegistryBuilder.<SchemeIOSessionStrategy>create()
+                            .register("http", NoopIOSessionStrategy.INSTANCE)
+                            .register("https", SSLIOSessionStrategy.getDefaultStrategy())
+                            .build(),
+                    dnsResolver != null ? dnsResolver : SystemDefaultDnsResolver.INSTANCE);
+        } catch (IOReactorException e) {
+            throw new PageFetcherException("Could not start the asynchronous page fetcher", e);
+        }
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(Math.min(options.getHostConcurrency(), maxConnections));
+        CloseableHttpAsyncClient httpAsyncClient = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+
+        AtomicInteger parserCount = new AtomicInteger();
+        ExecutorService parsers = Executors.newFixedThreadPool(options.getParserThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "parser-" + parserCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        return new AsyncPageFetcher(httpAsyncClient, parsers);
     }
 
-    public static void main(String[] args) {
-        if (args.length == 0) {
-            System.out.println("Please provide an application argument for the URL to start crawling.");
-            System.exit(0);
+    private StatsServer createStatsServer(CrawlOptions options, CrawlMetrics crawlMetrics) {
+        if (options.getStatsPort() < 0) {
+            return null;
         }
+        try {
+            StatsServer server = StatsServer.start(options.getStatsPort(), crawlMetrics);
+            LOGGER.info("Serving crawl metrics from http://localhost:{}{}", server.getPort(), StatsServer.PATH);
+            return server;
+        } catch (IOException e) {
+            LOGGER.warn("Could not serve the crawl metrics on port {}.", options.getStatsPort(), e);
+            return null;
+        }
+    }
 
-        String startUrl = args[0];
+    private Sitemap createSitemap(CrawlOptions options) {
+        if (options.getSitemapDirectory() == null) {
+            return new Sitemap();
+        }
+        try {
+            // A new crawl starts with an empty sitemap, or the pages of the last one would be skipped
+            return new Sitemap(new MappedSitemapStore(Paths.get(options.getSitemapDirectory()), options.isResume()));
+        } catch (IOException e) {
+            throw new SitemapStorageException("Could not open the sitemap in " + options.getSitemapDirectory(), e);
+        }
+    }
+
+    private CrawlState readCrawlState(CrawlOptions options) {
+        if (!options.isResume()) {
+            return new CrawlState();
+        }
+        try {
+            return CheckpointLog.read(Paths.get(options.getCheckpointFile()));
+        } catch (IOException e) {
+            throw new CheckpointException("Could not read the checkpoint log " + options.getCheckpointFile(), e);
+        }
+    }
 
+    private CrawlJournal createCrawlJournal(CrawlOptions options, CrawlState resumedState) {
+        if (options.getCheckpointFile() == null) {
+            return CrawlJournal.NONE;
+        }
+        try {
+            return CheckpointLog.open(Paths.get(options.getCheckpointFile()), resumedState);
+        } catch (IOException e) {
+            throw new CheckpointException("Could not open the checkpoint log " + options.getCheckpointFile(), e);
+        }
+    }
+
+    private EventJournal createEventJournal(CrawlOptions options) {
+        if (options.getEventsFile() == null) {
+            return EventJournal.NONE;
+        }
+        try {
+            return JsonLinesEventJournal.open(Paths.get(options.getEventsFile()));
+        } catch (IOException e) {
+            throw new EventJournalException("Could not open the event journal " + options.getEventsFile(), e);
+        }
+    }
+
+    private List<SitemapWriter> createSitemapWriters(CrawlOptions options) {
+        List<SitemapWriter> writers = new ArrayList<>();
+        try {
+            if (options.getXmlSitemapDirectory() != null) {
+                String baseUrl = URI.create(urlNormaliser.normalise(options.getStartUrl())).resolve("/").toString();
+                writers.add(new XmlSitemapWriter(Paths.get(options.getXmlSitemapDirectory()), baseUrl,
+                        options.isGzipOutput()));
+            }
+            if (options.getJsonLinesFile() != null) {
+                writers.add(new JsonLinesSitemapWriter(Paths.get(options.getJsonLinesFile()), options.isGzipOutput()));
+            }
+            if (options.getCsvFile() != null) {
+                writers.add(new CsvSitemapWriter(Paths.get(options.getCsvFile()), options.isGzipOutput()));
+            }
+        } catch (IOException e) {
+            throw new SitemapStorageException("Could not create the sitemap output files.", e);
+        }
+        return writers;
+    }
+
+    private Frontier createFrontier(CrawlOptions options, PriorityUpdater priorityUpdater) {
+        SeenUrlSet seenUrls = options.getBloomFilterCapacity() > 0
+                ? new BloomFilterSet(options.getBloomFilterCapacity(), BLOOM_FILTER_FALSE_POSITIVE_RATE)
+                : new FingerprintSet();
+        return new Frontier(seenUrls, options.getCrawlOrder(), options.getMaxDepth(), options.getMaxPages(),
+                priorityUpdater, dnsResolver != null ? dnsResolver::prefetch : null);
+    }
+
+    private HostScheduler createHostScheduler(CrawlOptions options, ExecutorService workers) {
+        // Virtual threads are not pooled, and asynchronous fetches do not hold a thread, so the number of requests
+        // in flight is limited by the connections instead
+        int maxConcurrentTasks = options.getExecutionMode() == ExecutionMode.VIRTUAL_THREADS
+                || options.getFetcherMode() == FetcherMode.ASYNC
+                ? options.getNumberOfConnections() : options.getNumberOfThreads();
+        Supplier<CircuitBreaker> circuitBreakers = options.getCircuitBreakerFailures() > 0
+                ? () -> new CircuitBreaker(options.getCircuitBreakerFailures(), options.getCircuitOpenMillis(),
+                        MAX_CIRCUIT_OPEN_MILLIS, MAX_CIRCUIT_TRIPS)
+                : null;
+        return new HostScheduler(workers, maxConcurrentTasks, options.getHostConcurrency(),
+                options.getHostDelayMillis(), options.getCrawlOrder(), circuitBreakers);
+    }
+
+    private CrawlRetries createCrawlRetries(CrawlOptions options, HostScheduler hostScheduler) {
+        if (options.getMaxRetries() == 0 && options.getCircuitBreakerFailures() == 0) {
+            return null;
+        }
+        return new CrawlRetries(executorService, hostScheduler, frontier, options.getMaxRetries(),
+                options.getRetryDelayMillis(), MAX_RETRY_DELAY_MILLIS);
+    }
+
+    /**
+     * Writes the messages still queued for the asynchronous console appender, which would otherwise be lost
+     * when the JVM exits.
+     */
+    private static void stopLogging() {
+        ILoggerFactory loggerFactory = LoggerFactory.getILoggerFactory();
+        if (loggerFactory instanceof LoggerContext) {
+            ((LoggerContext) loggerFactory).stop();
+        }
+    }
+
+    public static void main(String[] args) {
+        CrawlOptions options;
         try {
-            new URI(startUrl);
-        } catch (URISyntaxException e) {
-            System.out.println("The synatx of the URL to crawl is not valid: " + startUrl);
+            options = CrawlOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println(CrawlOptions.USAGE);
             System.exit(0);
+            return;
         }
 
-        Application application = new Application();
-        application.crawlSite(startUrl);
+        Application application = new Application(options);
+        application.crawlSite(options.getStartUrl());
+        stopLogging();
 
     }
 }
@@ -0,0 +1,201 @@
+package service;
+
+import http.HttpClient;
+import metrics.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+
+/**
+ * Adapts the number of requests in flight to how the site responds, instead of a fixed number of threads.
+ *
+ * Ten times a second the controller looks at the responses since it last looked:
+ * <ul>
+ * <li>Any 429 Too Many Requests or 503 Service Unavailable, or more than 5% of requests failing with other
+ * server errors, I/O errors or timeouts, halves the limit.  This is the multiplicative decrease.</li>
+ * <li>Otherwise, if the mean fetch latency has risen to more than twice the baseline, the limit is cut in
+ * proportion to the rise, so the crawl backs off as the site slows down and before it starts failing.</li>
+ * <li>Otherwise, if there were tasks waiting for a worker, the limit grows by one.  This is the additive
+ * increase, which only happens while the limit is holding the crawl back.  Until the first decrease the
+ * limit doubles instead, like TCP's slow start, so a crawl started with few threads soon finds out how
+ * many the site takes.</li>
+ * </ul>
+ * The baseline is the lowest mean latency seen.  It follows a lower latency at once and a higher one a
+ * tenth of the way each time, so a site that stays slower becomes the new baseline.  The limit is kept
+ * between a minimum and a maximum and passed to a setter, which resizes the worker threads, the scheduler
+ * and the connection pool.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class ConcurrencyController implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConcurrencyController.class);
+
+    static final long INTERVAL_MILLIS = 100;
+    static final double TOLERATED_ERROR_RATE = 0.05;
+    static final double BACKOFF_FACTOR = 0.5;
+    static final double LATENCY_TOLERANCE = 2.0;
+    static final double BASELINE_RISE = 0.1;
+
+    private final HttpClient httpClient;
+    private final IntSupplier waitingTasks;
+    private final IntConsumer limitSetter;
+    private final int minLimit;
+    private final int maxLimit;
+    private final ScheduledExecutorService timer;
+
+    private int limit;
+    private double baselineLatencyNanos;
+    private Sample lastSample;
+    private int increases;
+    private int decreases;
+
+    /**
+     * Constructor.
+     *
+     * @param httpClient measures the responses
+     * @param waitingTasks gets the number of tasks waiting for a worker
+     * @param limitSetter applies a new limit
+     * @param minLimit the lowest limit
+     * @param maxLimit the highest limit
+     * @param initialLimit the limit to start with, which has already been applied
+     */
+    public ConcurrencyController(HttpClient httpClient, IntSupplier waitingTasks, IntConsumer limitSetter,
+                                 int minLimit, int maxLimit, int initialLimit) {
+        this.httpClient = httpClient;
+        this.waitingTasks = waitingTasks;
+        this.limitSetter = limitSetter;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+        this.lastSample = new Sample(httpClient);
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "concurrency-controller");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts adjusting the limit ten times a second.
+     */
+    public void start() {
+        timer.scheduleWithFixedDelay(this::adjust, INTERVAL_MILLIS, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops adjusting the limit.
+     */
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Looks at the responses since the last adjustment and changes the limit.
+     *
+     * @return the new limit
+     */
+    synchronized int adjust() {
+        Sample sample = new Sample(httpClient);
+        Sample last = lastSample;
+        lastSample = sample;
+
+        long responses = sample.responses - last.responses;
+        long throttled = sample.throttled - last.throttled;
+        long errors = sample.errors - last.errors;
+        long requests = responses + sample.failures - last.failures;
+        if (requests == 0) {
+            return limit;
+        }
+
+        if (throttled > 0 || errors > requests * TOLERATED_ERROR_RATE) {
+            return change((int) (limit * BACKOFF_FACTOR),
+                    String.format("%d throttled and %d failed of %d requests", throttled, errors, requests));
+        }
+        if (responses == 0) {
+            return limit;
+        }
+        double latencyNanos = (double) (sample.latencySumNanos - last.latencySumNanos) / responses;
+        if (baselineLatencyNanos == 0 || latencyNanos < baselineLatencyNanos) {
+            baselineLatencyNanos = latencyNanos;
+        } else {
+            baselineLatencyNanos += (latencyNanos - baselineLatencyNanos) * BASELINE_RISE;
+        }
+        if (latencyNanos > baselineLatencyNanos * LATENCY_TOLERANCE) {
+            double gradient = LATENCY_TOLERANCE * baselineLatencyNanos / latencyNanos;
+            return change((int) (limit * Math.max(BACKOFF_FACTOR, gradient)),
+                    String.format("latency %.1fms against a baseline of %.1fms", latencyNanos / 1e6,
+                            baselineLatencyNanos / 1e6));
+        }
+        if (waitingTasks.getAsInt() > 0) {
+            return change(decreases == 0 ? 2 * limit : limit + 1, null);
+        }
+        return limit;
+    }
+
+    private int change(int newLimit, String backOffReason) {
+        int bounded = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        if (bounded == limit) {
+            return limit;
+        }
+        if (bounded < limit) {
+            decreases++;
+            LOGGER.info("Concurrency limit lowered from {} to {}: {}", limit, bounded, backOffReason);
+        } else {
+            increases++;
+            LOGGER.debug("Concurrency limit raised from {} to {}", limit, bounded);
+        }
+        limit = bounded;
+        limitSetter.accept(bounded);
+        return bounded;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("ConcurrencyController{limit=%d, min=%d, max=%d, increases=%d, decreases=%d, "
+                + "baselineLatency=%.1fms}", limit, minLimit, maxLimit, increases, decreases, baselineLatencyNanos / 1e6);
+    }
+
+    /**
+     * The running totals of the HTTP client at one time.
+     */
+    private static final class Sample {
+
+        private final long responses;
+        private final long latencySumNanos;
+        private final long throttled;
+        private final long errors;
+        private final long failures;
+
+        Sample(HttpClient httpClient) {
+            Histogram fetchLatency = httpClient.getFetchLatency();
+            long throttledResponses = 0;
+            long serverErrors = 0;
+            for (Map.Entry<Integer, Long> statusCount : httpClient.getStatusCounts().entrySet()) {
+                int statusCode = statusCount.getKey();
+                if (statusCode == 429 || statusCode == 503) {
+                    throttledResponses += statusCount.getValue();
+                } else if (statusCode >= 500) {
+                    serverErrors += statusCount.getValue();
+                }
+            }
+            this.responses = fetchLatency.getCount();
+            this.latencySumNanos = fetchLatency.getSum();
+            this.throttled = throttledResponses;
+            this.failures = httpClient.getFailureCount() + httpClient.getTimeoutCount();
+            this.errors = serverErrors + failures;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package service;
+
+import checkpoint.CrawlJournal;
+import frontier.Frontier;
+import frontier.FrontierEntry;
+import http.WebPageParser;
+import metrics.ProcessingMetrics;
+import sitemap.Sitemap;
+import url.UrlNormaliser;
+
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+/**
+ * The parts of a crawl that every {@link UrlProcessor} of the crawl shares, so a processor is created from
+ * the context and the frontier entry of its page.
+ *
+ * The child links accepted by the frontier are either submitted to an executor service as new URL processors,
+ * or given to a link submitter, such as a spilling frontier queue.  A crawl that is not journalled has
+ * {@link CrawlJournal#NONE}, one that is not measured has metrics of its own, and one that does not retry
+ * pages has no {@link CrawlRetries}.
+ *
+ * In an asynchronous crawl the pages are fetched without blocking, and the processors are submitted to the
+ * executor service as {@link frontier.AsyncTask}s, which finish once their page has been processed.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public final class CrawlContext {
+
+    private final ExecutorService executorService;
+    private final Consumer<FrontierEntry> linkSubmitter;
+    private final WebPageParser webPageParser;
+    private final Sitemap sitemap;
+    private final Frontier frontier;
+    private final UrlNormaliser urlNormaliser;
+    private final CrawlJournal crawlJournal;
+    private final ProcessingMetrics processingMetrics;
+    private final CrawlRetries crawlRetries;
+    private final boolean asynchronous;
+
+    private CrawlContext(Builder builder) {
+        this.executorService = builder.executorService;
+        this.linkSubmitter = builder.linkSubmitter;
+        this.webPageParser = builder.webPageParser;
+        this.sitemap = builder.sitemap;
+        this.frontier = builder.frontier;
+        this.urlNormaliser = builder.urlNormaliser;
+        this.crawlJournal = builder.crawlJournal;
+        this.processingMetrics = builder.processingMetrics != null ? builder.processingMetrics
+                : new ProcessingMetrics();
+        this.crawlRetries = builder.crawlRetries;
+        this.asynchronous = builder.asynchronous;
+    }
+
+    /**
+     * Starts building the context of a crawl.
+     *
+     * @param webPageParser the web page HTML parser
+     * @param sitemap the sitemap
+     * @param frontier decides which of the child links are processed
+     * @param urlNormaliser puts the child links into canonical form
+     * @return the builder, which needs an executor service or a link submitter before it is built
+     */
+    public static Builder builder(WebPageParser webPageParser, Sitemap sitemap, Frontier frontier,
+                                  UrlNormaliser urlNormaliser) {
+        return new Builder(webPageParser, sitemap, frontier, urlNormaliser);
+    }
+
+    /**
+     * Gets the executor service the child links are submitted to.
+     *
+     * @return the executor service, or null if the links are given to the link submitter
+     */
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * Gets the link submitter the child links, and the pages being retried, are given to.
+     *
+     * @return the link submitter, or null if the links are submitted to the executor service
+     */
+    public Consumer<FrontierEntry> getLinkSubmitter() {
+        return linkSubmitter;
+    }
+
+    public WebPageParser getWebPageParser() {
+        return webPageParser;
+    }
+
+    public Sitemap getSitemap() {
+        return sitemap;
+    }
+
+    public Frontier getFrontier() {
+        return frontier;
+    }
+
+    public UrlNormaliser getUrlNormaliser() {
+        return urlNormaliser;
+    }
+
+    public CrawlJournal getCrawlJournal() {
+        return crawlJournal;
+    }
+
+    public ProcessingMetrics getProcessingMetrics() {
+        return processingMetrics;
+    }
+
+    /**
+     * Gets what decides whether a page that could not be downloaded is retried.
+     *
+     * @return the crawl retries, or null to not retry
+     */
+    public CrawlRetries getCrawlRetries() {
+        return crawlRetries;
+    }
+
+    /**
+     * Indicates whether the pages are fetched without blocking.
+     *
+     * @return true if the processors are run as asynchronous tasks
+     */
+    public boolean isAsynchronous() {
+        return asynchronous;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CrawlContext that = (CrawlContext) o;
+        return Objects.equals(executorService, that.executorService) &&
+                Objects.equals(linkSubmitter, that.linkSubmitter) &&
+                Objects.equals(webPageParser, that.webPageParser) &&
+                Objects.equals(sitemap, that.sitemap) &&
+                Objects.equals(frontier, that.frontier) &&
+                Objects.equals(urlNormaliser, that.urlNormaliser) &&
+                Objects.equals(crawlJournal, that.crawlJournal) &&
+                asynchronous == that.asynchronous;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(executorService, linkSubmitter, webPageParser, sitemap, frontier, urlNormaliser, crawlJournal,
+                asynchronous);
+    }
+
+    /**
+     * Builds a crawl context.
+     */
+    public static final class Builder {
+
+        private final WebPageParser webPageParser;
+        private final Sitemap sitemap;
+        private final Frontier frontier;
+        private final UrlNormaliser urlNormaliser;
+        private ExecutorService executorService;
+        private Consumer<FrontierEntry> linkSubmitter;
+        private CrawlJournal crawlJournal = CrawlJournal.NONE;
+        private ProcessingMetrics processingMetrics;
+        private CrawlRetries crawlRetries;
+        private boolean asynchronous;
+
+        private Builder(WebPageParser webPageParser, Sitemap sitemap, Frontier frontier, UrlNormaliser urlNormaliser) {
+            this.webPageParser = webPageParser;
+            this.sitemap = sitemap;
+            this.frontier = frontier;
+            this.urlNormaliser = urlNormaliser;
+        }
+
+        /**
+         * Submits the child links to an executor service, as new URL processors of the same crawl.
+         *
+         * @param executorService processes the child links
+         * @return this builder
+         */
+        public Builder executorService(ExecutorService executorService) {
+            this.executorService = executorService;
+            return this;
+        }
+
+        /**
+         * Gives the child links somewhere other than an executor service, and the page itself to retry it.
+         *
+         * @param linkSubmitter queues the child links accepted by the frontier, such as a spilling frontier queue
+         * @return this builder
+         */
+        public Builder linkSubmitter(Consumer<FrontierEntry> linkSubmitter) {
+            this.linkSubmitter = linkSubmitter;
+            return this;
+        }
+
+        /**
+         * Journals the crawl, so it can be resumed.
+         *
+         * @param crawlJournal records the queued links and the completed pages
+         * @return this builder
+         */
+        public Builder crawlJournal(CrawlJournal crawlJournal) {
+            this.crawlJournal = crawlJournal;
+            return this;
+        }
+
+        /**
+         * Measures the crawl.
+         *
+         * @param processingMetrics measures the pages processed, shared by all the processors of the crawl
+         * @return this builder
+         */
+        public Builder processingMetrics(ProcessingMetrics processingMetrics) {
+            this.processingMetrics = processingMetrics;
+            return this;
+        }
+
+        /**
+         * Retries the pages that could not be downloaded because of a transient failure.
+         *
+         * @param crawlRetries decides whether a page that could not be downloaded is retried, or null to not retry
+         * @return this builder
+         */
+        public Builder crawlRetries(CrawlRetries crawlRetries) {
+            this.crawlRetries = crawlRetries;
+            return this;
+        }
+
+        /**
+         * Fetches the pages without blocking.
+         *
+         * @param asynchronous true to submit the processors of the child links as asynchronous tasks
+         * @return this builder
+         */
+        public Builder asynchronous(boolean asynchronous) {
+            this.asynchronous = asynchronous;
+            return this;
+        }
+
+        /**
+         * Builds the crawl context.
+         *
+         * @return the crawl context
+         * @throws IllegalStateException unless exactly one of an executor service and a link submitter was given
+         */
+        public CrawlContext build() {
+            if ((executorService == null) == (linkSubmitter == null)) {
+                throw new IllegalStateException("A crawl context needs either an executor service or a link submitter");
+            }
+            return new CrawlContext(this);
+        }
+    }
+}
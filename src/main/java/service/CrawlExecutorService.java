@@ -0,0 +1,256 @@
+package service;
+
+import frontier.AsyncTask;
+import frontier.FrontierEntry;
+import frontier.HostScheduler;
+import frontier.HostTask;
+import frontier.TimerWheel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor service for a crawl that keeps count of its outstanding tasks.
+ *
+ * A task is outstanding from when it is submitted until it has finished running, so queued tasks
+ * are included.  As a URL processor submits its child tasks before it finishes, the count only
+ * reaches zero once the whole site has been crawled, whichever executor service runs the tasks.
+ * Waiters are woken as soon as that happens, rather than polling.
+ *
+ * With a {@link HostScheduler}, tasks are queued per host and only handed to the executor service
+ * when their host is ready.  Submitted {@link HostTask}s keep their host and frontier entry; other tasks
+ * share one queue.
+ *
+ * An {@link AsyncTask} is outstanding until it calls back that it has finished, rather than until the
+ * thread that started it returns, and it is handed to the host scheduler as an asynchronous task too.
+ *
+ * Work can also be submitted after a delay, such as a page to retry, and it is outstanding while it waits.
+ * The delays are kept on a {@link TimerWheel}, started when it is first needed, rather than on sleeping threads.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class CrawlExecutorService extends AbstractExecutorService {
+
+    private static final String UNKNOWN_HOST = "";
+    private static final long TIMER_TICK_MILLIS = 10;
+    private static final int TIMER_TICKS_PER_WHEEL = 512;
+
+    private final ExecutorService executorService;
+    private final HostScheduler hostScheduler;
+    private final AtomicInteger outstandingTasks = new AtomicInteger();
+    private final Object quiescenceLock = new Object();
+    private TimerWheel timerWheel;
+
+    /**
+     * Constructor.
+     *
+     * @param executorService runs the tasks
+     */
+    public CrawlExecutorService(ExecutorService executorService) {
+        this(executorService, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param executorService runs the tasks
+     * @param hostScheduler decides when the tasks for each host are run, or null to run them in submission order
+     */
+    public CrawlExecutorService(ExecutorService executorService, HostScheduler hostScheduler) {
+        this.executorService = executorService;
+        this.hostScheduler = hostScheduler;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        outstandingTasks.incrementAndGet();
+        Runnable task;
+        if (command instanceof AsyncTask) {
+            task = (AsyncTask) finished -> AsyncTask.start((AsyncTask) command, () -> {
+                try {
+                    finished.run();
+                } finally {
+                    taskFinished();
+                }
+            });
+        } else {
+            task = () -> {
+                try {
+                    command.run();
+                } finally {
+                    taskFinished();
+                }
+            };
+        }
+        try {
+            if (hostScheduler != null) {
+                FrontierEntry entry = command instanceof HostTask ? ((HostTask) command).getFrontierEntry() : null;
+                hostScheduler.execute(getHost(command), entry, task);
+            } else {
+                executorService.execute(task);
+            }
+        } catch (RejectedExecutionException e) {
+            taskFinished();
+            throw e;
+        }
+    }
+
+    /**
+     * Runs a submission, which submits tasks to this executor service, after a delay.  The submission is counted
+     * as an outstanding task until it has run, so the crawl does not finish while it waits.
+     *
+     * @param submission submits the tasks, on the timer thread
+     * @param delayMillis the delay in milliseconds
+     */
+    public void schedule(Runnable submission, long delayMillis) {
+        outstandingTasks.incrementAndGet();
+        try {
+            getTimerWheel().schedule(() -> {
+                try {
+                    submission.run();
+                } finally {
+                    taskFinished();
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (IllegalStateException e) {
+            taskFinished();
+            throw new RejectedExecutionException("The executor service has been shut down", e);
+        }
+    }
+
+    /**
+     * Gets the number of submissions waiting for their delay.
+     *
+     * @return the number of scheduled submissions
+     */
+    public synchronized int getScheduledCount() {
+        return timerWheel != null ? timerWheel.getPendingCount() : 0;
+    }
+
+    private synchronized TimerWheel getTimerWheel() {
+        if (timerWheel == null) {
+            if (isShutdown()) {
+                throw new IllegalStateException("The executor service has been shut down");
+            }
+            timerWheel = new TimerWheel("crawl-timer", TIMER_TICK_MILLIS, TIMER_TICKS_PER_WHEEL);
+        }
+        return timerWheel;
+    }
+
+    private List<Runnable> stopTimerWheel() {
+        TimerWheel stopping;
+        synchronized (this) {
+            stopping = timerWheel;
+        }
+        // Not holding the lock, as a submission running on the timer thread may be scheduling another
+        return stopping != null ? stopping.stop() : new ArrayList<>();
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        if (callable instanceof HostTask) {
+            HostTask hostTask = (HostTask) callable;
+            return new HostFutureTask<>(callable, hostTask.getHost(), hostTask.getFrontierEntry());
+        }
+        return super.newTaskFor(callable);
+    }
+
+    private static String getHost(Runnable command) {
+        String host = command instanceof HostTask ? ((HostTask) command).getHost() : null;
+        return host == null ? UNKNOWN_HOST : host;
+    }
+
+    private void taskFinished() {
+        if (outstandingTasks.decrementAndGet() == 0) {
+            synchronized (quiescenceLock) {
+                quiescenceLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits until there are no outstanding tasks.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitQuiescence() throws InterruptedException {
+        synchronized (quiescenceLock) {
+            while (outstandingTasks.get() > 0) {
+                quiescenceLock.wait();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of tasks that have been submitted and have not yet finished.
+     *
+     * @return the number of outstanding tasks
+     */
+    public int getOutstandingTaskCount() {
+        return outstandingTasks.get();
+    }
+
+    @Override
+    public void shutdown() {
+        stopTimerWheel();
+        executorService.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> abandoned = stopTimerWheel();
+        if (hostScheduler != null) {
+            abandoned.addAll(hostScheduler.drain());
+        }
+        abandoned.addAll(executorService.shutdownNow());
+        return abandoned;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return executorService.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return executorService.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executorService.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Future for a submitted host task, which keeps the host and frontier entry of the task.
+     */
+    private static final class HostFutureTask<T> extends FutureTask<T> implements HostTask {
+
+        private final String host;
+        private final FrontierEntry entry;
+
+        HostFutureTask(Callable<T> callable, String host, FrontierEntry entry) {
+            super(callable);
+            this.host = host;
+            this.entry = entry;
+        }
+
+        @Override
+        public String getHost() {
+            return host;
+        }
+
+        @Override
+        public FrontierEntry getFrontierEntry() {
+            return entry;
+        }
+    }
+}
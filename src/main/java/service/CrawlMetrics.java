@@ -0,0 +1,425 @@
+package service;
+
+import frontier.Frontier;
+import http.CachingDnsResolver;
+import http.HttpClient;
+import http.PageCache;
+import http.WebPageParser;
+import metrics.Histogram;
+import metrics.ProcessingMetrics;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnPoolControl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sitemap.Sitemap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads the measurements that the parts of a crawl keep, so they can be watched while the crawl runs.
+ *
+ * The HTTP client, the parser, the URL processors, the frontier and the sitemap each keep their own
+ * counters and histograms.  This class only reads them, when JMX or the stats endpoint asks, so
+ * publishing them costs the crawl nothing.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class CrawlMetrics implements CrawlMetricsMXBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CrawlMetrics.class);
+
+    static final String OBJECT_NAME = "webcrawler:type=CrawlMetrics";
+
+    private final ProcessingMetrics processingMetrics;
+    private final WebPageParser webPageParser;
+    private final HttpClient httpClient;
+    private final Frontier frontier;
+    private final Sitemap sitemap;
+    private final CrawlExecutorService executorService;
+    private final ConnPoolControl<HttpRoute> connectionPool;
+    private final CrawlPipeline crawlPipeline;
+    private final CachingDnsResolver dnsResolver;
+
+    /**
+     * Constructor.
+     *
+     * @param processingMetrics the measurements of the URL processors
+     * @param webPageParser the parser, and through it the HTTP client and page cache
+     * @param frontier the frontier
+     * @param sitemap the sitemap
+     * @param executorService runs the URL processors
+     * @param connectionPool the pool of HTTP connections, or null if it is not known
+     */
+    public CrawlMetrics(ProcessingMetrics processingMetrics, WebPageParser webPageParser, Frontier frontier,
+                        Sitemap sitemap, CrawlExecutorService executorService, ConnPoolControl<HttpRoute> connectionPool) {
+        this(processingMetrics, webPageParser, frontier, sitemap, executorService, connectionPool, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param processingMetrics the measurements of the URL processors
+     * @param webPageParser the parser, and through it the HTTP client and page cache
+     * @param frontier the frontier
+     * @param sitemap the sitemap
+     * @param executorService runs the URL processors, or the fetchers of a pipelined crawl
+     * @param connectionPool the pool of HTTP connections, or null if it is not known
+     * @param crawlPipeline the stages of a pipelined crawl, or null if the crawl is not pipelined
+     */
+    public CrawlMetrics(ProcessingMetrics processingMetrics, WebPageParser webPageParser, Frontier frontier,
+                        Sitemap sitemap, CrawlExecutorService executorService, ConnPoolControl<HttpRoute> connectionPool,
+                        CrawlPipeline crawlPipeline) {
+        this(processingMetrics, webPageParser, frontier, sitemap, executorService, connectionPool, crawlPipeline, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param processingMetrics the measurements of the URL processors
+     * @param webPageParser the parser, and through it the HTTP client and page cache
+     * @param frontier the frontier
+     * @param sitemap the sitemap
+     * @param executorService runs the URL processors, or the fetchers of a pipelined crawl
+     * @param connectionPool the pool of HTTP connections, or null if it is not known
+     * @param crawlPipeline the stages of a pipelined crawl, or null if the crawl is not pipelined
+     * @param dnsResolver resolves the hosts for the connections, or null if the crawl does not cache them
+     */
+    public CrawlMetrics(ProcessingMetrics processingMetrics, WebPageParser webPageParser, Frontier frontier,
+                        Sitemap sitemap, CrawlExecutorService executorService, ConnPoolControl<HttpRoute> connectionPool,
+                        CrawlPipeline crawlPipeline, CachingDnsResolver dnsResolver) {
+        this.crawlPipeline = crawlPipeline;
+        this.dnsResolver = dnsResolver;
+        this.processingMetrics = processingMetrics;
+        this.webPageParser = webPageParser;
+        this.httpClient = webPageParser.getHttpClient();
+        this.frontier = frontier;
+        this.sitemap = sitemap;
+        this.executorService = executorService;
+        this.connectionPool = connectionPool;
+    }
+
+    /**
+     * Publishes the metrics through the platform MBean server, replacing those of an earlier crawl.
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            LOGGER.warn("Could not publish the crawl metrics through JMX.", e);
+        }
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server, if they are still the ones published.
+     */
+    public void unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            LOGGER.warn("Could not remove the crawl metrics from JMX.", e);
+        }
+    }
+
+    @Override
+    public long getPagesProcessed() {
+        return processingMetrics.getPagesProcessed();
+    }
+
+    @Override
+    public double getPagesPerSecond() {
+        return processingMetrics.getPagesPerSecond();
+    }
+
+    @Override
+    public double getPageTimeP50Millis() {
+        return millis(processingMetrics.getPageTime().getPercentile(50));
+    }
+
+    @Override
+    public double getPageTimeP99Millis() {
+        return millis(processingMetrics.getPageTime().getPercentile(99));
+    }
+
+    @Override
+    public double getFetchLatencyP50Millis() {
+        return millis(httpClient.getFetchLatency().getPercentile(50));
+    }
+
+    @Override
+    public double getFetchLatencyP99Millis() {
+        return millis(httpClient.getFetchLatency().getPercentile(99));
+    }
+
+    @Override
+    public double getFetchLatencyMaxMillis() {
+        return millis(httpClient.getFetchLatency().getMax());
+    }
+
+    @Override
+    public double getPermitWaitP99Millis() {
+        return millis(httpClient.getPermitWait().getPercentile(99));
+    }
+
+    @Override
+    public double getParseTimeP50Millis() {
+        return millis(webPageParser.getParseTime().getPercentile(50));
+    }
+
+    @Override
+    public double getParseTimeP99Millis() {
+        return millis(webPageParser.getParseTime().getPercentile(99));
+    }
+
+    @Override
+    public long getBytesDownloaded() {
+        return httpClient.getBytesDownloaded();
+    }
+
+    @Override
+    public int getInFlightRequests() {
+        return httpClient.getInFlightRequests();
+    }
+
+    @Override
+    public int getLeasedConnections() {
+        return connectionPool != null ? connectionPool.getTotalStats().getLeased() : 0;
+    }
+
+    /**
+     * Gets the number of requests waiting for a connection from the pool.
+     *
+     * @return the number of waiting requests
+     */
+    @Override
+    public int getPendingConnectionLeases() {
+        return connectionPool != null ? connectionPool.getTotalStats().getPending() : 0;
+    }
+
+    @Override
+    public Map<String, Long> getStatusCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        httpClient.getStatusCounts().forEach((statusCode, count) -> counts.put(String.valueOf(statusCode), count));
+        return counts;
+    }
+
+    @Override
+    public long getFailureCount() {
+        return httpClient.getFailureCount();
+    }
+
+    /**
+     * Gets the number of pages that were not downloaded because they were not HTML or were too large.
+     *
+     * @return the number of skipped pages
+     */
+    @Override
+    public long getSkippedPages() {
+        return httpClient.getSkippedCount();
+    }
+
+    @Override
+    public long getTruncatedPages() {
+        return httpClient.getTruncatedCount();
+    }
+
+    @Override
+    public long getTimeoutCount() {
+        return httpClient.getTimeoutCount();
+    }
+
+    @Override
+    public long getLinksExtracted() {
+        return webPageParser.getLinksExtracted();
+    }
+
+    @Override
+    public long getOffDomainLinks() {
+        return processingMetrics.getOffDomainLinks();
+    }
+
+    @Override
+    public double getDuplicateRate() {
+        return frontier.getDuplicateRate();
+    }
+
+    @Override
+    public long getQueueDepth() {
+        return frontier.getQueueDepth();
+    }
+
+    @Override
+    public long getDepthLimitedLinks() {
+        return frontier.getDepthLimitedCount();
+    }
+
+    @Override
+    public long getBudgetLimitedLinks() {
+        return frontier.getBudgetLimitedCount();
+    }
+
+    @Override
+    public long getSpilledEntries() {
+        return frontier.getSpilledCount();
+    }
+
+    @Override
+    public int getOutstandingTasks() {
+        return executorService.getOutstandingTaskCount();
+    }
+
+    @Override
+    public int getParseQueueSize() {
+        return crawlPipeline != null ? crawlPipeline.getParseQueueSize() : 0;
+    }
+
+    @Override
+    public int getLinkQueueSize() {
+        return crawlPipeline != null ? crawlPipeline.getLinkQueueSize() : 0;
+    }
+
+    @Override
+    public long getFetcherBlockedMillis() {
+        return crawlPipeline != null ? crawlPipeline.getFetcherBlockedMillis() : 0;
+    }
+
+    @Override
+    public long getParserBlockedMillis() {
+        return crawlPipeline != null ? crawlPipeline.getParserBlockedMillis() : 0;
+    }
+
+    @Override
+    public long getSitemapPages() {
+        return sitemap.getPageCount();
+    }
+
+    @Override
+    public long getAlreadyProcessedCount() {
+        return sitemap.getAlreadyProcessedCount();
+    }
+
+    @Override
+    public long getNotModifiedPages() {
+        PageCache pageCache = webPageParser.getPageCache();
+        return pageCache != null ? pageCache.getNotModifiedCount() : 0;
+    }
+
+    @Override
+    public long getDnsCacheHits() {
+        return dnsResolver != null ? dnsResolver.getHits() : 0;
+    }
+
+    @Override
+    public long getDnsCacheMisses() {
+        return dnsResolver != null ? dnsResolver.getMisses() : 0;
+    }
+
+    @Override
+    public double getDnsResolveP99Millis() {
+        return dnsResolver != null ? millis(dnsResolver.getResolveTime().getPercentile(99)) : 0;
+    }
+
+    /**
+     * Formats the metrics as a JSON object, grouped by the stage of the crawl they measure.
+     *
+     * @return the JSON
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"pages\":{\"processed\":").append(getPagesProcessed())
+                .append(",\"perSecond\":").append(format(getPagesPerSecond()))
+                .append(",\"time\":").append(histogramJson(processingMetrics.getPageTime())).append('}');
+        json.append(",\"fetch\":{\"latency\":").append(histogramJson(httpClient.getFetchLatency()))
+                .append(",\"permitWait\":").append(histogramJson(httpClient.getPermitWait()))
+                .append(",\"bytesDownloaded\":").append(getBytesDownloaded())
+                .append(",\"inFlight\":").append(getInFlightRequests())
+                .append(",\"leasedConnections\":").append(getLeasedConnections())
+                .append(",\"pendingConnectionLeases\":").append(getPendingConnectionLeases())
+                .append(",\"failures\":").append(getFailureCount())
+                .append(",\"timeouts\":").append(getTimeoutCount())
+                .append(",\"skipped\":").append(getSkippedPages())
+                .append(",\"truncated\":").append(getTruncatedPages())
+                .append(",\"notModified\":").append(getNotModifiedPages())
+                .append(",\"statusCodes\":{");
+        String separator = "";
+        for (Map.Entry<String, Long> statusCount : getStatusCounts().entrySet()) {
+            json.append(separator).append('"').append(statusCount.getKey()).append("\":").append(statusCount.getValue());
+            separator = ",";
+        }
+        json.append("}}");
+        json.append(",\"parse\":{\"time\":").append(histogramJson(webPageParser.getParseTime()))
+                .append(",\"links\":").append(getLinksExtracted())
+                .append(",\"images\":").append(webPageParser.getImagesExtracted())
+                .append(",\"offDomainLinks\":").append(getOffDomainLinks()).append('}');
+        json.append(",\"frontier\":{\"accepted\":").append(frontier.getAcceptedCount())
+                .append(",\"duplicates\":").append(frontier.getDuplicateCount())
+                .append(",\"duplicateRate\":").append(format(getDuplicateRate()))
+                .append(",\"queueDepth\":").append(getQueueDepth())
+                .append(",\"depthLimited\":").append(getDepthLimitedLinks())
+                .append(",\"budgetLimited\":").append(getBudgetLimitedLinks())
+                .append(",\"spilled\":").append(getSpilledEntries())
+                .append(",\"outstandingTasks\":").append(getOutstandingTasks()).append('}');
+        if (crawlPipeline != null) {
+            json.append(",\"pipeline\":{\"parseQueue\":").append(getParseQueueSize())
+                    .append(",\"linkQueue\":").append(getLinkQueueSize())
+                    .append(",\"outstandingPages\":").append(crawlPipeline.getOutstandingPageCount())
+                    .append(",\"fetcherBlockedMillis\":").append(getFetcherBlockedMillis())
+                    .append(",\"parserBlockedMillis\":").append(getParserBlockedMillis())
+                    .append(",\"linkBatches\":").append(crawlPipeline.getLinkBatches()).append('}');
+        }
+        if (dnsResolver != null) {
+            json.append(",\"dns\":{\"hits\":").append(getDnsCacheHits())
+                    .append(",\"misses\":").append(getDnsCacheMisses())
+                    .append(",\"sharedLookups\":").append(dnsResolver.getSharedLookups())
+                    .append(",\"prefetches\":").append(dnsResolver.getPrefetches())
+                    .append(",\"failures\":").append(dnsResolver.getFailures())
+                    .append(",\"resolveTime\":").append(histogramJson(dnsResolver.getResolveTime())).append('}');
+        }
+        json.append(",\"sitemap\":{\"pages\":").append(getSitemapPages())
+                .append(",\"links\":").append(sitemap.getLinkCount())
+                .append(",\"alreadyProcessed\":").append(getAlreadyProcessedCount()).append('}');
+        return json.append('}').toString();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CrawlMetrics{pages=%d, pagesPerSecond=%.1f, pageTime=%s, fetchLatency=%s, "
+                        + "parseTime=%s, permitWait=%s, bytesDownloaded=%d, statusCodes=%s, failures=%d, timeouts=%d, "
+                        + "skipped=%d, truncated=%d, alreadyProcessed=%d}",
+                getPagesProcessed(), getPagesPerSecond(), processingMetrics.getPageTime().toMillisString(),
+                httpClient.getFetchLatency().toMillisString(), webPageParser.getParseTime().toMillisString(),
+                httpClient.getPermitWait().toMillisString(), getBytesDownloaded(), getStatusCounts(),
+                getFailureCount(), getTimeoutCount(), getSkippedPages(), getTruncatedPages(), getAlreadyProcessedCount());
+    }
+
+    private static String histogramJson(Histogram histogram) {
+        return "{\"count\":" + histogram.getCount()
+                + ",\"meanMillis\":" + format(histogram.getMean() / 1e6)
+                + ",\"p50Millis\":" + format(millis(histogram.getPercentile(50)))
+                + ",\"p90Millis\":" + format(millis(histogram.getPercentile(90)))
+                + ",\"p99Millis\":" + format(millis(histogram.getPercentile(99)))
+                + ",\"maxMillis\":" + format(millis(histogram.getMax())) + "}";
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+}
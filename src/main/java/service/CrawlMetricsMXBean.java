@@ -0,0 +1,85 @@
+package service;
+
+import java.util.Map;
+
+/**
+ * The measurements of a running crawl, as published through JMX.  The times are in milliseconds.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public interface CrawlMetricsMXBean {
+
+    long getPagesProcessed();
+
+    double getPagesPerSecond();
+
+    double getPageTimeP50Millis();
+
+    double getPageTimeP99Millis();
+
+    double getFetchLatencyP50Millis();
+
+    double getFetchLatencyP99Millis();
+
+    double getFetchLatencyMaxMillis();
+
+    double getPermitWaitP99Millis();
+
+    double getParseTimeP50Millis();
+
+    double getParseTimeP99Millis();
+
+    long getBytesDownloaded();
+
+    int getInFlightRequests();
+
+    int getLeasedConnections();
+
+    int getPendingConnectionLeases();
+
+    Map<String, Long> getStatusCounts();
+
+    long getFailureCount();
+
+    long getTimeoutCount();
+
+    long getSkippedPages();
+
+    long getTruncatedPages();
+
+    long getLinksExtracted();
+
+    long getOffDomainLinks();
+
+    double getDuplicateRate();
+
+    long getQueueDepth();
+
+    long getDepthLimitedLinks();
+
+    long getBudgetLimitedLinks();
+
+    long getSpilledEntries();
+
+    int getOutstandingTasks();
+
+    int getParseQueueSize();
+
+    int getLinkQueueSize();
+
+    long getFetcherBlockedMillis();
+
+    long getParserBlockedMillis();
+
+    long getSitemapPages();
+
+    long getAlreadyProcessedCount();
+
+    long getNotModifiedPages();
+
+    long getDnsCacheHits();
+
+    long getDnsCacheMisses();
+
+    double getDnsResolveP99Millis();
+}
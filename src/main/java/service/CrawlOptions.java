@@ -0,0 +1,648 @@
+package service;
+
+import frontier.CrawlOrder;
+import frontier.Frontier;
+import http.HttpClient;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The command line options of a crawl.
+ *
+ * Usage: [--mode=fixed|virtual] [--fetcher=blocking|async] [--threads=N] [--connections=N]
+ * [--bloom-filter=EXPECTED_URLS]
+ * [--host-concurrency=N] [--host-delay=MILLIS] [--strip-params=name,prefix*,...] [--sort-params]
+ * [--sitemap-dir=DIRECTORY] [--cache-file=FILE] [--checkpoint-file=FILE [--resume]]
+ * [--xml-sitemap=DIRECTORY] [--jsonl=FILE] [--csv=FILE] [--gzip] [--stats-port=PORT]
+ * [--max-page-size=BYTES] [--connect-timeout=MILLIS] [--socket-timeout=MILLIS] [--lease-timeout=MILLIS]
+ * [--request-timeout=MILLIS] [--max-depth=N] [--max-pages=N] [--order=bfs|shallow|segments|inlinks]
+ * [--pipeline [--parsers=N] [--pipeline-queue=N]] [--frontier-memory=PAGES [--spill-dir=DIRECTORY]]
+ * [--adaptive [--min-concurrency=N] [--max-concurrency=N]] [--retries=N [--retry-delay=MILLIS]]
+ * [--circuit-breaker=FAILURES [--circuit-open=MILLIS]] [--dns-ttl=SECONDS] [--events=FILE] startUrl
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class CrawlOptions {
+
+    static final int DEFAULT_NUMBER_OF_THREADS = 10;
+    static final int DEFAULT_NUMBER_OF_CONNECTIONS = 10;
+    static final int DEFAULT_HOST_CONCURRENCY = 4;
+    static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+    static final int DEFAULT_SOCKET_TIMEOUT_MILLIS = 30000;
+    static final int DEFAULT_LEASE_TIMEOUT_MILLIS = 30000;
+    static final int DEFAULT_REQUEST_TIMEOUT_MILLIS = 60000;
+    static final int DEFAULT_MIN_CONCURRENCY = 2;
+    static final int DEFAULT_MAX_CONCURRENCY = 128;
+    static final int DEFAULT_RETRY_DELAY_MILLIS = 500;
+    static final int DEFAULT_CIRCUIT_OPEN_MILLIS = 5000;
+    static final int DEFAULT_DNS_TTL_SECONDS = 300;
+
+    public static final String USAGE =
+            "Usage: [--mode=fixed|virtual] [--fetcher=blocking|async] [--threads=N] [--connections=N]"
+                    + " [--bloom-filter=EXPECTED_URLS]"
+                    + " [--host-concurrency=N] [--host-delay=MILLIS]"
+                    + " [--strip-params=name,prefix*,...] [--sort-params] [--sitemap-dir=DIRECTORY]"
+                    + " [--cache-file=FILE] [--checkpoint-file=FILE [--resume]]"
+                    + " [--xml-sitemap=DIRECTORY] [--jsonl=FILE] [--csv=FILE] [--gzip] [--stats-port=PORT]"
+                    + " [--max-page-size=BYTES] [--connect-timeout=MILLIS] [--socket-timeout=MILLIS]"
+                    + " [--lease-timeout=MILLIS] [--request-timeout=MILLIS]"
+                    + " [--max-depth=N] [--max-pages=N] [--order=bfs|shallow|segments|inlinks]"
+                    + " [--pipeline [--parsers=N] [--pipeline-queue=N]]"
+                    + " [--frontier-memory=PAGES [--spill-dir=DIRECTORY]]"
+                    + " [--adaptive [--min-concurrency=N] [--max-concurrency=N]]"
+                    + " [--retries=N [--retry-delay=MILLIS]] [--circuit-breaker=FAILURES [--circuit-open=MILLIS]]"
+                    + " [--dns-ttl=SECONDS] [--events=FILE] startUrl";
+
+    private String startUrl;
+    private ExecutionMode executionMode = ExecutionMode.FIXED_POOL;
+    private FetcherMode fetcherMode = FetcherMode.BLOCKING;
+    private int numberOfThreads = DEFAULT_NUMBER_OF_THREADS;
+    private int numberOfConnections = DEFAULT_NUMBER_OF_CONNECTIONS;
+    private int bloomFilterCapacity;
+    private int hostConcurrency = DEFAULT_HOST_CONCURRENCY;
+    private int hostDelayMillis;
+    private List<String> strippedQueryParameters = Collections.emptyList();
+    private boolean sortQueryParameters;
+    private String sitemapDirectory;
+    private String cacheFile;
+    private String checkpointFile;
+    private boolean resume;
+    private String xmlSitemapDirectory;
+    private String jsonLinesFile;
+    private String csvFile;
+    private boolean gzipOutput;
+    private int statsPort = -1;
+    private long maxPageBytes = HttpClient.DEFAULT_MAX_PAGE_BYTES;
+    private int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    private int socketTimeoutMillis = DEFAULT_SOCKET_TIMEOUT_MILLIS;
+    private int leaseTimeoutMillis = DEFAULT_LEASE_TIMEOUT_MILLIS;
+    private int requestTimeoutMillis = DEFAULT_REQUEST_TIMEOUT_MILLIS;
+    private int maxDepth = Frontier.UNLIMITED_DEPTH;
+    private long maxPages = Frontier.UNLIMITED_PAGES;
+    private CrawlOrder crawlOrder = CrawlOrder.BREADTH_FIRST;
+    private boolean pipelined;
+    private int parserThreads = Runtime.getRuntime().availableProcessors();
+    private int pipelineQueueCapacity;
+    private int frontierMemoryPages;
+    private String spillDirectory;
+    private boolean adaptive;
+    private int minConcurrency = DEFAULT_MIN_CONCURRENCY;
+    private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+    private int maxRetries;
+    private int retryDelayMillis = DEFAULT_RETRY_DELAY_MILLIS;
+    private int circuitBreakerFailures;
+    private int circuitOpenMillis = DEFAULT_CIRCUIT_OPEN_MILLIS;
+    private int dnsTtlSeconds = DEFAULT_DNS_TTL_SECONDS;
+    private String eventsFile;
+
+    /**
+     * Parses the command line arguments.
+     *
+     * @param args the command line arguments
+     * @return the options
+     * @throws IllegalArgumentException if the arguments are not valid
+     */
+    public static CrawlOptions parse(String[] args) {
+        CrawlOptions options = new CrawlOptions();
+
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                options.startUrl = arg;
+                continue;
+            }
+
+            int equals = arg.indexOf('=');
+            String name = equals < 0 ? arg.substring(2) : arg.substring(2, equals);
+            String value = equals < 0 ? "" : arg.substring(equals + 1);
+
+            switch (name) {
+                case "mode":
+                    options.executionMode = ExecutionMode.fromOptionName(value);
+                    break;
+                case "fetcher":
+                    options.fetcherMode = FetcherMode.fromOptionName(value);
+                    break;
+                case "threads":
+                    options.numberOfThreads = parsePositiveInt(name, value);
+                    break;
+                case "connections":
+                    options.numberOfConnections = parsePositiveInt(name, value);
+                    break;
+                case "bloom-filter":
+                    options.bloomFilterCapacity = parsePositiveInt(name, value);
+                    break;
+                case "host-concurrency":
+                    options.hostConcurrency = parsePositiveInt(name, value);
+                    break;
+                case "host-delay":
+                    options.hostDelayMillis = parseNonNegativeInt(name, value);
+                    break;
+                case "strip-params":
+                    options.strippedQueryParameters = Arrays.asList(value.split(","));
+                    break;
+                case "sort-params":
+                    options.sortQueryParameters = true;
+                    break;
+                case "sitemap-dir":
+                    if (value.isEmpty()) {
+                        throw new IllegalArgumentException("The value of --" + name + " must be a directory.");
+                    }
+                    options.sitemapDirectory = value;
+                    break;
+                case "cache-file":
+                    if (value.isEmpty()) {
+                        throw new IllegalArgumentException("The value of --" + name + " must be a file.");
+                    }
+                    options.cacheFile = value;
+                    break;
+                case "checkpoint-file":
+                    if (value.isEmpty()) {
+                        throw new IllegalArgumentException("The value of --" + name + " must be a file.");
+                    }
+                    options.checkpointFile = value;
+                    break;
+                case "resume":
+                    options.resume = true;
+                    break;
+                case "xml-sitemap":
+                    options.xmlSitemapDirectory = requireValue(name, value, "a directory");
+                    break;
+                case "jsonl":
+                    options.jsonLinesFile = requireValue(name, value, "a file");
+                    break;
+                case "csv":
+                    options.csvFile = requireValue(name, value, "a file");
+                    break;
+                case "gzip":
+                    options.gzipOutput = true;
+                    break;
+                case "stats-port":
+                    options.statsPort = parseNonNegativeInt(name, value);
+                    break;
+                case "max-page-size":
+                    options.maxPageBytes = parsePositiveInt(name, value);
+                    break;
+                case "connect-timeout":
+                    options.connectTimeoutMillis = parseNonNegativeInt(name, value);
+                    break;
+                case "socket-timeout":
+                    options.socketTimeoutMillis = parseNonNegativeInt(name, value);
+                    break;
+                case "lease-timeout":
+                    options.leaseTimeoutMillis = parseNonNegativeInt(name, value);
+                    break;
+                case "request-timeout":
+                    options.requestTimeoutMillis = parseNonNegativeInt(name, value);
+                    break;
+                case "max-depth":
+                    options.maxDepth = parseNonNegativeInt(name, value);
+                    break;
+                case "max-pages":
+                    options.maxPages = parsePositiveInt(name, value);
+                    break;
+                case "order":
+                    options.crawlOrder = CrawlOrder.fromOptionName(value);
+                    break;
+                case "pipeline":
+                    options.pipelined = true;
+                    break;
+                case "parsers":
+                    options.parserThreads = parsePositiveInt(name, value);
+                    break;
+                case "pipeline-queue":
+                    options.pipelineQueueCapacity = parsePositiveInt(name, value);
+                    break;
+                case "frontier-memory":
+                    options.frontierMemoryPages = parsePositiveInt(name, value);
+                    break;
+                case "spill-dir":
+                    if (value.isEmpty()) {
+                        throw new IllegalArgumentException("The value of --" + name + " must be a directory.");
+                    }
+                    options.spillDirectory = value;
+                    break;
+                case "adaptive":
+                    options.adaptive = true;
+                    break;
+                case "min-concurrency":
+                    options.minConcurrency = parsePositiveInt(name, value);
+                    break;
+                case "max-concurrency":
+                    options.maxConcurrency = parsePositiveInt(name, value);
+                    break;
+                case "retries":
+                    options.maxRetries = parseNonNegativeInt(name, value);
+                    break;
+                case "retry-delay":
+                    options.retryDelayMillis = parsePositiveInt(name, value);
+                    break;
+                case "circuit-breaker":
+                    options.circuitBreakerFailures = parseNonNegativeInt(name, value);
+                    break;
+                case "circuit-open":
+                    options.circuitOpenMillis = parsePositiveInt(name, value);
+                    break;
+                case "dns-ttl":
+                    options.dnsTtlSeconds = parseNonNegativeInt(name, value);
+                    break;
+                case "events":
+                    options.eventsFile = requireValue(name, value, "a file");
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        if (options.resume && options.checkpointFile == null) {
+            throw new IllegalArgumentException("--resume needs the --checkpoint-file of the crawl to resume.");
+        }
+        if (options.fetcherMode == FetcherMode.ASYNC && options.pipelined) {
+            throw new IllegalArgumentException("--fetcher=async already parses the pages on threads of their own,"
+                    + " so it cannot be used with --pipeline.");
+        }
+        if (options.minConcurrency > options.maxConcurrency) {
+            throw new IllegalArgumentException("--min-concurrency must not be more than --max-concurrency.");
+        }
+        if (options.startUrl == null) {
+            throw new IllegalArgumentException("Please provide an application argument for the URL to start crawling.");
+        }
+        try {
+            new URI(options.startUrl);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("The synatx of the URL to crawl is not valid: " + options.startUrl);
+        }
+
+        return options;
+    }
+
+    private static String requireValue(String name, String value, String description) {
+        if (value.isEmpty()) {
+            throw new IllegalArgumentException("The value of --" + name + " must be " + description + ".");
+        }
+        return value;
+    }
+
+    private static int parsePositiveInt(String name, String value) {
+        try {
+            int number = Integer.parseInt(value);
+            if (number > 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("The value of --" + name + " must be a positive number: " + value);
+    }
+
+    private static int parseNonNegativeInt(String name, String value) {
+        try {
+            int number = Integer.parseInt(value);
+            if (number >= 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("The value of --" + name + " must not be negative: " + value);
+    }
+
+    public String getStartUrl() {
+        return startUrl;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    public FetcherMode getFetcherMode() {
+        return fetcherMode;
+    }
+
+    public int getNumberOfThreads() {
+        return numberOfThreads;
+    }
+
+    public int getNumberOfConnections() {
+        return numberOfConnections;
+    }
+
+    /**
+     * Gets the number of URLs to size the frontier's Bloom filter for.
+     *
+     * @return the expected number of URLs, or 0 to use an exact seen set
+     */
+    public int getBloomFilterCapacity() {
+        return bloomFilterCapacity;
+    }
+
+    /**
+     * Gets the query parameters to remove from URLs before they are crawled.
+     *
+     * @return the parameter names, where a trailing '*' matches a prefix
+     */
+    public List<String> getStrippedQueryParameters() {
+        return strippedQueryParameters;
+    }
+
+    public boolean isSortQueryParameters() {
+        return sortQueryParameters;
+    }
+
+    /**
+     * Gets the directory to keep the sitemap in, in memory mapped files rather than on the heap.  A sitemap left
+     * in the directory by an earlier crawl is only kept if the crawl is resumed.
+     *
+     * @return the directory, or null to keep the sitemap on the heap
+     */
+    public String getSitemapDirectory() {
+        return sitemapDirectory;
+    }
+
+    /**
+     * Gets the file that the pages of previous crawls are cached in, so unchanged pages are not downloaded again.
+     *
+     * @return the file, or null to not cache pages
+     */
+    public String getCacheFile() {
+        return cacheFile;
+    }
+
+    /**
+     * Gets the file that the progress of the crawl is journalled to.
+     *
+     * @return the file, or null to not journal the crawl
+     */
+    public String getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    /**
+     * Indicates whether the crawl carries on from its checkpoint file, rather than starting again.
+     *
+     * @return true to resume the crawl
+     */
+    public boolean isResume() {
+        return resume;
+    }
+
+    /**
+     * Gets the directory to write the sitemap to in the sitemaps.org XML format.
+     *
+     * @return the directory, or null to not write an XML sitemap
+     */
+    public String getXmlSitemapDirectory() {
+        return xmlSitemapDirectory;
+    }
+
+    /**
+     * Gets the file to write the pages and their links to as JSON Lines.
+     *
+     * @return the file, or null to not write JSON Lines
+     */
+    public String getJsonLinesFile() {
+        return jsonLinesFile;
+    }
+
+    /**
+     * Gets the file to write the links to as a CSV edge list.
+     *
+     * @return the file, or null to not write CSV
+     */
+    public String getCsvFile() {
+        return csvFile;
+    }
+
+    public boolean isGzipOutput() {
+        return gzipOutput;
+    }
+
+    /**
+     * Gets the local port that the crawl metrics are served from while the crawl runs.
+     *
+     * @return the port, 0 for any free port, or -1 to not serve the metrics
+     */
+    public int getStatsPort() {
+        return statsPort;
+    }
+
+    /**
+     * Gets the most bytes of a page to download.  Larger pages are skipped if they say how large they are,
+     * and cut off otherwise.
+     *
+     * @return the maximum page size in bytes
+     */
+    public long getMaxPageBytes() {
+        return maxPageBytes;
+    }
+
+    /**
+     * Gets the time allowed to open a connection to a host.
+     *
+     * @return the connect timeout in milliseconds, or 0 for no limit
+     */
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    /**
+     * Gets the time allowed between two packets of a response.
+     *
+     * @return the socket timeout in milliseconds, or 0 for no limit
+     */
+    public int getSocketTimeoutMillis() {
+        return socketTimeoutMillis;
+    }
+
+    /**
+     * Gets the time allowed to wait for a connection from the pool.
+     *
+     * @return the lease timeout in milliseconds, or 0 for no limit
+     */
+    public int getLeaseTimeoutMillis() {
+        return leaseTimeoutMillis;
+    }
+
+    /**
+     * Gets the total time allowed for a request, from sending it to reading the whole page.
+     *
+     * @return the request timeout in milliseconds, or 0 for no limit
+     */
+    public int getRequestTimeoutMillis() {
+        return requestTimeoutMillis;
+    }
+
+    /**
+     * Gets the most links to follow from the start URL, where the start URL is at depth 0.
+     *
+     * @return the maximum depth
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Gets the most pages to process, in the crawl order.
+     *
+     * @return the page budget
+     */
+    public long getMaxPages() {
+        return maxPages;
+    }
+
+    public CrawlOrder getCrawlOrder() {
+        return crawlOrder;
+    }
+
+    /**
+     * Indicates whether the pages are fetched, parsed and have their links processed by separate stages,
+     * rather than all on one thread.
+     *
+     * @return true for a pipelined crawl
+     */
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    /**
+     * Gets the number of threads that parse the pages of a pipelined crawl, or of one with the asynchronous
+     * fetcher.
+     *
+     * @return the number of parsers, by default the number of processors
+     */
+    public int getParserThreads() {
+        return parserThreads;
+    }
+
+    /**
+     * Gets the number of pages each queue between the stages of a pipelined crawl holds.
+     *
+     * @return the queue capacity, by default twice the number of parsers
+     */
+    public int getPipelineQueueCapacity() {
+        return pipelineQueueCapacity > 0 ? pipelineQueueCapacity : 2 * parserThreads;
+    }
+
+    /**
+     * Gets the most pages to keep queued in memory, beyond which the queued pages are spilled to disk.
+     *
+     * @return the number of pages, or 0 to keep every queued page in memory
+     */
+    public int getFrontierMemoryPages() {
+        return frontierMemoryPages;
+    }
+
+    /**
+     * Gets the directory to spill the queued pages to.
+     *
+     * @return the directory, or null for a temporary directory
+     */
+    public String getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * Indicates whether the number of requests in flight follows how the site responds, starting from the
+     * number of threads, rather than staying fixed.
+     *
+     * @return true for adaptive concurrency
+     */
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Gets the fewest requests in flight that adaptive concurrency backs off to.
+     *
+     * @return the minimum concurrency
+     */
+    public int getMinConcurrency() {
+        return minConcurrency;
+    }
+
+    /**
+     * Gets the most requests in flight that adaptive concurrency grows to.
+     *
+     * @return the maximum concurrency
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Gets the most times a page that could not be downloaded because of a transient failure, such as a
+     * timeout or a 503 Service Unavailable response, is tried again.
+     *
+     * @return the number of retries, 0 to not retry
+     */
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Gets the backoff before the first retry of a page, which doubles with each retry.
+     *
+     * @return the delay in milliseconds
+     */
+    public int getRetryDelayMillis() {
+        return retryDelayMillis;
+    }
+
+    /**
+     * Gets the number of transient failures in a row after which a host gets no requests for a while.
+     *
+     * @return the number of failures, 0 for no circuit breaker
+     */
+    public int getCircuitBreakerFailures() {
+        return circuitBreakerFailures;
+    }
+
+    /**
+     * Gets the time a host first gets no requests after its circuit breaker opens, which doubles each time
+     * the host fails again.
+     *
+     * @return the time in milliseconds
+     */
+    public int getCircuitOpenMillis() {
+        return circuitOpenMillis;
+    }
+
+    /**
+     * Gets the time the crawl caches the addresses of a host for, rather than leaving it to the JVM.
+     *
+     * @return the time in seconds, 0 to not cache them in the crawl
+     */
+    public int getDnsTtlSeconds() {
+        return dnsTtlSeconds;
+    }
+
+    /**
+     * Gets the file that what happened to each page is journalled to, as JSON lines.
+     *
+     * @return the file, or null to not journal the events
+     */
+    public String getEventsFile() {
+        return eventsFile;
+    }
+
+    /**
+     * Gets the maximum number of requests that may be made to one host at once.
+     *
+     * @return the maximum number of requests per host
+     */
+    public int getHostConcurrency() {
+        return hostConcurrency;
+    }
+
+    /**
+     * Gets the minimum time between starting two requests to the same host.
+     *
+     * @return the delay in milliseconds, 0 for no delay
+     */
+    public int getHostDelayMillis() {
+        return hostDelayMillis;
+    }
+}
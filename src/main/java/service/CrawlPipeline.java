@@ -0,0 +1,467 @@
+package service;
+
+import checkpoint.CrawlJournal;
+import exception.FailedToGetPageContentException;
+import frontier.Frontier;
+import frontier.FrontierEntry;
+import frontier.HostTask;
+import http.FetchedPage;
+import http.PageAssets;
+import http.WebPageParser;
+import metrics.CrawlEvent;
+import metrics.EventJournal;
+import metrics.ProcessingMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sitemap.Sitemap;
+import url.UrlNormaliser;
+import url.Urls;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Crawls pages in three stages connected by bounded queues, so that each stage can be sized for its work.
+ *
+ * The fetchers are the workers of the crawl executor service, sized to the network and scheduled per host
+ * as usual.  Each downloads a page into memory and hands it to the parse queue.  The parsers, sized to the
+ * cores, find the assets of each page and hand them to the link queue.  A single link processing thread
+ * takes the parsed pages in batches, adds them to the sitemap and offers their links to the frontier.
+ *
+ * The frontier and the sitemap are still used from more than one thread, so they must be thread safe:
+ * <ul>
+ * <li>A fetcher claims its page before downloading it, with {@link Frontier#startProcessing} for the page
+ * budget and {@link Sitemap#hasBeenProcessed}, and records the outcome with the {@link CrawlRetries}.</li>
+ * <li>A parser only calls {@link WebPageParser#parsePage}, and touches neither the frontier nor the sitemap.</li>
+ * <li>The link processing thread calls {@link Sitemap#addLinks} and {@link Frontier#offer}, journals the
+ * queued links and the completed page, and submits the fetches of the accepted links.</li>
+ * <li>The timer thread of the crawl executor service calls {@link Sitemap#release} for a page that is fetched
+ * again after a backoff, and submits its fetch.</li>
+ * </ul>
+ * Only the adding of pages to the sitemap and the offering of links to the frontier happen on one thread.
+ *
+ * The queues are bounded and the stages block when the next queue is full, so when the parsers fall
+ * behind the fetchers wait instead of buffering more pages in memory.  At most the queue capacities plus
+ * one page per thread are held at once.  The link stage never blocks on a queue, as it only submits new
+ * fetches to the executor service, so the stages cannot deadlock.
+ *
+ * With {@link CrawlRetries}, a page that could not be downloaded because of a transient failure stays
+ * outstanding and is fetched again after a backoff, rather than being handed to the parsers.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class CrawlPipeline implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CrawlPipeline.class);
+
+    private static final int LINK_BATCH_SIZE = 64;
+    private static final long STOP_TIMEOUT_MILLIS = 1000;
+
+    private final CrawlExecutorService fetchers;
+    private final Consumer<FrontierEntry> fetchSubmitter;
+    private final WebPageParser webPageParser;
+    private final Sitemap sitemap;
+    private final Frontier frontier;
+    private final UrlNormaliser urlNormaliser;
+    private final CrawlJournal crawlJournal;
+    private final ProcessingMetrics processingMetrics;
+    private final int parserCount;
+    private final CrawlRetries crawlRetries;
+
+    private final BlockingQueue<PageInProgress> parseQueue;
+    private final BlockingQueue<PageInProgress> linkQueue;
+    private final List<Thread> stageThreads = new ArrayList<>();
+    private final AtomicInteger outstandingPages = new AtomicInteger();
+    private final Object completionLock = new Object();
+
+    private final LongAdder fetcherBlockedNanos = new LongAdder();
+    private final LongAdder parserBlockedNanos = new LongAdder();
+    private final LongAdder linkBatches = new LongAdder();
+
+    /**
+     * Constructor.
+     *
+     * @param fetchers runs the page downloads, one task per page
+     * @param webPageParser downloads and parses the pages
+     * @param sitemap the sitemap
+     * @param frontier decides which of the links are processed
+     * @param urlNormaliser puts the links into canonical form
+     * @param crawlJournal records the queued links and the completed pages, so the crawl can be resumed
+     * @param processingMetrics measures the pages processed
+     * @param parserCount the number of parser threads
+     * @param queueCapacity the number of pages each of the queues between the stages holds
+     */
+    public CrawlPipeline(CrawlExecutorService fetchers, WebPageParser webPageParser, Sitemap sitemap,
+                         Frontier frontier, UrlNormaliser urlNormaliser, CrawlJournal crawlJournal,
+                         ProcessingMetrics processingMetrics, int parserCount, int queueCapacity) {
+        this(fetchers, null, webPageParser, sitemap, frontier, urlNormaliser, crawlJournal, processingMetrics,
+                parserCount, queueCapacity);
+    }
+
+    /**
+     * Constructor for a pipeline whose fetch tasks are queued by something other than the fetchers, such as a
+     * spilling frontier queue, which creates them with {@link #createFetchTask(FrontierEntry)}.
+     *
+     * @param fetchers runs the page downloads, one task per page
+     * @param fetchSubmitter queues the pages to fetch, or null to give them straight to the fetchers
+     * @param webPageParser downloads and parses the pages
+     * @param sitemap the sitemap
+     * @param frontier decides which of the links are processed
+     * @param urlNormaliser puts the links into canonical form
+     * @param crawlJournal records the queued links and the completed pages, so the crawl can be resumed
+     * @param processingMetrics measures the pages processed
+     * @param parserCount the number of parser threads
+     * @param queueCapacity the number of pages each of the queues between the stages holds
+     */
+    public CrawlPipeline(CrawlExecutorService fetchers, Consumer<FrontierEntry> fetchSubmitter,
+                         WebPageParser webPageParser, Sitemap sitemap, Frontier frontier, UrlNormaliser urlNormaliser,
+                         CrawlJournal crawlJournal, ProcessingMetrics processingMetrics, int parserCount,
+                         int queueCapacity) {
+        this(fetchers, fetchSubmitter, webPageParser, sitemap, frontier, urlNormaliser, crawlJournal,
+                processingMetrics, parserCount, queueCapacity, null);
+    }
+
+    /**
+     * Constructor for a pipeline that retries pages.
+     *
+     * @param fetchers runs the page downloads, one task per page
+     * @param fetchSubmitter queues the pages to fetch, or null to give them straight to the fetchers
+     * @param webPageParser downloads and parses the pages
+     * @param sitemap the sitemap
+     * @param frontier decides which of the links are processed
+     * @param urlNormaliser puts the links into canonical form
+     * @param crawlJournal records the queued links and the completed pages, so the crawl can be resumed
+     * @param processingMetrics measures the pages processed
+     * @param parserCount the number of parser threads
+     * @param queueCapacity the number of pages each of the queues between the stages holds
+     * @param crawlRetries decides whether a page that could not be downloaded is retried, or null to not retry
+     */
+    public CrawlPipeline(CrawlExecutorService fetchers, Consumer<FrontierEntry> fetchSubmitter,
+                         WebPageParser webPageParser, Sitemap sitemap, Frontier frontier, UrlNormaliser urlNormaliser,
+                         CrawlJournal crawlJournal, ProcessingMetrics processingMetrics, int parserCount,
+                         int queueCapacity, CrawlRetries crawlRetries) {
+        this.fetchers = fetchers;
+        this.fetchSubmitter = fetchSubmitter;
+        this.webPageParser = webPageParser;
+        this.sitemap = sitemap;
+        this.frontier = frontier;
+        this.urlNormaliser = urlNormaliser;
+        this.crawlJournal = crawlJournal;
+        this.processingMetrics = processingMetrics;
+        this.parserCount = parserCount;
+        this.crawlRetries = crawlRetries;
+        this.parseQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.linkQueue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    /**
+     * Starts the parser and link processing threads.
+     */
+    public synchronized void start() {
+        if (!stageThreads.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < parserCount; i++) {
+            stageThreads.add(startThread("parser-" + i, this::parse));
+        }
+        stageThreads.add(startThread("link-processor", this::processLinks));
+    }
+
+    /**
+     * Queues a page to be fetched, parsed and have its links processed.
+     *
+     * @param entry the frontier entry of the page
+     */
+    public void submit(FrontierEntry entry) {
+        outstandingPages.incrementAndGet();
+        try {
+            dispatch(entry);
+        } catch (RejectedExecutionException e) {
+            pageFinished();
+            throw e;
+        }
+    }
+
+    private void dispatch(FrontierEntry entry) {
+        if (fetchSubmitter != null) {
+            fetchSubmitter.accept(entry);
+        } else {
+            fetchers.execute(new FetchTask(entry));
+        }
+    }
+
+    /**
+     * Fetches a page again that is still outstanding from its failed fetch, releasing its claim on the sitemap
+     * so it is processed.
+     */
+    private void resubmit(FrontierEntry entry) {
+        sitemap.release(entry.getUrl());
+        try {
+            dispatch(entry);
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Not retrying {}, the crawl has stopped.", entry.getUrl());
+            pageFinished();
+        }
+    }
+
+    /**
+     * Creates the task that downloads a submitted page and hands it to the parsers.
+     *
+     * @param entry the frontier entry of the page
+     * @return the task
+     */
+    public Runnable createFetchTask(FrontierEntry entry) {
+        return new FetchTask(entry);
+    }
+
+    /**
+     * Waits until every submitted page, and every page submitted from its links, has been through all of the stages.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitCompletion() throws InterruptedException {
+        synchronized (completionLock) {
+            while (outstandingPages.get() > 0) {
+                completionLock.wait();
+            }
+        }
+    }
+
+    /**
+     * Stops the parser and link processing threads, abandoning any pages still in the queues.
+     */
+    @Override
+    public synchronized void close() {
+        stageThreads.forEach(Thread::interrupt);
+        for (Thread thread : stageThreads) {
+            try {
+                thread.join(STOP_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of submitted pages that are in one of the stages or waiting to be fetched.
+     *
+     * @return the number of outstanding pages
+     */
+    public int getOutstandingPageCount() {
+        return outstandingPages.get();
+    }
+
+    public int getParseQueueSize() {
+        return parseQueue.size();
+    }
+
+    public int getLinkQueueSize() {
+        return linkQueue.size();
+    }
+
+    /**
+     * Gets the time the fetchers have spent waiting for room in the parse queue, which is how much the
+     * parsers have held back the downloads.
+     *
+     * @return the total time blocked in milliseconds
+     */
+    public long getFetcherBlockedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(fetcherBlockedNanos.sum());
+    }
+
+    /**
+     * Gets the time the parsers have spent waiting for room in the link queue.
+     *
+     * @return the total time blocked in milliseconds
+     */
+    public long getParserBlockedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(parserBlockedNanos.sum());
+    }
+
+    public long getLinkBatches() {
+        return linkBatches.sum();
+    }
+
+    private Thread startThread(String name, Runnable stage) {
+        Thread thread = new Thread(stage, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private void parse() {
+        try {
+            while (true) {
+                PageInProgress page = parseQueue.take();
+                try {
+                    page.assets = webPageParser.parsePage(page.fetchedPage);
+                } catch (RuntimeException e) {
+                    LOGGER.error("Unable to parse page {}.", page.entry.getUrl(), e);
+                    page.assets = new PageAssets();
+                }
+                // The content is not needed once the page is parsed
+                page.fetchedPage = null;
+                put(linkQueue, page, parserBlockedNanos);
+            }
+        } catch (InterruptedException e) {
+            // The pipeline has been closed
+        }
+    }
+
+    private void processLinks() {
+        List<PageInProgress> batch = new ArrayList<>(LINK_BATCH_SIZE);
+        try {
+            while (true) {
+                batch.add(linkQueue.take());
+                linkQueue.drainTo(batch, LINK_BATCH_SIZE - 1);
+                for (PageInProgress page : batch) {
+                    try {
+                        processLinks(page);
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Unable to process the links of page {}.", page.entry.getUrl(), e);
+                    } finally {
+                        pageFinished();
+                    }
+                }
+                linkBatches.increment();
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // The pipeline has been closed
+        }
+    }
+
+    private void processLinks(PageInProgress page) {
+        String url = page.entry.getUrl();
+        List<String> allAssets = page.assets.getAllAssets();
+        sitemap.addLinks(url, allAssets);
+
+        int offDomainLinks = UrlProcessor.queueLinks(page.entry, page.assets, frontier, urlNormaliser, crawlJournal,
+                this::submit);
+
+        // After the links are journalled, so a resumed crawl does not lose them
+        crawlJournal.completed(url, allAssets);
+        processingMetrics.recordPage(page.startNanos, offDomainLinks);
+    }
+
+    private static void put(BlockingQueue<PageInProgress> queue, PageInProgress page, LongAdder blockedNanos)
+            throws InterruptedException {
+        if (!queue.offer(page)) {
+            long startNanos = System.nanoTime();
+            queue.put(page);
+            blockedNanos.add(System.nanoTime() - startNanos);
+        }
+    }
+
+    private void pageFinished() {
+        if (outstandingPages.decrementAndGet() == 0) {
+            synchronized (completionLock) {
+                completionLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Downloads a page and hands it to the parsers.
+     */
+    private final class FetchTask implements Runnable, HostTask {
+
+        private final FrontierEntry entry;
+
+        FetchTask(FrontierEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public void run() {
+            boolean handedOff = false;
+            try {
+                String url = entry.getUrl();
+                EventJournal events = processingMetrics.getEvents();
+                if (!frontier.startProcessing(entry)) {
+                    LOGGER.debug("Page budget spent, not processing URL: {}", url);
+                    events.record(CrawlEvent.Type.SKIPPED, url, 0, UrlProcessor.PAGE_BUDGET_SPENT);
+                    return;
+                }
+                if (sitemap.hasBeenProcessed(url)) {
+                    events.record(CrawlEvent.Type.DUPLICATE, url, 0, null);
+                    return;
+                }
+                if (crawlRetries != null && !crawlRetries.shouldFetch(entry)) {
+                    events.record(CrawlEvent.Type.SKIPPED, url, 0, UrlProcessor.HOST_ABANDONED);
+                    // Still added to the sitemap, with no links, as a page that could not be downloaded is
+                    put(parseQueue, new PageInProgress(entry, System.nanoTime(), FetchedPage.withAssets(url,
+                            new PageAssets())), fetcherBlockedNanos);
+                    handedOff = true;
+                    return;
+                }
+                LOGGER.debug("Processing URL: {}", url);
+                PageInProgress page = new PageInProgress(entry, System.nanoTime());
+                page.fetchedPage = webPageParser.fetchPage(url);
+                FailedToGetPageContentException failure = page.fetchedPage.getFailure();
+                if (failure == null) {
+                    if (crawlRetries != null) {
+                        crawlRetries.succeeded(entry);
+                    }
+                    events.record(CrawlEvent.Type.FETCHED, url, System.nanoTime() - page.startNanos, null);
+                } else if (crawlRetries != null && crawlRetries.retry(entry, failure, () -> resubmit(entry))) {
+                    events.record(CrawlEvent.Type.RETRYING, url, System.nanoTime() - page.startNanos,
+                            WebPageParser.describeFailure(failure));
+                    // Still outstanding until the retry has finished
+                    handedOff = true;
+                    return;
+                } else {
+                    UrlProcessor.recordFailure(events, url, page.startNanos, failure);
+                }
+                put(parseQueue, page, fetcherBlockedNanos);
+                handedOff = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (!handedOff) {
+                    pageFinished();
+                }
+            }
+        }
+
+        @Override
+        public String getHost() {
+            return Urls.getHostAndPort(entry.getUrl());
+        }
+
+        @Override
+        public FrontierEntry getFrontierEntry() {
+            return entry;
+        }
+    }
+
+    /**
+     * A page on its way through the stages, which is only touched by one stage at a time.
+     */
+    private static final class PageInProgress {
+
+        private final FrontierEntry entry;
+        private final long startNanos;
+        private FetchedPage fetchedPage;
+        private PageAssets assets;
+
+        PageInProgress(FrontierEntry entry, long startNanos) {
+            this.entry = entry;
+            this.startNanos = startNanos;
+        }
+
+        PageInProgress(FrontierEntry entry, long startNanos, FetchedPage fetchedPage) {
+            this(entry, startNanos);
+            this.fetchedPage = fetchedPage;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package service;
+
+import exception.FailedToGetPageContentException;
+import exception.RetryLaterException;
+import frontier.Frontier;
+import frontier.FrontierEntry;
+import frontier.HostScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides what happens to a page that could not be downloaded: whether it is tried again, and when, and
+ * whether its host is to blame.
+ *
+ * A failure is transient when the server asked for the page to be requested later, with 429 Too Many
+ * Requests or 503 Service Unavailable, when the request timed out, or when the connection failed
+ * without a response.  These count against the host's circuit breaker in the {@link HostScheduler},
+ * which parks the host's pages while the circuit is open, and the page is resubmitted after a backoff
+ * of twice the base delay for each earlier attempt, up to the maximum delay, or after the time the
+ * server asked for if that is longer.  The backoff is jittered between half and all of that, so pages
+ * that failed together are not all retried together.  The delay is waited on the crawl executor
+ * service's timer wheel, not by a worker, and the page counts as outstanding until it has been retried.
+ *
+ * Any other response from the host is a success for its circuit, even one that fails the page, such as
+ * 404 Not Found, which is not retried.  The pages of a host that has been given up on are not requested.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class CrawlRetries {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CrawlRetries.class);
+
+    private final CrawlExecutorService executorService;
+    private final HostScheduler hostScheduler;
+    private final Frontier frontier;
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    private final Map<String, Integer> attempts = new ConcurrentHashMap<>();
+    private final LongAdder retriesScheduled = new LongAdder();
+    private final LongAdder retriesExhausted = new LongAdder();
+    private final LongAdder abandonedPages = new LongAdder();
+    private final LongAdder circuitTrips = new LongAdder();
+
+    /**
+     * Constructor.
+     *
+     * @param executorService waits for the backoff before resubmitting a page
+     * @param hostScheduler tracks the health of the hosts, or null to not track it
+     * @param frontier takes back the pages that are retried
+     * @param maxRetries the most times a page is retried
+     * @param baseDelayMillis the backoff before the first retry
+     * @param maxDelayMillis the longest backoff
+     */
+    public CrawlRetries(CrawlExecutorService executorService, HostScheduler hostScheduler, Frontier frontier,
+                        int maxRetries, long baseDelayMillis, long maxDelayMillis) {
+        this.executorService = executorService;
+        this.hostScheduler = hostScheduler;
+        this.frontier = frontier;
+        this.maxRetries = maxRetries;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = Math.max(baseDelayMillis, maxDelayMillis);
+    }
+
+    /**
+     * Indicates whether a page should be requested, which it should not be if its host has been given up on.
+     *
+     * @param entry the frontier entry of the page
+     * @return true to request the page
+     */
+    public boolean shouldFetch(FrontierEntry entry) {
+        if (hostScheduler != null && hostScheduler.isAbandoned(entry.getHost())) {
+            abandonedPages.increment();
+            attempts.remove(entry.getUrl());
+            LOGGER.debug("Not requesting {}, its host has been given up on.", entry.getUrl());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records a page that was downloaded.
+     *
+     * @param entry the frontier entry of the page
+     */
+    public void succeeded(FrontierEntry entry) {
+        attempts.remove(entry.getUrl());
+        if (hostScheduler != null) {
+            hostScheduler.recordSuccess(entry.getHost());
+        }
+    }
+
+    /**
+     * Records a page that could not be downloaded, and schedules it to be tried again if the failure is
+     * transient and it has retries left.
+     *
+     * @param entry the frontier entry of the page
+     * @param failure why the page could not be downloaded
+     * @param resubmission submits the page again once the backoff has passed
+     * @return true if the page will be retried, false if it has failed for good
+     */
+    public boolean retry(FrontierEntry entry, FailedToGetPageContentException failure, Runnable resubmission) {
+        String url = entry.getUrl();
+        if (!isTransient(failure)) {
+            attempts.remove(url);
+            succeededHost(entry);
+            return false;
+        }
+        if (hostScheduler != null && hostScheduler.recordFailure(entry.getHost())) {
+            circuitTrips.increment();
+            LOGGER.warn("Pausing requests to {} after repeated failures.", entry.getHost());
+        }
+
+        int attempt = attempts.merge(url, 1, Integer::sum);
+        if (attempt > maxRetries) {
+            attempts.remove(url);
+            retriesExhausted.increment();
+            LOGGER.warn("Giving up on {} after {} attempts.", url, attempt);
+            return false;
+        }
+        long delayMillis = getDelayMillis(attempt, failure);
+        frontier.requeue(entry);
+        executorService.schedule(resubmission, delayMillis);
+        retriesScheduled.increment();
+        LOGGER.debug("Retrying {} in {}ms, attempt {} of {}: {}", url, delayMillis, attempt, maxRetries,
+                failure.getMessage());
+        return true;
+    }
+
+    /**
+     * Indicates whether a failure may not happen again, and so is worth a retry.
+     *
+     * @param failure the failure
+     * @return true for a transient failure
+     */
+    static boolean isTransient(FailedToGetPageContentException failure) {
+        // Timeouts and connection failures have an I/O cause, and error responses do not have a cause
+        return failure instanceof RetryLaterException || failure.getCause() instanceof IOException;
+    }
+
+    /**
+     * Gets the jittered backoff before a retry.
+     *
+     * @param attempt the number of the retry, from 1
+     * @param failure the failure, which may say how long to wait
+     * @return the delay in milliseconds
+     */
+    long getDelayMillis(int attempt, FailedToGetPageContentException failure) {
+        long backoff = baseDelayMillis << Math.min(attempt - 1, 30);
+        long cappedMillis = backoff <= 0 ? maxDelayMillis : Math.min(maxDelayMillis, backoff);
+        long delayMillis = cappedMillis / 2 + ThreadLocalRandom.current().nextLong(cappedMillis / 2 + 1);
+        if (failure instanceof RetryLaterException) {
+            delayMillis = Math.max(delayMillis, ((RetryLaterException) failure).getRetryAfterMillis());
+        }
+        return delayMillis;
+    }
+
+    private void succeededHost(FrontierEntry entry) {
+        if (hostScheduler != null) {
+            hostScheduler.recordSuccess(entry.getHost());
+        }
+    }
+
+    /**
+     * Gets the number of retries that have been scheduled.
+     *
+     * @return the number of retries
+     */
+    public long getRetriesScheduled() {
+        return retriesScheduled.sum();
+    }
+
+    /**
+     * Gets the number of pages that still failed after the most retries.
+     *
+     * @return the number of pages
+     */
+    public long getRetriesExhausted() {
+        return retriesExhausted.sum();
+    }
+
+    /**
+     * Gets the number of pages that were not requested because their host had been given up on.
+     *
+     * @return the number of pages
+     */
+    public long getAbandonedPages() {
+        return abandonedPages.sum();
+    }
+
+    /**
+     * Gets the number of times a host's circuit has opened.
+     *
+     * @return the number of times
+     */
+    public long getCircuitTrips() {
+        return circuitTrips.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CrawlRetries{retries=%d, exhausted=%d, circuitTrips=%d, abandonedPages=%d}",
+                getRetriesScheduled(), getRetriesExhausted(), getCircuitTrips(), getAbandonedPages());
+    }
+}
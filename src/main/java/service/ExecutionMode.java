@@ -0,0 +1,73 @@
+package service;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * How the URL processors of a crawl are run.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public enum ExecutionMode {
+
+    /**
+     * A fixed pool of platform threads.  Each blocking page fetch holds one of the threads.
+     */
+    FIXED_POOL("fixed") {
+        @Override
+        ExecutorService createExecutorService(int threads) {
+            return Executors.newFixedThreadPool(threads);
+        }
+    },
+
+    /**
+     * A new virtual thread for each URL processor, so blocking page fetches do not limit the concurrency.
+     * The number of requests in flight is limited by the connection limit instead.  Requires Java 21.
+     */
+    VIRTUAL_THREADS("virtual") {
+        @Override
+        ExecutorService createExecutorService(int threads) {
+            try {
+                // Looked up reflectively so that the application still builds and runs on Java 8
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Virtual threads require Java 21 or later.", e);
+            }
+        }
+    };
+
+    private final String optionName;
+
+    ExecutionMode(String optionName) {
+        this.optionName = optionName;
+    }
+
+    /**
+     * Creates the executor service for this mode.
+     *
+     * @param threads the number of threads, where the mode uses a fixed number
+     * @return the executor service
+     */
+    abstract ExecutorService createExecutorService(int threads);
+
+    public String getOptionName() {
+        return optionName;
+    }
+
+    /**
+     * Finds the mode for a command line option value.
+     *
+     * @param optionName the option value, e.g. "virtual"
+     * @return the execution mode
+     */
+    public static ExecutionMode fromOptionName(String optionName) {
+        for (ExecutionMode mode : values()) {
+            if (mode.optionName.equalsIgnoreCase(optionName)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown execution mode: " + optionName);
+    }
+}
@@ -0,0 +1,45 @@
+package service;
+
+/**
+ * How the pages of a crawl are fetched.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public enum FetcherMode {
+
+    /**
+     * Each page fetch blocks the thread that makes it until the page has been parsed.
+     */
+    BLOCKING("blocking"),
+
+    /**
+     * The pages are fetched with non-blocking I/O, so the requests in flight are limited by the connections
+     * rather than the threads, and parsed on a pool of as many threads as there are parsers.
+     */
+    ASYNC("async");
+
+    private final String optionName;
+
+    FetcherMode(String optionName) {
+        this.optionName = optionName;
+    }
+
+    public String getOptionName() {
+        return optionName;
+    }
+
+    /**
+     * Finds the fetcher mode for a command line option value.
+     *
+     * @param optionName the option value, e.g. "async"
+     * @return the fetcher mode
+     */
+    public static FetcherMode fromOptionName(String optionName) {
+        for (FetcherMode mode : values()) {
+            if (mode.optionName.equalsIgnoreCase(optionName)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown fetcher: " + optionName);
+    }
+}
@@ -0,0 +1,223 @@
+package service;
+
+import exception.FrontierSpillException;
+import frontier.AsyncTask;
+import frontier.Frontier;
+import frontier.FrontierEntry;
+import frontier.HostTask;
+import frontier.SpillQueue;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+/**
+ * Queues the accepted frontier entries of a crawl as tasks, keeping only a fixed number of them in memory.
+ *
+ * An entry becomes a task straight away while fewer than the maximum are queued or running.  After that
+ * the entries are spilled to a {@link SpillQueue} as URL records, and each task that finishes makes room
+ * for the oldest spilled entry to become a task.  The heap then holds the tasks that are in memory rather
+ * than the whole of the frontier, however wide the site.
+ *
+ * While entries are spilled, new entries are spilled behind them, so the spilled entries are crawled in
+ * the order they were accepted; the crawl order only applies to the entries in memory.  A finishing task
+ * starts the next one before it counts as finished, so the crawl executor service is never idle while
+ * entries are waiting on disk.
+ *
+ * A task that is an {@link AsyncTask} keeps its room in memory until it calls back that it has finished.
+ *
+ * If a spilled entry cannot be read back, the entries read before it are still started, and the
+ * finishing task fails with a {@link FrontierSpillException}.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class SpillingFrontierQueue implements Closeable {
+
+    private final Executor executor;
+    private final Function<FrontierEntry, Runnable> taskFactory;
+    private final Frontier frontier;
+    private final SpillQueue spillQueue;
+    private final int maxInMemory;
+    private int inMemory;
+
+    /**
+     * Constructor.
+     *
+     * @param executor runs the tasks
+     * @param taskFactory creates the task that crawls an entry
+     * @param frontier the frontier, which forgets the spilled entries
+     * @param spillQueue holds the entries that are not in memory
+     * @param maxInMemory the most tasks to keep queued or running at once
+     */
+    public SpillingFrontierQueue(Executor executor, Function<FrontierEntry, Runnable> taskFactory, Frontier frontier,
+                                 SpillQueue spillQueue, int maxInMemory) {
+        this.executor = executor;
+        this.taskFactory = taskFactory;
+        this.frontier = frontier;
+        this.spillQueue = spillQueue;
+        this.maxInMemory = maxInMemory;
+    }
+
+    /**
+     * Queues an entry to be crawled, as a task if there is room in memory and otherwise on disk.
+     *
+     * @param entry the entry
+     */
+    public void submit(FrontierEntry entry) {
+        synchronized (this) {
+            if (inMemory >= maxInMemory || !spillQueue.isEmpty()) {
+                spill(entry);
+                return;
+            }
+            inMemory++;
+        }
+        start(entry);
+    }
+
+    /**
+     * Gets the number of entries that are queued or running as tasks.
+     *
+     * @return the number of entries in memory
+     */
+    public synchronized int getInMemoryCount() {
+        return inMemory;
+    }
+
+    /**
+     * Gets the number of entries waiting on disk.
+     *
+     * @return the number of spilled entries
+     */
+    public synchronized long getSpilledCount() {
+        return spillQueue.size();
+    }
+
+    /**
+     * Gets the number of entries that have been spilled to disk during the crawl.
+     *
+     * @return the total number of spilled entries
+     */
+    public synchronized long getTotalSpilledCount() {
+        return spillQueue.getSpilledCount();
+    }
+
+    public synchronized int getSegmentCount() {
+        return spillQueue.getSegmentCount();
+    }
+
+    /**
+     * Deletes the spill files, discarding any entries still on disk.
+     *
+     * @throws IOException if the files could not be deleted
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        spillQueue.close();
+    }
+
+    private void spill(FrontierEntry entry) {
+        try {
+            spillQueue.add(entry);
+        } catch (IOException e) {
+            throw new FrontierSpillException("Could not spill " + entry.getUrl(), e);
+        }
+        frontier.spilled(entry);
+    }
+
+    private void start(FrontierEntry entry) {
+        try {
+            executor.execute(new QueuedTask(entry, taskFactory.apply(entry)));
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                inMemory--;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Starts the entries taken from the spill queue, which are already counted as in memory.  If one is
+     * rejected the rest are not started, so they stop counting as well.
+     */
+    private void startAll(List<FrontierEntry> entries) {
+        for (int i = 0; i < entries.size(); i++) {
+            try {
+                start(entries.get(i));
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    inMemory -= entries.size() - i - 1;
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void taskFinished() {
+        List<FrontierEntry> next = new ArrayList<>();
+        IOException readFailure = null;
+        synchronized (this) {
+            inMemory--;
+            try {
+                while (inMemory < maxInMemory && !spillQueue.isEmpty()) {
+                    next.add(spillQueue.poll());
+                    inMemory++;
+                }
+            } catch (IOException e) {
+                // The entries read before the failure have been taken off the queue and must still be crawled
+                readFailure = e;
+            }
+        }
+        startAll(next);
+        if (readFailure != null) {
+            throw new FrontierSpillException("Could not read back the spilled frontier entries", readFailure);
+        }
+    }
+
+    /**
+     * Runs the task of an entry and then makes room for the next one.
+     */
+    private final class QueuedTask implements AsyncTask, HostTask {
+
+        private final FrontierEntry entry;
+        private final Runnable task;
+
+        QueuedTask(FrontierEntry entry, Runnable task) {
+            this.entry = entry;
+            this.task = task;
+        }
+
+        @Override
+        public void start(Runnable finished) {
+            Runnable makeRoom = () -> {
+                try {
+                    taskFinished();
+                } finally {
+                    finished.run();
+                }
+            };
+            if (task instanceof AsyncTask) {
+                AsyncTask.start((AsyncTask) task, makeRoom);
+                return;
+            }
+            try {
+                task.run();
+            } finally {
+                makeRoom.run();
+            }
+        }
+
+        @Override
+        public String getHost() {
+            return entry.getHost();
+        }
+
+        @Override
+        public FrontierEntry getFrontierEntry() {
+            return entry;
+        }
+    }
+}
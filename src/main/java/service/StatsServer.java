@@ -0,0 +1,75 @@
+package service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves the metrics of a running crawl as JSON from http://localhost:port/stats.
+ *
+ * The server only listens on the loopback address and answers on a single thread, as it is meant for
+ * a person or a script polling the crawl, not for traffic.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class StatsServer implements Closeable {
+
+    static final String PATH = "/stats";
+
+    private final HttpServer server;
+    private final CrawlMetrics crawlMetrics;
+
+    private StatsServer(HttpServer server, CrawlMetrics crawlMetrics) {
+        this.server = server;
+        this.crawlMetrics = crawlMetrics;
+    }
+
+    /**
+     * Starts serving the metrics.
+     *
+     * @param port the port to listen on, or 0 for any free port
+     * @param crawlMetrics the metrics of the crawl
+     * @return the running server
+     * @throws IOException if the port could not be bound
+     */
+    public static StatsServer start(int port, CrawlMetrics crawlMetrics) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        StatsServer statsServer = new StatsServer(server, crawlMetrics);
+        server.createContext("/", statsServer::handle);
+        server.start();
+        return statsServer;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            exchange.getRequestBody().close();
+            if (!PATH.equals(exchange.getRequestURI().getPath())) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            byte[] body = crawlMetrics.toJson().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -1,76 +1,289 @@
 package service;
 
+import checkpoint.CrawlJournal;
+import exception.FailedToGetPageContentException;
+import exception.SkippedPageException;
+import frontier.AsyncTask;
+import frontier.Frontier;
+import frontier.FrontierEntry;
+import frontier.HostTask;
 import http.PageAssets;
 import http.WebPageParser;
+import metrics.CrawlEvent;
+import metrics.EventJournal;
+import metrics.ProcessingMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sitemap.Sitemap;
+import url.UrlNormaliser;
+import url.Urls;
 
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 /**
  * Processes the links on a web page.
  *
+ * The page is only fetched if the frontier has budget for it.  Its links are offered to the frontier one
+ * level deeper than the page, and those accepted are queued in the frontier's crawl order.
+ *
+ * With {@link CrawlRetries}, a page that could not be downloaded because of a transient failure is given
+ * back to the frontier and submitted again after a backoff, and is only added to the sitemap once it has
+ * been downloaded or has failed for good.
+ *
+ * The page can also be processed without blocking, when the crawl is {@link CrawlContext#isAsynchronous()}.
+ * The request is then sent by the thread that starts the processor, and the page is parsed and its links
+ * queued on the thread that receives the response, with the same outcome as a blocking processor.
+ *
+ * What happened to the page, whether it was fetched, skipped, failed, retried or had already been processed,
+ * is recorded in the event journal of the {@link ProcessingMetrics}, rather than logged to the console.
+ *
  * @author Ravindra Rishudeo.
  */
-public class UrlProcessor implements Callable<String> {
+public class UrlProcessor implements Callable<String>, HostTask {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(UrlProcessor.class);
 
-    private final ExecutorService executorService;
-    private final WebPageParser webPageParser;
+    static final String PAGE_BUDGET_SPENT = "page budget spent";
+    static final String HOST_ABANDONED = "host given up on";
+
+    private final CrawlContext context;
+    private final FrontierEntry entry;
     private final String url;
-    private final Sitemap sitemap;
 
     /**
      * Constructor.
-     * @param executorService to process the child links retrieved from the web page
-     * @param webPageParser the web page HTML parser
-     * @param url the URL of the web page to retrieve
-     * @param sitemap the sitemap
+     * @param context the parts of the crawl that its processors share
+     * @param entry the frontier entry of the canonical URL of the web page to retrieve
      */
-    public UrlProcessor(ExecutorService executorService, WebPageParser webPageParser, String url, Sitemap sitemap) {
-        this.executorService = executorService;
-        this.webPageParser = webPageParser;
-        this.url = url;
-        this.sitemap = sitemap;
+    public UrlProcessor(CrawlContext context, FrontierEntry entry) {
+        this.context = context;
+        this.entry = entry;
+        this.url = entry.getUrl();
     }
 
     @Override
     public String call() {
-        if (!sitemap.hasBeenProcessed(url)) {
-            LOGGER.debug("Processing URL: " + url);
+        String notProcessed = startProcessing();
+        if (notProcessed != null) {
+            return notProcessed;
+        }
+        long startNanos = System.nanoTime();
+        if (!shouldFetch()) {
+            return complete(new PageAssets(), startNanos);
+        }
 
-            PageAssets assetsFromPage = webPageParser.getAssetsFromPage(url);
-            sitemap.addLinks(url, assetsFromPage.getAllAssets());
+        PageAssets assetsFromPage;
+        try {
+            assetsFromPage = context.getWebPageParser().fetchAssets(url);
+        } catch (FailedToGetPageContentException e) {
+            return failed(e, startNanos);
+        }
+        return fetched(assetsFromPage, startNanos);
+    }
+
+    /**
+     * Processes the page without blocking the calling thread, which only sends the request.  The page is
+     * parsed, and its links are queued, on the thread that the response is completed on.
+     *
+     * @return the outcome, as returned by {@link #call()}
+     */
+    public CompletableFuture<String> callAsync() {
+        String notProcessed = startProcessing();
+        if (notProcessed != null) {
+            return CompletableFuture.completedFuture(notProcessed);
+        }
+        long startNanos = System.nanoTime();
+        if (!shouldFetch()) {
+            return CompletableFuture.completedFuture(complete(new PageAssets(), startNanos));
+        }
+
+        return context.getWebPageParser().fetchAssetsAsync(url).handle((assetsFromPage, failure) -> {
+            if (failure == null) {
+                return fetched(assetsFromPage, startNanos);
+            }
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                    ? failure.getCause() : failure;
+            if (cause instanceof FailedToGetPageContentException) {
+                return failed((FailedToGetPageContentException) cause, startNanos);
+            }
+            throw failure instanceof CompletionException ? (CompletionException) failure
+                    : new CompletionException(failure);
+        });
+    }
+
+    /**
+     * Gets a task that processes the page with {@link #callAsync()}, and finishes once the page has been
+     * processed rather than when the request has been sent.
+     *
+     * @return the task, which keeps the host and frontier entry of the page
+     */
+    public AsyncTask toAsyncTask() {
+        return new AsyncProcessor();
+    }
+
+    /**
+     * Claims the page in the frontier and the sitemap.
+     *
+     * @return the outcome if the page is not to be processed, or null to process it
+     */
+    private String startProcessing() {
+        EventJournal events = context.getProcessingMetrics().getEvents();
+        if (!context.getFrontier().startProcessing(entry)) {
+            LOGGER.debug("Page budget spent, not processing URL: {}", url);
+            events.record(CrawlEvent.Type.SKIPPED, url, 0, PAGE_BUDGET_SPENT);
+            return "skipped";
+        }
+
+        if (context.getSitemap().hasBeenProcessed(url)) {
+            events.record(CrawlEvent.Type.DUPLICATE, url, 0, null);
+            return "complete";
+        }
+
+        LOGGER.debug("Processing URL: {}", url);
+        return null;
+    }
+
+    /**
+     * Indicates whether to request the page, which is not requested once its host has been given up on.
+     */
+    private boolean shouldFetch() {
+        CrawlRetries crawlRetries = context.getCrawlRetries();
+        if (crawlRetries != null && !crawlRetries.shouldFetch(entry)) {
+            context.getProcessingMetrics().getEvents().record(CrawlEvent.Type.SKIPPED, url, 0, HOST_ABANDONED);
+            return false;
+        }
+        return true;
+    }
+
+    private String fetched(PageAssets assetsFromPage, long startNanos) {
+        if (context.getCrawlRetries() != null) {
+            context.getCrawlRetries().succeeded(entry);
+        }
+        context.getProcessingMetrics().getEvents().record(CrawlEvent.Type.FETCHED, url,
+                System.nanoTime() - startNanos, null);
+        return complete(assetsFromPage, startNanos);
+    }
 
-            assetsFromPage.getLinksToOtherPages().stream()
-                    .filter(this::isSameDomain)
-                    .map(link -> new UrlProcessor(executorService, webPageParser, link, sitemap))
-                    .forEach(executorService::submit);
+    private String failed(FailedToGetPageContentException e, long startNanos) {
+        CrawlRetries crawlRetries = context.getCrawlRetries();
+        EventJournal events = context.getProcessingMetrics().getEvents();
+        if (crawlRetries != null && crawlRetries.retry(entry, e, this::resubmit)) {
+            events.record(CrawlEvent.Type.RETRYING, url, System.nanoTime() - startNanos,
+                    WebPageParser.describeFailure(e));
+            return "retrying";
         }
+        recordFailure(events, url, startNanos, e);
+        return complete(new PageAssets(), startNanos);
+    }
+
+    /**
+     * Adds the page to the sitemap, queues its links and journals it as completed.
+     */
+    private String complete(PageAssets assetsFromPage, long startNanos) {
+        List<String> allAssets = assetsFromPage.getAllAssets();
+        context.getSitemap().addLinks(url, allAssets);
+
+        int offDomainLinks = queueLinks(entry, assetsFromPage, context.getFrontier(), context.getUrlNormaliser(),
+                context.getCrawlJournal(), this::submit);
+
+        // After the links are journalled, so a resumed crawl does not lose them
+        context.getCrawlJournal().completed(url, allAssets);
+        context.getProcessingMetrics().recordPage(startNanos, offDomainLinks);
         return "complete";
     }
 
-    private boolean isSameDomain(String linkUrl) {
-        return getDomainName(url).equals(getDomainName(linkUrl));
+    /**
+     * Logs and journals a page that could not be downloaded and is not being retried, which is skipped if it
+     * was not worth downloading, such as a page that is not HTML, and has failed otherwise.
+     *
+     * @param events the journal of the crawl's events
+     * @param url the URL of the page
+     * @param startNanos when the page was requested, from {@link System#nanoTime()}
+     * @param failure why the page could not be downloaded
+     */
+    static void recordFailure(EventJournal events, String url, long startNanos,
+                              FailedToGetPageContentException failure) {
+        WebPageParser.logFailure(failure);
+        CrawlEvent.Type type = failure instanceof SkippedPageException ? CrawlEvent.Type.SKIPPED
+                : CrawlEvent.Type.FAILED;
+        events.record(type, url, System.nanoTime() - startNanos, WebPageParser.describeFailure(failure));
     }
 
-    private String getDomainName(String url) {
-        try {
-            URI uri = new URI(url);
-            String domain = uri.getHost();
-            return domain.startsWith("www.") ? domain.substring(4) : domain;
+    /**
+     * Submits the page again, releasing its claim on the sitemap so it is processed.
+     */
+    private void resubmit() {
+        context.getSitemap().release(url);
+        submit(entry);
+    }
 
-        } catch (URISyntaxException e) {
-            LOGGER.error("The syntax of the link is incorrect, will not crawl.  URL: " + url);
-            return "";
+    private void submit(FrontierEntry linkEntry) {
+        if (context.getLinkSubmitter() != null) {
+            context.getLinkSubmitter().accept(linkEntry);
+        } else if (context.isAsynchronous()) {
+            context.getExecutorService().execute(new UrlProcessor(context, linkEntry).toAsyncTask());
+        } else {
+            context.getExecutorService().submit(new UrlProcessor(context, linkEntry));
         }
+    }
+
+    /**
+     * Offers the links on a page that are in its domain to the frontier, one level deeper than the page, and
+     * journals and submits the ones it accepts.
+     *
+     * @param page the frontier entry of the page
+     * @param assets the assets of the page
+     * @param frontier decides which of the links are processed
+     * @param urlNormaliser puts the links into canonical form
+     * @param crawlJournal records the queued links
+     * @param submitter queues an accepted link for processing
+     * @return the number of links to other domains, which are not followed
+     */
+    static int queueLinks(FrontierEntry page, PageAssets assets, Frontier frontier, UrlNormaliser urlNormaliser,
+                          CrawlJournal crawlJournal, Consumer<FrontierEntry> submitter) {
+        String domainName = Urls.getDomainName(page.getUrl());
+        Consumer<FrontierEntry> journalQueued = getQueuedJournaller(crawlJournal);
+        int offDomainLinks = 0;
+        for (String link : assets.getLinksToOtherPages()) {
+            if (!Urls.hasDomainName(link, domainName)) {
+                offDomainLinks++;
+                continue;
+            }
+            String canonicalLink = urlNormaliser.normalise(link);
+            FrontierEntry linkEntry = frontier.offer(canonicalLink, page.getDepth() + 1, journalQueued);
+            if (linkEntry != null) {
+                submitter.accept(linkEntry);
+            }
+        }
+        return offDomainLinks;
+    }
 
+    /**
+     * Gets the listener that journals the URLs the frontier accepts as queued.  The frontier tells it before
+     * another page that offers the same URL can go on to be journalled as completed, which the crawl journal
+     * needs, so a resumed crawl cannot lose the URL.
+     *
+     * @param crawlJournal records the queued links
+     * @return the listener, or null if the crawl is not journalled
+     */
+    static Consumer<FrontierEntry> getQueuedJournaller(CrawlJournal crawlJournal) {
+        return crawlJournal == CrawlJournal.NONE ? null
+                : entry -> crawlJournal.queued(entry.getUrl(), entry.getDepth());
+    }
+
+    @Override
+    public String getHost() {
+        return Urls.getHostAndPort(url);
+    }
+
+    @Override
+    public FrontierEntry getFrontierEntry() {
+        return entry;
     }
 
     @Override
@@ -78,14 +291,38 @@ public class UrlProcessor implements Callable<String> {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         UrlProcessor that = (UrlProcessor) o;
-        return Objects.equals(executorService, that.executorService) &&
-                Objects.equals(webPageParser, that.webPageParser) &&
-                Objects.equals(url, that.url) &&
-                Objects.equals(sitemap, that.sitemap);
+        return Objects.equals(context, that.context) &&
+                Objects.equals(url, that.url);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(executorService, webPageParser, url, sitemap);
+        return Objects.hash(context, url);
+    }
+
+    /**
+     * Processes the page without blocking the thread that starts it.
+     */
+    private final class AsyncProcessor implements AsyncTask, HostTask {
+
+        @Override
+        public void start(Runnable finished) {
+            callAsync().whenComplete((result, failure) -> {
+                if (failure != null) {
+                    LOGGER.error("Unable to process URL: {}", url, failure);
+                }
+                finished.run();
+            });
+        }
+
+        @Override
+        public String getHost() {
+            return UrlProcessor.this.getHost();
+        }
+
+        @Override
+        public FrontierEntry getFrontierEntry() {
+            return entry;
+        }
     }
 }
@@ -0,0 +1,78 @@
+package sitemap;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Writes a sitemap as an edge list in CSV, with a source,target row for each link on each page.
+ *
+ * Pages without links have a row with an empty target, so every page appears in the file.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class CsvSitemapWriter implements SitemapWriter {
+
+    private final Writer out;
+
+    /**
+     * Constructor.
+     *
+     * @param file the file to write, which is replaced if it exists
+     * @param gzip whether to compress the file
+     * @throws IOException if the file could not be created
+     */
+    public CsvSitemapWriter(Path file, boolean gzip) throws IOException {
+        this.out = OutputFiles.newWriter(file, gzip);
+        this.out.write("source,target\r\n");
+    }
+
+    @Override
+    public void writePage(String url, List<String> links) throws IOException {
+        if (links.isEmpty()) {
+            writeRow(url, "");
+        }
+        for (String link : links) {
+            writeRow(url, link);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeRow(String source, String target) throws IOException {
+        writeField(source);
+        out.write(',');
+        writeField(target);
+        out.write("\r\n");
+    }
+
+    private void writeField(String value) throws IOException {
+        if (!needsQuotes(value)) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.write('"');
+            }
+            out.write(c);
+        }
+        out.write('"');
+    }
+
+    private static boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\r' || c == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
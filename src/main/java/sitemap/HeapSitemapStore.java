@@ -0,0 +1,110 @@
+package sitemap;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the sitemap on the Java heap.
+ *
+ * The URLs are interned in a {@link UrlStore} and the links of each page are kept as an int[]
+ * of URL ids, indexed by the id of the page.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class HeapSitemapStore implements SitemapStore {
+
+    private static final int[] NOT_RETRIEVED = new int[0];
+
+    private final UrlStore urls;
+
+    // Indexed by page id, null for URLs that have not been processed
+    private int[][] siteLinks;
+    private int pageCount;
+
+    /**
+     * Constructor.
+     */
+    public HeapSitemapStore() {
+        this.urls = new UrlStore();
+        this.siteLinks = new int[1024][];
+    }
+
+    @Override
+    public int intern(String url) {
+        return urls.intern(url);
+    }
+
+    @Override
+    public int lookup(String url) {
+        return urls.lookup(url);
+    }
+
+    @Override
+    public String getUrl(int id) {
+        return urls.get(id);
+    }
+
+    @Override
+    public synchronized boolean claim(int pageId) {
+        ensureCapacity(pageId);
+        if (siteLinks[pageId] != null) {
+            return false;
+        }
+        siteLinks[pageId] = NOT_RETRIEVED;
+        pageCount++;
+        return true;
+    }
+
+    @Override
+    public synchronized void release(int pageId) {
+        if (pageId < siteLinks.length && siteLinks[pageId] == NOT_RETRIEVED) {
+            siteLinks[pageId] = null;
+            pageCount--;
+        }
+    }
+
+    @Override
+    public synchronized void putLinks(int pageId, int[] linkIds) {
+        ensureCapacity(pageId);
+        if (siteLinks[pageId] == null) {
+            pageCount++;
+        }
+        siteLinks[pageId] = linkIds;
+    }
+
+    /**
+     * Takes a snapshot by copying the page index.  The int[] link lists are never modified once
+     * added, so they are shared with the store.
+     */
+    @Override
+    public synchronized PageLinks snapshot() {
+        final int[][] snapshot = Arrays.copyOf(siteLinks, siteLinks.length);
+        final int snapshotPageCount = pageCount;
+        return new PageLinks() {
+            @Override
+            public int getUrlCount() {
+                return snapshot.length;
+            }
+
+            @Override
+            public int getPageCount() {
+                return snapshotPageCount;
+            }
+
+            @Override
+            public int[] getLinks(int pageId) {
+                return snapshot[pageId];
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+
+    private void ensureCapacity(int pageId) {
+        if (pageId >= siteLinks.length) {
+            siteLinks = Arrays.copyOf(siteLinks, Math.max(pageId + 1, siteLinks.length * 2));
+        }
+    }
+}
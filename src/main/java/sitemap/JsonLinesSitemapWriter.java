@@ -0,0 +1,81 @@
+package sitemap;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Writes a sitemap as JSON Lines, one object per page: {"url":"...","links":["...", ...]}.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class JsonLinesSitemapWriter implements SitemapWriter {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Writer out;
+
+    /**
+     * Constructor.
+     *
+     * @param file the file to write, which is replaced if it exists
+     * @param gzip whether to compress the file
+     * @throws IOException if the file could not be created
+     */
+    public JsonLinesSitemapWriter(Path file, boolean gzip) throws IOException {
+        this.out = OutputFiles.newWriter(file, gzip);
+    }
+
+    @Override
+    public void writePage(String url, List<String> links) throws IOException {
+        out.write("{\"url\":");
+        writeString(url);
+        out.write(",\"links\":[");
+        for (int i = 0; i < links.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            writeString(links.get(i));
+        }
+        out.write("]}\n");
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeString(String value) throws IOException {
+        out.write('"');
+        if (!needsEscaping(value)) {
+            out.write(value);
+            out.write('"');
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.write('\\');
+                out.write(c);
+            } else if (c < 0x20) {
+                out.write("\\u00");
+                out.write(HEX[c >> 4]);
+                out.write(HEX[c & 0xF]);
+            } else {
+                out.write(c);
+            }
+        }
+        out.write('"');
+    }
+
+    private static boolean needsEscaping(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
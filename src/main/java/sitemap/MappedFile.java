@@ -0,0 +1,132 @@
+package sitemap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A file that is memory mapped in fixed size segments, addressed by a long position.
+ *
+ * The file grows a segment at a time.  Ints and longs must not span two segments, which the
+ * callers ensure by keeping them aligned, while byte ranges may.  The class is not thread safe.
+ *
+ * @author Ravindra Rishudeo.
+ */
+final class MappedFile implements Closeable {
+
+    private final FileChannel channel;
+    private final int segmentShift;
+    private final int segmentMask;
+
+    private MappedByteBuffer[] segments = new MappedByteBuffer[8];
+    private int segmentCount;
+
+    /**
+     * Opens or creates the file and maps the data that is already in it.
+     *
+     * @param path the file
+     * @param segmentSize the size of each mapping, which must be a power of two
+     * @throws IOException if the file could not be opened or mapped
+     */
+    MappedFile(Path path, int segmentSize) throws IOException {
+        if (Integer.bitCount(segmentSize) != 1) {
+            throw new IllegalArgumentException("The segment size must be a power of two: " + segmentSize);
+        }
+        this.channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.segmentShift = Integer.numberOfTrailingZeros(segmentSize);
+        this.segmentMask = segmentSize - 1;
+        ensureCapacity(channel.size());
+    }
+
+    /**
+     * Maps enough segments to hold the given number of bytes, growing the file if needed.
+     *
+     * @param size the number of bytes
+     * @throws IOException if the file could not be mapped
+     */
+    void ensureCapacity(long size) throws IOException {
+        while (((long) segmentCount << segmentShift) < size) {
+            if (segmentCount == segments.length) {
+                segments = Arrays.copyOf(segments, segmentCount * 2);
+            }
+            long start = (long) segmentCount << segmentShift;
+            segments[segmentCount++] = channel.map(FileChannel.MapMode.READ_WRITE, start, segmentMask + 1L);
+        }
+    }
+
+    byte getByte(long position) {
+        return segment(position).get(offset(position));
+    }
+
+    int getInt(long position) {
+        return segment(position).getInt(offset(position));
+    }
+
+    void putInt(long position, int value) {
+        segment(position).putInt(offset(position), value);
+    }
+
+    long getLong(long position) {
+        return segment(position).getLong(offset(position));
+    }
+
+    void putLong(long position, long value) {
+        segment(position).putLong(offset(position), value);
+    }
+
+    void getBytes(long position, byte[] bytes) {
+        int copied = 0;
+        while (copied < bytes.length) {
+            ByteBuffer segment = segment(position + copied).duplicate();
+            segment.position(offset(position + copied));
+            int length = Math.min(bytes.length - copied, segment.remaining());
+            segment.get(bytes, copied, length);
+            copied += length;
+        }
+    }
+
+    void putBytes(long position, byte[] bytes) {
+        int copied = 0;
+        while (copied < bytes.length) {
+            ByteBuffer segment = segment(position + copied).duplicate();
+            segment.position(offset(position + copied));
+            int length = Math.min(bytes.length - copied, segment.remaining());
+            segment.put(bytes, copied, length);
+            copied += length;
+        }
+    }
+
+    /**
+     * Writes the changes to the mapped segments to disk.
+     */
+    void force() {
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i].force();
+        }
+    }
+
+    /**
+     * Flushes and closes the file.  The mappings are released when they are garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        force();
+        segments = new MappedByteBuffer[0];
+        segmentCount = 0;
+        channel.close();
+    }
+
+    private MappedByteBuffer segment(long position) {
+        return segments[(int) (position >>> segmentShift)];
+    }
+
+    private int offset(long position) {
+        return (int) position & segmentMask;
+    }
+}
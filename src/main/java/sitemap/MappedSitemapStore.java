@@ -0,0 +1,488 @@
+package sitemap;
+
+import exception.SitemapStorageException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keeps the sitemap in memory mapped files, so the heap use does not grow with the size of the crawl.
+ *
+ * The files in the directory are append only and can be read by another process after the crawl,
+ * either by opening the directory with this class or directly.  All numbers are big endian.
+ * <ul>
+ *     <li>pages.dat - a 64 byte header (int magic 'SMAP', int version, int URL count, int page count,
+ *     long end of urls.dat, long end of links.dat) followed by 16 bytes per URL id: the long offset
+ *     of the URL in urls.dat and a long links value, which is 0 if the page has not been processed,
+ *     -1 if it is being processed, or else one more than the offset of its links in links.dat.</li>
+ *     <li>urls.dat - for each URL, an int length and the UTF-8 bytes, padded to a multiple of 4 bytes.</li>
+ *     <li>links.dat - for each processed page, an int count and the int ids of the URLs it links to.</li>
+ *     <li>index.dat - the hash index used to find the id of a URL.  Each long slot holds the URL's
+ *     String.hashCode in the high half and its id + 1 in the low half.  It is rebuilt when the
+ *     directory is opened.</li>
+ * </ul>
+ * The header is updated after each record is written, so a reader only trusts the counts in the header.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class MappedSitemapStore implements SitemapStore {
+
+    static final String PAGES_FILE = "pages.dat";
+    static final String URLS_FILE = "urls.dat";
+    static final String LINKS_FILE = "links.dat";
+    static final String INDEX_FILE = "index.dat";
+
+    private static final int MAGIC = 0x534d4150;
+    private static final int VERSION = 1;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int URL_COUNT_OFFSET = 8;
+    private static final int PAGE_COUNT_OFFSET = 12;
+    private static final int URLS_END_OFFSET = 16;
+    private static final int LINKS_END_OFFSET = 24;
+    private static final int HEADER_SIZE = 64;
+    private static final int PAGE_ENTRY_SIZE = 16;
+
+    private static final long NOT_PROCESSED = 0;
+    private static final long NOT_RETRIEVED = -1;
+
+    private static final int DEFAULT_SEGMENT_SIZE = 1 << 26;
+    private static final int INITIAL_INDEX_CAPACITY = 1 << 12;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final MappedFile pages;
+    private final MappedFile urls;
+    private final MappedFile links;
+    private MappedFile index;
+    private int indexCapacity;
+
+    private int urlCount;
+    private int pageCount;
+    private long urlsEnd;
+    private long linksEnd;
+
+    /**
+     * Opens the sitemap in a directory, creating it if it does not exist.
+     *
+     * @param directory the directory holding the sitemap files
+     * @throws IOException if the files could not be opened, or are not sitemap files
+     */
+    public MappedSitemapStore(Path directory) throws IOException {
+        this(directory, true);
+    }
+
+    /**
+     * Opens the sitemap in a directory, or starts a new one.
+     *
+     * @param directory the directory holding the sitemap files
+     * @param reopen true to keep the sitemap already in the directory, such as for a resumed crawl, or false to
+     *               delete it and start again, as otherwise its pages would count as already processed
+     * @throws IOException if the files could not be opened, or are not sitemap files
+     */
+    public MappedSitemapStore(Path directory, boolean reopen) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, reopen);
+    }
+
+    MappedSitemapStore(Path directory, int segmentSize) throws IOException {
+        this(directory, segmentSize, true);
+    }
+
+    MappedSitemapStore(Path directory, int segmentSize, boolean reopen) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        if (!reopen) {
+            for (String file : new String[]{PAGES_FILE, URLS_FILE, LINKS_FILE, INDEX_FILE}) {
+                Files.deleteIfExists(directory.resolve(file));
+            }
+        }
+        this.segmentSize = segmentSize;
+        this.pages = new MappedFile(directory.resolve(PAGES_FILE), segmentSize);
+        this.urls = new MappedFile(directory.resolve(URLS_FILE), segmentSize);
+        this.links = new MappedFile(directory.resolve(LINKS_FILE), segmentSize);
+
+        pages.ensureCapacity(HEADER_SIZE);
+        int magic = pages.getInt(MAGIC_OFFSET);
+        if (magic == 0) {
+            pages.putInt(MAGIC_OFFSET, MAGIC);
+            pages.putInt(VERSION_OFFSET, VERSION);
+            writeHeader();
+        } else if (magic != MAGIC || pages.getInt(VERSION_OFFSET) != VERSION) {
+            throw new IOException("The directory does not contain a sitemap: " + directory);
+        } else {
+            urlCount = pages.getInt(URL_COUNT_OFFSET);
+            pageCount = pages.getInt(PAGE_COUNT_OFFSET);
+            urlsEnd = pages.getLong(URLS_END_OFFSET);
+            linksEnd = pages.getLong(LINKS_END_OFFSET);
+        }
+
+        this.index = buildIndex(indexCapacityFor(urlCount));
+    }
+
+    @Override
+    public int intern(String url) {
+        int hash = url.hashCode();
+
+        lock.readLock().lock();
+        try {
+            int id = find(url, hash);
+            if (id != NOT_FOUND) {
+                return id;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            int id = find(url, hash);
+            return id != NOT_FOUND ? id : add(url, hash);
+        } catch (IOException e) {
+            throw new SitemapStorageException("Could not store the URL in " + directory + ": " + url, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int lookup(String url) {
+        lock.readLock().lock();
+        try {
+            return find(url, url.hashCode());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String getUrl(int id) {
+        lock.readLock().lock();
+        try {
+            checkId(id);
+            long offset = pages.getLong(pageEntry(id));
+            byte[] bytes = new byte[urls.getInt(offset)];
+            urls.getBytes(offset + 4, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean claim(int pageId) {
+        lock.writeLock().lock();
+        try {
+            checkId(pageId);
+            long entry = pageEntry(pageId) + 8;
+            if (pages.getLong(entry) != NOT_PROCESSED) {
+                return false;
+            }
+            pages.putLong(entry, NOT_RETRIEVED);
+            pageCount++;
+            writeHeader();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void release(int pageId) {
+        lock.writeLock().lock();
+        try {
+            checkId(pageId);
+            long entry = pageEntry(pageId) + 8;
+            if (pages.getLong(entry) == NOT_RETRIEVED) {
+                pages.putLong(entry, NOT_PROCESSED);
+                pageCount--;
+                writeHeader();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void putLinks(int pageId, int[] linkIds) {
+        lock.writeLock().lock();
+        try {
+            checkId(pageId);
+            long recordEnd = linksEnd + 4 + 4L * linkIds.length;
+            links.ensureCapacity(recordEnd);
+            links.putInt(linksEnd, linkIds.length);
+            for (int i = 0; i < linkIds.length; i++) {
+                links.putInt(linksEnd + 4 + 4L * i, linkIds[i]);
+            }
+
+            long entry = pageEntry(pageId) + 8;
+            if (pages.getLong(entry) == NOT_PROCESSED) {
+                pageCount++;
+            }
+            pages.putLong(entry, linksEnd + 1);
+            linksEnd = recordEnd;
+            writeHeader();
+        } catch (IOException e) {
+            throw new SitemapStorageException("Could not store the links in " + directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Takes a snapshot of the page links, without copying anything.
+     *
+     * URLs added and links written after the snapshot is taken are left out of it.
+     */
+    @Override
+    public PageLinks snapshot() {
+        lock.readLock().lock();
+        try {
+            return new MappedPageLinks(urlCount, linksEnd);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the files to disk and closes them.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            writeHeader();
+            index.close();
+            links.close();
+            urls.close();
+            pages.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int find(String url, int hash) {
+        int mask = indexCapacity - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            long entry = index.getLong(8L * slot);
+            if (entry == 0) {
+                return NOT_FOUND;
+            }
+            int id = (int) entry - 1;
+            if ((int) (entry >>> 32) == hash && matches(id, url)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Compares the stored bytes with the URL, without encoding the URL when it is ASCII.
+     */
+    private boolean matches(int id, String url) {
+        long offset = pages.getLong(pageEntry(id));
+        int length = urls.getInt(offset);
+        if (length < url.length()) {
+            return false;
+        }
+
+        long start = offset + 4;
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c >= 0x80) {
+                return matchesEncoded(start, length, url);
+            }
+            if (urls.getByte(start + i) != c) {
+                return false;
+            }
+        }
+        return length == url.length();
+    }
+
+    private boolean matchesEncoded(long start, int length, String url) {
+        byte[] encoded = url.getBytes(StandardCharsets.UTF_8);
+        if (encoded.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (urls.getByte(start + i) != encoded[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int add(String url, int hash) throws IOException {
+        byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+        long recordEnd = urlsEnd + ((4 + bytes.length + 3) & ~3);
+        urls.ensureCapacity(recordEnd);
+        urls.putInt(urlsEnd, bytes.length);
+        urls.putBytes(urlsEnd + 4, bytes);
+
+        int id = urlCount;
+        long entry = pageEntry(id);
+        pages.ensureCapacity(entry + PAGE_ENTRY_SIZE);
+        pages.putLong(entry, urlsEnd);
+        pages.putLong(entry + 8, NOT_PROCESSED);
+
+        urlsEnd = recordEnd;
+        urlCount++;
+        writeHeader();
+
+        insert(index, indexCapacity, ((long) hash << 32) | (id + 1));
+        if (indexCapacityFor(urlCount) > indexCapacity) {
+            growIndex(indexCapacityFor(urlCount));
+        }
+        return id;
+    }
+
+    /**
+     * Builds the index from the URLs when the directory is opened.
+     */
+    private MappedFile buildIndex(int capacity) throws IOException {
+        MappedFile newIndex = createIndex(capacity);
+        for (int id = 0; id < urlCount; id++) {
+            long offset = pages.getLong(pageEntry(id));
+            byte[] bytes = new byte[urls.getInt(offset)];
+            urls.getBytes(offset + 4, bytes);
+            int hash = new String(bytes, StandardCharsets.UTF_8).hashCode();
+            insert(newIndex, capacity, ((long) hash << 32) | (id + 1));
+        }
+        return replaceIndex(newIndex, capacity);
+    }
+
+    /**
+     * Moves the entries of the current index into a larger one, without reading the URLs.
+     */
+    private void growIndex(int capacity) throws IOException {
+        MappedFile newIndex = createIndex(capacity);
+        for (int slot = 0; slot < indexCapacity; slot++) {
+            long entry = index.getLong(8L * slot);
+            if (entry != 0) {
+                insert(newIndex, capacity, entry);
+            }
+        }
+        index.close();
+        index = replaceIndex(newIndex, capacity);
+    }
+
+    private MappedFile createIndex(int capacity) throws IOException {
+        Path newIndexFile = directory.resolve(INDEX_FILE + ".new");
+        Files.deleteIfExists(newIndexFile);
+        MappedFile newIndex = new MappedFile(newIndexFile, Math.min(segmentSize, 8 * capacity));
+        newIndex.ensureCapacity(8L * capacity);
+        return newIndex;
+    }
+
+    private MappedFile replaceIndex(MappedFile newIndex, int capacity) throws IOException {
+        Files.move(directory.resolve(INDEX_FILE + ".new"), directory.resolve(INDEX_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        indexCapacity = capacity;
+        return newIndex;
+    }
+
+    private static void insert(MappedFile index, int capacity, long value) {
+        int mask = capacity - 1;
+        int slot = mix((int) (value >>> 32)) & mask;
+        while (index.getLong(8L * slot) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index.putLong(8L * slot, value);
+    }
+
+    private static int indexCapacityFor(int urlCount) {
+        int capacity = INITIAL_INDEX_CAPACITY;
+        while (capacity < 2L * urlCount) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    private void writeHeader() {
+        pages.putInt(URL_COUNT_OFFSET, urlCount);
+        pages.putInt(PAGE_COUNT_OFFSET, pageCount);
+        pages.putLong(URLS_END_OFFSET, urlsEnd);
+        pages.putLong(LINKS_END_OFFSET, linksEnd);
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= urlCount) {
+            throw new IndexOutOfBoundsException("No URL with id " + id);
+        }
+    }
+
+    private static long pageEntry(int id) {
+        return HEADER_SIZE + (long) PAGE_ENTRY_SIZE * id;
+    }
+
+    /**
+     * Spreads the bits of String.hashCode, which clusters for URLs that only differ at the end.
+     */
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Reads the page links from the files, ignoring URLs and links added after the snapshot.
+     */
+    private final class MappedPageLinks implements PageLinks {
+
+        private final int snapshotUrlCount;
+        private final long snapshotLinksEnd;
+        private int snapshotPageCount = -1;
+
+        MappedPageLinks(int snapshotUrlCount, long snapshotLinksEnd) {
+            this.snapshotUrlCount = snapshotUrlCount;
+            this.snapshotLinksEnd = snapshotLinksEnd;
+        }
+
+        @Override
+        public int getUrlCount() {
+            return snapshotUrlCount;
+        }
+
+        @Override
+        public int getPageCount() {
+            if (snapshotPageCount < 0) {
+                int count = 0;
+                for (int id = 0; id < snapshotUrlCount; id++) {
+                    if (getLinks(id) != null) {
+                        count++;
+                    }
+                }
+                snapshotPageCount = count;
+            }
+            return snapshotPageCount;
+        }
+
+        @Override
+        public int[] getLinks(int pageId) {
+            lock.readLock().lock();
+            try {
+                long value = pages.getLong(pageEntry(pageId) + 8);
+                if (value == NOT_PROCESSED) {
+                    return null;
+                } else if (value == NOT_RETRIEVED) {
+                    return new int[0];
+                }
+                long offset = value - 1;
+                if (offset >= snapshotLinksEnd) {
+                    return null;
+                }
+                int[] linkIds = new int[links.getInt(offset)];
+                for (int i = 0; i < linkIds.length; i++) {
+                    linkIds[i] = links.getInt(offset + 4 + 4L * i);
+                }
+                return linkIds;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+}
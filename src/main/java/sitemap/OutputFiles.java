@@ -0,0 +1,43 @@
+package sitemap;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Opens the files that the sitemap writers write to.
+ *
+ * @author Ravindra Rishudeo.
+ */
+final class OutputFiles {
+
+    static final int BUFFER_SIZE = 1 << 16;
+
+    private OutputFiles() {
+    }
+
+    /**
+     * Opens a buffered UTF-8 writer, creating the parent directories if needed.
+     *
+     * @param file the file, which is replaced if it exists
+     * @param gzip whether to compress the file
+     * @return the writer
+     * @throws IOException if the file could not be created
+     */
+    static Writer newWriter(Path file, boolean gzip) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        OutputStream out = Files.newOutputStream(file);
+        if (gzip) {
+            out = new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+}
@@ -1,26 +1,49 @@
 package sitemap;
 
-import com.google.common.collect.ImmutableMap;
-
-import java.util.Collections;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Contains the sitemap information.
  *
+ * Every URL is interned once in a {@link SitemapStore} and the links of each page are kept as the
+ * ids of the linked URLs.  The URLs are only decoded back into Strings when the sitemap is read.
+ * By default the sitemap is kept on the heap, see {@link MappedSitemapStore} for crawls that are
+ * larger than the heap.
+ *
  * @author Ravindra Rishudeo.
  */
-public class Sitemap {
+public class Sitemap implements Closeable {
+
+    private final SitemapStore store;
 
-    private final Map<String, List<String>> siteLinks;
+    private final LongAdder pageCount = new LongAdder();
+    private final LongAdder linkCount = new LongAdder();
+    private final LongAdder alreadyProcessedCount = new LongAdder();
 
     /**
-     * Constructor.
+     * Constructor for a sitemap kept on the heap.
      */
     public Sitemap() {
-        this.siteLinks = new ConcurrentHashMap<>();
+        this(new HeapSitemapStore());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param store where the URLs and links are kept
+     */
+    public Sitemap(SitemapStore store) {
+        this.store = store;
     }
 
     /**
@@ -30,7 +53,15 @@ public class Sitemap {
      * @param links the links from the page
      */
     public void addLinks(String url, List<String> links) {
-        siteLinks.put(url, links);
+        int pageId = store.intern(url);
+        int[] linkIds = new int[links.size()];
+        int i = 0;
+        for (String link : links) {
+            linkIds[i++] = store.intern(link);
+        }
+        store.putLinks(pageId, linkIds);
+        pageCount.increment();
+        linkCount.add(linkIds.length);
     }
 
     /**
@@ -45,13 +76,69 @@ public class Sitemap {
      * @return whether the links for this page have been processed
      */
     public boolean hasBeenProcessed(String url) {
-        List<String> previousValue = siteLinks.putIfAbsent(url, Collections.emptyList());
-        return previousValue != null;
+        if (store.claim(store.intern(url))) {
+            return false;
+        }
+        alreadyProcessedCount.increment();
+        return true;
     }
 
+    /**
+     * Releases a page that was claimed by {@link #hasBeenProcessed(String)} but never had its links added,
+     * for example because the crawl that claimed it stopped.  The page can then be processed again.
+     *
+     * @param url the URL of the page
+     */
+    public void release(String url) {
+        int pageId = store.lookup(url);
+        if (pageId != SitemapStore.NOT_FOUND) {
+            store.release(pageId);
+        }
+    }
 
+    /**
+     * Gets a read only snapshot of the pages and their links.
+     *
+     * The URLs are decoded as the map is read, so the map is cheap to create even for a large crawl.
+     *
+     * @return the links of each page, keyed by the URL of the page
+     */
     public Map<String, List<String>> getSiteLinks() {
-        return ImmutableMap.copyOf(siteLinks);
+        return new SiteLinks(store.snapshot());
+    }
+
+    /**
+     * Writes every page of the sitemap, decoding the URLs of one page at a time.
+     *
+     * @param writer writes the pages
+     * @throws IOException if a page could not be written
+     */
+    public void writeTo(SitemapWriter writer) throws IOException {
+        for (Map.Entry<String, List<String>> page : getSiteLinks().entrySet()) {
+            writer.writePage(page.getKey(), page.getValue());
+        }
+    }
+
+    /**
+     * Gets the number of pages whose links have been added since the sitemap was created.
+     *
+     * @return the number of pages
+     */
+    public long getPageCount() {
+        return pageCount.sum();
+    }
+
+    public long getLinkCount() {
+        return linkCount.sum();
+    }
+
+    /**
+     * Gets the number of times a page was not processed because it already had been, or was being.
+     *
+     * @return the number of rejected pages
+     */
+    public long getAlreadyProcessedCount() {
+        return alreadyProcessedCount.sum();
     }
 
     @Override
@@ -59,7 +146,7 @@ public class Sitemap {
         final StringBuilder sb = new StringBuilder("Sitemap{\n");
         sb.append("siteLinks=");
 
-        siteLinks.entrySet().stream()
+        getSiteLinks().entrySet()
                 .forEach(entry -> {
                     sb.append(entry.getKey());
                     sb.append(" : ");
@@ -72,4 +159,113 @@ public class Sitemap {
         sb.append("\n}");
         return sb.toString();
     }
+
+    /**
+     * Closes the store, flushing it to disk if it is file backed.
+     *
+     * @throws IOException if the store could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        store.close();
+    }
+
+    /**
+     * Map view over a snapshot of the page links.
+     */
+    private final class SiteLinks extends AbstractMap<String, List<String>> {
+
+        private final SitemapStore.PageLinks snapshot;
+
+        SiteLinks(SitemapStore.PageLinks snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public List<String> get(Object key) {
+            if (!(key instanceof String)) {
+                return null;
+            }
+            int pageId = store.lookup((String) key);
+            if (pageId == SitemapStore.NOT_FOUND || pageId >= snapshot.getUrlCount()) {
+                return null;
+            }
+            int[] links = snapshot.getLinks(pageId);
+            return links == null ? null : new UrlList(links);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Entry<String, List<String>>> entrySet() {
+            return new AbstractSet<Entry<String, List<String>>>() {
+                @Override
+                public Iterator<Entry<String, List<String>>> iterator() {
+                    return new EntryIterator(snapshot);
+                }
+
+                @Override
+                public int size() {
+                    return snapshot.getPageCount();
+                }
+            };
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<String, List<String>>> {
+
+        private final SitemapStore.PageLinks snapshot;
+        private int next = -1;
+        private int[] nextLinks;
+
+        EntryIterator(SitemapStore.PageLinks snapshot) {
+            this.snapshot = snapshot;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < snapshot.getUrlCount();
+        }
+
+        @Override
+        public Map.Entry<String, List<String>> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, List<String>> entry =
+                    new AbstractMap.SimpleImmutableEntry<>(store.getUrl(next), new UrlList(nextLinks));
+            advance();
+            return entry;
+        }
+
+        private void advance() {
+            nextLinks = null;
+            while (nextLinks == null && ++next < snapshot.getUrlCount()) {
+                nextLinks = snapshot.getLinks(next);
+            }
+        }
+    }
+
+    private final class UrlList extends AbstractList<String> {
+
+        private final int[] ids;
+
+        UrlList(int[] ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public String get(int index) {
+            return store.getUrl(ids[index]);
+        }
+
+        @Override
+        public int size() {
+            return ids.length;
+        }
+    }
 }
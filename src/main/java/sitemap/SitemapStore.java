@@ -0,0 +1,101 @@
+package sitemap;
+
+import java.io.Closeable;
+
+/**
+ * Storage for the URLs and page links of a {@link Sitemap}.
+ *
+ * URLs are interned to dense int ids and the links of a page are stored as the ids of the URLs
+ * that it links to.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public interface SitemapStore extends Closeable {
+
+    /**
+     * Returned by {@link #lookup(String)} for a URL that has not been interned.
+     */
+    int NOT_FOUND = -1;
+
+    /**
+     * Gets the id of a URL, storing the URL if it has not been seen before.
+     *
+     * @param url the URL
+     * @return the id of the URL
+     */
+    int intern(String url);
+
+    /**
+     * Gets the id of a URL without storing it.
+     *
+     * @param url the URL
+     * @return the id of the URL, or {@link #NOT_FOUND}
+     */
+    int lookup(String url);
+
+    /**
+     * Gets the URL with the given id.
+     *
+     * @param id the id returned by {@link #intern(String)}
+     * @return the URL
+     */
+    String getUrl(int id);
+
+    /**
+     * Marks a page as being processed.
+     *
+     * @param pageId the id of the page URL
+     * @return true if this call claimed the page, false if it had already been claimed or had links added
+     */
+    boolean claim(int pageId);
+
+    /**
+     * Releases a claimed page that did not have its links added, so it can be claimed again.
+     *
+     * @param pageId the id of the page URL
+     */
+    void release(int pageId);
+
+    /**
+     * Sets the links of a page.
+     *
+     * @param pageId the id of the page URL
+     * @param linkIds the ids of the URLs that the page links to, which must not be modified afterwards
+     */
+    void putLinks(int pageId, int[] linkIds);
+
+    /**
+     * Takes a read only snapshot of the page links.
+     *
+     * @return the snapshot
+     */
+    PageLinks snapshot();
+
+    /**
+     * A read only snapshot of the links of each page.
+     */
+    interface PageLinks {
+
+        /**
+         * Gets the upper bound of the page ids in the snapshot.
+         *
+         * @return one more than the largest page id
+         */
+        int getUrlCount();
+
+        /**
+         * Gets the number of pages in the snapshot.
+         *
+         * @return the number of page ids with links
+         */
+        int getPageCount();
+
+        /**
+         * Gets the links of a page.
+         *
+         * @param pageId the id of the page URL
+         * @return the ids of the linked URLs, or null if the page is not in the snapshot
+         */
+        int[] getLinks(int pageId);
+    }
+}
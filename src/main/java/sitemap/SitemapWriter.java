@@ -0,0 +1,22 @@
+package sitemap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes the pages of a sitemap to a file, one page at a time, so the output never has to be held in memory.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public interface SitemapWriter extends Closeable {
+
+    /**
+     * Writes a page and its links.
+     *
+     * @param url the URL of the page
+     * @param links the links from the page
+     * @throws IOException if the page could not be written
+     */
+    void writePage(String url, List<String> links) throws IOException;
+}
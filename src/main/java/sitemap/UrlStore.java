@@ -0,0 +1,242 @@
+package sitemap;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Interns URLs, giving each distinct URL a dense int id.
+ *
+ * Each URL is stored once as UTF-8 bytes packed into large shared byte arrays, so a URL that is
+ * linked from many pages costs a 4 byte id per link rather than its own String.  The ids are
+ * found through an open addressing hash table of ints.
+ *
+ * Interning a URL that is already stored only takes the read lock, which is the common case
+ * when most of a page's links have been seen before.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class UrlStore {
+
+    /**
+     * Returned by {@link #lookup(String)} for a URL that has not been interned.
+     */
+    public static final int NOT_FOUND = SitemapStore.NOT_FOUND;
+
+    private static final int PAGE_SIZE = 1 << 16;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private byte[][] pages = new byte[16][];
+    private int pageCount;
+    private int pagePosition;
+
+    // Indexed by id
+    private long[] locations = new long[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int size;
+
+    // id + 1 for each URL, 0 for an empty slot
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+
+    /**
+     * Gets the id of a URL, storing the URL if it has not been seen before.
+     *
+     * @param url the URL
+     * @return the id of the URL
+     */
+    public int intern(String url) {
+        int hash = url.hashCode();
+
+        lock.readLock().lock();
+        try {
+            int id = find(url, hash);
+            if (id != NOT_FOUND) {
+                return id;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            int id = find(url, hash);
+            return id != NOT_FOUND ? id : add(url, hash);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the id of a URL without storing it.
+     *
+     * @param url the URL
+     * @return the id of the URL, or {@link #NOT_FOUND}
+     */
+    public int lookup(String url) {
+        lock.readLock().lock();
+        try {
+            return find(url, url.hashCode());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Decodes the URL with the given id.
+     *
+     * @param id the id returned by {@link #intern(String)}
+     * @return the URL
+     */
+    public String get(int id) {
+        lock.readLock().lock();
+        try {
+            if (id < 0 || id >= size) {
+                throw new IndexOutOfBoundsException("No URL with id " + id);
+            }
+            long location = locations[id];
+            return new String(pages[page(location)], offset(location), lengths[id], StandardCharsets.UTF_8);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the number of distinct URLs stored.
+     *
+     * @return the number of URLs, which is also the next id
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int find(String url, int hash) {
+        int mask = table.length - 1;
+        for (int slot = mix(hash) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (hashes[id] == hash && matches(id, url)) {
+                return id;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Compares the stored bytes with the URL, without encoding the URL when it is ASCII.
+     */
+    private boolean matches(int id, String url) {
+        long location = locations[id];
+        byte[] page = pages[page(location)];
+        int offset = offset(location);
+        int length = lengths[id];
+        if (length < url.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c >= 0x80) {
+                return matchesEncoded(page, offset, length, url);
+            }
+            if (i >= length || page[offset + i] != c) {
+                return false;
+            }
+        }
+        return length == url.length();
+    }
+
+    private static boolean matchesEncoded(byte[] page, int offset, int length, String url) {
+        byte[] encoded = url.getBytes(StandardCharsets.UTF_8);
+        if (encoded.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (page[offset + i] != encoded[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int add(String url, int hash) {
+        byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+
+        if (size == locations.length) {
+            int capacity = size * 2;
+            locations = Arrays.copyOf(locations, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+        }
+        int id = size++;
+        locations[id] = store(bytes);
+        lengths[id] = bytes.length;
+        hashes[id] = hash;
+
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        } else {
+            insert(table, id);
+        }
+        return id;
+    }
+
+    private long store(byte[] bytes) {
+        if (pageCount == 0 || bytes.length > PAGE_SIZE - pagePosition) {
+            // URLs longer than a page get a page of their own
+            newPage(Math.max(PAGE_SIZE, bytes.length));
+        }
+        long location = ((long) (pageCount - 1) << 32) | pagePosition;
+        System.arraycopy(bytes, 0, pages[pageCount - 1], pagePosition, bytes.length);
+        pagePosition += bytes.length;
+        return location;
+    }
+
+    private void newPage(int pageSize) {
+        if (pageCount == pages.length) {
+            pages = Arrays.copyOf(pages, pageCount * 2);
+        }
+        pages[pageCount++] = new byte[pageSize];
+        pagePosition = 0;
+    }
+
+    private void rehash(int capacity) {
+        int[] newTable = new int[capacity];
+        for (int id = 0; id < size; id++) {
+            insert(newTable, id);
+        }
+        table = newTable;
+    }
+
+    private void insert(int[] table, int id) {
+        int mask = table.length - 1;
+        int slot = mix(hashes[id]) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = id + 1;
+    }
+
+    private static int page(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offset(long location) {
+        return (int) location;
+    }
+
+    /**
+     * Spreads the bits of String.hashCode, which clusters for URLs that only differ at the end.
+     */
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
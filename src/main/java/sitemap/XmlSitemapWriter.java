@@ -0,0 +1,207 @@
+package sitemap;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Writes the pages of a sitemap in the sitemaps.org XML format.
+ *
+ * A sitemap file may hold at most 50,000 URLs and 50MB before compression, so the pages are written to
+ * sitemap-1.xml, sitemap-2.xml and so on, starting a new file whenever the next page would go over either
+ * limit.  When the writer is closed, a single file is renamed to sitemap.xml, or else sitemap.xml is
+ * written as a sitemap index that lists the files under the base URL they will be served from.  Only
+ * the pages go in the sitemap, as the format has no place for the links between them.
+ *
+ * With gzip every file is compressed and named with a .gz suffix, the index included, so the sitemap is
+ * always sitemap.xml.gz.  The sitemap files of an earlier crawl into the same directory are deleted before
+ * the first file is written, so the directory only holds the files of this sitemap.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class XmlSitemapWriter implements SitemapWriter {
+
+    static final int MAX_URLS_PER_FILE = 50_000;
+    static final long MAX_BYTES_PER_FILE = 50L * 1024 * 1024;
+
+    static final String SITEMAP_FILE = "sitemap.xml";
+
+    private static final Pattern SITEMAP_FILE_NAME = Pattern.compile("sitemap(-\\d+)?\\.xml(\\.gz)?");
+
+    private static final String HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n";
+    private static final String FOOTER = "</urlset>\n";
+
+    private final Path directory;
+    private final String baseUrl;
+    private final boolean gzip;
+    private final int maxUrlsPerFile;
+    private final long maxBytesPerFile;
+
+    private final StringBuilder entry = new StringBuilder();
+    private Writer out;
+    private int fileCount;
+    private int fileUrls;
+    private long fileBytes;
+
+    /**
+     * Constructor.
+     *
+     * @param directory the directory to write the sitemap files to
+     * @param baseUrl the URL of the directory that the files will be served from, for the sitemap index
+     * @param gzip whether to compress the sitemap files
+     */
+    public XmlSitemapWriter(Path directory, String baseUrl, boolean gzip) {
+        this(directory, baseUrl, gzip, MAX_URLS_PER_FILE, MAX_BYTES_PER_FILE);
+    }
+
+    XmlSitemapWriter(Path directory, String baseUrl, boolean gzip, int maxUrlsPerFile, long maxBytesPerFile) {
+        this.directory = directory;
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        this.gzip = gzip;
+        this.maxUrlsPerFile = maxUrlsPerFile;
+        this.maxBytesPerFile = maxBytesPerFile;
+    }
+
+    @Override
+    public void writePage(String url, List<String> links) throws IOException {
+        entry.setLength(0);
+        entry.append("<url><loc>");
+        appendEscaped(entry, url);
+        entry.append("</loc></url>\n");
+        long entryBytes = utf8Length(entry);
+
+        if (out == null || fileUrls == maxUrlsPerFile || fileBytes + entryBytes + FOOTER.length() > maxBytesPerFile) {
+            startFile();
+        }
+        out.append(entry);
+        fileUrls++;
+        fileBytes += entryBytes;
+    }
+
+    /**
+     * Finishes the last file and writes sitemap.xml.
+     */
+    @Override
+    public void close() throws IOException {
+        if (out == null) {
+            startFile();
+        }
+        finishFile();
+
+        Path sitemap = directory.resolve(gzip ? SITEMAP_FILE + ".gz" : SITEMAP_FILE);
+        if (fileCount == 1) {
+            Files.move(directory.resolve(fileName(1)), sitemap, StandardCopyOption.REPLACE_EXISTING);
+            return;
+        }
+
+        try (Writer index = OutputFiles.newWriter(sitemap, gzip)) {
+            index.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n");
+            for (int file = 1; file <= fileCount; file++) {
+                StringBuilder location = new StringBuilder();
+                appendEscaped(location, baseUrl + fileName(file));
+                index.write("<sitemap><loc>" + location + "</loc></sitemap>\n");
+            }
+            index.write("</sitemapindex>\n");
+        }
+    }
+
+    /**
+     * Gets the number of sitemap files written, not counting the index.
+     *
+     * @return the number of files
+     */
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    private void startFile() throws IOException {
+        if (fileCount == 0) {
+            deleteEarlierFiles();
+        }
+        finishFile();
+        fileCount++;
+        out = OutputFiles.newWriter(directory.resolve(fileName(fileCount)), gzip);
+        out.write(HEADER);
+        fileUrls = 0;
+        fileBytes = HEADER.length();
+    }
+
+    private void finishFile() throws IOException {
+        if (out != null) {
+            out.write(FOOTER);
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * Deletes the sitemap and index files left in the directory by an earlier crawl, compressed or not, as a
+     * smaller sitemap would not replace all of them.
+     */
+    private void deleteEarlierFiles() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "sitemap*.xml*")) {
+            for (Path file : files) {
+                if (SITEMAP_FILE_NAME.matcher(file.getFileName().toString()).matches()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private String fileName(int file) {
+        return "sitemap-" + file + (gzip ? ".xml.gz" : ".xml");
+    }
+
+    private static void appendEscaped(StringBuilder builder, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    builder.append("&amp;");
+                    break;
+                case '<':
+                    builder.append("&lt;");
+                    break;
+                case '>':
+                    builder.append("&gt;");
+                    break;
+                case '"':
+                    builder.append("&quot;");
+                    break;
+                case '\'':
+                    builder.append("&apos;");
+                    break;
+                default:
+                    builder.append(c);
+            }
+        }
+    }
+
+    private static long utf8Length(CharSequence value) {
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,229 @@
+package url;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Puts URLs into a canonical form, so that different spellings of the same page are crawled once.
+ *
+ * The scheme and host are lower cased, default ports, empty queries and fragments are dropped, an
+ * empty path becomes "/" and "." / ".." path segments are resolved.  Optionally, configured query
+ * parameters are removed (a trailing '*' matches a prefix, e.g. "utm_*") and the remaining query
+ * parameters are sorted.  URLs without an authority, such as mailto: links, are returned unchanged.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class UrlNormaliser {
+
+    private final Set<String> strippedParameters;
+    private final List<String> strippedParameterPrefixes;
+    private final boolean sortParameters;
+
+    /**
+     * Constructor for a normaliser that leaves query parameters alone.
+     */
+    public UrlNormaliser() {
+        this(Collections.emptyList(), false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param strippedParameters the names of query parameters to remove, where a trailing '*' matches a prefix
+     * @param sortParameters whether to sort the remaining query parameters
+     */
+    public UrlNormaliser(Collection<String> strippedParameters, boolean sortParameters) {
+        this.strippedParameters = new HashSet<>();
+        this.strippedParameterPrefixes = new ArrayList<>();
+        for (String parameter : strippedParameters) {
+            if (parameter.endsWith("*")) {
+                strippedParameterPrefixes.add(parameter.substring(0, parameter.length() - 1));
+            } else {
+                this.strippedParameters.add(parameter);
+            }
+        }
+        this.sortParameters = sortParameters;
+    }
+
+    /**
+     * Puts a URL into canonical form.
+     *
+     * URLs that are already canonical, which is most of them, are returned without allocating.
+     *
+     * @param url the URL
+     * @return the canonical URL
+     */
+    public String normalise(String url) {
+        int schemeEnd = Urls.schemeEnd(url);
+        if (schemeEnd < 0 || !url.startsWith("//", schemeEnd + 1)) {
+            return url;
+        }
+
+        int authorityStart = schemeEnd + 3;
+        int authorityEnd = Urls.authorityEnd(url, authorityStart);
+        long hostRange = Urls.hostRange(url);
+        if (hostRange < 0) {
+            return url;
+        }
+        int hostStart = Urls.start(hostRange);
+        int hostEnd = Urls.end(hostRange);
+        boolean hasPort = hostEnd < authorityEnd && url.charAt(hostEnd) == ':';
+        boolean keepPort = hasPort && hostEnd + 1 < authorityEnd && !isDefaultPort(url, schemeEnd, hostEnd + 1, authorityEnd);
+
+        int fragmentStart = url.indexOf('#', authorityEnd);
+        int end = fragmentStart >= 0 ? fragmentStart : url.length();
+        int queryStart = url.indexOf('?', authorityEnd);
+        int pathEnd = queryStart >= 0 && queryStart < end ? queryStart : end;
+
+        if (fragmentStart < 0 && hasPort == keepPort && pathEnd > authorityEnd && pathEnd != end - 1
+                && !hasUpperCase(url, 0, schemeEnd) && !hasUpperCase(url, hostStart, hostEnd)
+                && !hasDotSegment(url, authorityEnd, pathEnd) && (pathEnd == end || !rewritesQuery())) {
+            return url;
+        }
+
+        StringBuilder canonical = new StringBuilder(url.length() + 1);
+        appendLowerCase(canonical, url, 0, schemeEnd);
+        canonical.append("://");
+        canonical.append(url, authorityStart, hostStart);
+        appendLowerCase(canonical, url, hostStart, hostEnd);
+        if (keepPort) {
+            canonical.append(url, hostEnd, authorityEnd);
+        }
+
+        appendPath(canonical, url, authorityEnd, pathEnd);
+
+        if (pathEnd < end) {
+            appendQuery(canonical, url, pathEnd + 1, end);
+        }
+
+        return canonical.toString();
+    }
+
+    private static boolean isDefaultPort(String url, int schemeEnd, int portStart, int portEnd) {
+        return isPort(url, schemeEnd, "http", portStart, portEnd, "80")
+                || isPort(url, schemeEnd, "https", portStart, portEnd, "443");
+    }
+
+    private static boolean isPort(String url, int schemeEnd, String scheme, int portStart, int portEnd, String port) {
+        return schemeEnd == scheme.length() && url.regionMatches(true, 0, scheme, 0, schemeEnd)
+                && portEnd - portStart == port.length() && url.startsWith(port, portStart);
+    }
+
+    private static boolean hasUpperCase(String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void appendLowerCase(StringBuilder sb, String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            sb.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+        }
+    }
+
+    /**
+     * Appends the path with its dot segments removed, as in RFC 3986 section 5.2.4.
+     */
+    private static void appendPath(StringBuilder sb, String url, int start, int end) {
+        if (start == end) {
+            sb.append('/');
+            return;
+        }
+        if (!hasDotSegment(url, start, end)) {
+            sb.append(url, start, end);
+            return;
+        }
+
+        String[] segments = url.substring(start, end).split("/", -1);
+        List<String> output = new ArrayList<>(segments.length);
+        for (int i = 1; i < segments.length; i++) {
+            String segment = segments[i];
+            boolean last = i == segments.length - 1;
+            if (".".equals(segment)) {
+                if (last) {
+                    output.add("");
+                }
+            } else if ("..".equals(segment)) {
+                if (!output.isEmpty()) {
+                    output.remove(output.size() - 1);
+                }
+                if (last) {
+                    output.add("");
+                }
+            } else {
+                output.add(segment);
+            }
+        }
+
+        for (String segment : output) {
+            sb.append('/').append(segment);
+        }
+        if (output.isEmpty()) {
+            sb.append('/');
+        }
+    }
+
+    private static boolean hasDotSegment(String url, int start, int end) {
+        for (int dot = url.indexOf("/.", start); dot >= 0 && dot < end; dot = url.indexOf("/.", dot + 1)) {
+            int next = dot + 2;
+            if (next == end || url.charAt(next) == '/') {
+                return true;
+            }
+            if (url.charAt(next) == '.' && (next + 1 == end || url.charAt(next + 1) == '/')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean rewritesQuery() {
+        return sortParameters || !strippedParameters.isEmpty() || !strippedParameterPrefixes.isEmpty();
+    }
+
+    private void appendQuery(StringBuilder sb, String url, int start, int end) {
+        if (start == end) {
+            return;
+        }
+        if (!rewritesQuery()) {
+            sb.append('?').append(url, start, end);
+            return;
+        }
+
+        List<String> parameters = new ArrayList<>();
+        for (String parameter : url.substring(start, end).split("&")) {
+            if (!parameter.isEmpty() && !isStripped(parameter)) {
+                parameters.add(parameter);
+            }
+        }
+        if (sortParameters) {
+            Collections.sort(parameters);
+        }
+
+        for (int i = 0; i < parameters.size(); i++) {
+            sb.append(i == 0 ? '?' : '&').append(parameters.get(i));
+        }
+    }
+
+    private boolean isStripped(String parameter) {
+        int equals = parameter.indexOf('=');
+        String name = equals >= 0 ? parameter.substring(0, equals) : parameter;
+        if (strippedParameters.contains(name)) {
+            return true;
+        }
+        for (String prefix : strippedParameterPrefixes) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
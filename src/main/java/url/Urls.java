@@ -0,0 +1,204 @@
+package url;
+
+/**
+ * Extracts and compares the hosts of URLs without constructing URI objects.
+ *
+ * The methods only scan the URL string, so comparing a link against a page's domain does not
+ * allocate.  URLs without an authority, such as mailto: and javascript: links or relative URLs,
+ * have no host.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public final class Urls {
+
+    private static final String WWW_PREFIX = "www.";
+    private static final long NO_HOST = -1;
+
+    private Urls() {
+    }
+
+    /**
+     * Gets the domain name of a URL, which is its lower case host without any "www." prefix.
+     *
+     * @param url the URL
+     * @return the domain name, or null if the URL has no host
+     */
+    public static String getDomainName(String url) {
+        long range = domainRange(url);
+        if (range == NO_HOST) {
+            return null;
+        }
+        return url.substring(start(range), end(range)).toLowerCase();
+    }
+
+    /**
+     * Indicates whether a URL is in a domain, ignoring case and any "www." prefix.
+     *
+     * @param url the URL
+     * @param domainName the domain name, as returned by {@link #getDomainName(String)}
+     * @return true if the URL has a host in the domain
+     */
+    public static boolean hasDomainName(String url, String domainName) {
+        if (domainName == null) {
+            return false;
+        }
+        long range = domainRange(url);
+        if (range == NO_HOST) {
+            return false;
+        }
+        int start = start(range);
+        int length = end(range) - start;
+        return length == domainName.length() && url.regionMatches(true, start, domainName, 0, length);
+    }
+
+    /**
+     * Gets the host of a URL without its port, which is the name its server is resolved by.
+     *
+     * @param url the URL
+     * @return the lower case host, or null if the URL has no host
+     */
+    public static String getHost(String url) {
+        long range = hostRange(url);
+        if (range == NO_HOST) {
+            return null;
+        }
+        return url.substring(start(range), end(range)).toLowerCase();
+    }
+
+    /**
+     * Gets the host of a URL with its port, if it has one, which identifies the server the URL is fetched from.
+     *
+     * @param url the URL
+     * @return the lower case host and port, or null if the URL has no host
+     */
+    public static String getHostAndPort(String url) {
+        long range = hostRange(url);
+        if (range == NO_HOST) {
+            return null;
+        }
+        int authorityEnd = authorityEnd(url, start(range));
+        return url.substring(start(range), authorityEnd).toLowerCase();
+    }
+
+    /**
+     * Counts the segments of the path of a URL, so /a/b and /a/b/ have two and / has none.
+     *
+     * @param url the URL
+     * @return the number of non-empty path segments
+     */
+    public static int getPathSegmentCount(String url) {
+        int schemeEnd = schemeEnd(url);
+        int pathStart = 0;
+        if (schemeEnd >= 0) {
+            pathStart = url.startsWith("//", schemeEnd + 1)
+                    ? authorityEnd(url, schemeEnd + 3) : schemeEnd + 1;
+        }
+        int segments = 0;
+        boolean inSegment = false;
+        for (int i = pathStart; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '?' || c == '#') {
+                break;
+            }
+            if (c == '/') {
+                inSegment = false;
+            } else if (!inSegment) {
+                inSegment = true;
+                segments++;
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Finds the end of the scheme of an absolute URL.
+     *
+     * @param url the URL
+     * @return the index of the ':' after the scheme, or -1 if the URL does not start with a scheme
+     */
+    static int schemeEnd(String url) {
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == ':') {
+                return i > 0 ? i : -1;
+            }
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (i > 0 && ((c >= '0' && c <= '9') || c == '+' || c == '-' || c == '.'));
+            if (!valid) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the end of the authority, which starts at authorityStart.
+     */
+    static int authorityEnd(String url, int authorityStart) {
+        for (int i = authorityStart; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                return i;
+            }
+        }
+        return url.length();
+    }
+
+    /**
+     * Finds the host within the authority, after any user info and before any port.
+     *
+     * @return the start and end of the host packed into a long, or NO_HOST
+     */
+    static long hostRange(String url) {
+        int schemeEnd = schemeEnd(url);
+        if (schemeEnd < 0 || !url.startsWith("//", schemeEnd + 1)) {
+            return NO_HOST;
+        }
+        int authorityStart = schemeEnd + 3;
+        int authorityEnd = authorityEnd(url, authorityStart);
+
+        int hostStart = authorityStart;
+        int at = url.lastIndexOf('@', authorityEnd - 1);
+        if (at >= authorityStart) {
+            hostStart = at + 1;
+        }
+
+        int hostEnd = authorityEnd;
+        if (hostStart < authorityEnd && url.charAt(hostStart) == '[') {
+            int bracket = url.indexOf(']', hostStart);
+            hostEnd = bracket >= 0 && bracket < authorityEnd ? bracket + 1 : authorityEnd;
+        } else {
+            int colon = url.indexOf(':', hostStart);
+            if (colon >= 0 && colon < authorityEnd) {
+                hostEnd = colon;
+            }
+        }
+
+        return hostEnd > hostStart ? pack(hostStart, hostEnd) : NO_HOST;
+    }
+
+    private static long domainRange(String url) {
+        long range = hostRange(url);
+        if (range == NO_HOST) {
+            return NO_HOST;
+        }
+        int start = start(range);
+        int end = end(range);
+        if (end - start > WWW_PREFIX.length() && url.regionMatches(true, start, WWW_PREFIX, 0, WWW_PREFIX.length())) {
+            start += WWW_PREFIX.length();
+        }
+        return pack(start, end);
+    }
+
+    private static long pack(int start, int end) {
+        return ((long) start << 32) | end;
+    }
+
+    static int start(long range) {
+        return (int) (range >>> 32);
+    }
+
+    static int end(long range) {
+        return (int) range;
+    }
+}
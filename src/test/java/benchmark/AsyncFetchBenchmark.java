@@ -0,0 +1,96 @@
+package benchmark;
+
+import http.AsyncPageFetcher;
+import http.HttpClient;
+import http.WebPageParser;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares the page fetch and parse throughput of the blocking client, with the thread and
+ * connection pool sizes used by the application, against the asynchronous page fetcher used by
+ * --fetcher=async, which parses the pages on a pool of one thread per CPU.
+ *
+ * Both go through {@link HttpClient}, so they have the same size limit and response handling.
+ *
+ * Usage: AsyncFetchBenchmark [pages] [latencyMillis] [asyncConnections]
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class AsyncFetchBenchmark {
+
+    private static final int BLOCKING_THREADS = 10;
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        long latencyMillis = args.length > 1 ? Long.parseLong(args[1]) : 50;
+        int asyncConnections = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+        Benchmarks.quietLogging();
+
+        try (LocalWebsiteServer website = LocalWebsiteServer.start(pages, 20, latencyMillis)) {
+            List<String> urls = new ArrayList<>();
+            for (int page = 0; page < pages; page++) {
+                urls.add(website.getPageUrl(page));
+            }
+
+            Benchmarks.report("blocking (" + BLOCKING_THREADS + " threads)", pages, runBlocking(urls));
+            Benchmarks.report("async (" + asyncConnections + " connections)", pages, runAsync(urls, asyncConnections));
+        }
+    }
+
+    private static long runBlocking(List<String> urls) throws Exception {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(BLOCKING_THREADS);
+        connectionManager.setDefaultMaxPerRoute(BLOCKING_THREADS);
+        ExecutorService executorService = Executors.newFixedThreadPool(BLOCKING_THREADS);
+        CloseableHttpClient apacheHttpClient = HttpClients.custom().setConnectionManager(connectionManager).build();
+
+        try (HttpClient httpClient = new HttpClient(apacheHttpClient)) {
+            WebPageParser webPageParser = new WebPageParser(httpClient);
+
+            long start = System.nanoTime();
+            List<Future<?>> results = new ArrayList<>();
+            for (String url : urls) {
+                results.add(executorService.submit(() -> webPageParser.fetchAssets(url)));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+            return System.nanoTime() - start;
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    private static long runAsync(List<String> urls, int connections) throws Exception {
+        ExecutorService parseExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        CloseableHttpAsyncClient apacheAsyncClient = HttpAsyncClients.custom()
+                .setMaxConnTotal(connections)
+                .setMaxConnPerRoute(connections)
+                .build();
+        AsyncPageFetcher pageFetcher = new AsyncPageFetcher(apacheAsyncClient, parseExecutor);
+
+        try (HttpClient httpClient = new HttpClient(null, 0, HttpClient.DEFAULT_MAX_PAGE_BYTES, 0, pageFetcher)) {
+            WebPageParser webPageParser = new WebPageParser(httpClient);
+
+            long start = System.nanoTime();
+            List<CompletableFuture<?>> results = new ArrayList<>();
+            for (String url : urls) {
+                results.add(webPageParser.fetchAssetsAsync(url));
+            }
+            CompletableFuture.allOf(results.toArray(new CompletableFuture[results.size()])).join();
+            return System.nanoTime() - start;
+        }
+    }
+}
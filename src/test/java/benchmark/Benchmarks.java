@@ -0,0 +1,32 @@
+package benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Helpers shared by the benchmarks.
+ *
+ * @author Ravindra Rishudeo.
+ */
+final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Turns off the per page console logging, which would otherwise dominate the timings.
+     */
+    static void quietLogging() {
+        quietLogging(Level.WARN);
+    }
+
+    static void quietLogging(Level level) {
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(level);
+    }
+
+    static void report(String name, int pages, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%-40s %6d pages in %7.2fs = %9.1f pages/sec%n", name, pages, seconds, pages / seconds);
+    }
+}
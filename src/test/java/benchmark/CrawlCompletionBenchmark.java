@@ -0,0 +1,38 @@
+package benchmark;
+
+import service.Application;
+import service.CrawlOptions;
+
+/**
+ * Measures the fixed overhead of a crawl by repeatedly crawling a small local website with no latency.
+ *
+ * Usage: CrawlCompletionBenchmark [pages] [crawls]
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class CrawlCompletionBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int crawls = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        Benchmarks.quietLogging();
+
+        try (LocalWebsiteServer website = LocalWebsiteServer.start(pages, 5, 0)) {
+            // Warm up the JIT and the local connections
+            crawl(website);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < crawls; i++) {
+                crawl(website);
+            }
+            long elapsedNanos = System.nanoTime() - start;
+
+            System.out.printf("%d crawls of %d pages: %.1f ms per crawl%n", crawls, pages, elapsedNanos / 1e6 / crawls);
+        }
+    }
+
+    private static void crawl(LocalWebsiteServer website) {
+        new Application(CrawlOptions.parse(new String[]{website.getStartUrl()})).crawlSite(website.getStartUrl());
+    }
+}
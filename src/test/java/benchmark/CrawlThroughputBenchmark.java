@@ -0,0 +1,98 @@
+package benchmark;
+
+import ch.qos.logback.classic.Level;
+import service.Application;
+import service.CrawlOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Crawls a synthetic website end to end and reports the throughput, the response latencies, the peak heap
+ * and the bytes allocated, so that changes to the crawler can be compared without the internet.
+ *
+ * Usage: CrawlThroughputBenchmark [site setting=value ...] [crawl options]
+ *
+ * The site settings are seed, pages, links, pageBytes, images, latency (median ms), p99 (ms), errors,
+ * redirects and stalls (fractions of pages), hops, stall (ms) and capacity (requests served at once).  The crawl options, such as --threads=50, are passed on to the
+ * crawl.  For example: CrawlThroughputBenchmark pages=5000 latency=20 p99=200 errors=0.01 --threads=50
+ *
+ * The site is crawled once to warm up the JIT before the measured crawl.  The latencies are measured by
+ * the server, from receiving a request to finishing its response.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class CrawlThroughputBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        SyntheticSite site = new SyntheticSite(parseLong(args, "seed", 1))
+                .pages((int) parseLong(args, "pages", 5000))
+                .outDegree((int) parseLong(args, "links", 20))
+                .pageBytes((int) parseLong(args, "pageBytes", 0))
+                .imagesPerPage((int) parseLong(args, "images", 1))
+                .latency(parseLong(args, "latency", 10), parseLong(args, "p99", parseLong(args, "latency", 10)))
+                .errorRate(parseDouble(args, "errors", 0))
+                .redirects(parseDouble(args, "redirects", 0), (int) parseLong(args, "hops", 1))
+                .stalls(parseDouble(args, "stalls", 0), parseLong(args, "stall", 60000))
+                .capacity((int) parseLong(args, "capacity", 0));
+        List<String> crawlOptions = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                crawlOptions.add(arg);
+            }
+        }
+
+        // The failed pages are logged as errors
+        Benchmarks.quietLogging(Level.OFF);
+
+        try (LocalWebsiteServer website = LocalWebsiteServer.start(site)) {
+            System.out.println(site);
+            System.out.println("Crawl options: " + crawlOptions);
+
+            crawl(website, crawlOptions);
+            website.resetStatistics();
+
+            ResourceMonitor monitor = new ResourceMonitor();
+            long start = System.nanoTime();
+            crawl(website, crawlOptions);
+            long elapsedNanos = System.nanoTime() - start;
+            monitor.stop();
+
+            long pages = website.getPagesSent();
+            Benchmarks.report("Crawl", (int) pages, elapsedNanos);
+            System.out.printf("%-40s p50 %.1fms, p99 %.1fms%n", "Response latency",
+                    website.getLatencyMillis(50), website.getLatencyMillis(99));
+            System.out.printf("%-40s %d errors, %d redirects, %d stalled, %d throttled%n", "Responses",
+                    website.getErrorsSent(), website.getRedirectsSent(), website.getStallsStarted(),
+                    website.getThrottledSent());
+            System.out.printf("%-40s %.1f MB%n", "Peak heap", monitor.getPeakHeapBytes() / 1e6);
+            System.out.printf("%-40s %.1f MB (%.1f KB per page)%n", "Allocated",
+                    monitor.getAllocatedBytes() / 1e6, monitor.getAllocatedBytes() / 1e3 / Math.max(1, pages));
+        }
+    }
+
+    private static void crawl(LocalWebsiteServer website, List<String> crawlOptions) {
+        List<String> args = new ArrayList<>(crawlOptions);
+        args.add(website.getStartUrl());
+        new Application(CrawlOptions.parse(args.toArray(new String[0]))).crawlSite(website.getStartUrl());
+    }
+
+    private static String getSetting(String[] args, String name) {
+        for (String arg : args) {
+            if (arg.startsWith(name + "=")) {
+                return arg.substring(name.length() + 1);
+            }
+        }
+        return null;
+    }
+
+    private static long parseLong(String[] args, String name, long defaultValue) {
+        String value = getSetting(args, name);
+        return value != null ? Long.parseLong(value) : defaultValue;
+    }
+
+    private static double parseDouble(String[] args, String name, double defaultValue) {
+        String value = getSetting(args, name);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+}
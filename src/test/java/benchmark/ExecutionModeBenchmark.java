@@ -0,0 +1,40 @@
+package benchmark;
+
+import service.Application;
+import service.CrawlOptions;
+
+/**
+ * Compares crawling a latency injected local website with the fixed thread pool against virtual threads.
+ *
+ * Usage: ExecutionModeBenchmark [pages] [latencyMillis] [virtualConnections]
+ *
+ * Virtual threads require Java 21.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class ExecutionModeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        long latencyMillis = args.length > 1 ? Long.parseLong(args[1]) : 50;
+        int virtualConnections = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        Benchmarks.quietLogging();
+
+        try (LocalWebsiteServer website = LocalWebsiteServer.start(pages, 20, latencyMillis)) {
+            crawl(website, "fixed pool (10 threads, 10 connections)", "--mode=fixed");
+            crawl(website, "virtual threads (" + virtualConnections + " connections)",
+                    "--mode=virtual", "--connections=" + virtualConnections);
+        }
+    }
+
+    private static void crawl(LocalWebsiteServer website, String name, String... options) {
+        String[] args = new String[options.length + 1];
+        System.arraycopy(options, 0, args, 0, options.length);
+        args[options.length] = website.getStartUrl();
+
+        long start = System.nanoTime();
+        new Application(CrawlOptions.parse(args)).crawlSite(website.getStartUrl());
+        Benchmarks.report(name, website.getPageCount(), System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,100 @@
+package benchmark;
+
+import frontier.HostScheduler;
+import frontier.HostTask;
+import http.HttpClient;
+import http.WebPageParser;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import service.CrawlExecutorService;
+import url.Urls;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Fetches the pages of a slow and a fast local website together, first through the shared FIFO
+ * queue and then through the per host scheduler, and reports when each website was finished.
+ *
+ * Usage: HostSchedulerBenchmark [pages] [slowLatencyMillis] [fastLatencyMillis] [hostConcurrency]
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class HostSchedulerBenchmark {
+
+    private static final int THREADS = 10;
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        long slowLatencyMillis = args.length > 1 ? Long.parseLong(args[1]) : 200;
+        long fastLatencyMillis = args.length > 2 ? Long.parseLong(args[2]) : 5;
+        int hostConcurrency = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+
+        Benchmarks.quietLogging();
+
+        try (LocalWebsiteServer slow = LocalWebsiteServer.start(pages, 20, slowLatencyMillis);
+             LocalWebsiteServer fast = LocalWebsiteServer.start(pages, 20, fastLatencyMillis)) {
+            ExecutorService fifoPool = Executors.newFixedThreadPool(THREADS);
+            run("shared FIFO queue", slow, fast, new CrawlExecutorService(fifoPool), THREADS);
+
+            ExecutorService scheduledPool = Executors.newFixedThreadPool(THREADS);
+            HostScheduler hostScheduler = new HostScheduler(scheduledPool, THREADS, hostConcurrency, 0);
+            run("per host queues (" + hostConcurrency + " per host)", slow, fast,
+                    new CrawlExecutorService(scheduledPool, hostScheduler), hostConcurrency);
+        }
+    }
+
+    private static void run(String name, LocalWebsiteServer slow, LocalWebsiteServer fast,
+                            CrawlExecutorService executorService, int connectionsPerHost) throws Exception {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(THREADS);
+        connectionManager.setDefaultMaxPerRoute(connectionsPerHost);
+
+        try (CloseableHttpClient apacheHttpClient = HttpClients.custom().setConnectionManager(connectionManager).build()) {
+            WebPageParser webPageParser = new WebPageParser(new HttpClient(apacheHttpClient));
+            CountDownLatch slowFinished = new CountDownLatch(slow.getPageCount());
+            CountDownLatch fastFinished = new CountDownLatch(fast.getPageCount());
+
+            long start = System.nanoTime();
+            for (int page = 0; page < slow.getPageCount(); page++) {
+                executorService.execute(new FetchTask(webPageParser, slow.getPageUrl(page), slowFinished));
+                executorService.execute(new FetchTask(webPageParser, fast.getPageUrl(page), fastFinished));
+            }
+            fastFinished.await();
+            long fastNanos = System.nanoTime() - start;
+            slowFinished.await();
+            long totalNanos = System.nanoTime() - start;
+
+            Benchmarks.report(name + " fast host", fast.getPageCount(), fastNanos);
+            Benchmarks.report(name + " both hosts", slow.getPageCount() + fast.getPageCount(), totalNanos);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private static final class FetchTask implements Runnable, HostTask {
+
+        private final WebPageParser webPageParser;
+        private final String url;
+        private final CountDownLatch finished;
+
+        FetchTask(WebPageParser webPageParser, String url, CountDownLatch finished) {
+            this.webPageParser = webPageParser;
+            this.url = url;
+            this.finished = finished;
+        }
+
+        @Override
+        public void run() {
+            webPageParser.getAssetsFromPage(url);
+            finished.countDown();
+        }
+
+        @Override
+        public String getHost() {
+            return Urls.getHostAndPort(url);
+        }
+    }
+}
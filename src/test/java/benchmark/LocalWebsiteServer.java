@@ -0,0 +1,341 @@
+package benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An in-JVM website for benchmarks and end to end tests, so they do not need the internet.
+ *
+ * The pages, their links, latencies, errors and redirects come from a {@link SyntheticSite}.  Each
+ * response is delayed by the latency of its page without holding a server thread, and the content of a
+ * stalled page is sent in pieces spread over its stall time, so only a total request deadline cuts it
+ * short, not a socket timeout.  The pages never
+ * change, so each has a fixed ETag and a matching If-None-Match is answered with 304 Not Modified.  A
+ * request that arrives while the site is serving its capacity is answered at once with 503 Service Unavailable.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class LocalWebsiteServer implements Closeable {
+
+    static {
+        // Otherwise small responses wait for the client's delayed ACK, adding ~40ms to every request
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    /** The number of pieces the content of a stalled page is sent in. */
+    private static final int STALL_PIECES = 10;
+
+    private final HttpServer server;
+    private final ScheduledExecutorService responseScheduler;
+    private final SyntheticSite site;
+
+    private final LongAdder bodyBytesSent = new LongAdder();
+    private final LongAdder pagesSent = new LongAdder();
+    private final LongAdder notModifiedSent = new LongAdder();
+    private final LongAdder errorsSent = new LongAdder();
+    private final LongAdder redirectsSent = new LongAdder();
+    private final LongAdder stallsStarted = new LongAdder();
+    private final LongAdder throttledSent = new LongAdder();
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private final LatencyRecorder latencies = new LatencyRecorder();
+
+    private LocalWebsiteServer(SyntheticSite site) throws IOException {
+        this.site = site;
+        this.responseScheduler = Executors.newScheduledThreadPool(4);
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    /**
+     * Starts a website where every page has a fixed latency.
+     *
+     * @param pageCount the number of pages in the site
+     * @param linksPerPage the number of links on each page
+     * @param latencyMillis the delay before each response is sent
+     * @return the running website
+     * @throws IOException if the server could not be started
+     */
+    public static LocalWebsiteServer start(int pageCount, int linksPerPage, long latencyMillis) throws IOException {
+        return start(new SyntheticSite(0).pages(pageCount).outDegree(linksPerPage).latency(latencyMillis, latencyMillis));
+    }
+
+    /**
+     * Starts a website.
+     *
+     * @param site the site to serve
+     * @return the running website
+     * @throws IOException if the server could not be started
+     */
+    public static LocalWebsiteServer start(SyntheticSite site) throws IOException {
+        return new LocalWebsiteServer(site);
+    }
+
+    public String getPageUrl(int page) {
+        return "http://localhost:" + server.getAddress().getPort() + "/page/" + page;
+    }
+
+    public String getStartUrl() {
+        return getPageUrl(0);
+    }
+
+    public int getPageCount() {
+        return site.getPageCount();
+    }
+
+    /**
+     * Gets the number of bytes of page content sent so far, not counting the headers.
+     *
+     * @return the number of bytes
+     */
+    public long getBodyBytesSent() {
+        return bodyBytesSent.sum();
+    }
+
+    public long getPagesSent() {
+        return pagesSent.sum();
+    }
+
+    public long getNotModifiedSent() {
+        return notModifiedSent.sum();
+    }
+
+    public long getErrorsSent() {
+        return errorsSent.sum();
+    }
+
+    public long getRedirectsSent() {
+        return redirectsSent.sum();
+    }
+
+    /**
+     * Gets the number of stalled pages whose content was started, whether or not it was all sent.
+     *
+     * @return the number of stalled responses
+     */
+    public long getStallsStarted() {
+        return stallsStarted.sum();
+    }
+
+    /**
+     * Gets the number of requests refused because the site was serving its capacity.
+     *
+     * @return the number of 503 responses
+     */
+    public long getThrottledSent() {
+        return throttledSent.sum();
+    }
+
+    /**
+     * Gets the time from receiving a request to finishing its response, as a percentile of all responses.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the latency in milliseconds
+     */
+    public double getLatencyMillis(double percentile) {
+        return latencies.getPercentile(percentile) / 1e6;
+    }
+
+    /**
+     * Clears the counters and latencies, for example after a warm up crawl.
+     */
+    public void resetStatistics() {
+        bodyBytesSent.reset();
+        pagesSent.reset();
+        notModifiedSent.reset();
+        errorsSent.reset();
+        redirectsSent.reset();
+        stallsStarted.reset();
+        throttledSent.reset();
+        latencies.reset();
+    }
+
+    private void handle(HttpExchange exchange) {
+        long receivedNanos = System.nanoTime();
+        int active = activeRequests.incrementAndGet();
+        if (site.getCapacity() > 0 && active > site.getCapacity()) {
+            throttle(exchange, receivedNanos);
+            return;
+        }
+        long latencyMillis = site.getLatencyMillis(Math.max(0, parsePage(exchange.getRequestURI().getPath())));
+        if (latencyMillis > 0) {
+            responseScheduler.schedule(() -> respond(exchange, receivedNanos), latencyMillis, TimeUnit.MILLISECONDS);
+        } else {
+            respond(exchange, receivedNanos);
+        }
+    }
+
+    private void respond(HttpExchange exchange, long receivedNanos) {
+        boolean trickling = false;
+        try {
+            String path = exchange.getRequestURI().getPath();
+            int page = parsePage(path);
+            // The server only keeps the connection open if the request has been read to the end
+            exchange.getRequestBody().close();
+            if (!site.isPage(page)) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            if (path.startsWith("/moved/")) {
+                int hops = parseInt(path.substring(path.lastIndexOf('/') + 1));
+                String location = hops > 1 ? "/moved/" + page + "/" + (hops - 1) : "/page/" + page;
+                exchange.getResponseHeaders().set("Location", location);
+                exchange.sendResponseHeaders(301, -1);
+                redirectsSent.increment();
+                return;
+            }
+            if (site.isError(page)) {
+                exchange.sendResponseHeaders(500, -1);
+                errorsSent.increment();
+                return;
+            }
+
+            String etag = "\"page-" + page + "\"";
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                notModifiedSent.increment();
+                return;
+            }
+
+            byte[] body = site.render(page).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            if (site.isStalled(page)) {
+                // Chunked, so the client cannot tell how much is still to come
+                exchange.sendResponseHeaders(200, 0);
+                stallsStarted.increment();
+                trickling = true;
+                trickle(exchange, body, 0, receivedNanos);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            bodyBytesSent.add(body.length);
+            pagesSent.increment();
+        } catch (IOException e) {
+            // The client has gone away
+        } finally {
+            if (!trickling) {
+                finish(exchange, receivedNanos);
+            }
+        }
+    }
+
+    private void throttle(HttpExchange exchange, long receivedNanos) {
+        try {
+            exchange.getRequestBody().close();
+            exchange.sendResponseHeaders(503, -1);
+            throttledSent.increment();
+        } catch (IOException e) {
+            // The client has gone away
+        } finally {
+            finish(exchange, receivedNanos);
+        }
+    }
+
+    private void finish(HttpExchange exchange, long receivedNanos) {
+        exchange.close();
+        activeRequests.decrementAndGet();
+        latencies.record(System.nanoTime() - receivedNanos);
+    }
+
+    /**
+     * Sends the next piece of a stalled page and schedules the one after, without holding a thread in between.
+     */
+    private void trickle(HttpExchange exchange, byte[] body, int piece, long receivedNanos) {
+        int from = (int) ((long) body.length * piece / STALL_PIECES);
+        int to = (int) ((long) body.length * (piece + 1) / STALL_PIECES);
+        try {
+            OutputStream out = exchange.getResponseBody();
+            out.write(body, from, to - from);
+            out.flush();
+            bodyBytesSent.add(to - from);
+            if (piece + 1 < STALL_PIECES) {
+                responseScheduler.schedule(() -> trickle(exchange, body, piece + 1, receivedNanos),
+                        Math.max(1, site.getStallMillis() / STALL_PIECES), TimeUnit.MILLISECONDS);
+                return;
+            }
+            out.close();
+            pagesSent.increment();
+        } catch (IOException e) {
+            // The client has gone away, such as after its deadline
+        } catch (RejectedExecutionException e) {
+            // The server has been closed
+        }
+        finish(exchange, receivedNanos);
+    }
+
+    /**
+     * Gets the page number from /page/n or /moved/n/hops.
+     */
+    private int parsePage(String path) {
+        if (path.startsWith("/page/")) {
+            return parseInt(path.substring("/page/".length()));
+        }
+        if (path.startsWith("/moved/")) {
+            int slash = path.indexOf('/', "/moved/".length());
+            return slash < 0 ? -1 : parseInt(path.substring("/moved/".length(), slash));
+        }
+        return -1;
+    }
+
+    private int parseInt(String number) {
+        try {
+            return Integer.parseInt(number);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        responseScheduler.shutdownNow();
+    }
+
+    /**
+     * Records latencies so that their percentiles can be found.
+     */
+    private static final class LatencyRecorder {
+
+        private long[] nanos = new long[1024];
+        private int count;
+
+        synchronized void record(long latencyNanos) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = latencyNanos;
+        }
+
+        synchronized long getPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(nanos, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100 * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, index))];
+        }
+
+        synchronized void reset() {
+            count = 0;
+        }
+    }
+}
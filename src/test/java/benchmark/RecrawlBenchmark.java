@@ -0,0 +1,45 @@
+package benchmark;
+
+import service.Application;
+import service.CrawlOptions;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Compares the first crawl of a local website with a re-crawl of the unchanged site using the page cache.
+ *
+ * Usage: RecrawlBenchmark [pages] [linksPerPage]
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class RecrawlBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int linksPerPage = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        Benchmarks.quietLogging();
+
+        Path directory = Files.createTempDirectory("recrawl-benchmark");
+        Path cacheFile = directory.resolve("pages.cache");
+        try (LocalWebsiteServer website = LocalWebsiteServer.start(pages, linksPerPage, 0)) {
+            crawl(website, cacheFile, "First crawl");
+            crawl(website, cacheFile, "Re-crawl of unchanged site");
+        } finally {
+            Files.deleteIfExists(cacheFile);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private static void crawl(LocalWebsiteServer website, Path cacheFile, String name) {
+        long bytesBefore = website.getBodyBytesSent();
+        long start = System.nanoTime();
+        new Application(CrawlOptions.parse(new String[]{"--cache-file=" + cacheFile, website.getStartUrl()}))
+                .crawlSite(website.getStartUrl());
+        long elapsedNanos = System.nanoTime() - start;
+
+        Benchmarks.report(name, website.getPageCount(), elapsedNanos);
+        System.out.printf("%-40s %,d bytes of page content downloaded%n", "", website.getBodyBytesSent() - bytesBefore);
+    }
+}
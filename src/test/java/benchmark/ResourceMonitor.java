@@ -0,0 +1,87 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measures the peak heap usage and the bytes allocated while a benchmark runs.
+ *
+ * The peak heap is the sum of the peak usage of each heap memory pool.  The JVM only reports the
+ * allocations of live threads, and the crawl's threads end with it, so a background thread samples the
+ * allocations of every thread every few milliseconds and keeps the last value seen for each.  The
+ * allocations of a thread in its last few milliseconds may be missed.
+ *
+ * @author Ravindra Rishudeo.
+ */
+class ResourceMonitor {
+
+    private static final long SAMPLE_INTERVAL_MILLIS = 5;
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final Map<Long, Long> baselineBytes = new HashMap<>();
+    private final Map<Long, Long> allocatedBytes = new HashMap<>();
+    private final Thread sampler;
+    private volatile boolean running = true;
+
+    ResourceMonitor() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+        sample(baselineBytes);
+        sampler = new Thread(() -> {
+            while (running) {
+                sample(allocatedBytes);
+                try {
+                    Thread.sleep(SAMPLE_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "resource-monitor");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    /**
+     * Stops sampling.
+     *
+     * @throws InterruptedException if interrupted waiting for the sampler to stop
+     */
+    void stop() throws InterruptedException {
+        running = false;
+        sampler.join();
+        sample(allocatedBytes);
+    }
+
+    long getPeakHeapBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    synchronized long getAllocatedBytes() {
+        long total = 0;
+        for (Map.Entry<Long, Long> thread : allocatedBytes.entrySet()) {
+            total += thread.getValue() - baselineBytes.getOrDefault(thread.getKey(), 0L);
+        }
+        return total;
+    }
+
+    private synchronized void sample(Map<Long, Long> bytes) {
+        long[] ids = threads.getAllThreadIds();
+        long[] allocated = threads.getThreadAllocatedBytes(ids);
+        for (int i = 0; i < ids.length; i++) {
+            if (allocated[i] >= 0) {
+                bytes.put(ids[i], allocated[i]);
+            }
+        }
+    }
+}
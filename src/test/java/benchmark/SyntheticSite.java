@@ -0,0 +1,236 @@
+package benchmark;
+
+import java.util.Random;
+
+/**
+ * The shape of a generated website, which is the same every time for the same seed.
+ *
+ * Page n is served at /page/n.  Each page links to its children in a tree, pages n * outDegree + 1 to
+ * n * outDegree + outDegree, so every page can be reached from page 0, and the rest of its links go to
+ * pages chosen at random.  A page can be padded to a minimum size, and each page has its own response
+ * latency drawn from a log-normal distribution with the configured median and 99th percentile.
+ *
+ * A fraction of the pages fail with 500 Internal Server Error, and a fraction have moved: the links to
+ * them go to /moved/n/hops, which redirects through a chain of hops before reaching /page/n.  A fraction
+ * stall: their headers are sent on time and their content trickles out over a long time.  None of these
+ * applies to page 0, so a crawl can always start.  The site can also have a capacity, beyond which the
+ * requests it is already serving are answered with 503 Service Unavailable.
+ *
+ * @author Ravindra Rishudeo.
+ */
+public class SyntheticSite {
+
+    /** The standard normal quantile of the 99th percentile. */
+    private static final double Z_99 = 2.326;
+
+    private final long seed;
+    private int pageCount = 1000;
+    private int outDegree = 20;
+    private int pageBytes;
+    private int imagesPerPage = 1;
+    private long medianLatencyMillis;
+    private long p99LatencyMillis;
+    private double errorRate;
+    private double redirectRate;
+    private int redirectHops = 1;
+    private double stallRate;
+    private long stallMillis;
+    private int capacity;
+
+    /**
+     * Constructor.
+     *
+     * @param seed the seed that the links, latencies, errors and redirects are generated from
+     */
+    public SyntheticSite(long seed) {
+        this.seed = seed;
+    }
+
+    public SyntheticSite pages(int pageCount) {
+        this.pageCount = pageCount;
+        return this;
+    }
+
+    public SyntheticSite outDegree(int outDegree) {
+        this.outDegree = outDegree;
+        return this;
+    }
+
+    /**
+     * Pads each page with text to at least this size.
+     *
+     * @param pageBytes the minimum page size in bytes, 0 for no padding
+     * @return this site
+     */
+    public SyntheticSite pageBytes(int pageBytes) {
+        this.pageBytes = pageBytes;
+        return this;
+    }
+
+    public SyntheticSite imagesPerPage(int imagesPerPage) {
+        this.imagesPerPage = imagesPerPage;
+        return this;
+    }
+
+    /**
+     * Sets the distribution of the response latencies of the pages.
+     *
+     * @param medianMillis the median latency
+     * @param p99Millis the 99th percentile latency, which is the same as the median for a fixed latency
+     * @return this site
+     */
+    public SyntheticSite latency(long medianMillis, long p99Millis) {
+        this.medianLatencyMillis = medianMillis;
+        this.p99LatencyMillis = Math.max(medianMillis, p99Millis);
+        return this;
+    }
+
+    public SyntheticSite errorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Moves a fraction of the pages behind chains of redirects.
+     *
+     * @param redirectRate the fraction of pages that have moved
+     * @param hops the number of redirects before the page is reached
+     * @return this site
+     */
+    public SyntheticSite redirects(double redirectRate, int hops) {
+        this.redirectRate = redirectRate;
+        this.redirectHops = hops;
+        return this;
+    }
+
+    /**
+     * Stalls a fraction of the pages, which send their content a piece at a time over the stall time.
+     *
+     * @param stallRate the fraction of pages that stall
+     * @param millis the time taken to send the content of a stalled page
+     * @return this site
+     */
+    public SyntheticSite stalls(double stallRate, long millis) {
+        this.stallRate = stallRate;
+        this.stallMillis = millis;
+        return this;
+    }
+
+    /**
+     * Limits the number of requests served at once, as a server that sheds load would.
+     *
+     * @param capacity the most requests in progress before the next is refused, or 0 for no limit
+     * @return this site
+     */
+    public SyntheticSite capacity(int capacity) {
+        this.capacity = capacity;
+        return this;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    public int getRedirectHops() {
+        return redirectHops;
+    }
+
+    public boolean isPage(int page) {
+        return page >= 0 && page < pageCount;
+    }
+
+    public boolean isError(int page) {
+        return page > 0 && random(page, 1).nextDouble() < errorRate;
+    }
+
+    public boolean isMoved(int page) {
+        return page > 0 && random(page, 2).nextDouble() < redirectRate;
+    }
+
+    public boolean isStalled(int page) {
+        return page > 0 && random(page, 5).nextDouble() < stallRate;
+    }
+
+    public long getStallMillis() {
+        return stallMillis;
+    }
+
+    /**
+     * Gets the latency of every response for a page, including its redirects.
+     *
+     * @param page the page number
+     * @return the latency in milliseconds
+     */
+    public long getLatencyMillis(int page) {
+        if (p99LatencyMillis == medianLatencyMillis) {
+            return medianLatencyMillis;
+        }
+        double sigma = Math.log((double) p99LatencyMillis / Math.max(1, medianLatencyMillis)) / Z_99;
+        return Math.round(Math.max(1, medianLatencyMillis) * Math.exp(sigma * random(page, 3).nextGaussian()));
+    }
+
+    /**
+     * Gets the path that the other pages link to a page with.
+     *
+     * @param page the page number
+     * @return the path of the page, or of the first redirect if it has moved
+     */
+    public String getLinkPath(int page) {
+        return isMoved(page) ? "/moved/" + page + "/" + redirectHops : "/page/" + page;
+    }
+
+    /**
+     * Gets the pages that a page links to.
+     *
+     * @param page the page number
+     * @return the linked page numbers
+     */
+    public int[] getLinks(int page) {
+        int[] links = new int[outDegree];
+        Random random = random(page, 4);
+        for (int i = 0; i < outDegree; i++) {
+            long child = (long) page * outDegree + i + 1;
+            links[i] = child < pageCount ? (int) child : random.nextInt(pageCount);
+        }
+        return links;
+    }
+
+    public String render(int page) {
+        StringBuilder html = new StringBuilder("<html><head><title>Page ").append(page).append("</title></head><body>");
+        for (int link : getLinks(page)) {
+            html.append("<p><a href=\"").append(getLinkPath(link)).append("\">Page ").append(link).append("</a></p>");
+        }
+        for (int image = 0; image < imagesPerPage; image++) {
+            html.append("<img src=\"/images/").append(page).append('-').append(image).append(".png\">");
+        }
+        if (html.length() < pageBytes) {
+            html.append("<p>");
+            while (html.length() < pageBytes) {
+                html.append("Lorem ipsum dolor sit amet, consectetur adipiscing elit. ");
+            }
+            html.append("</p>");
+        }
+        html.append("</body></html>");
+        return html.toString();
+    }
+
+    private Random random(int page, int stream) {
+        // Mixed, as Randoms with nearby seeds start with similar values
+        long mixed = seed * 0x9E3779B97F4A7C15L + page * 0xC2B2AE3D27D4EB4FL + stream;
+        mixed = (mixed ^ (mixed >>> 33)) * 0xFF51AFD7ED558CCDL;
+        mixed = (mixed ^ (mixed >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return new Random(mixed ^ (mixed >>> 33));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SyntheticSite{seed=%d, pages=%d, outDegree=%d, pageBytes=%d, images=%d, latency=%d/%dms,"
+                        + " errorRate=%s, redirectRate=%s, redirectHops=%d, stallRate=%s, stall=%dms,"
+                        + " capacity=%d}", seed, pageCount, outDegree, pageBytes, imagesPerPage, medianLatencyMillis,
+                p99LatencyMillis, errorRate, redirectRate, redirectHops, stallRate, stallMillis, capacity);
+    }
+}
@@ -0,0 +1,211 @@
+package checkpoint;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link CheckpointLog}
+ */
+public class CheckpointLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+
+    @Before
+    public void setUp() {
+        file = folder.getRoot().toPath().resolve("crawl.checkpoint");
+    }
+
+    @Test
+    public void shouldReadBackTheCompletedAndPendingPages() throws Exception {
+        try (CheckpointLog log = CheckpointLog.open(file)) {
+            log.queued("http://www.example.com/", 0);
+            log.queued("http://www.example.com/a", 1);
+            log.queued("http://www.example.com/caf\u00e9", 1);
+            log.completed("http://www.example.com/",
+                    Arrays.asList("http://www.example.com/a", "http://www.example.com/caf\u00e9", "http://other.com/"));
+        }
+
+        CrawlState state = CheckpointLog.read(file);
+
+        assertThat(getCompletedPages(state).get("http://www.example.com/"),
+                is(Arrays.asList("http://www.example.com/a", "http://www.example.com/caf\u00e9", "http://other.com/")));
+        assertThat(state.getCompletedCount(), is(1L));
+        assertThat(state.getPendingUrls().keySet().toArray(),
+                is(new Object[]{"http://www.example.com/a", "http://www.example.com/caf\u00e9"}));
+        assertThat(state.getPendingUrls().get("http://www.example.com/a"), is(1));
+    }
+
+    @Test
+    public void shouldKeepTheDepthOfAPendingUrlWhenTheLogIsCompacted() throws Exception {
+        try (CheckpointLog log = CheckpointLog.open(file)) {
+            log.queued("http://www.example.com/a/b/c", 3);
+        }
+
+        CheckpointLog.open(file, CheckpointLog.read(file)).close();
+
+        assertThat(CheckpointLog.read(file).getPendingUrls().get("http://www.example.com/a/b/c"), is(3));
+    }
+
+    @Test
+    public void shouldReadAQueuedRecordWithoutADepthAsDepthZero() throws Exception {
+        byte[] url = "http://www.example.com/".getBytes(StandardCharsets.UTF_8);
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+            out.writeInt(1 + 4 + url.length);
+            out.writeByte(1);
+            out.writeInt(url.length);
+            out.write(url);
+        }
+
+        assertThat(CheckpointLog.read(file).getPendingUrls().get("http://www.example.com/"), is(0));
+    }
+
+    @Test
+    public void shouldReturnAnEmptyStateWhenThereIsNoLog() throws Exception {
+        assertThat(CheckpointLog.read(file).isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldStartANewLogWhenNotResuming() throws Exception {
+        try (CheckpointLog log = CheckpointLog.open(file)) {
+            log.queued("http://www.example.com/", 0);
+        }
+        try (CheckpointLog log = CheckpointLog.open(file)) {
+            log.queued("http://www.example.com/a", 1);
+        }
+
+        assertThat(CheckpointLog.read(file).getPendingUrls().keySet().toArray(),
+                is(new Object[]{"http://www.example.com/a"}));
+    }
+
+    @Test
+    public void shouldIgnoreARecordThatWasCutShort() throws Exception {
+        try (CheckpointLog log = CheckpointLog.open(file)) {
+            log.queued("http://www.example.com/", 0);
+            log.completed("http://www.example.com/", Collections.singletonList("http://www.example.com/a"));
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 5);
+        }
+
+        CrawlState state = CheckpointLog.read(file);
+
+        assertThat(state.getCompletedCount(), is(0L));
+        assertThat(state.getPendingUrls().keySet().toArray(), is(new Object[]{"http://www.example.com/"}));
+    }
+
+    @Test
+    public void shouldCompactTheLogWhenTheCrawlIsResumed() throws Exception {
+        try (CheckpointLog log = CheckpointLog.open(file)) {
+            for (int i = 0; i < 100; i++) {
+                log.queued("http://www.example.com/" + i, 1);
+                log.completed("http://www.example.com/" + i, Collections.<String>emptyList());
+            }
+            log.queued("http://www.example.com/pending", 2);
+        }
+        long sizeBeforeCompaction = Files.size(file);
+
+        CrawlState state = CheckpointLog.read(file);
+        try (CheckpointLog log = CheckpointLog.open(file, state)) {
+            log.completed("http://www.example.com/pending", Collections.singletonList("http://www.example.com/0"));
+        }
+
+        CrawlState resumed = CheckpointLog.read(file);
+        assertThat(Files.size(file) < sizeBeforeCompaction, is(true));
+        assertThat(resumed.getCompletedCount(), is(101L));
+        assertThat(getCompletedPages(resumed).get("http://www.example.com/pending"),
+                is(Collections.singletonList("http://www.example.com/0")));
+        assertThat(resumed.getPendingUrls().isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldCompactTheLogWhileTheCrawlRuns() throws Exception {
+        Path uncompacted = folder.getRoot().toPath().resolve("uncompacted.checkpoint");
+        CheckpointLog log = CheckpointLog.open(file, new CrawlState(), 4096);
+        try (CheckpointLog withoutCompaction = CheckpointLog.open(uncompacted)) {
+            for (CheckpointLog journal : Arrays.asList(log, withoutCompaction)) {
+                for (int i = 0; i < 1000; i++) {
+                    journal.queued("http://www.example.com/" + i, 1);
+                    journal.completed("http://www.example.com/" + i, Collections.<String>emptyList());
+                }
+                journal.queued("http://www.example.com/pending", 2);
+            }
+        }
+        log.close();
+
+        CrawlState state = CheckpointLog.read(file);
+        assertThat(log.getCompactionCount() > 0, is(true));
+        assertThat(Files.size(file) < Files.size(uncompacted), is(true));
+        assertThat(state.getCompletedCount(), is(1000L));
+        assertThat(getCompletedPages(state).keySet(), is(getCompletedPages(CheckpointLog.read(uncompacted)).keySet()));
+        assertThat(state.getPendingUrls(), is(Collections.singletonMap("http://www.example.com/pending", 2)));
+    }
+
+    @Test
+    public void shouldWriteEveryRecordWhenMoreAreJournalledThanTheQueueHolds() throws Exception {
+        int pages = 4 * CheckpointLog.MAX_WAITING_RECORDS;
+        try (CheckpointLog log = CheckpointLog.open(file)) {
+            for (int i = 0; i < pages; i++) {
+                log.queued("http://www.example.com/" + i, 1);
+            }
+        }
+
+        assertThat(CheckpointLog.read(file).getPendingUrls().size(), is(pages));
+    }
+
+    @Test
+    public void shouldReadTheCompletedPagesBackOneAtATimeInTheOrderTheyWereCompleted() throws Exception {
+        try (CheckpointLog log = CheckpointLog.open(file)) {
+            log.queued("http://www.example.com/b", 1);
+            log.queued("http://www.example.com/a", 1);
+            log.completed("http://www.example.com/a", Collections.singletonList("http://www.example.com/b"));
+            log.completed("http://www.example.com/b", Collections.<String>emptyList());
+        }
+        List<String> completed = new ArrayList<>();
+
+        CheckpointLog.read(file).forEachCompletedPage((url, links) -> completed.add(url + " " + links));
+
+        assertThat(completed, is(Arrays.asList("http://www.example.com/a [http://www.example.com/b]",
+                "http://www.example.com/b []")));
+    }
+
+    @Test
+    public void shouldDropRecordsAfterTheLogIsClosed() throws Exception {
+        CheckpointLog log = CheckpointLog.open(file);
+        log.queued("http://www.example.com/", 0);
+        log.close();
+        log.queued("http://www.example.com/late", 1);
+        log.close();
+
+        List<Object> pending = Arrays.asList(CheckpointLog.read(file).getPendingUrls().keySet().toArray());
+        assertThat(pending, is(Arrays.<Object>asList("http://www.example.com/")));
+        assertThat(log.getRecordCount(), is(1L));
+    }
+
+    private static Map<String, List<String>> getCompletedPages(CrawlState state) throws IOException {
+        Map<String, List<String>> completedPages = new LinkedHashMap<>();
+        state.forEachCompletedPage(completedPages::put);
+        return completedPages;
+    }
+}
@@ -0,0 +1,49 @@
+package frontier;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link BloomFilterSet}.
+ */
+public class BloomFilterSetTest {
+
+    @Test
+    public void shouldNeverReportAnAddedFingerprintAsUnseen() {
+        BloomFilterSet bloomFilterSet = new BloomFilterSet(10_000, 0.01);
+
+        for (int i = 0; i < 10_000; i++) {
+            bloomFilterSet.add(UrlFingerprint.of("http://www.example.com/" + i));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(bloomFilterSet.contains(UrlFingerprint.of("http://www.example.com/" + i)), is(true));
+            assertThat(bloomFilterSet.add(UrlFingerprint.of("http://www.example.com/" + i)), is(false));
+        }
+    }
+
+    @Test
+    public void shouldHaveAFalsePositiveRateCloseToTheConfiguredRate() {
+        BloomFilterSet bloomFilterSet = new BloomFilterSet(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            bloomFilterSet.add(UrlFingerprint.of("http://www.example.com/" + i));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (bloomFilterSet.contains(UrlFingerprint.of("http://www.example.com/other/" + i))) {
+                falsePositives++;
+            }
+        }
+
+        assertTrue("False positives: " + falsePositives, falsePositives < 200);
+        assertThat(bloomFilterSet.getHashCount(), is(7));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectAnInvalidFalsePositiveRate() {
+        new BloomFilterSet(1000, 1.5);
+    }
+}
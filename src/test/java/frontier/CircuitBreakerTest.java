@@ -0,0 +1,96 @@
+package frontier;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link CircuitBreaker}.
+ */
+public class CircuitBreakerTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(3, 1000, 4000, 3);
+
+    @Test
+    public void shouldOpenAfterTheThresholdOfFailuresInARow() {
+        assertThat(circuitBreaker.recordFailure(0), is(false));
+        assertThat(circuitBreaker.recordFailure(0), is(false));
+        assertThat(circuitBreaker.getState(0), is(CircuitBreaker.State.CLOSED));
+
+        assertThat(circuitBreaker.recordFailure(0), is(true));
+
+        assertThat(circuitBreaker.getState(0), is(CircuitBreaker.State.OPEN));
+        assertThat(circuitBreaker.getOpenNanos(SECOND / 4), is(SECOND * 3 / 4));
+    }
+
+    @Test
+    public void shouldNotOpenWhenASuccessComesBetweenTheFailures() {
+        circuitBreaker.recordFailure(0);
+        circuitBreaker.recordFailure(0);
+        circuitBreaker.recordSuccess();
+        circuitBreaker.recordFailure(0);
+        circuitBreaker.recordFailure(0);
+
+        assertThat(circuitBreaker.getState(0), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void shouldBeHalfOpenOnceTheOpenTimeHasPassed() {
+        open(0);
+
+        assertThat(circuitBreaker.getState(SECOND), is(CircuitBreaker.State.HALF_OPEN));
+        assertThat(circuitBreaker.getOpenNanos(SECOND), is(0L));
+    }
+
+    @Test
+    public void shouldCloseWhenTheProbeSucceeds() {
+        open(0);
+
+        circuitBreaker.recordSuccess();
+
+        assertThat(circuitBreaker.getState(SECOND), is(CircuitBreaker.State.CLOSED));
+        assertThat(circuitBreaker.getTrips(), is(0));
+    }
+
+    @Test
+    public void shouldOpenForTwiceAsLongWhenTheProbeFailsUpToTheMaximum() {
+        open(0);
+
+        assertThat(circuitBreaker.recordFailure(SECOND), is(true));
+        assertThat(circuitBreaker.getOpenNanos(SECOND), is(2 * SECOND));
+        assertThat(circuitBreaker.recordFailure(3 * SECOND), is(true));
+        assertThat(circuitBreaker.getOpenNanos(3 * SECOND), is(4 * SECOND));
+    }
+
+    @Test
+    public void shouldIgnoreFailuresOfRequestsThatWereInFlightWhenItOpened() {
+        open(0);
+
+        assertThat(circuitBreaker.recordFailure(SECOND / 2), is(false));
+        assertThat(circuitBreaker.getOpenNanos(SECOND / 2), is(SECOND / 2));
+    }
+
+    @Test
+    public void shouldGiveUpOnTheHostAfterTheMostTrips() {
+        open(0);
+        circuitBreaker.recordFailure(SECOND);
+        circuitBreaker.recordFailure(3 * SECOND);
+
+        assertThat(circuitBreaker.recordFailure(7 * SECOND), is(false));
+
+        assertThat(circuitBreaker.getState(100 * SECOND), is(CircuitBreaker.State.ABANDONED));
+        circuitBreaker.recordSuccess();
+        assertThat(circuitBreaker.getState(100 * SECOND), is(CircuitBreaker.State.ABANDONED));
+    }
+
+    private void open(long now) {
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.recordFailure(now);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package frontier;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link CrawlOrder}.
+ */
+public class CrawlOrderTest {
+
+    private final FrontierEntry archive = new FrontierEntry("http://www.example.com/blog/2014/03/page/9", 1);
+    private final FrontierEntry about = new FrontierEntry("http://www.example.com/about", 2);
+    private final FrontierEntry contact = new FrontierEntry("http://www.example.com/contact", 1);
+
+    @Test
+    public void shouldOrderBreadthFirstByWhenTheEntriesWereCreated() {
+        assertThat(sort(CrawlOrder.BREADTH_FIRST), is(Arrays.asList(archive, about, contact)));
+    }
+
+    @Test
+    public void shouldOrderShallowFirstByDepth() {
+        assertThat(sort(CrawlOrder.SHALLOW_FIRST), is(Arrays.asList(archive, contact, about)));
+    }
+
+    @Test
+    public void shouldOrderByTheFewestPathSegmentsThenDepth() {
+        assertThat(sort(CrawlOrder.FEWEST_SEGMENTS), is(Arrays.asList(contact, about, archive)));
+    }
+
+    @Test
+    public void shouldOrderByTheMostInLinks() {
+        about.addInLink();
+        about.addInLink();
+        archive.addInLink();
+
+        assertThat(sort(CrawlOrder.MOST_LINKED), is(Arrays.asList(about, archive, contact)));
+        assertThat(CrawlOrder.MOST_LINKED.isInLinkCounted(), is(true));
+        assertThat(CrawlOrder.SHALLOW_FIRST.isInLinkCounted(), is(false));
+    }
+
+    @Test
+    public void shouldFindAnOrderByItsOptionName() {
+        assertThat(CrawlOrder.fromOptionName("inlinks"), is(CrawlOrder.MOST_LINKED));
+        assertThat(CrawlOrder.fromOptionName("BFS"), is(CrawlOrder.BREADTH_FIRST));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectAnUnknownOrder() {
+        CrawlOrder.fromOptionName("random");
+    }
+
+    private List<FrontierEntry> sort(CrawlOrder order) {
+        List<FrontierEntry> entries = new ArrayList<>(Arrays.asList(contact, archive, about));
+        entries.sort(order);
+        return entries;
+    }
+}
@@ -0,0 +1,67 @@
+package frontier;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link FingerprintSet}.
+ */
+public class FingerprintSetTest {
+
+    private final FingerprintSet fingerprintSet = new FingerprintSet();
+
+    @Test
+    public void shouldOnlyAddAFingerprintOnce() {
+        assertThat(fingerprintSet.add(42), is(true));
+        assertThat(fingerprintSet.add(42), is(false));
+        assertThat(fingerprintSet.contains(42), is(true));
+        assertThat(fingerprintSet.contains(43), is(false));
+    }
+
+    @Test
+    public void shouldHoldAZeroFingerprint() {
+        assertThat(fingerprintSet.contains(0), is(false));
+        assertThat(fingerprintSet.add(0), is(true));
+        assertThat(fingerprintSet.add(0), is(false));
+        assertThat(fingerprintSet.contains(0), is(true));
+    }
+
+    @Test
+    public void shouldGrowToHoldManyFingerprints() {
+        for (int i = 0; i < 100_000; i++) {
+            assertThat(fingerprintSet.add(UrlFingerprint.of("http://www.example.com/" + i)), is(true));
+        }
+        for (int i = 0; i < 100_000; i++) {
+            assertThat(fingerprintSet.contains(UrlFingerprint.of("http://www.example.com/" + i)), is(true));
+        }
+        assertThat(fingerprintSet.size(), is(100_000L));
+    }
+
+    @Test
+    public void shouldOnlyAcceptEachFingerprintOnceAcrossThreads() throws Exception {
+        AtomicInteger accepted = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    if (fingerprintSet.add(UrlFingerprint.of("http://www.example.com/" + i))) {
+                        accepted.incrementAndGet();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(accepted.get(), is(10_000));
+    }
+}
@@ -0,0 +1,206 @@
+package frontier;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link Frontier}.
+ */
+public class FrontierTest {
+
+    private Frontier frontier;
+
+    @Before
+    public void setUp() {
+        frontier = new Frontier();
+    }
+
+    @Test
+    public void shouldAcceptANewUrl() {
+        assertThat(frontier.offer("http://www.example.com/link1"), is(true));
+    }
+
+    @Test
+    public void shouldRejectAUrlThatHasAlreadyBeenOffered() {
+        frontier.offer("http://www.example.com/link1");
+
+        assertThat(frontier.offer("http://www.example.com/link1"), is(false));
+        assertThat(frontier.offer("http://www.example.com/link2"), is(true));
+    }
+
+    @Test
+    public void shouldCountTheQueuedAndDuplicateUrls() {
+        frontier.offer("http://www.example.com/link1");
+        frontier.offer("http://www.example.com/link1");
+        frontier.offer("http://www.example.com/link1");
+        frontier.offer("http://www.example.com/link2");
+        frontier.markProcessing("http://www.example.com/link1");
+
+        assertThat(frontier.getAcceptedCount(), is(2L));
+        assertThat(frontier.getDuplicateCount(), is(2L));
+        assertThat(frontier.getDuplicateRate(), is(0.5));
+        assertThat(frontier.getQueueDepth(), is(1L));
+    }
+
+    @Test
+    public void shouldHaveADuplicateRateOfZeroBeforeAnyUrlsAreOffered() {
+        assertThat(frontier.getDuplicateRate(), is(0.0));
+    }
+
+    @Test
+    public void shouldRejectDuplicatesWithABloomFilter() {
+        Frontier bloomFrontier = new Frontier(new BloomFilterSet(1000, 0.01));
+
+        assertThat(bloomFrontier.offer("http://www.example.com/link1"), is(true));
+        assertThat(bloomFrontier.offer("http://www.example.com/link1"), is(false));
+    }
+
+    @Test
+    public void shouldGiveAnAcceptedLinkItsDepth() {
+        FrontierEntry entry = frontier.offer("http://www.example.com/link1", 2);
+
+        assertThat(entry.getUrl(), is("http://www.example.com/link1"));
+        assertThat(entry.getDepth(), is(2));
+        assertThat(frontier.offer("http://www.example.com/link1", 1), is(nullValue()));
+    }
+
+    @Test
+    public void shouldRejectLinksDeeperThanTheMaximumDepthWithoutRememberingThem() {
+        Frontier limited = new Frontier(new FingerprintSet(), CrawlOrder.BREADTH_FIRST, 2, Frontier.UNLIMITED_PAGES,
+                PriorityUpdater.DIRECT);
+
+        assertThat(limited.offer("http://www.example.com/deep", 3), is(nullValue()));
+        assertThat(limited.offer("http://www.example.com/deep", 2), is(notNullValue()));
+        assertThat(limited.getDepthLimitedCount(), is(1L));
+        assertThat(limited.getAcceptedCount(), is(1L));
+    }
+
+    @Test
+    public void shouldStopProcessingAndAcceptingWhenThePageBudgetIsSpent() {
+        Frontier limited = new Frontier(new FingerprintSet(), CrawlOrder.BREADTH_FIRST, Frontier.UNLIMITED_DEPTH, 2,
+                PriorityUpdater.DIRECT);
+        FrontierEntry first = limited.offer("http://www.example.com/1", 1);
+        FrontierEntry second = limited.offer("http://www.example.com/2", 1);
+        FrontierEntry third = limited.offer("http://www.example.com/3", 1);
+
+        assertThat(limited.startProcessing(second), is(true));
+        assertThat(limited.startProcessing(third), is(true));
+        assertThat(limited.startProcessing(first), is(false));
+        assertThat(limited.offer("http://www.example.com/4", 1), is(nullValue()));
+        assertThat(limited.getPagesStarted(), is(2L));
+        assertThat(limited.getBudgetLimitedCount(), is(2L));
+        assertThat(limited.getQueueDepth(), is(0L));
+    }
+
+    @Test
+    public void shouldCountTheInLinksOfQueuedEntriesThroughThePriorityUpdater() {
+        List<FrontierEntry> updated = new ArrayList<>();
+        Frontier counting = new Frontier(new FingerprintSet(), CrawlOrder.MOST_LINKED, Frontier.UNLIMITED_DEPTH,
+                Frontier.UNLIMITED_PAGES, (entry, change) -> {
+                    updated.add(entry);
+                    change.run();
+                });
+        FrontierEntry entry = counting.offer("http://www.example.com/popular", 1);
+        counting.offer("http://www.example.com/popular", 2);
+        counting.offer("http://www.example.com/popular", 1);
+        counting.startProcessing(entry);
+        counting.offer("http://www.example.com/popular", 1);
+
+        assertThat(entry.getInLinks(), is(3));
+        assertThat(updated.size(), is(2));
+    }
+
+    @Test
+    public void shouldStopCountingTheInLinksOfASpilledEntry() {
+        Frontier counting = new Frontier(new FingerprintSet(), CrawlOrder.MOST_LINKED, Frontier.UNLIMITED_DEPTH,
+                Frontier.UNLIMITED_PAGES, PriorityUpdater.DIRECT);
+        FrontierEntry entry = counting.offer("http://www.example.com/popular", 1);
+
+        counting.spilled(entry);
+        counting.offer("http://www.example.com/popular", 1);
+
+        assertThat(entry.getInLinks(), is(1));
+        assertThat(counting.getSpilledCount(), is(1L));
+        assertThat(counting.getDuplicateCount(), is(1L));
+    }
+
+    @Test
+    public void shouldNotCountInLinksForOrdersThatDoNotUseThem() {
+        FrontierEntry entry = frontier.offer("http://www.example.com/popular", 1);
+        frontier.offer("http://www.example.com/popular", 1);
+
+        assertThat(entry.getInLinks(), is(1));
+    }
+
+    @Test
+    public void shouldGiveBackTheBudgetOfARequeuedEntry() {
+        Frontier limited = new Frontier(new FingerprintSet(), CrawlOrder.BREADTH_FIRST, Frontier.UNLIMITED_DEPTH, 1,
+                PriorityUpdater.DIRECT);
+        FrontierEntry entry = limited.offer("http://www.example.com/1", 0);
+        assertThat(limited.startProcessing(entry), is(true));
+
+        limited.requeue(entry);
+
+        assertThat(limited.getQueueDepth(), is(1L));
+        assertThat(limited.getRequeuedCount(), is(1L));
+        assertThat(limited.startProcessing(entry), is(true));
+        assertThat(limited.getPagesStarted(), is(1L));
+    }
+
+    @Test
+    public void shouldTellTheListenerOfEachNewHost() {
+        List<String> hosts = new ArrayList<>();
+        Frontier listened = new Frontier(new FingerprintSet(), CrawlOrder.BREADTH_FIRST, Frontier.UNLIMITED_DEPTH,
+                Frontier.UNLIMITED_PAGES, PriorityUpdater.DIRECT, hosts::add);
+
+        listened.offer("http://www.example.com/1", 0);
+        listened.offer("http://www.example.com:8080/2", 1);
+        listened.offer("http://blog.example.com/3", 1);
+        listened.offer("http://blog.example.com/3", 1);
+
+        assertThat(hosts, is(Arrays.asList("www.example.com", "blog.example.com")));
+    }
+
+    @Test
+    public void shouldTellTheAcceptListenerBeforeADuplicateOfferReturns() throws Exception {
+        CountDownLatch listening = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        Thread accepting = new Thread(() -> frontier.offer("http://www.example.com/link1", 1, entry -> {
+            listening.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            events.add("queued " + entry.getUrl());
+        }));
+        accepting.start();
+        listening.await();
+
+        Thread duplicate = new Thread(() -> {
+            FrontierEntry entry = frontier.offer("http://www.example.com/link1", 2, accepted -> events.add("wrong"));
+            events.add("duplicate " + entry);
+        });
+        duplicate.start();
+        duplicate.join(100);
+        assertThat(duplicate.isAlive(), is(true));
+
+        release.countDown();
+        accepting.join();
+        duplicate.join();
+
+        assertThat(events, is(Arrays.asList("queued http://www.example.com/link1", "duplicate null")));
+    }
+}
@@ -0,0 +1,337 @@
+package frontier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link HostScheduler}.
+ */
+public class HostSchedulerTest {
+
+    private ExecutorService workers;
+
+    @Before
+    public void setUp() {
+        workers = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        workers.shutdownNow();
+    }
+
+    @Test
+    public void shouldTakeTurnsBetweenReadyHosts() throws Exception {
+        HostScheduler hostScheduler = new HostScheduler(workers, 1, 1, 0);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(6);
+
+        hostScheduler.execute("blocker", () -> await(release));
+        for (String task : Arrays.asList("a1", "a2", "a3", "b1", "b2", "c1")) {
+            hostScheduler.execute(task.substring(0, 1), () -> {
+                order.add(task);
+                finished.countDown();
+            });
+        }
+        release.countDown();
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertThat(order, is(Arrays.asList("a1", "b1", "c1", "a2", "b2", "a3")));
+    }
+
+    @Test
+    public void shouldLimitTheTasksRunningForOneHost() throws Exception {
+        HostScheduler hostScheduler = new HostScheduler(workers, 4, 2, 0);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch finished = new CountDownLatch(20);
+
+        for (int i = 0; i < 20; i++) {
+            hostScheduler.execute("www.example.com", () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(5);
+                running.decrementAndGet();
+                finished.countDown();
+            });
+        }
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertThat(maxRunning.get(), is(2));
+    }
+
+    @Test
+    public void shouldKeepCrawlingOtherHostsWhenOneHostIsSlow() throws Exception {
+        HostScheduler hostScheduler = new HostScheduler(workers, 4, 2, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch fastHostFinished = new CountDownLatch(10);
+
+        for (int i = 0; i < 10; i++) {
+            hostScheduler.execute("slow.example.com", () -> await(release));
+        }
+        for (int i = 0; i < 10; i++) {
+            hostScheduler.execute("fast.example.com", fastHostFinished::countDown);
+        }
+
+        assertTrue(fastHostFinished.await(5, TimeUnit.SECONDS));
+        assertThat(hostScheduler.getQueuedTaskCount(), is(8));
+        release.countDown();
+    }
+
+    @Test
+    public void shouldWaitTheMinimumDelayBetweenTasksForAHost() throws Exception {
+        HostScheduler hostScheduler = new HostScheduler(workers, 4, 4, 50);
+        List<Long> startTimes = Collections.synchronizedList(new ArrayList<>());
+        ConcurrentHashMap<String, Long> otherHostStart = new ConcurrentHashMap<>();
+        CountDownLatch finished = new CountDownLatch(4);
+
+        for (int i = 0; i < 3; i++) {
+            hostScheduler.execute("www.example.com", () -> {
+                startTimes.add(System.nanoTime());
+                finished.countDown();
+            });
+        }
+        hostScheduler.execute("other.example.com", () -> {
+            otherHostStart.put("start", System.nanoTime());
+            finished.countDown();
+        });
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < startTimes.size(); i++) {
+            long gapMillis = TimeUnit.NANOSECONDS.toMillis(startTimes.get(i) - startTimes.get(i - 1));
+            // Allow for the time between a task being dispatched and starting on a worker
+            assertTrue("Gap was " + gapMillis + "ms", gapMillis >= 40);
+        }
+        assertTrue(otherHostStart.get("start") < startTimes.get(1));
+    }
+
+    @Test
+    public void shouldReturnTheQueuedTasksWhenDrained() throws Exception {
+        HostScheduler hostScheduler = new HostScheduler(workers, 1, 1, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        hostScheduler.execute("www.example.com", () -> await(release));
+        hostScheduler.execute("www.example.com", () -> { });
+        hostScheduler.execute("other.example.com", () -> { });
+
+        assertThat(hostScheduler.drain().size(), is(2));
+        assertThat(hostScheduler.getQueuedTaskCount(), is(0));
+        assertThat(hostScheduler.getHostCount(), is(2));
+        release.countDown();
+    }
+
+    @Test
+    public void shouldStartTheTasksOfAHostInTheCrawlOrder() throws Exception {
+        HostScheduler hostScheduler = new HostScheduler(workers, 1, 1, 0, CrawlOrder.SHALLOW_FIRST);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(4);
+
+        hostScheduler.execute("www.example.com", () -> await(release));
+        for (FrontierEntry entry : Arrays.asList(entry("/deep", 3), entry("/child", 1), entry("/grandchild", 2),
+                entry("/sibling", 1))) {
+            hostScheduler.execute("www.example.com", entry, () -> {
+                order.add(entry.getUrl());
+                finished.countDown();
+            });
+        }
+        release.countDown();
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertThat(order, is(Arrays.asList("http://www.example.com/child", "http://www.example.com/sibling",
+                "http://www.example.com/grandchild", "http://www.example.com/deep")));
+    }
+
+    @Test
+    public void shouldMoveAQueuedTaskWhenItsPriorityChanges() throws Exception {
+        HostScheduler hostScheduler = new HostScheduler(workers, 1, 1, 0, CrawlOrder.MOST_LINKED);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(3);
+        List<FrontierEntry> entries = Arrays.asList(entry("/a", 1), entry("/b", 1), entry("/c", 1));
+
+        hostScheduler.execute("www.example.com", () -> await(release));
+        for (FrontierEntry entry : entries) {
+            hostScheduler.execute("www.example.com", entry, () -> {
+                order.add(entry.getUrl());
+                finished.countDown();
+            });
+        }
+        FrontierEntry last = entries.get(2);
+        hostScheduler.update(last, last::addInLink);
+        release.countDown();
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertThat(order, is(Arrays.asList("http://www.example.com/c", "http://www.example.com/a",
+                "http://www.example.com/b")));
+        assertThat(last.getInLinks(), is(2));
+    }
+
+    @Test
+    public void shouldDrainTheOrderedTasks() throws Exception {
+        HostScheduler hostScheduler = new HostScheduler(workers, 1, 1, 0, CrawlOrder.BREADTH_FIRST);
+        CountDownLatch release = new CountDownLatch(1);
+        hostScheduler.execute("www.example.com", () -> await(release));
+        hostScheduler.execute("www.example.com", entry("/a", 1), () -> { });
+        hostScheduler.execute("www.example.com", () -> { });
+
+        assertThat(hostScheduler.drain().size(), is(2));
+        assertThat(hostScheduler.getQueuedTaskCount(), is(0));
+        release.countDown();
+    }
+
+    @Test
+    public void shouldStartWaitingTasksWhenTheLimitsAreRaised() throws Exception {
+        HostScheduler hostScheduler = new HostScheduler(workers, 1, 1, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            hostScheduler.execute("www.example.com", () -> {
+                started.countDown();
+                await(release);
+            });
+        }
+
+        hostScheduler.setMaxConcurrentTasks(3);
+        assertThat(started.await(200, TimeUnit.MILLISECONDS), is(false));
+        hostScheduler.setMaxTasksPerHost(3);
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertThat(hostScheduler.getQueuedTaskCount(), is(0));
+        release.countDown();
+    }
+
+    @Test
+    public void shouldRunFewerTasksOnceTheLimitsAreLowered() throws Exception {
+        HostScheduler hostScheduler = new HostScheduler(workers, 4, 4, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch finished = new CountDownLatch(10);
+        for (int i = 0; i < 4; i++) {
+            hostScheduler.execute("www.example.com", () -> await(release));
+        }
+        for (int i = 0; i < 10; i++) {
+            hostScheduler.execute(i % 2 == 0 ? "www.example.com" : "www.example.org", () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(5);
+                running.decrementAndGet();
+                finished.countDown();
+            });
+        }
+
+        hostScheduler.setMaxConcurrentTasks(2);
+        hostScheduler.setMaxTasksPerHost(1);
+        release.countDown();
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertThat(maxRunning.get(), is(2));
+        assertThat(hostScheduler.getMaxConcurrentTasks(), is(2));
+    }
+
+    @Test
+    public void shouldParkTheTasksOfAHostWhoseCircuitIsOpen() throws Exception {
+        HostScheduler hostScheduler = new HostScheduler(workers, 4, 4, 0, null,
+                () -> new CircuitBreaker(2, 100, 100, 3));
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch finished = new CountDownLatch(2);
+
+        hostScheduler.recordFailure("www.example.com");
+        assertThat(hostScheduler.recordFailure("www.example.com"), is(true));
+        assertThat(hostScheduler.getOpenCircuitCount(), is(1));
+        hostScheduler.execute("www.example.com", () -> {
+            order.add("failing");
+            finished.countDown();
+        });
+        hostScheduler.execute("www.example.org", () -> {
+            order.add("healthy");
+            finished.countDown();
+        });
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertThat(order, is(Arrays.asList("healthy", "failing")));
+    }
+
+    @Test
+    public void shouldAbandonAHostThatKeepsFailing() {
+        HostScheduler hostScheduler = new HostScheduler(workers, 4, 4, 0, null,
+                () -> new CircuitBreaker(1, 0, 0, 1));
+
+        hostScheduler.recordFailure("www.example.com");
+        hostScheduler.recordFailure("www.example.com");
+
+        assertThat(hostScheduler.isAbandoned("www.example.com"), is(true));
+        assertThat(hostScheduler.isAbandoned("www.example.org"), is(false));
+        assertThat(hostScheduler.getAbandonedHostCount(), is(1));
+    }
+
+    private static FrontierEntry entry(String path, int depth) {
+        return new FrontierEntry("http://www.example.com" + path, depth);
+    }
+
+    @Test
+    public void shouldKeepTheSlotOfAnAsyncTaskUntilItFinishes() throws Exception {
+        HostScheduler hostScheduler = new HostScheduler(workers, 1, 1, 0);
+        List<Runnable> callbacks = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch next = new CountDownLatch(1);
+
+        hostScheduler.execute("a", (AsyncTask) finished -> {
+            callbacks.add(finished);
+            started.countDown();
+        });
+        hostScheduler.execute("b", next::countDown);
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertThat(next.await(100, TimeUnit.MILLISECONDS), is(false));
+        // Only the first call frees the slot
+        callbacks.get(0).run();
+        callbacks.get(0).run();
+        assertTrue(next.await(5, TimeUnit.SECONDS));
+        assertThat(hostScheduler.getQueuedTaskCount(), is(0));
+    }
+
+    @Test
+    public void shouldFreeTheSlotOfAnAsyncTaskThatFailsToStart() throws Exception {
+        HostScheduler hostScheduler = new HostScheduler(workers, 1, 1, 0);
+        CountDownLatch next = new CountDownLatch(1);
+
+        hostScheduler.execute("a", (AsyncTask) finished -> {
+            throw new IllegalStateException("Could not send the request");
+        });
+        hostScheduler.execute("a", next::countDown);
+
+        assertTrue(next.await(5, TimeUnit.SECONDS));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
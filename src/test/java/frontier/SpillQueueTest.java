@@ -0,0 +1,108 @@
+package frontier;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link SpillQueue}.
+ */
+public class SpillQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+
+    @Before
+    public void setUp() {
+        directory = folder.getRoot().toPath().resolve("spill");
+    }
+
+    @Test
+    public void shouldReturnTheEntriesInTheOrderTheyWereAdded() throws Exception {
+        try (SpillQueue spillQueue = new SpillQueue(directory, SpillQueue.DEFAULT_SEGMENT_BYTES)) {
+            spillQueue.add(new FrontierEntry("http://www.example.com/a", 1));
+            spillQueue.add(new FrontierEntry("http://www.example.com/caf\u00e9", 3, 7));
+
+            assertThat(spillQueue.size(), is(2L));
+            FrontierEntry first = spillQueue.poll();
+            spillQueue.add(new FrontierEntry("http://www.example.com/c", 2));
+            FrontierEntry second = spillQueue.poll();
+            FrontierEntry third = spillQueue.poll();
+
+            assertThat(first.getUrl(), is("http://www.example.com/a"));
+            assertThat(first.getDepth(), is(1));
+            assertThat(second.getUrl(), is("http://www.example.com/caf\u00e9"));
+            assertThat(second.getDepth(), is(3));
+            assertThat(second.getInLinks(), is(7));
+            assertThat(third.getUrl(), is("http://www.example.com/c"));
+            assertThat(spillQueue.poll(), is(nullValue()));
+            assertThat(spillQueue.isEmpty(), is(true));
+            assertThat(spillQueue.getSpilledCount(), is(3L));
+        }
+    }
+
+    @Test
+    public void shouldReadAcrossSegmentsAndDeleteThemOnceRead() throws Exception {
+        try (SpillQueue spillQueue = new SpillQueue(directory, 1000)) {
+            for (int i = 0; i < 500; i++) {
+                spillQueue.add(new FrontierEntry("http://www.example.com/page" + i, i));
+            }
+            int segments = spillQueue.getSegmentCount();
+
+            for (int i = 0; i < 250; i++) {
+                assertThat(spillQueue.poll().getUrl(), is("http://www.example.com/page" + i));
+            }
+
+            assertThat(segments > 10, is(true));
+            assertThat(spillQueue.getSegmentCount() < segments / 2 + 2, is(true));
+            assertThat(Files.list(directory).count(), is((long) spillQueue.getSegmentCount()));
+            for (int i = 250; i < 500; i++) {
+                FrontierEntry entry = spillQueue.poll();
+                assertThat(entry.getUrl(), is("http://www.example.com/page" + i));
+                assertThat(entry.getDepth(), is(i));
+            }
+            assertThat(spillQueue.poll(), is(nullValue()));
+        }
+    }
+
+    @Test
+    public void shouldSpillAUrlLongerThanTheBuffers() throws Exception {
+        char[] path = new char[100000];
+        Arrays.fill(path, 'a');
+        String longUrl = "http://www.example.com/" + new String(path);
+
+        try (SpillQueue spillQueue = new SpillQueue(directory, SpillQueue.DEFAULT_SEGMENT_BYTES)) {
+            spillQueue.add(new FrontierEntry("http://www.example.com/before", 1));
+            spillQueue.add(new FrontierEntry(longUrl, 1));
+            spillQueue.add(new FrontierEntry("http://www.example.com/after", 1));
+
+            assertThat(spillQueue.poll().getUrl(), is("http://www.example.com/before"));
+            assertThat(spillQueue.poll().getUrl(), is(longUrl));
+            assertThat(spillQueue.poll().getUrl(), is("http://www.example.com/after"));
+        }
+    }
+
+    @Test
+    public void shouldDeleteTheSegmentsAndDirectoryWhenClosed() throws Exception {
+        SpillQueue spillQueue = new SpillQueue(directory, 100);
+        for (int i = 0; i < 20; i++) {
+            spillQueue.add(new FrontierEntry("http://www.example.com/page" + i, 1));
+        }
+
+        spillQueue.close();
+
+        assertThat(Files.exists(directory), is(false));
+        assertThat(spillQueue.isEmpty(), is(true));
+    }
+}
@@ -0,0 +1,89 @@
+package frontier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link TimerWheel}.
+ */
+public class TimerWheelTest {
+
+    private TimerWheel timerWheel;
+
+    @Before
+    public void setUp() {
+        timerWheel = new TimerWheel("test-timer", 5, 8);
+    }
+
+    @After
+    public void tearDown() {
+        timerWheel.stop();
+    }
+
+    @Test
+    public void shouldRunTasksInTheOrderOfTheirDelays() throws Exception {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch finished = new CountDownLatch(3);
+
+        timerWheel.schedule(() -> {
+            order.add("slow");
+            finished.countDown();
+        }, 60, TimeUnit.MILLISECONDS);
+        timerWheel.schedule(() -> {
+            order.add("fast");
+            finished.countDown();
+        }, 10, TimeUnit.MILLISECONDS);
+        timerWheel.schedule(() -> {
+            order.add("now");
+            finished.countDown();
+        }, 0, TimeUnit.MILLISECONDS);
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertThat(order, is(Arrays.asList("now", "fast", "slow")));
+    }
+
+    @Test
+    public void shouldNotRunATaskBeforeItsDelayAfterSeveralTurnsOfTheWheel() throws Exception {
+        CountDownLatch finished = new CountDownLatch(1);
+        long startNanos = System.nanoTime();
+        long[] ranAfterNanos = new long[1];
+
+        // 8 ticks of 5ms is one turn of the wheel
+        timerWheel.schedule(() -> {
+            ranAfterNanos[0] = System.nanoTime() - startNanos;
+            finished.countDown();
+        }, 130, TimeUnit.MILLISECONDS);
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertTrue(ranAfterNanos[0] >= TimeUnit.MILLISECONDS.toNanos(130));
+        assertThat(timerWheel.getPendingCount(), is(0));
+    }
+
+    @Test
+    public void shouldReturnTheTasksThatHadNotRunWhenStopped() {
+        Runnable task = () -> { };
+        timerWheel.schedule(task, 1, TimeUnit.HOURS);
+
+        assertThat(timerWheel.getPendingCount(), is(1));
+        assertThat(timerWheel.stop(), is(Collections.singletonList(task)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldNotScheduleATaskOnceStopped() {
+        timerWheel.stop();
+
+        timerWheel.schedule(() -> { }, 0, TimeUnit.MILLISECONDS);
+    }
+}
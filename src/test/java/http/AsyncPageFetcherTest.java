@@ -0,0 +1,130 @@
+package http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link AsyncPageFetcher}, against a server in the test JVM.
+ */
+public class AsyncPageFetcherTest {
+
+    private static final String PAGE = "<html><a href=\"/link1\">link1</a></html>";
+
+    private HttpServer server;
+    private ExecutorService parseExecutor;
+    private AsyncPageFetcher asyncPageFetcher;
+    private final AtomicReference<Thread> completedOn = new AtomicReference<>();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/page", exchange -> send(exchange, 200, "text/html",
+                PAGE.getBytes(StandardCharsets.UTF_8)));
+        server.createContext("/large", exchange -> send(exchange, 200, "text/html", new byte[100000]));
+        server.createContext("/missing", exchange -> send(exchange, 404, "text/html",
+                "Not found".getBytes(StandardCharsets.UTF_8)));
+        server.start();
+        parseExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "parser"));
+        asyncPageFetcher = new AsyncPageFetcher(HttpAsyncClients.createDefault(), parseExecutor);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        asyncPageFetcher.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void shouldReceiveTheContentOfAPageOnTheParseExecutor() throws Exception {
+        HttpResponse response = fetch("/page", 1000, true).get();
+
+        assertThat(response.getStatusLine().getStatusCode(), is(200));
+        assertThat(EntityUtils.toString(response.getEntity()), is(PAGE));
+        assertThat(response.getEntity().getContentLength(), is((long) PAGE.length()));
+        assertThat(response.getEntity().getContentType().getValue(), is("text/html"));
+        assertThat(completedOn.get().getName(), is("parser"));
+    }
+
+    @Test
+    public void shouldKeepOneByteMoreThanTheMaximum() throws Exception {
+        HttpResponse response = fetch("/large", 10, true).get();
+
+        assertThat(EntityUtils.toByteArray(response.getEntity()).length, is(11));
+        assertThat(response.getEntity().getContentLength(), is(100000L));
+    }
+
+    @Test
+    public void shouldNotReceiveTheContentOfAPageThatIsNotWanted() throws Exception {
+        HttpResponse response = fetch("/large", 1000000, false).get();
+
+        assertThat(response.getStatusLine().getStatusCode(), is(200));
+        assertThat(EntityUtils.toByteArray(response.getEntity()).length, is(0));
+    }
+
+    @Test
+    public void shouldHandOverAnErrorResponseWithoutItsContent() throws Exception {
+        HttpResponse response = fetch("/missing", 1000, true).get();
+
+        assertThat(response.getStatusLine().getStatusCode(), is(404));
+        assertThat(EntityUtils.toByteArray(response.getEntity()).length, is(0));
+    }
+
+    @Test
+    public void shouldFailWhenTheRequestFails() throws Exception {
+        int port = server.getAddress().getPort();
+        server.stop(0);
+
+        try {
+            asyncPageFetcher.fetch(new HttpGet("http://localhost:" + port + "/page"), 1000, response -> true).get();
+            fail("Expected the request to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(IOException.class));
+        }
+    }
+
+    @Test
+    public void shouldShutDownTheParseExecutorWhenClosed() throws Exception {
+        asyncPageFetcher.close();
+
+        assertThat(parseExecutor.isShutdown(), is(true));
+    }
+
+    private CompletableFuture<HttpResponse> fetch(String path, long maxBytes, boolean download) {
+        String url = "http://localhost:" + server.getAddress().getPort() + path;
+        return asyncPageFetcher.fetch(new HttpGet(url), maxBytes, response -> download)
+                .whenComplete((response, failure) -> completedOn.set(Thread.currentThread()));
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] content)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, content.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(content);
+        } catch (IOException e) {
+            // The client closed the connection without reading the rest
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package http;
+
+import org.apache.http.conn.DnsResolver;
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link CachingDnsResolver}, with a fake resolver so they run offline.
+ */
+public class CachingDnsResolverTest {
+
+    private static final InetAddress ADDRESS = address(192, 0, 2, 1);
+
+    private final Map<String, AtomicInteger> lookups = new ConcurrentHashMap<>();
+    private final ExecutorService prefetcher = Executors.newSingleThreadExecutor();
+    private final ExecutorService callers = Executors.newFixedThreadPool(4);
+    private CountDownLatch release = new CountDownLatch(0);
+
+    private final DnsResolver fakeResolver = host -> {
+        lookups.computeIfAbsent(host, key -> new AtomicInteger()).incrementAndGet();
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (host.endsWith(".invalid")) {
+            throw new UnknownHostException(host);
+        }
+        return new InetAddress[]{ADDRESS};
+    };
+
+    @After
+    public void tearDown() {
+        prefetcher.shutdownNow();
+        callers.shutdownNow();
+    }
+
+    @Test
+    public void shouldLookUpAHostOnceWhileItIsCached() throws Exception {
+        CachingDnsResolver resolver = new CachingDnsResolver(fakeResolver, 60000, 1000, prefetcher);
+
+        assertThat(resolver.resolve("www.example.com")[0], is(ADDRESS));
+        assertThat(resolver.resolve("WWW.Example.com")[0], is(ADDRESS));
+
+        assertThat(lookups.get("www.example.com").get(), is(1));
+        assertThat(resolver.getMisses(), is(1L));
+        assertThat(resolver.getHits(), is(1L));
+        assertThat(resolver.getResolveTime().getCount(), is(1L));
+    }
+
+    @Test
+    public void shouldLookUpAHostAgainOnceItHasExpired() throws Exception {
+        CachingDnsResolver resolver = new CachingDnsResolver(fakeResolver, 0, 0, prefetcher);
+
+        resolver.resolve("www.example.com");
+        resolver.resolve("www.example.com");
+
+        assertThat(lookups.get("www.example.com").get(), is(2));
+        assertThat(resolver.getMisses(), is(2L));
+    }
+
+    @Test
+    public void shouldShareALookupBetweenConcurrentCallers() throws Exception {
+        CachingDnsResolver resolver = new CachingDnsResolver(fakeResolver, 60000, 1000, prefetcher);
+        release = new CountDownLatch(1);
+
+        Future<InetAddress[]> first = callers.submit(() -> resolver.resolve("www.example.com"));
+        waitForLookup("www.example.com");
+        Future<InetAddress[]> second = callers.submit(() -> resolver.resolve("www.example.com"));
+        Future<InetAddress[]> third = callers.submit(() -> resolver.resolve("www.example.com"));
+        while (resolver.getSharedLookups() < 2) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS)[0], is(ADDRESS));
+        assertThat(second.get(5, TimeUnit.SECONDS)[0], is(ADDRESS));
+        assertThat(third.get(5, TimeUnit.SECONDS)[0], is(ADDRESS));
+        assertThat(lookups.get("www.example.com").get(), is(1));
+    }
+
+    @Test
+    public void shouldRememberAHostThatCouldNotBeResolved() throws Exception {
+        CachingDnsResolver resolver = new CachingDnsResolver(fakeResolver, 60000, 60000, prefetcher);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                resolver.resolve("missing.invalid");
+                throw new AssertionError("Expected an UnknownHostException");
+            } catch (UnknownHostException e) {
+                assertThat(e.getMessage(), is("missing.invalid"));
+            }
+        }
+
+        assertThat(lookups.get("missing.invalid").get(), is(1));
+        assertThat(resolver.getFailures(), is(1L));
+    }
+
+    @Test
+    public void shouldPrefetchAHostSoItsFirstConnectionIsAHit() throws Exception {
+        CachingDnsResolver resolver = new CachingDnsResolver(fakeResolver, 60000, 1000, prefetcher);
+
+        resolver.prefetch("www.example.com");
+        prefetcher.submit(() -> { }).get(5, TimeUnit.SECONDS);
+        resolver.prefetch("www.example.com");
+        resolver.resolve("www.example.com");
+
+        assertThat(lookups.get("www.example.com").get(), is(1));
+        assertThat(resolver.getPrefetches(), is(1L));
+        assertThat(resolver.getHits(), is(1L));
+        assertThat(resolver.getMisses(), is(0L));
+    }
+
+    @Test
+    public void shouldNotPrefetchOnceClosed() throws Exception {
+        CachingDnsResolver resolver = new CachingDnsResolver(fakeResolver, 60000, 1000, prefetcher);
+
+        resolver.close();
+        resolver.prefetch("www.example.com");
+
+        assertTrue(prefetcher.awaitTermination(5, TimeUnit.SECONDS));
+        assertThat(resolver.getPrefetches(), is(0L));
+        assertThat(resolver.resolve("www.example.com")[0], is(ADDRESS));
+    }
+
+    private void waitForLookup(String host) throws InterruptedException {
+        while (!lookups.containsKey(host)) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static InetAddress address(int a, int b, int c, int d) {
+        try {
+            return InetAddress.getByAddress(new byte[]{(byte) a, (byte) b, (byte) c, (byte) d});
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package http;
+
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link CharsetSniffer}.
+ */
+public class CharsetSnifferTest {
+
+    @Test
+    public void shouldUseTheByteOrderMarkAndSkipIt() throws Exception {
+        InputStream content = stream(new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF, '<'});
+
+        Charset charset = CharsetSniffer.detect(content, StandardCharsets.ISO_8859_1);
+
+        assertThat(charset, is(StandardCharsets.UTF_8));
+        assertThat(content.read(), is((int) '<'));
+    }
+
+    @Test
+    public void shouldUseTheUtf16ByteOrderMarks() throws Exception {
+        assertThat(CharsetSniffer.detect(stream(new byte[]{(byte) 0xFE, (byte) 0xFF}), null), is(StandardCharsets.UTF_16BE));
+        assertThat(CharsetSniffer.detect(stream(new byte[]{(byte) 0xFF, (byte) 0xFE}), null), is(StandardCharsets.UTF_16LE));
+    }
+
+    @Test
+    public void shouldPreferTheContentTypeCharsetOverTheMetaTag() throws Exception {
+        InputStream content = stream("<html><meta charset=\"windows-1252\">".getBytes(StandardCharsets.US_ASCII));
+
+        Charset charset = CharsetSniffer.detect(content, StandardCharsets.ISO_8859_1);
+
+        assertThat(charset, is(StandardCharsets.ISO_8859_1));
+        assertThat(content.read(), is((int) '<'));
+    }
+
+    @Test
+    public void shouldUseTheMetaCharset() throws Exception {
+        InputStream content = stream("<html><head><META CHARSET='windows-1252'>".getBytes(StandardCharsets.US_ASCII));
+
+        assertThat(CharsetSniffer.detect(content, null), is(Charset.forName("windows-1252")));
+    }
+
+    @Test
+    public void shouldUseTheMetaHttpEquivCharset() throws Exception {
+        InputStream content = stream(("<meta name=\"viewport\" content=\"width=device-width\">"
+                + "<meta http-equiv=\"Content-Type\" content=\"text/html; charset=ISO-8859-1\">").getBytes(StandardCharsets.US_ASCII));
+
+        assertThat(CharsetSniffer.detect(content, null), is(StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void shouldDefaultToUtf8() throws Exception {
+        assertThat(CharsetSniffer.detect(stream("<html></html>".getBytes(StandardCharsets.US_ASCII)), null), is(StandardCharsets.UTF_8));
+        assertThat(CharsetSniffer.detect(stream("<meta charset=\"nonsense\">".getBytes(StandardCharsets.US_ASCII)), null), is(StandardCharsets.UTF_8));
+        assertThat(CharsetSniffer.detect(stream("<meta charset=\"utf-16\">".getBytes(StandardCharsets.US_ASCII)), null), is(StandardCharsets.UTF_8));
+    }
+
+    private InputStream stream(byte[] bytes) {
+        return new BufferedInputStream(new ByteArrayInputStream(bytes));
+    }
+}
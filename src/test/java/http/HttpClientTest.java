@@ -1,7 +1,11 @@
 package http;
 
 import exception.FailedToGetPageContentException;
+import exception.RequestTimeoutException;
+import exception.RetryLaterException;
+import exception.SkippedPageException;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
 import org.apache.http.ParseException;
 import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
@@ -11,16 +15,31 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import org.apache.http.message.BasicHeader;
+
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
 
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -37,6 +56,8 @@ public class HttpClientTest {
     private HttpEntity httpEntity;
     @Mock
     private StatusLine statusLine;
+    @Mock
+    private PageFetcher pageFetcher;
 
     private HttpClient httpClient;
 
@@ -62,6 +83,85 @@ public class HttpClientTest {
         assertThat(content, is(expectedContent));
     }
 
+    @Test
+    public void shouldStreamThePageContentWithTheCharsetFromTheContentTypeHeader() throws Exception {
+        byte[] expectedContent = "<html>caf\u00e9</html>".getBytes(StandardCharsets.ISO_8859_1);
+
+        when(closeableHttpClient.execute(any(HttpGet.class))).thenReturn(httpResponse);
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+        when(statusLine.getStatusCode()).thenReturn(200);
+        when(httpResponse.getEntity()).thenReturn(httpEntity);
+        when(httpEntity.getContentType()).thenReturn(new BasicHeader("Content-Type", "text/html; charset=ISO-8859-1"));
+        when(httpEntity.getContent())
+                .thenReturn(new ByteArrayInputStream(expectedContent), new ByteArrayInputStream(expectedContent));
+
+        String charset = httpClient.processPageContent("http://www.example.com", (content, pageCharset) -> pageCharset.name());
+
+        assertThat(charset, is("ISO-8859-1"));
+        assertThat(httpClient.getPageContent("http://www.example.com"), is("<html>caf\u00e9</html>"));
+    }
+
+    @Test
+    public void shouldCloseTheContentStreamSoTheConnectionCanBeReused() throws Exception {
+        ByteArrayInputStream contentStream = spy(new ByteArrayInputStream("<html></html>".getBytes()));
+
+        when(closeableHttpClient.execute(any(HttpGet.class))).thenReturn(httpResponse);
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+        when(statusLine.getStatusCode()).thenReturn(200);
+        when(httpResponse.getEntity()).thenReturn(httpEntity);
+        when(httpEntity.getContent()).thenReturn(contentStream);
+
+        httpClient.processPageContent("http://www.example.com", (content, charset) -> content.read());
+
+        verify(contentStream).close();
+    }
+
+    @Test
+    public void shouldSendTheCachedValidatorsAsConditionalHeaders() throws Exception {
+        when(closeableHttpClient.execute(any(HttpGet.class))).thenReturn(httpResponse);
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+        when(statusLine.getStatusCode()).thenReturn(304);
+
+        PageResponse<String> response = httpClient.processPageContent("http://www.example.com",
+                new PageValidators("\"v1\"", "Sat, 01 Jan 2000 00:00:00 GMT"), (content, charset) -> "parsed");
+
+        ArgumentCaptor<HttpGet> request = ArgumentCaptor.forClass(HttpGet.class);
+        verify(closeableHttpClient).execute(request.capture());
+        assertThat(request.getValue().getFirstHeader("If-None-Match").getValue(), is("\"v1\""));
+        assertThat(request.getValue().getFirstHeader("If-Modified-Since").getValue(), is("Sat, 01 Jan 2000 00:00:00 GMT"));
+        assertThat(response.isNotModified(), is(true));
+        assertThat(response.getContent(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldReturnTheValidatorsOfADownloadedPage() throws Exception {
+        when(closeableHttpClient.execute(any(HttpGet.class))).thenReturn(httpResponse);
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+        when(statusLine.getStatusCode()).thenReturn(200);
+        when(httpResponse.getEntity()).thenReturn(httpEntity);
+        when(httpEntity.getContent()).thenReturn(new ByteArrayInputStream("<html></html>".getBytes()));
+        when(httpResponse.getFirstHeader("ETag")).thenReturn(new BasicHeader("ETag", "\"v2\""));
+
+        PageResponse<String> response = httpClient.processPageContent("http://www.example.com",
+                new PageValidators("\"v1\"", null), (content, charset) -> "parsed");
+
+        ArgumentCaptor<HttpGet> request = ArgumentCaptor.forClass(HttpGet.class);
+        verify(closeableHttpClient).execute(request.capture());
+        assertThat(request.getValue().getFirstHeader("If-Modified-Since"), is(nullValue()));
+        assertThat(response.isNotModified(), is(false));
+        assertThat(response.getContent(), is("parsed"));
+        assertThat(response.getValidators(), is(new PageValidators("\"v2\"", null)));
+    }
+
+    @Test(expected = FailedToGetPageContentException.class)
+    public void shouldHandleNotModifiedResponseToAnUnconditionalRequest() throws Exception {
+        when(closeableHttpClient.execute(any(HttpGet.class))).thenReturn(httpResponse);
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+        when(statusLine.getStatusCode()).thenReturn(304);
+
+        httpClient.getPageContent("");
+    }
+
     @Test(expected = FailedToGetPageContentException.class)
     public void shouldHandleNon200Response() throws Exception {
         when(closeableHttpClient.execute(any(HttpGet.class))).thenReturn(httpResponse);
@@ -71,6 +171,22 @@ public class HttpClientTest {
         httpClient.getPageContent("");
     }
 
+    @Test
+    public void shouldAskForAServiceUnavailableResponseToBeRetriedWhenTheServerSays() throws Exception {
+        when(closeableHttpClient.execute(any(HttpGet.class))).thenReturn(httpResponse);
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+        when(statusLine.getStatusCode()).thenReturn(503);
+        when(httpResponse.getFirstHeader("Retry-After")).thenReturn(new BasicHeader("Retry-After", "120"));
+
+        try {
+            httpClient.getPageContent("http://www.example.com");
+        } catch (RetryLaterException e) {
+            assertThat(e.getRetryAfterMillis(), is(120000L));
+            return;
+        }
+        throw new AssertionError("Expected a RetryLaterException");
+    }
+
     @Test(expected = FailedToGetPageContentException.class)
     public void shouldHandleIOException() throws Exception {
         when(closeableHttpClient.execute(any(HttpGet.class))).thenThrow(new IOException());
@@ -88,4 +204,294 @@ public class HttpClientTest {
         when(closeableHttpClient.execute(any(HttpGet.class))).thenThrow(new ParseException());
         httpClient.getPageContent("");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldMeasureTheRequestsAndTheBytesOfContentRead() throws Exception {
+        when(closeableHttpClient.execute(any(HttpGet.class))).thenReturn(httpResponse);
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+        when(statusLine.getStatusCode()).thenReturn(200, 200, 404);
+        when(httpResponse.getEntity()).thenReturn(httpEntity);
+        when(httpEntity.getContent()).thenReturn(new ByteArrayInputStream("<html>one</html>".getBytes()),
+                new ByteArrayInputStream("<html>two</html>".getBytes()));
+
+        httpClient.getPageContent("http://www.example.com/one");
+        httpClient.getPageContent("http://www.example.com/two");
+        try {
+            httpClient.getPageContent("http://www.example.com/three");
+        } catch (FailedToGetPageContentException e) {
+            // counted by status code
+        }
+
+        assertThat(httpClient.getFetchLatency().getCount(), is(3L));
+        assertThat(httpClient.getBytesDownloaded(), is(32L));
+        assertThat(httpClient.getStatusCounts().get(200), is(2L));
+        assertThat(httpClient.getStatusCounts().get(404), is(1L));
+        assertThat(httpClient.getFailureCount(), is(0L));
+        assertThat(httpClient.getInFlightRequests(), is(0));
+    }
+
+    @Test
+    public void shouldCountRequestsThatFailWithoutAResponse() throws Exception {
+        when(closeableHttpClient.execute(any(HttpGet.class))).thenThrow(new ClientProtocolException());
+
+        try {
+            httpClient.getPageContent("http://www.example.com");
+        } catch (FailedToGetPageContentException e) {
+            // expected
+        }
+
+        assertThat(httpClient.getFailureCount(), is(1L));
+        assertThat(httpClient.getStatusCounts().isEmpty(), is(true));
+        assertThat(httpClient.getInFlightRequests(), is(0));
+    }
+
+    @Test
+    public void shouldSkipAResponseThatIsNotHtmlWithoutReadingIt() throws Exception {
+        when(closeableHttpClient.execute(any(HttpGet.class))).thenReturn(httpResponse);
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+        when(statusLine.getStatusCode()).thenReturn(200);
+        when(httpResponse.getEntity()).thenReturn(httpEntity);
+        when(httpEntity.getContentType()).thenReturn(new BasicHeader("Content-Type", "application/pdf"));
+
+        try {
+            httpClient.getPageContent("http://www.example.com/report.pdf");
+        } catch (SkippedPageException e) {
+            // expected
+        }
+
+        verify(httpEntity, never()).getContent();
+        assertThat(httpClient.getSkippedCount(), is(1L));
+    }
+
+    @Test(expected = SkippedPageException.class)
+    public void shouldSkipAResponseLargerThanTheMaximumPageSize() throws Exception {
+        httpClient = new HttpClient(closeableHttpClient, 0, 1000);
+        when(closeableHttpClient.execute(any(HttpGet.class))).thenReturn(httpResponse);
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+        when(statusLine.getStatusCode()).thenReturn(200);
+        when(httpResponse.getEntity()).thenReturn(httpEntity);
+        when(httpEntity.getContentType()).thenReturn(new BasicHeader("Content-Type", "text/html; charset=UTF-8"));
+        when(httpEntity.getContentLength()).thenReturn(1001L);
+
+        httpClient.getPageContent("http://www.example.com/huge.html");
+    }
+
+    @Test
+    public void shouldParseTheStartOfAResponseWithoutALengthThatIsTooLarge() throws Exception {
+        httpClient = new HttpClient(closeableHttpClient, 0, 10);
+        when(closeableHttpClient.execute(any(HttpGet.class))).thenReturn(httpResponse);
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+        when(statusLine.getStatusCode()).thenReturn(200, 200);
+        when(httpResponse.getEntity()).thenReturn(httpEntity);
+        when(httpEntity.getContentLength()).thenReturn(-1L);
+        when(httpEntity.getContent()).thenReturn(new ByteArrayInputStream("<html><a href=\"/x\">".getBytes()),
+                new ByteArrayInputStream("<html>ok".getBytes()));
+
+        assertThat(httpClient.getPageContent("http://www.example.com/chunked"), is("<html><a h"));
+        assertThat(httpClient.getPageContent("http://www.example.com/short"), is("<html>ok"));
+        assertThat(httpClient.getTruncatedCount(), is(1L));
+        assertThat(httpClient.getBytesDownloaded(), is(18L));
+    }
+
+    @Test
+    public void shouldNotTruncateAResponseOfExactlyTheMaximumPageSize() throws Exception {
+        httpClient = new HttpClient(closeableHttpClient, 0, 8);
+        when(closeableHttpClient.execute(any(HttpGet.class))).thenReturn(httpResponse);
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+        when(statusLine.getStatusCode()).thenReturn(200);
+        when(httpResponse.getEntity()).thenReturn(httpEntity);
+        when(httpEntity.getContentLength()).thenReturn(-1L);
+        when(httpEntity.getContent()).thenReturn(new ByteArrayInputStream("<html>ok".getBytes()));
+
+        assertThat(httpClient.getPageContent("http://www.example.com/exact"), is("<html>ok"));
+        assertThat(httpClient.getTruncatedCount(), is(0L));
+    }
+
+    @Test
+    public void shouldCountASocketTimeoutAsATimeoutRatherThanAFailure() throws Exception {
+        when(closeableHttpClient.execute(any(HttpGet.class))).thenThrow(new SocketTimeoutException("Read timed out"));
+
+        try {
+            httpClient.getPageContent("http://www.example.com");
+        } catch (RequestTimeoutException e) {
+            // expected
+        }
+
+        assertThat(httpClient.getTimeoutCount(), is(1L));
+        assertThat(httpClient.getFailureCount(), is(0L));
+    }
+
+    @Test
+    public void shouldAbortARequestThatIsStillRunningAtItsDeadline() throws Exception {
+        httpClient = new HttpClient(closeableHttpClient, 0, HttpClient.DEFAULT_MAX_PAGE_BYTES, 50);
+        when(closeableHttpClient.execute(any(HttpGet.class))).thenAnswer(invocation -> {
+            HttpGet httpGet = (HttpGet) invocation.getArguments()[0];
+            long giveUpNanos = System.nanoTime() + 10_000_000_000L;
+            while (!httpGet.isAborted() && System.nanoTime() < giveUpNanos) {
+                Thread.sleep(5);
+            }
+            // What the connection throws once it is shut down by the abort
+            throw new IOException("Socket closed");
+        });
+
+        long startNanos = System.nanoTime();
+        try {
+            httpClient.getPageContent("http://www.example.com");
+        } catch (RequestTimeoutException e) {
+            // expected
+        }
+
+        assertThat((System.nanoTime() - startNanos) < 5_000_000_000L, is(true));
+        assertThat(httpClient.getTimeoutCount(), is(1L));
+        assertThat(httpClient.getFailureCount(), is(0L));
+    }
+
+    @Test
+    public void shouldNotAbortARequestThatFinishesBeforeItsDeadline() throws Exception {
+        httpClient = new HttpClient(closeableHttpClient, 0, HttpClient.DEFAULT_MAX_PAGE_BYTES, 60000);
+        when(closeableHttpClient.execute(any(HttpGet.class))).thenReturn(httpResponse);
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+        when(statusLine.getStatusCode()).thenReturn(200);
+        when(httpResponse.getEntity()).thenReturn(httpEntity);
+        when(httpEntity.getContent()).thenReturn(new ByteArrayInputStream("<html>one</html>".getBytes()));
+        ArgumentCaptor<HttpGet> request = ArgumentCaptor.forClass(HttpGet.class);
+
+        httpClient.getPageContent("http://www.example.com");
+
+        verify(closeableHttpClient).execute(request.capture());
+        assertThat(request.getValue().isAborted(), is(false));
+        assertThat(httpClient.getTimeoutCount(), is(0L));
+    }
+
+    @Test
+    public void shouldUseTheBlockingClientForAsyncRequestsWithoutAPageFetcher() throws Exception {
+        when(closeableHttpClient.execute(any(HttpGet.class))).thenReturn(httpResponse);
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+        when(statusLine.getStatusCode()).thenReturn(500);
+
+        CompletableFuture<PageResponse<String>> response = httpClient.processPageContentAsync("http://www.example.com",
+                null, (stream, charset) -> "");
+
+        assertThat(response.isCompletedExceptionally(), is(true));
+    }
+
+    @Test
+    public void shouldProcessAnAsyncResponseInTheSameWayAsABlockingOne() throws Exception {
+        httpClient = new HttpClient(closeableHttpClient, 0, HttpClient.DEFAULT_MAX_PAGE_BYTES, 0, pageFetcher);
+        when(pageFetcher.fetch(any(HttpGet.class), anyLong(), any())).thenReturn(CompletableFuture.completedFuture(httpResponse));
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+        when(statusLine.getStatusCode()).thenReturn(200);
+        when(httpResponse.getEntity()).thenReturn(httpEntity);
+        when(httpEntity.getContentType()).thenReturn(new BasicHeader("Content-Type", "text/html; charset=ISO-8859-1"));
+        when(httpEntity.getContent()).thenReturn(new ByteArrayInputStream("<html>one</html>".getBytes()));
+        when(httpResponse.getFirstHeader("ETag")).thenReturn(new BasicHeader("ETag", "\"v2\""));
+
+        PageResponse<String> response = httpClient.processPageContentAsync("http://www.example.com", null,
+                (content, charset) -> charset.name()).get();
+
+        verify(closeableHttpClient, never()).execute(any(HttpGet.class));
+        assertThat(response.getContent(), is("ISO-8859-1"));
+        assertThat(response.getValidators(), is(new PageValidators("\"v2\"", null)));
+        assertThat(httpClient.getFetchLatency().getCount(), is(1L));
+        assertThat(httpClient.getBytesDownloaded(), is(16L));
+        assertThat(httpClient.getStatusCounts().get(200), is(1L));
+        assertThat(httpClient.getInFlightRequests(), is(0));
+    }
+
+    @Test
+    public void shouldSendTheCachedValidatorsWithAnAsyncRequest() throws Exception {
+        httpClient = new HttpClient(closeableHttpClient, 0, HttpClient.DEFAULT_MAX_PAGE_BYTES, 0, pageFetcher);
+        when(pageFetcher.fetch(any(HttpGet.class), anyLong(), any())).thenReturn(CompletableFuture.completedFuture(httpResponse));
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+        when(statusLine.getStatusCode()).thenReturn(304);
+
+        PageResponse<String> response = httpClient.processPageContentAsync("http://www.example.com",
+                new PageValidators("\"v1\"", null), (content, charset) -> "parsed").get();
+
+        ArgumentCaptor<HttpGet> request = ArgumentCaptor.forClass(HttpGet.class);
+        verify(pageFetcher).fetch(request.capture(), eq(HttpClient.DEFAULT_MAX_PAGE_BYTES), any());
+        assertThat(request.getValue().getFirstHeader("If-None-Match").getValue(), is("\"v1\""));
+        assertThat(response.isNotModified(), is(true));
+    }
+
+    @Test
+    public void shouldOnlyDownloadTheContentOfAnAsyncResponseThatIsNotSkipped() throws Exception {
+        httpClient = new HttpClient(closeableHttpClient, 0, 1000, 0, pageFetcher);
+        ArgumentCaptor<Predicate> download = ArgumentCaptor.forClass(Predicate.class);
+        when(pageFetcher.fetch(any(HttpGet.class), anyLong(), download.capture()))
+                .thenReturn(CompletableFuture.completedFuture(httpResponse));
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+        when(statusLine.getStatusCode()).thenReturn(200);
+        when(httpResponse.getEntity()).thenReturn(httpEntity);
+        when(httpEntity.getContentType()).thenReturn(new BasicHeader("Content-Type", "application/pdf"));
+
+        try {
+            httpClient.processPageContentAsync("http://www.example.com/report.pdf", null, (content, charset) -> "").get();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(SkippedPageException.class));
+        }
+
+        assertThat(download.getValue().test(httpResponse), is(false));
+        assertThat(httpClient.getSkippedCount(), is(1L));
+    }
+
+    @Test
+    public void shouldAskForAnAsyncRequestTheServerIsTooBusyForToBeRetried() throws Exception {
+        httpClient = new HttpClient(closeableHttpClient, 0, HttpClient.DEFAULT_MAX_PAGE_BYTES, 0, pageFetcher);
+        when(pageFetcher.fetch(any(HttpGet.class), anyLong(), any())).thenReturn(CompletableFuture.completedFuture(httpResponse));
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+        when(statusLine.getStatusCode()).thenReturn(429);
+        when(httpResponse.getFirstHeader("Retry-After")).thenReturn(new BasicHeader("Retry-After", "2"));
+
+        try {
+            httpClient.processPageContentAsync("http://www.example.com", null, (content, charset) -> "").get();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(RetryLaterException.class));
+            assertThat(((RetryLaterException) e.getCause()).getRetryAfterMillis(), is(2000L));
+            return;
+        }
+        throw new AssertionError("Expected a RetryLaterException");
+    }
+
+    @Test
+    public void shouldCountAnAsyncRequestThatFailsWithoutAResponse() throws Exception {
+        httpClient = new HttpClient(closeableHttpClient, 0, HttpClient.DEFAULT_MAX_PAGE_BYTES, 0, pageFetcher);
+        CompletableFuture<HttpResponse> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IOException("Connection refused"));
+        when(pageFetcher.fetch(any(HttpGet.class), anyLong(), any())).thenReturn(failed);
+
+        try {
+            httpClient.processPageContentAsync("http://www.example.com", null, (content, charset) -> "").get();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(FailedToGetPageContentException.class));
+        }
+
+        assertThat(httpClient.getFailureCount(), is(1L));
+        assertThat(httpClient.getInFlightRequests(), is(0));
+    }
+
+    @Test
+    public void shouldCancelAnAsyncRequestThatIsStillRunningAtItsDeadline() throws Exception {
+        httpClient = new HttpClient(closeableHttpClient, 0, HttpClient.DEFAULT_MAX_PAGE_BYTES, 50, pageFetcher);
+        CompletableFuture<HttpResponse> neverAnswered = new CompletableFuture<>();
+        when(pageFetcher.fetch(any(HttpGet.class), anyLong(), any())).thenReturn(neverAnswered);
+
+        try {
+            httpClient.processPageContentAsync("http://www.example.com", null, (content, charset) -> "").get();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(RequestTimeoutException.class));
+        }
+
+        assertThat(neverAnswered.isCancelled(), is(true));
+        assertThat(httpClient.getTimeoutCount(), is(1L));
+        assertThat(httpClient.getFailureCount(), is(0L));
+    }
+
+    @Test
+    public void shouldCloseTheClientsWhenClosed() throws Exception {
+        new HttpClient(closeableHttpClient, 0, HttpClient.DEFAULT_MAX_PAGE_BYTES, 0, pageFetcher).close();
+
+        verify(closeableHttpClient).close();
+        verify(pageFetcher).close();
+    }
+}
@@ -0,0 +1,120 @@
+package http;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link PageCache}
+ */
+public class PageCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = folder.getRoot().toPath().resolve("pages.cache");
+    }
+
+    @Test
+    public void shouldReturnTheCachedValidatorsAndAssets() throws Exception {
+        try (PageCache pageCache = PageCache.open(file)) {
+            pageCache.put("http://www.example.com/", new PageValidators("\"v1\"", null),
+                    new PageAssets(Arrays.asList("http://www.example.com/a", "http://www.example.com/caf\u00e9"),
+                            Collections.singletonList("http://www.example.com/logo.png")));
+
+            assertThat(pageCache.getValidators("http://www.example.com/"), is(new PageValidators("\"v1\"", null)));
+            PageAssets assets = pageCache.getAssets("http://www.example.com/");
+            assertThat(assets.getLinksToOtherPages(),
+                    is(Arrays.asList("http://www.example.com/a", "http://www.example.com/caf\u00e9")));
+            assertThat(assets.getStaticContent(), is(Collections.singletonList("http://www.example.com/logo.png")));
+            assertThat(pageCache.getModifiedCount(), is(1L));
+            assertThat(pageCache.getNotModifiedCount(), is(1L));
+        }
+    }
+
+    @Test
+    public void shouldNotCacheAPageWithoutValidators() throws Exception {
+        try (PageCache pageCache = PageCache.open(file)) {
+            pageCache.put("http://www.example.com/", new PageValidators(null, null), new PageAssets());
+
+            assertThat(pageCache.getValidators("http://www.example.com/"), is(nullValue()));
+            assertThat(pageCache.getAssets("http://www.example.com/"), is(nullValue()));
+            assertThat(pageCache.getModifiedCount(), is(1L));
+        }
+    }
+
+    @Test
+    public void shouldKeepTheLatestPageWhenTheCacheIsReopened() throws Exception {
+        try (PageCache pageCache = PageCache.open(file)) {
+            pageCache.put("http://www.example.com/", new PageValidators("\"v1\"", null),
+                    new PageAssets(Collections.singletonList("http://www.example.com/old"), Collections.emptyList()));
+            pageCache.put("http://www.example.com/", new PageValidators("\"v2\"", "Sat, 01 Jan 2000 00:00:00 GMT"),
+                    new PageAssets(Collections.singletonList("http://www.example.com/new"), Collections.emptyList()));
+        }
+
+        try (PageCache pageCache = PageCache.open(file)) {
+            assertThat(pageCache.size(), is(1));
+            assertThat(pageCache.getValidators("http://www.example.com/"),
+                    is(new PageValidators("\"v2\"", "Sat, 01 Jan 2000 00:00:00 GMT")));
+            assertThat(pageCache.getAssets("http://www.example.com/").getLinksToOtherPages(),
+                    is(Collections.singletonList("http://www.example.com/new")));
+        }
+    }
+
+    @Test
+    public void shouldDropAPartiallyWrittenPage() throws Exception {
+        try (PageCache pageCache = PageCache.open(file)) {
+            pageCache.put("http://www.example.com/a", new PageValidators("\"a\"", null), new PageAssets());
+            pageCache.put("http://www.example.com/b", new PageValidators("\"b\"", null), new PageAssets());
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (PageCache pageCache = PageCache.open(file)) {
+            assertThat(pageCache.size(), is(1));
+            assertThat(pageCache.getValidators("http://www.example.com/b"), is(nullValue()));
+
+            pageCache.put("http://www.example.com/c", new PageValidators("\"c\"", null), new PageAssets());
+        }
+
+        try (PageCache pageCache = PageCache.open(file)) {
+            assertThat(pageCache.size(), is(2));
+            assertThat(pageCache.getValidators("http://www.example.com/c"), is(new PageValidators("\"c\"", null)));
+        }
+    }
+
+    @Test
+    public void shouldCompactTheCacheWhenMostOfItHasBeenReplaced() throws Exception {
+        try (PageCache pageCache = PageCache.open(file)) {
+            for (int i = 0; i < 1000; i++) {
+                pageCache.put("http://www.example.com/", new PageValidators("\"" + i + "\"", null),
+                        new PageAssets(Collections.singletonList("http://www.example.com/" + i), Collections.emptyList()));
+            }
+        }
+        long sizeBeforeCompaction = Files.size(file);
+
+        try (PageCache pageCache = PageCache.open(file)) {
+            assertThat(Files.size(file) < sizeBeforeCompaction / 100, is(true));
+            assertThat(pageCache.getValidators("http://www.example.com/"), is(new PageValidators("\"999\"", null)));
+            assertThat(pageCache.getAssets("http://www.example.com/").getLinksToOtherPages(),
+                    is(Collections.singletonList("http://www.example.com/999")));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package http;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link StreamingLinkExtractor}.
+ *
+ * The expected assets come from a Jsoup parse of the same HTML.
+ */
+public class StreamingLinkExtractorTest {
+
+    private static final String BASE_URL = "http://www.example.com/dir/page.html";
+
+    private final StreamingLinkExtractor extractor = new StreamingLinkExtractor();
+
+    @Test
+    public void shouldMatchJsoupForQuotedAndUnquotedAttributes() throws Exception {
+        assertMatchesJsoup("<a href='single'>1</a><a href=unquoted>2</a><A HREF=\"upper\">3</A><a href>4</a>");
+    }
+
+    @Test
+    public void shouldMatchJsoupForRelativeUrls() throws Exception {
+        assertMatchesJsoup("<a href=\"../up\">1</a><a href=\"?query\">2</a><a href=\"//cdn.example.com/x\">3</a>"
+                + "<a href=\"#fragment\">4</a><a href=\" /spaces \">5</a>");
+    }
+
+    @Test
+    public void shouldMatchJsoupForEntitiesInAttributes() throws Exception {
+        assertMatchesJsoup("<a href=\"/a?x=1&amp;y=2&#38;z=3\">1</a><a href=\"/&copy;\">2</a>");
+    }
+
+    @Test
+    public void shouldMatchJsoupForCommentsAndRawText() throws Exception {
+        assertMatchesJsoup("<!--> <a href=\"/1\"> <!---> <a href=\"/2\"><!-- <a href=\"/no\"> -->"
+                + "<style>a[href] { } <a href=\"/no\"></style><textarea><a href=\"/no\"></textarea>"
+                + "<script>var s = '</scr' + 'ipt>'; <a href=\"/no\"></script ><a href=\"/3\">"
+                + "<!DOCTYPE html><?xml version=\"1.0\"?><a href=\"/4\">");
+    }
+
+    @Test
+    public void shouldMatchJsoupForDuplicateAttributesAndOtherTags() throws Exception {
+        assertMatchesJsoup("<a name=\"x\" href=\"/first\" href=\"/second\">1</a><link href=\"/style.css\">"
+                + "<area href=\"/area\"><img alt=\"a > b\" src=\"/i.gif\"><img src=\"/i.png?x=.GIF\"/>");
+    }
+
+    @Test
+    public void shouldMatchJsoupForATagThatIsNotClosed() throws Exception {
+        assertMatchesJsoup("<a href=\"/1\">link</a><img src=\"/image.jpg\"</html>");
+        assertMatchesJsoup("<a href=\"/1\">link</a><a href=\"/2\"");
+    }
+
+    @Test
+    public void shouldMatchJsoupForTheFirstBaseHref() throws Exception {
+        assertMatchesJsoup("<head><base target=\"_blank\"><base href=\"/other/\"><base href=\"/ignored/\"></head>"
+                + "<a href=\"link\">1</a><img src=\"image.png\">");
+    }
+
+    @Test
+    public void shouldReturnEmptyStringForAUrlThatCannotBeResolved() throws Exception {
+        assertMatchesJsoup("<a href=\"http://[bad\">1</a><a href=\"mailto:someone@example.com\">2</a>");
+    }
+
+    private void assertMatchesJsoup(String html) throws Exception {
+        PageAssets assets = extractor.extract(new StringReader(html), BASE_URL);
+
+        Document document = Jsoup.parse(html, BASE_URL);
+        assertThat(assets.getLinksToOtherPages(), is(document.select("a[href]").stream()
+                .map(link -> link.attr("abs:href"))
+                .collect(Collectors.toList())));
+        assertThat(assets.getStaticContent(), is(document.select("img[src~=(?i)\\.(png|jpe?g|gif)]").stream()
+                .map(image -> image.attr("abs:src"))
+                .collect(Collectors.toList())));
+    }
+}
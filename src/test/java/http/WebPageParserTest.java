@@ -1,32 +1,69 @@
 package http;
 
 import exception.FailedToGetPageContentException;
+import exception.RequestTimeoutException;
+import exception.SkippedPageException;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
 import org.mockito.Mock;
-import org.mockito.runners.MockitoJUnitRunner;
-
+import org.mockito.MockitoAnnotations;
+
+import java.io.ByteArrayInputStream;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
  * Tests for {@link WebPageParser}
+ *
+ * Each test is run against every parser mode, which must all return the same assets.
  */
-@RunWith(MockitoJUnitRunner.class)
+@RunWith(Parameterized.class)
 public class WebPageParserTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Mock
     private HttpClient httpClient;
 
+    private final WebPageParser.Mode mode;
+
     private WebPageParser webPageParser;
 
+    public WebPageParserTest(WebPageParser.Mode mode) {
+        this.mode = mode;
+    }
+
+    @Parameters
+    public static Collection<Object[]> modes() {
+        return Arrays.asList(new Object[][]{{WebPageParser.Mode.STREAMING}, {WebPageParser.Mode.JSOUP}});
+    }
+
     @Before
     public void setUp() {
-        webPageParser = new WebPageParser(httpClient);
+        MockitoAnnotations.initMocks(this);
+        webPageParser = new WebPageParser(httpClient, mode);
     }
 
     @Test
@@ -38,7 +75,7 @@ public class WebPageParserTest {
                 .append("</html>")
                 .toString();
 
-        when(httpClient.getPageContent(url)).thenReturn(content);
+        givenPageContent(url, content);
 
         List<String> linksFromPage = webPageParser.getAssetsFromPage(url).getLinksToOtherPages();
 
@@ -56,7 +93,7 @@ public class WebPageParserTest {
                 .append("</html>")
                 .toString();
 
-        when(httpClient.getPageContent(url)).thenReturn(content);
+        givenPageContent(url, content);
 
         List<String> linksFromPage = webPageParser.getAssetsFromPage(url).getLinksToOtherPages();
 
@@ -65,6 +102,18 @@ public class WebPageParserTest {
         assertThat(linksFromPage.get(1), is("http://www.example.com/link2"));
     }
 
+    @Test
+    public void shouldMeasureTheParsedPagesAndTheirAssets() throws Exception {
+        String url = "http://www.example.com";
+        givenPageContent(url, "<html><a href=\"/link1\">1</a><a href=\"/link2\">2</a><img src=\"/a.png\"></html>");
+
+        webPageParser.getAssetsFromPage(url);
+
+        assertThat(webPageParser.getParseTime().getCount(), is(1L));
+        assertThat(webPageParser.getLinksExtracted(), is(2L));
+        assertThat(webPageParser.getImagesExtracted(), is(1L));
+    }
+
     @Test
     public void shouldReturnEmptyListFromAPageWithoutLinks() throws Exception {
         String url = "http://www.example.com";
@@ -73,7 +122,7 @@ public class WebPageParserTest {
                 .append("</html>")
                 .toString();
 
-        when(httpClient.getPageContent(url)).thenReturn(content);
+        givenPageContent(url, content);
 
         List<String> linksFromPage = webPageParser.getAssetsFromPage(url).getLinksToOtherPages();
 
@@ -89,7 +138,7 @@ public class WebPageParserTest {
                 .append("</html>")
                 .toString();
 
-        when(httpClient.getPageContent(url)).thenReturn(content);
+        givenPageContent(url, content);
 
         List<String> linksFromPage = webPageParser.getAssetsFromPage(url).getLinksToOtherPages();
 
@@ -106,7 +155,7 @@ public class WebPageParserTest {
                 .append("</html>")
                 .toString();
 
-        when(httpClient.getPageContent(url)).thenReturn(content);
+        givenPageContent(url, content);
 
         List<String> linksFromPage = webPageParser.getAssetsFromPage(url).getLinksToOtherPages();
 
@@ -123,7 +172,7 @@ public class WebPageParserTest {
                 .append("</html>")
                 .toString();
 
-        when(httpClient.getPageContent(url)).thenReturn(content);
+        givenPageContent(url, content);
 
         List<String> staticContent = webPageParser.getAssetsFromPage(url).getStaticContent();
 
@@ -135,13 +184,41 @@ public class WebPageParserTest {
     public void shouldReturnAnEmptyListWhenUnableToGetThePageContent() throws Exception {
         String url = "http://www.example.com";
 
-        when(httpClient.getPageContent(url)).thenThrow(new FailedToGetPageContentException(""));
+        when(httpClient.processPageContent(eq(url), any(PageContentProcessor.class)))
+                .thenThrow(new FailedToGetPageContentException(""));
 
         List<String> linksFromPage = webPageParser.getAssetsFromPage(url).getLinksToOtherPages();
 
         assertThat(linksFromPage.size(), is(0));
     }
 
+    @Test
+    public void shouldReturnNoAssetsForASkippedPage() throws Exception {
+        String url = "http://www.example.com/report.pdf";
+
+        when(httpClient.processPageContent(eq(url), any(PageContentProcessor.class)))
+                .thenThrow(new SkippedPageException("not HTML"));
+
+        assertThat(webPageParser.getAssetsFromPage(url).getAllAssets().isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldReturnNoAssetsForAPageThatTimedOut() throws Exception {
+        String url = "http://www.example.com/slow";
+
+        when(httpClient.processPageContent(eq(url), any(PageContentProcessor.class)))
+                .thenThrow(new RequestTimeoutException("timed out", new SocketTimeoutException()));
+
+        assertThat(webPageParser.getAssetsFromPage(url).getAllAssets().isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldCloseTheHttpClient() throws Exception {
+        webPageParser.close();
+
+        verify(httpClient).close();
+    }
+
     @Test
     public void shouldReturnImagesFromAPage() throws Exception {
         String url = "http://www.example.com";
@@ -151,7 +228,7 @@ public class WebPageParserTest {
                 .append("</html>")
                 .toString();
 
-        when(httpClient.getPageContent(url)).thenReturn(content);
+        givenPageContent(url, content);
 
         List<String> linksFromPage = webPageParser.getAssetsFromPage(url).getStaticContent();
 
@@ -159,4 +236,236 @@ public class WebPageParserTest {
         assertThat(linksFromPage.get(0), is("http://www.example.com/image.jpg"));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void shouldResolveRelativeUrlsAgainstTheBaseHref() throws Exception {
+        String url = "http://www.example.com/page";
+        String content = new StringBuilder()
+                .append("<html><head><base href=\"http://www.example.com/dir/\"></head>")
+                .append("<a href=\"link1\">link</a>")
+                .append("<img src=\"image.png\">")
+                .append("</html>")
+                .toString();
+
+        givenPageContent(url, content);
+
+        PageAssets assets = webPageParser.getAssetsFromPage(url);
+
+        assertThat(assets.getLinksToOtherPages().get(0), is("http://www.example.com/dir/link1"));
+        assertThat(assets.getStaticContent().get(0), is("http://www.example.com/dir/image.png"));
+    }
+
+    @Test
+    public void shouldNotReturnImagesThatAreNotPngJpegOrGif() throws Exception {
+        String url = "http://www.example.com";
+        String content = new StringBuilder()
+                .append("<html>")
+                .append("<img src=\"/image.svg\">")
+                .append("<IMG SRC=\"/image.JPEG\">")
+                .append("</html>")
+                .toString();
+
+        givenPageContent(url, content);
+
+        List<String> staticContent = webPageParser.getAssetsFromPage(url).getStaticContent();
+
+        assertThat(staticContent.size(), is(1));
+        assertThat(staticContent.get(0), is("http://www.example.com/image.JPEG"));
+    }
+
+    @Test
+    public void shouldNotReturnLinksFromCommentsOrScripts() throws Exception {
+        String url = "http://www.example.com";
+        String content = new StringBuilder()
+                .append("<html>")
+                .append("<!-- <a href=\"/commented\">link</a> -->")
+                .append("<script>document.write('<a href=\"/scripted\">link</a>');</script>")
+                .append("<a href=\"/link1?a=1&amp;b=2\">link</a>")
+                .append("</html>")
+                .toString();
+
+        givenPageContent(url, content);
+
+        List<String> linksFromPage = webPageParser.getAssetsFromPage(url).getLinksToOtherPages();
+
+        assertThat(linksFromPage.size(), is(1));
+        assertThat(linksFromPage.get(0), is("http://www.example.com/link1?a=1&b=2"));
+    }
+
+    @Test
+    public void shouldDecodeThePageWithTheCharsetPassedByTheHttpClient() throws Exception {
+        String url = "http://www.example.com";
+        byte[] content = "<html><a href=\"/caf\u00e9\">link</a></html>".getBytes(StandardCharsets.ISO_8859_1);
+
+        when(httpClient.processPageContent(eq(url), any(PageContentProcessor.class)))
+                .thenAnswer(invocation -> ((PageContentProcessor<?>) invocation.getArguments()[1])
+                        .process(new ByteArrayInputStream(content), StandardCharsets.ISO_8859_1));
+
+        List<String> linksFromPage = webPageParser.getAssetsFromPage(url).getLinksToOtherPages();
+
+        assertThat(linksFromPage.get(0), is("http://www.example.com/caf\u00e9"));
+    }
+
+    @Test
+    public void shouldReturnTheCachedAssetsWhenThePageHasNotBeenModified() throws Exception {
+        String url = "http://www.example.com/";
+        PageValidators validators = new PageValidators("\"v1\"", null);
+        PageCache pageCache = PageCache.open(folder.getRoot().toPath().resolve("pages.cache"));
+        pageCache.put(url, validators,
+                new PageAssets(Collections.singletonList("http://www.example.com/cached"), Collections.emptyList()));
+        WebPageParser cachingParser = new WebPageParser(httpClient, mode, pageCache);
+
+        when(httpClient.processPageContent(eq(url), eq(validators), any(PageContentProcessor.class)))
+                .thenReturn(PageResponse.notModified());
+
+        List<String> linksFromPage = cachingParser.getAssetsFromPage(url).getLinksToOtherPages();
+
+        assertThat(linksFromPage, is(Collections.singletonList("http://www.example.com/cached")));
+        assertThat(pageCache.getNotModifiedCount(), is(1L));
+        verify(httpClient, never()).processPageContent(eq(url), any(PageContentProcessor.class));
+        cachingParser.close();
+    }
+
+    @Test
+    public void shouldCacheADownloadedPage() throws Exception {
+        String url = "http://www.example.com/";
+        PageValidators validators = new PageValidators("\"v1\"", null);
+        byte[] content = "<html><a href=\"/link1\">link</a></html>".getBytes(StandardCharsets.UTF_8);
+        PageCache pageCache = PageCache.open(folder.getRoot().toPath().resolve("pages.cache"));
+        WebPageParser cachingParser = new WebPageParser(httpClient, mode, pageCache);
+
+        when(httpClient.processPageContent(eq(url), (PageValidators) isNull(), any(PageContentProcessor.class)))
+                .thenAnswer(invocation -> PageResponse.modified(((PageContentProcessor<?>) invocation.getArguments()[2])
+                        .process(new ByteArrayInputStream(content), StandardCharsets.UTF_8), validators));
+
+        List<String> linksFromPage = cachingParser.getAssetsFromPage(url).getLinksToOtherPages();
+
+        assertThat(linksFromPage, is(Collections.singletonList("http://www.example.com/link1")));
+        assertThat(pageCache.getValidators(url), is(validators));
+        assertThat(pageCache.getAssets(url).getLinksToOtherPages(), is(linksFromPage));
+        cachingParser.close();
+    }
+
+    @Test
+    public void shouldFetchAPageAndParseItLater() throws Exception {
+        String url = "http://www.example.com/";
+        givenPageContent(url, "<html><a href=\"/link1\">link</a><img src=\"/a.png\"></html>");
+
+        FetchedPage page = webPageParser.fetchPage(url);
+
+        assertThat(page.needsParsing(), is(true));
+        PageAssets assets = webPageParser.parsePage(page);
+        assertThat(assets.getLinksToOtherPages(), is(Collections.singletonList("http://www.example.com/link1")));
+        assertThat(assets.getStaticContent(), is(Collections.singletonList("http://www.example.com/a.png")));
+    }
+
+    @Test
+    public void shouldFetchAPageWithNoAssetsWhenUnableToGetThePageContent() throws Exception {
+        String url = "http://www.example.com/";
+        when(httpClient.processPageContent(eq(url), any(PageContentProcessor.class)))
+                .thenThrow(new FailedToGetPageContentException(""));
+
+        FetchedPage page = webPageParser.fetchPage(url);
+
+        assertThat(page.needsParsing(), is(false));
+        assertThat(webPageParser.parsePage(page).getAllAssets().isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldFetchTheCachedAssetsAndCacheAParsedPage() throws Exception {
+        String unchanged = "http://www.example.com/";
+        String changed = "http://www.example.com/changed";
+        PageValidators validators = new PageValidators("\"v1\"", null);
+        byte[] content = "<html><a href=\"/link2\">link</a></html>".getBytes(StandardCharsets.UTF_8);
+        PageCache pageCache = PageCache.open(folder.getRoot().toPath().resolve("pages.cache"));
+        pageCache.put(unchanged, validators,
+                new PageAssets(Collections.singletonList("http://www.example.com/cached"), Collections.emptyList()));
+        WebPageParser cachingParser = new WebPageParser(httpClient, mode, pageCache);
+
+        when(httpClient.processPageContent(eq(unchanged), eq(validators), any(PageContentProcessor.class)))
+                .thenReturn(PageResponse.notModified());
+        when(httpClient.processPageContent(eq(changed), (PageValidators) isNull(), any(PageContentProcessor.class)))
+                .thenAnswer(invocation -> PageResponse.modified(((PageContentProcessor<?>) invocation.getArguments()[2])
+                        .process(new ByteArrayInputStream(content), StandardCharsets.UTF_8), validators));
+
+        FetchedPage unchangedPage = cachingParser.fetchPage(unchanged);
+        FetchedPage changedPage = cachingParser.fetchPage(changed);
+
+        assertThat(unchangedPage.needsParsing(), is(false));
+        assertThat(cachingParser.parsePage(unchangedPage).getLinksToOtherPages(),
+                is(Collections.singletonList("http://www.example.com/cached")));
+        assertThat(changedPage.needsParsing(), is(true));
+        assertThat(pageCache.getValidators(changed), is((PageValidators) null));
+        assertThat(cachingParser.parsePage(changedPage).getLinksToOtherPages(),
+                is(Collections.singletonList("http://www.example.com/link2")));
+        assertThat(pageCache.getValidators(changed), is(validators));
+        cachingParser.close();
+    }
+
+    @Test
+    public void shouldReturnLinksFromAPageAsynchronously() throws Exception {
+        String url = "http://www.example.com";
+        byte[] content = "<html><a href=\"/link1\">link</a></html>".getBytes(StandardCharsets.UTF_8);
+
+        when(httpClient.processPageContentAsync(eq(url), (PageValidators) isNull(), any(PageContentProcessor.class)))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(PageResponse.modified(
+                        ((PageContentProcessor<?>) invocation.getArguments()[2])
+                                .process(new ByteArrayInputStream(content), StandardCharsets.UTF_8), null)));
+
+        List<String> linksFromPage = webPageParser.fetchAssetsAsync(url).get().getLinksToOtherPages();
+
+        assertThat(linksFromPage, is(Collections.singletonList("http://www.example.com/link1")));
+    }
+
+    @Test
+    public void shouldFailAnAsynchronousFetchWhenUnableToGetThePageContent() throws Exception {
+        String url = "http://www.example.com";
+        CompletableFuture<PageResponse<PageAssets>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new FailedToGetPageContentException(""));
+
+        when(httpClient.processPageContentAsync(eq(url), (PageValidators) isNull(), any(PageContentProcessor.class)))
+                .thenReturn((CompletableFuture) failed);
+
+        try {
+            webPageParser.fetchAssetsAsync(url).get();
+            throw new AssertionError("Expected the fetch to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(FailedToGetPageContentException.class));
+        }
+    }
+
+    @Test
+    public void shouldFetchTheCachedAssetsAsynchronouslyAndDownloadThePageAgainIfTheyAreMissing() throws Exception {
+        String unchanged = "http://www.example.com/";
+        String missing = "http://www.example.com/missing";
+        PageValidators validators = new PageValidators("\"v1\"", null);
+        byte[] content = "<html><a href=\"/link2\">link</a></html>".getBytes(StandardCharsets.UTF_8);
+        PageCache pageCache = PageCache.open(folder.getRoot().toPath().resolve("pages.cache"));
+        pageCache.put(unchanged, validators,
+                new PageAssets(Collections.singletonList("http://www.example.com/cached"), Collections.emptyList()));
+        WebPageParser cachingParser = new WebPageParser(httpClient, mode, pageCache);
+
+        when(httpClient.processPageContentAsync(eq(unchanged), eq(validators), any(PageContentProcessor.class)))
+                .thenReturn(CompletableFuture.completedFuture(PageResponse.notModified()));
+        // Not modified, although the cache has no assets for the page
+        when(httpClient.processPageContentAsync(eq(missing), (PageValidators) isNull(), any(PageContentProcessor.class)))
+                .thenReturn(CompletableFuture.completedFuture(PageResponse.notModified()))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(PageResponse.modified(
+                        ((PageContentProcessor<?>) invocation.getArguments()[2])
+                                .process(new ByteArrayInputStream(content), StandardCharsets.UTF_8), validators)));
+
+        assertThat(cachingParser.fetchAssetsAsync(unchanged).get().getLinksToOtherPages(),
+                is(Collections.singletonList("http://www.example.com/cached")));
+        assertThat(cachingParser.fetchAssetsAsync(missing).get().getLinksToOtherPages(),
+                is(Collections.singletonList("http://www.example.com/link2")));
+        assertThat(pageCache.getValidators(missing), is(validators));
+        verify(httpClient, never()).processPageContent(any(String.class), any(PageValidators.class),
+                any(PageContentProcessor.class));
+        cachingParser.close();
+    }
+
+    private void givenPageContent(String url, String content) throws Exception {
+        when(httpClient.processPageContent(eq(url), any(PageContentProcessor.class)))
+                .thenAnswer(invocation -> ((PageContentProcessor<?>) invocation.getArguments()[1])
+                        .process(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8));
+    }
+}
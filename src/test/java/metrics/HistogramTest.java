@@ -0,0 +1,96 @@
+package metrics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link Histogram}.
+ */
+public class HistogramTest {
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        Histogram histogram = new Histogram();
+
+        assertThat(histogram.getCount(), is(0L));
+        assertThat(histogram.getPercentile(99), is(0L));
+        assertThat(histogram.getMean(), is(0.0));
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        Histogram histogram = new Histogram();
+        for (int value = 1; value <= 50; value++) {
+            histogram.record(value);
+        }
+
+        assertThat(histogram.getPercentile(50), is(25L));
+        assertThat(histogram.getPercentile(100), is(50L));
+        assertThat(histogram.getMax(), is(50L));
+        assertThat(histogram.getMean(), is(25.5));
+    }
+
+    @Test
+    public void percentilesAreWithinThePrecisionOfTheBuckets() {
+        Histogram histogram = new Histogram();
+        Random random = new Random(1);
+        long[] values = new long[10_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) (Math.exp(random.nextGaussian() * 2 + 15));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long reported = histogram.getPercentile(percentile);
+            assertTrue(percentile + ": " + reported + " vs " + exact, reported >= exact);
+            assertTrue(percentile + ": " + reported + " vs " + exact, reported <= exact * 1.04);
+        }
+    }
+
+    @Test
+    public void bucketsCoverEveryValue() {
+        for (long value : new long[]{0, 63, 64, 65, 1000, 1L << 40, Long.MAX_VALUE}) {
+            int index = Histogram.indexOf(value);
+            assertTrue(String.valueOf(value), Histogram.highestValueOf(index) >= value);
+            assertTrue(String.valueOf(value), index == 0 || Histogram.highestValueOf(index - 1) < value);
+        }
+    }
+
+    @Test
+    public void negativeValuesAreRecordedAsZero() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+
+        assertThat(histogram.getMax(), is(0L));
+        assertThat(histogram.getPercentile(100), is(0L));
+    }
+
+    @Test
+    public void recordsFromManyThreads() throws Exception {
+        Histogram histogram = new Histogram();
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        for (int thread = 0; thread < 8; thread++) {
+            threads.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i);
+                }
+            });
+        }
+        threads.shutdown();
+        threads.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertThat(histogram.getCount(), is(80_000L));
+        assertThat(histogram.getMax(), is(9_999L));
+    }
+}
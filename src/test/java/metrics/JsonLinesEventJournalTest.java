@@ -0,0 +1,99 @@
+package metrics;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link JsonLinesEventJournal}
+ */
+public class JsonLinesEventJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+
+    @Before
+    public void setUp() {
+        file = folder.getRoot().toPath().resolve("logs/crawl.events.jsonl");
+    }
+
+    @Test
+    public void shouldWriteEachEventAsAJsonLine() throws Exception {
+        try (JsonLinesEventJournal journal = JsonLinesEventJournal.open(file)) {
+            journal.record(CrawlEvent.Type.FETCHED, "http://www.example.com/", TimeUnit.MILLISECONDS.toNanos(12), null);
+            journal.record(CrawlEvent.Type.FAILED, "http://www.example.com/a", 0, "Response code is: 404");
+        }
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+
+        assertThat(lines.size(), is(2));
+        assertThat(lines.get(0), startsWith("{\"time\":"));
+        assertThat(lines.get(0), containsString(
+                ",\"event\":\"fetched\",\"url\":\"http://www.example.com/\",\"micros\":12000}"));
+        assertThat(lines.get(1), containsString(
+                ",\"event\":\"failed\",\"url\":\"http://www.example.com/a\",\"detail\":\"Response code is: 404\"}"));
+    }
+
+    @Test
+    public void shouldEscapeTheStrings() throws Exception {
+        try (JsonLinesEventJournal journal = JsonLinesEventJournal.open(file)) {
+            journal.record(CrawlEvent.Type.SKIPPED, "http://www.example.com/\"quoted\"", 0, "line\nbreak\\");
+        }
+
+        String line = Files.readAllLines(file, StandardCharsets.UTF_8).get(0);
+
+        assertThat(line, containsString("\"url\":\"http://www.example.com/\\\"quoted\\\"\""));
+        assertThat(line, containsString("\"detail\":\"line\\u000abreak\\\\\"}"));
+    }
+
+    @Test
+    public void shouldWriteEveryEventRecordedBeforeItIsClosed() throws Exception {
+        int threads = 4;
+        int perThread = 5000;
+        JsonLinesEventJournal journal = JsonLinesEventJournal.open(file, threads * perThread);
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            executorService.execute(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    journal.record(CrawlEvent.Type.FETCHED, "http://www.example.com/" + thread + "/" + i, 1000, null);
+                }
+            });
+        }
+        executorService.shutdown();
+        executorService.awaitTermination(30, TimeUnit.SECONDS);
+        journal.close();
+
+        assertThat(journal.getRecordedCount(), is((long) threads * perThread));
+        assertThat(journal.getWrittenCount(), is(journal.getRecordedCount()));
+        assertThat(journal.getDroppedCount(), is(0L));
+        assertThat(Files.readAllLines(file, StandardCharsets.UTF_8).size(), is(threads * perThread));
+    }
+
+    @Test
+    public void shouldDropEventsRecordedAfterItIsClosed() throws Exception {
+        JsonLinesEventJournal journal = JsonLinesEventJournal.open(file);
+        journal.close();
+
+        journal.record(CrawlEvent.Type.FETCHED, "http://www.example.com/", 0, null);
+
+        assertThat(journal.getDroppedCount(), is(1L));
+        assertThat(Files.readAllLines(file, StandardCharsets.UTF_8).isEmpty(), is(true));
+    }
+}
@@ -0,0 +1,98 @@
+package metrics;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link RingBuffer}
+ */
+public class RingBufferTest {
+
+    @Test
+    public void shouldRoundTheCapacityUpToAPowerOfTwo() {
+        assertThat(new RingBuffer<String>(4).getCapacity(), is(4));
+        assertThat(new RingBuffer<String>(5).getCapacity(), is(8));
+        assertThat(new RingBuffer<String>(1000).getCapacity(), is(1024));
+    }
+
+    @Test
+    public void shouldTakeTheElementsInTheOrderTheyWereAdded() {
+        RingBuffer<String> ring = new RingBuffer<>(4);
+        ring.offer("a");
+        ring.offer("b");
+
+        assertThat(ring.poll(), is("a"));
+        assertThat(ring.poll(), is("b"));
+        assertThat(ring.poll(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldRefuseAnElementWhenFullAndAcceptItOnceThereIsRoom() {
+        RingBuffer<Integer> ring = new RingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertThat(ring.offer(i), is(true));
+        }
+
+        assertThat(ring.offer(4), is(false));
+        assertThat(ring.poll(), is(0));
+        assertThat(ring.offer(4), is(true));
+        assertThat(ring.poll(), is(1));
+    }
+
+    @Test
+    public void shouldKeepWorkingAsItWrapsAround() {
+        RingBuffer<Integer> ring = new RingBuffer<>(2);
+        for (int i = 0; i < 100; i++) {
+            assertThat(ring.offer(i), is(true));
+            assertThat(ring.poll(), is(i));
+        }
+    }
+
+    @Test
+    public void shouldNotLoseOrRepeatElementsFromManyProducers() throws Exception {
+        int producers = 4;
+        int perProducer = 20000;
+        RingBuffer<Integer> ring = new RingBuffer<>(256);
+        ExecutorService executorService = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int p = 0; p < producers; p++) {
+            int first = p * perProducer;
+            executorService.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = first; i < first + perProducer; i++) {
+                    while (!ring.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+        }
+        start.countDown();
+
+        Set<Integer> taken = new HashSet<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (taken.size() < producers * perProducer && System.nanoTime() < deadline) {
+            Integer element = ring.poll();
+            if (element != null) {
+                assertThat(taken.add(element), is(true));
+            }
+        }
+        executorService.shutdown();
+
+        assertThat(taken.size(), is(producers * perProducer));
+        assertThat(ring.poll(), is(nullValue()));
+    }
+}
@@ -0,0 +1,278 @@
+package service;
+
+import benchmark.LocalWebsiteServer;
+import benchmark.SyntheticSite;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Crawls a synthetic website served from the test JVM, with the real HTTP client.
+ */
+public class ApplicationEndToEndTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void crawlSiteFetchesEveryPageOnce() throws Exception {
+        SyntheticSite site = new SyntheticSite(42).pages(300).outDegree(5);
+
+        try (LocalWebsiteServer website = LocalWebsiteServer.start(site)) {
+            crawl(website, "--threads=8");
+
+            assertThat(website.getPagesSent(), is(300L));
+        }
+    }
+
+    @Test
+    public void crawlSiteFollowsRedirectsAndSurvivesErrors() throws Exception {
+        SyntheticSite site = new SyntheticSite(7).pages(300).outDegree(5).errorRate(0.05).redirects(0.1, 2);
+        // The links of the error pages are never seen, so some pages may not be reachable
+        Set<Integer> reachable = getReachablePages(site);
+        long errorPages = reachable.stream().filter(site::isError).count();
+        long movedPages = reachable.stream().filter(site::isMoved).count();
+        Path jsonLines = folder.getRoot().toPath().resolve("sitemap.jsonl");
+
+        try (LocalWebsiteServer website = LocalWebsiteServer.start(site)) {
+            crawl(website, "--threads=8", "--jsonl=" + jsonLines);
+
+            assertThat(website.getPagesSent() + website.getErrorsSent(), is((long) reachable.size()));
+            assertThat(website.getErrorsSent(), is(errorPages));
+            assertThat(website.getRedirectsSent(), is(2 * movedPages));
+            assertThat(Files.readAllLines(jsonLines).size(), is(reachable.size()));
+        }
+    }
+
+    @Test
+    public void crawlSiteJournalsWhatHappenedToEachPage() throws Exception {
+        SyntheticSite site = new SyntheticSite(7).pages(300).outDegree(5).errorRate(0.05);
+        Path events = folder.getRoot().toPath().resolve("events.jsonl");
+
+        try (LocalWebsiteServer website = LocalWebsiteServer.start(site)) {
+            crawl(website, "--threads=8", "--pipeline", "--events=" + events);
+
+            List<String> lines = Files.readAllLines(events);
+            assertThat(lines.stream().filter(line -> line.contains("\"event\":\"fetched\"")).count(),
+                    is(website.getPagesSent()));
+            assertThat(lines.stream().filter(line -> line.contains("\"event\":\"failed\"")).count(),
+                    is(website.getErrorsSent()));
+        }
+    }
+
+    @Test
+    public void crawlSiteCrawlsAgainIntoTheSitemapDirectoryOfAnEarlierCrawl() throws Exception {
+        SyntheticSite site = new SyntheticSite(42).pages(100).outDegree(5);
+        Path sitemapDirectory = folder.newFolder("sitemap").toPath();
+        Path jsonLines = folder.getRoot().toPath().resolve("sitemap.jsonl");
+
+        try (LocalWebsiteServer website = LocalWebsiteServer.start(site)) {
+            crawl(website, "--threads=4", "--sitemap-dir=" + sitemapDirectory);
+            crawl(website, "--threads=4", "--sitemap-dir=" + sitemapDirectory, "--jsonl=" + jsonLines);
+
+            assertThat(website.getPagesSent(), is(200L));
+            assertThat(Files.readAllLines(jsonLines).size(), is(100));
+        }
+    }
+
+    @Test
+    public void crawlSiteStopsAtTheMaximumDepth() throws Exception {
+        // Pages 0 to 30 are the first three levels of the tree of links
+        SyntheticSite site = new SyntheticSite(3).pages(300).outDegree(5);
+
+        try (LocalWebsiteServer website = LocalWebsiteServer.start(site)) {
+            crawl(website, "--threads=8", "--max-depth=2");
+
+            assertThat(website.getPagesSent(), is(31L));
+        }
+    }
+
+    @Test
+    public void crawlSiteStopsAtThePageBudget() throws Exception {
+        SyntheticSite site = new SyntheticSite(3).pages(300).outDegree(5);
+
+        try (LocalWebsiteServer website = LocalWebsiteServer.start(site)) {
+            crawl(website, "--threads=8", "--max-pages=50", "--order=shallow");
+
+            assertThat(website.getPagesSent(), is(50L));
+        }
+    }
+
+    @Test
+    public void crawlSiteInStagesFetchesEachReachablePageOnce() throws Exception {
+        SyntheticSite site = new SyntheticSite(5).pages(300).outDegree(8);
+
+        try (LocalWebsiteServer website = LocalWebsiteServer.start(site)) {
+            crawl(website, "--threads=8", "--pipeline", "--parsers=2", "--pipeline-queue=2");
+
+            assertThat(website.getPagesSent(), is((long) getReachablePages(site).size()));
+        }
+    }
+
+    @Test
+    public void crawlSiteSpillsTheFrontierBeyondTheMemoryLimit() throws Exception {
+        SyntheticSite site = new SyntheticSite(42).pages(300).outDegree(5);
+        Path spillDirectory = folder.newFolder("spill").toPath();
+
+        try (LocalWebsiteServer website = LocalWebsiteServer.start(site)) {
+            crawl(website, "--threads=8", "--frontier-memory=16", "--spill-dir=" + spillDirectory);
+
+            assertThat(website.getPagesSent(), is(300L));
+            assertThat(Files.list(spillDirectory).count(), is(0L));
+        }
+    }
+
+    @Test
+    public void crawlSiteInStagesSpillsTheFrontierBeyondTheMemoryLimit() throws Exception {
+        SyntheticSite site = new SyntheticSite(42).pages(300).outDegree(5);
+
+        try (LocalWebsiteServer website = LocalWebsiteServer.start(site)) {
+            crawl(website, "--threads=8", "--pipeline", "--frontier-memory=16");
+
+            assertThat(website.getPagesSent(), is(300L));
+        }
+    }
+
+    @Test
+    public void crawlSiteWithAdaptiveConcurrencyFetchesEveryPageOnce() throws Exception {
+        SyntheticSite site = new SyntheticSite(42).pages(300).outDegree(5).latency(2, 20);
+
+        try (LocalWebsiteServer website = LocalWebsiteServer.start(site)) {
+            crawl(website, "--threads=2", "--adaptive", "--min-concurrency=1", "--max-concurrency=16");
+
+            assertThat(website.getPagesSent(), is(300L));
+        }
+    }
+
+    @Test
+    public void crawlSiteRetriesThePagesRefusedByABusySite() throws Exception {
+        SyntheticSite site = new SyntheticSite(42).pages(300).outDegree(5).latency(2, 10).capacity(4);
+
+        try (LocalWebsiteServer website = LocalWebsiteServer.start(site)) {
+            crawl(website, "--threads=16", "--host-concurrency=16", "--retries=20", "--retry-delay=20");
+
+            assertThat(website.getThrottledSent() > 0, is(true));
+            assertThat(website.getPagesSent(), is(300L));
+        }
+    }
+
+    @Test
+    public void crawlSiteWithRetriesAndACircuitBreakerThroughThePipeline() throws Exception {
+        SyntheticSite site = new SyntheticSite(42).pages(300).outDegree(5).latency(2, 10).capacity(4);
+
+        try (LocalWebsiteServer website = LocalWebsiteServer.start(site)) {
+            crawl(website, "--threads=16", "--host-concurrency=16", "--pipeline", "--retries=20", "--retry-delay=20",
+                    "--circuit-breaker=50", "--circuit-open=50");
+
+            assertThat(website.getPagesSent(), is(300L));
+        }
+    }
+
+    @Test
+    public void crawlSiteAbandonsStalledPagesAtTheRequestTimeout() throws Exception {
+        SyntheticSite site = new SyntheticSite(11).pages(200).outDegree(5).stalls(0.1, 20000);
+        Set<Integer> reachable = getReachablePages(site);
+        long stalledPages = reachable.stream().filter(site::isStalled).count();
+
+        try (LocalWebsiteServer website = LocalWebsiteServer.start(site)) {
+            long startNanos = System.nanoTime();
+            // The stalled pages keep sending, so the socket timeout never fires
+            crawl(website, "--threads=8", "--request-timeout=300");
+            long elapsedMillis = (System.nanoTime() - startNanos) / 1000000;
+
+            assertThat(website.getStallsStarted(), is(stalledPages));
+            assertThat(website.getPagesSent(), is(reachable.size() - stalledPages));
+            assertThat("crawl took " + elapsedMillis + "ms", elapsedMillis < site.getStallMillis() / 2, is(true));
+        }
+    }
+
+    @Test
+    public void crawlSiteWithTheAsyncFetcherFetchesEveryPageOnce() throws Exception {
+        SyntheticSite site = new SyntheticSite(42).pages(300).outDegree(5).latency(2, 10);
+
+        try (LocalWebsiteServer website = LocalWebsiteServer.start(site)) {
+            crawl(website, "--threads=2", "--connections=32", "--host-concurrency=32", "--fetcher=async");
+
+            assertThat(website.getPagesSent(), is(300L));
+        }
+    }
+
+    @Test
+    public void crawlSiteWithTheAsyncFetcherFollowsRedirectsAndSurvivesErrors() throws Exception {
+        SyntheticSite site = new SyntheticSite(7).pages(300).outDegree(5).errorRate(0.05).redirects(0.1, 2);
+        Set<Integer> reachable = getReachablePages(site);
+        Path jsonLines = folder.getRoot().toPath().resolve("sitemap.jsonl");
+
+        try (LocalWebsiteServer website = LocalWebsiteServer.start(site)) {
+            crawl(website, "--threads=8", "--fetcher=async", "--jsonl=" + jsonLines);
+
+            assertThat(website.getPagesSent() + website.getErrorsSent(), is((long) reachable.size()));
+            assertThat(Files.readAllLines(jsonLines).size(), is(reachable.size()));
+        }
+    }
+
+    @Test
+    public void crawlSiteWithTheAsyncFetcherSpillsTheFrontierAndRetriesABusySite() throws Exception {
+        SyntheticSite site = new SyntheticSite(42).pages(300).outDegree(5).latency(2, 10).capacity(4);
+
+        try (LocalWebsiteServer website = LocalWebsiteServer.start(site)) {
+            crawl(website, "--threads=4", "--connections=16", "--host-concurrency=16", "--fetcher=async",
+                    "--frontier-memory=16", "--retries=20", "--retry-delay=20");
+
+            assertThat(website.getThrottledSent() > 0, is(true));
+            assertThat(website.getPagesSent(), is(300L));
+        }
+    }
+
+    @Test
+    public void crawlSiteWithTheAsyncFetcherAbandonsStalledPagesAtTheRequestTimeout() throws Exception {
+        SyntheticSite site = new SyntheticSite(11).pages(200).outDegree(5).stalls(0.1, 20000);
+        Set<Integer> reachable = getReachablePages(site);
+        long stalledPages = reachable.stream().filter(site::isStalled).count();
+
+        try (LocalWebsiteServer website = LocalWebsiteServer.start(site)) {
+            long startNanos = System.nanoTime();
+            crawl(website, "--threads=8", "--fetcher=async", "--request-timeout=300");
+            long elapsedMillis = (System.nanoTime() - startNanos) / 1000000;
+
+            assertThat(website.getPagesSent(), is(reachable.size() - stalledPages));
+            assertThat("crawl took " + elapsedMillis + "ms", elapsedMillis < site.getStallMillis() / 2, is(true));
+        }
+    }
+
+    /**
+     * Finds the pages a crawl can reach, which does not see the links of the error and stalled pages.
+     */
+    private Set<Integer> getReachablePages(SyntheticSite site) {
+        Set<Integer> reachable = new HashSet<>();
+        Deque<Integer> queue = new ArrayDeque<>(Collections.singleton(0));
+        while (!queue.isEmpty()) {
+            int page = queue.remove();
+            if (reachable.add(page) && !site.isError(page) && !site.isStalled(page)) {
+                for (int link : site.getLinks(page)) {
+                    queue.add(link);
+                }
+            }
+        }
+        return reachable;
+    }
+
+    private void crawl(LocalWebsiteServer website, String... options) {
+        String[] args = new String[options.length + 1];
+        System.arraycopy(options, 0, args, 0, options.length);
+        args[options.length] = website.getStartUrl();
+        new Application(CrawlOptions.parse(args)).crawlSite(website.getStartUrl());
+    }
+}
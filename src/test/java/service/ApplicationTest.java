@@ -1,19 +1,43 @@
 package service;
 
+import checkpoint.CheckpointLog;
+import checkpoint.CrawlJournal;
+import checkpoint.CrawlState;
+import frontier.Frontier;
+import frontier.FrontierEntry;
+import frontier.HostScheduler;
 import http.WebPageParser;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import sitemap.Sitemap;
+import sitemap.SitemapWriter;
+import url.UrlNormaliser;
 
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.when;
 
 
@@ -23,25 +47,33 @@ import static org.mockito.Mockito.when;
 @RunWith(MockitoJUnitRunner.class)
 public class ApplicationTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Mock
-    private ThreadPoolExecutor executorService;
+    private CrawlExecutorService executorService;
     @Mock
     private WebPageParser webPageParser;
 
     private Sitemap sitemap;
+    private Frontier frontier;
+    private UrlNormaliser urlNormaliser;
 
     private Application application;
 
     @Before
     public void setUp() {
         sitemap = new Sitemap();
-        this.application = new Application(executorService, sitemap, webPageParser);
+        frontier = new Frontier();
+        urlNormaliser = new UrlNormaliser();
+        this.application = new Application(executorService, sitemap, webPageParser, frontier, urlNormaliser);
     }
 
     @Test
     public void shouldTriggerACrawlOfTheSite() {
         String startUrl = "http://www.example.com";
-        UrlProcessor urlProcessor = new UrlProcessor(executorService, webPageParser, startUrl, sitemap);
+        String canonicalStartUrl = "http://www.example.com/";
+        UrlProcessor urlProcessor = newUrlProcessor(canonicalStartUrl);
 
         this.application.crawlSite(startUrl);
 
@@ -52,13 +84,116 @@ public class ApplicationTest {
     public void shouldWaitForSiteToBeCrawledAndThenTerminateExecutorService() throws Exception {
         String startUrl = "http://www.example.com";
 
-        when(executorService.getActiveCount()).thenReturn(1).thenReturn(0);
+        when(executorService.awaitTermination(15, TimeUnit.SECONDS)).thenReturn(true);
 
         this.application.crawlSite(startUrl);
 
-        verify(executorService, times(2)).getActiveCount();
-        verify(executorService, times(1)).shutdown();
-        verify(executorService, times(1)).awaitTermination(15, TimeUnit.SECONDS);
+        InOrder inOrder = inOrder(executorService);
+        inOrder.verify(executorService, times(1)).awaitQuiescence();
+        inOrder.verify(executorService, times(1)).shutdown();
+        inOrder.verify(executorService, times(1)).awaitTermination(15, TimeUnit.SECONDS);
+        verify(executorService, never()).shutdownNow();
+    }
+
+    @Test
+    public void shouldForceShutdownIfTheExecutorServiceDoesNotTerminate() throws Exception {
+        String startUrl = "http://www.example.com";
+
+        when(executorService.awaitTermination(15, TimeUnit.SECONDS)).thenReturn(false);
+
+        this.application.crawlSite(startUrl);
+
+        verify(executorService, times(1)).shutdownNow();
+    }
+
+    @Test
+    public void shouldCloseTheSitemapAfterTheCrawl() throws Exception {
+        Sitemap sitemap = mock(Sitemap.class);
+        Application application = new Application(executorService, sitemap, webPageParser, frontier, urlNormaliser);
+
+        application.crawlSite("http://www.example.com");
+
+        verify(sitemap, times(1)).close();
+    }
+
+    @Test
+    public void shouldJournalTheStartUrlAndCloseTheJournal() throws Exception {
+        CrawlJournal crawlJournal = mock(CrawlJournal.class);
+        Application application = new Application(executorService, sitemap, webPageParser, frontier, urlNormaliser,
+                new CrawlState(), crawlJournal, Collections.emptyList());
+
+        application.crawlSite("http://www.example.com");
+
+        InOrder inOrder = inOrder(crawlJournal);
+        inOrder.verify(crawlJournal).queued("http://www.example.com/", 0);
+        inOrder.verify(crawlJournal).close();
+    }
+
+    @Test
+    public void shouldResumeTheCrawlWithoutRefetchingCompletedPages() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("crawl.checkpoint");
+        try (CheckpointLog log = CheckpointLog.open(file)) {
+            log.queued("http://www.example.com/", 0);
+            log.queued("http://www.example.com/a", 1);
+            log.queued("http://www.example.com/b", 1);
+            log.completed("http://www.example.com/", Arrays.asList("http://www.example.com/a", "http://www.example.com/b"));
+        }
+        // The page that was being processed when the crawl stopped
+        sitemap.hasBeenProcessed("http://www.example.com/a");
+        Application application = new Application(executorService, sitemap, webPageParser, frontier, urlNormaliser,
+                CheckpointLog.read(file), CrawlJournal.NONE, Collections.emptyList());
+
+        application.crawlSite("http://www.example.com");
+
+        verify(executorService, times(2)).submit(any(UrlProcessor.class));
+        verify(executorService).submit(newUrlProcessor("http://www.example.com/a"));
+        verify(executorService).submit(newUrlProcessor("http://www.example.com/b"));
+        assertThat(sitemap.getSiteLinks().get("http://www.example.com/"),
+                is(Arrays.asList("http://www.example.com/a", "http://www.example.com/b")));
+        assertThat(sitemap.hasBeenProcessed("http://www.example.com/a"), is(false));
+        assertThat(frontier.offer("http://www.example.com/b"), is(false));
+        assertThat(frontier.getQueueDepth(), is(2L));
+    }
+
+    @Test
+    public void shouldResumeThePendingUrlsAtTheDepthTheyWereQueuedAt() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("crawl.checkpoint");
+        try (CheckpointLog log = CheckpointLog.open(file)) {
+            log.queued("http://www.example.com/", 0);
+            log.queued("http://www.example.com/a", 1);
+            log.completed("http://www.example.com/", Collections.singletonList("http://www.example.com/a"));
+            log.queued("http://www.example.com/a/b", 2);
+            log.completed("http://www.example.com/a", Collections.singletonList("http://www.example.com/a/b"));
+            log.queued("http://www.example.com/a/b/c", 3);
+        }
+        Application application = new Application(executorService, sitemap, webPageParser, frontier, urlNormaliser,
+                CheckpointLog.read(file), CrawlJournal.NONE, Collections.emptyList());
+
+        application.crawlSite("http://www.example.com");
+
+        ArgumentCaptor<UrlProcessor> submitted = ArgumentCaptor.forClass(UrlProcessor.class);
+        verify(executorService, times(2)).submit(submitted.capture());
+        FrontierEntry first = submitted.getAllValues().get(0).getFrontierEntry();
+        FrontierEntry second = submitted.getAllValues().get(1).getFrontierEntry();
+        assertThat(first.getUrl() + " at " + first.getDepth(), is("http://www.example.com/a/b at 2"));
+        assertThat(second.getUrl() + " at " + second.getDepth(), is("http://www.example.com/a/b/c at 3"));
+    }
+
+    @Test
+    public void shouldWriteTheSitemapToEachWriterAndCloseIt() throws Exception {
+        sitemap.addLinks("http://www.example.com/", Arrays.asList("http://www.example.com/a"));
+        SitemapWriter xmlWriter = mock(SitemapWriter.class);
+        SitemapWriter csvWriter = mock(SitemapWriter.class);
+        Application application = new Application(executorService, sitemap, webPageParser, frontier, urlNormaliser,
+                new CrawlState(), CrawlJournal.NONE, Arrays.asList(xmlWriter, csvWriter));
+
+        application.crawlSite("http://www.example.com");
+
+        for (SitemapWriter writer : Arrays.asList(xmlWriter, csvWriter)) {
+            InOrder inOrder = inOrder(writer);
+            inOrder.verify(writer).writePage("http://www.example.com/", Arrays.asList("http://www.example.com/a"));
+            inOrder.verify(writer).close();
+        }
     }
 
     @Test
@@ -74,4 +209,36 @@ public class ApplicationTest {
     }
 
 
-}
\ No newline at end of file
+
+    @Test
+    public void shouldNotLetTheConcurrencyLimitRaiseTheRequestsToOneHostPastTheHostConcurrency() {
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        HostScheduler hostScheduler = new HostScheduler(workers, 2, 2, 0);
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        try {
+            for (int limit : new int[]{2, 4, 8, 16, 17}) {
+                Application.applyConcurrencyLimit(limit, 4, workers, hostScheduler, connectionManager);
+            }
+
+            assertThat(workers.getMaximumPoolSize(), is(17));
+            assertThat(hostScheduler.getMaxConcurrentTasks(), is(17));
+            assertThat(connectionManager.getMaxTotal(), is(17));
+            assertThat(hostScheduler.getMaxTasksPerHost(), is(4));
+            assertThat(connectionManager.getDefaultMaxPerRoute(), is(4));
+
+            Application.applyConcurrencyLimit(2, 4, workers, hostScheduler, connectionManager);
+
+            assertThat(hostScheduler.getMaxTasksPerHost(), is(2));
+            assertThat(connectionManager.getDefaultMaxPerRoute(), is(2));
+        } finally {
+            connectionManager.close();
+            workers.shutdown();
+        }
+    }
+
+    private UrlProcessor newUrlProcessor(String url) {
+        CrawlContext context = CrawlContext.builder(webPageParser, sitemap, frontier, urlNormaliser)
+                .executorService(executorService).build();
+        return new UrlProcessor(context, new FrontierEntry(url, 0));
+    }
+}
@@ -0,0 +1,134 @@
+package service;
+
+import http.HttpClient;
+import metrics.Histogram;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link ConcurrencyController}.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ConcurrencyControllerTest {
+
+    @Mock
+    private HttpClient httpClient;
+
+    private final Histogram fetchLatency = new Histogram();
+    private final Map<Integer, Long> statusCounts = new HashMap<>();
+    private final List<Integer> appliedLimits = new ArrayList<>();
+    private int waitingTasks;
+
+    @Before
+    public void setUp() {
+        when(httpClient.getFetchLatency()).thenReturn(fetchLatency);
+        when(httpClient.getStatusCounts()).thenAnswer(invocation -> new HashMap<>(statusCounts));
+    }
+
+    @Test
+    public void shouldDoubleTheLimitWhileTasksAreWaitingUntilTheFirstDecrease() {
+        ConcurrencyController controller = createController(2, 100, 10);
+        waitingTasks = 50;
+
+        respond(20, 200, 10);
+        assertThat(controller.adjust(), is(20));
+        respond(20, 200, 10);
+        assertThat(controller.adjust(), is(40));
+        respond(1, 503, 10);
+        assertThat(controller.adjust(), is(20));
+
+        waitingTasks = 0;
+        respond(20, 200, 10);
+        assertThat(controller.adjust(), is(20));
+        assertThat(appliedLimits, is(Arrays.asList(20, 40, 20)));
+    }
+
+    @Test
+    public void shouldRaiseTheLimitByOneAfterADecrease() {
+        ConcurrencyController controller = createController(2, 100, 40);
+        waitingTasks = 50;
+
+        respond(1, 429, 10);
+        assertThat(controller.adjust(), is(20));
+        respond(20, 200, 10);
+        assertThat(controller.adjust(), is(21));
+        respond(20, 200, 10);
+        assertThat(controller.adjust(), is(22));
+    }
+
+    @Test
+    public void shouldHalveTheLimitWhenTheSiteThrottlesTheCrawl() {
+        ConcurrencyController controller = createController(2, 100, 40);
+        waitingTasks = 50;
+
+        respond(20, 200, 10);
+        respond(1, 503, 10);
+        assertThat(controller.adjust(), is(20));
+        respond(1, 429, 10);
+        assertThat(controller.adjust(), is(10));
+    }
+
+    @Test
+    public void shouldLowerTheLimitInProportionToARiseInLatency() {
+        ConcurrencyController controller = createController(2, 100, 40);
+        waitingTasks = 50;
+
+        respond(20, 200, 10);
+        assertThat(controller.adjust(), is(80));
+        // Three times the baseline latency, which rises a tenth of the way to 12ms
+        respond(20, 200, 30);
+        assertThat(controller.adjust(), is(64));
+    }
+
+    @Test
+    public void shouldKeepTheLimitBetweenTheMinimumAndMaximum() {
+        ConcurrencyController controller = createController(4, 6, 5);
+        waitingTasks = 50;
+
+        respond(20, 200, 10);
+        assertThat(controller.adjust(), is(6));
+        respond(20, 200, 10);
+        assertThat(controller.adjust(), is(6));
+
+        respond(5, 503, 10);
+        assertThat(controller.adjust(), is(4));
+        respond(5, 503, 10);
+        assertThat(controller.adjust(), is(4));
+        assertThat(appliedLimits, is(Arrays.asList(6, 4)));
+    }
+
+    @Test
+    public void shouldKeepTheLimitWhenNothingWasFetched() {
+        ConcurrencyController controller = createController(2, 100, 10);
+        waitingTasks = 50;
+
+        assertThat(controller.adjust(), is(10));
+        assertThat(appliedLimits.isEmpty(), is(true));
+    }
+
+    private ConcurrencyController createController(int minLimit, int maxLimit, int initialLimit) {
+        return new ConcurrencyController(httpClient, () -> waitingTasks, appliedLimits::add, minLimit, maxLimit,
+                initialLimit);
+    }
+
+    private void respond(int responses, int statusCode, long latencyMillis) {
+        for (int i = 0; i < responses; i++) {
+            fetchLatency.record(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+        }
+        statusCounts.merge(statusCode, (long) responses, Long::sum);
+    }
+}
@@ -0,0 +1,226 @@
+package service;
+
+import frontier.AsyncTask;
+import frontier.HostScheduler;
+import frontier.HostTask;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link CrawlExecutorService}.
+ */
+public class CrawlExecutorServiceTest {
+
+    private ExecutorService singleThread;
+    private CrawlExecutorService crawlExecutorService;
+
+    @Before
+    public void setUp() {
+        singleThread = Executors.newSingleThreadExecutor();
+        crawlExecutorService = new CrawlExecutorService(singleThread);
+    }
+
+    @After
+    public void tearDown() {
+        singleThread.shutdownNow();
+    }
+
+    @Test
+    public void shouldCountQueuedAndRunningTasksAsOutstanding() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<?> running = crawlExecutorService.submit(() -> {
+            release.await();
+            return null;
+        });
+        Future<?> queued = crawlExecutorService.submit(() -> { });
+
+        assertThat(crawlExecutorService.getOutstandingTaskCount(), is(2));
+
+        release.countDown();
+        running.get(5, TimeUnit.SECONDS);
+        queued.get(5, TimeUnit.SECONDS);
+        waitForNoOutstandingTasks();
+
+        assertThat(crawlExecutorService.getOutstandingTaskCount(), is(0));
+    }
+
+    @Test
+    public void shouldCountChildTasksBeforeTheParentTaskFinishes() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+
+        crawlExecutorService.submit(() -> {
+            crawlExecutorService.submit(() -> {
+                release.await();
+                return null;
+            });
+        });
+
+        Thread.sleep(100);
+        assertThat(crawlExecutorService.getOutstandingTaskCount(), is(1));
+
+        release.countDown();
+        waitForNoOutstandingTasks();
+    }
+
+    @Test(timeout = 5000)
+    public void shouldWakeTheWaiterAsSoonAsTheLastTaskFinishes() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+
+        crawlExecutorService.submit(() -> {
+            crawlExecutorService.submit(() -> {
+                release.await();
+                return null;
+            });
+        });
+
+        new Thread(() -> {
+            sleepQuietly(200);
+            release.countDown();
+        }).start();
+
+        long start = System.nanoTime();
+        crawlExecutorService.awaitQuiescence();
+
+        assertThat(crawlExecutorService.getOutstandingTaskCount(), is(0));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000, is(true));
+    }
+
+    @Test(timeout = 5000)
+    public void shouldNotWaitWhenThereAreNoOutstandingTasks() throws Exception {
+        crawlExecutorService.awaitQuiescence();
+    }
+
+    @Test(timeout = 5000)
+    public void shouldQueueHostTasksInTheHostScheduler() throws Exception {
+        CrawlExecutorService scheduled = new CrawlExecutorService(singleThread, new HostScheduler(singleThread, 1, 1, 0));
+        CountDownLatch release = new CountDownLatch(1);
+
+        scheduled.submit(new HostCallable("www.example.com", release));
+        scheduled.submit(new HostCallable("www.example.com", release));
+        scheduled.submit(new HostCallable("other.example.com", release));
+
+        assertThat(scheduled.getOutstandingTaskCount(), is(3));
+        release.countDown();
+        scheduled.awaitQuiescence();
+        assertThat(scheduled.getOutstandingTaskCount(), is(0));
+    }
+
+    @Test
+    public void shouldReturnTheTasksQueuedInTheHostSchedulerOnShutdownNow() throws Exception {
+        CrawlExecutorService scheduled = new CrawlExecutorService(singleThread, new HostScheduler(singleThread, 1, 1, 0));
+        CountDownLatch release = new CountDownLatch(1);
+
+        scheduled.submit(new HostCallable("www.example.com", release));
+        scheduled.submit(new HostCallable("www.example.com", release));
+        scheduled.submit(new HostCallable("other.example.com", release));
+
+        assertThat(scheduled.shutdownNow().size(), is(2));
+    }
+
+    @Test(timeout = 5000)
+    public void shouldCountAnAsyncTaskAsOutstandingUntilItFinishes() throws Exception {
+        AtomicReference<Runnable> callback = new AtomicReference<>();
+        CountDownLatch started = new CountDownLatch(1);
+
+        crawlExecutorService.execute((AsyncTask) finished -> {
+            callback.set(finished);
+            started.countDown();
+        });
+
+        started.await();
+        assertThat(crawlExecutorService.getOutstandingTaskCount(), is(1));
+        callback.get().run();
+        callback.get().run();
+        waitForNoOutstandingTasks();
+    }
+
+    @Test(timeout = 5000)
+    public void shouldHoldTheHostOfAnAsyncTaskUntilItFinishes() throws Exception {
+        CrawlExecutorService scheduled = new CrawlExecutorService(singleThread, new HostScheduler(singleThread, 1, 1, 0));
+        AtomicReference<Runnable> callback = new AtomicReference<>();
+        CountDownLatch release = new CountDownLatch(1);
+
+        scheduled.execute(new HostAsyncTask("www.example.com", callback));
+        Future<String> queued = scheduled.submit(new HostCallable("www.example.com", release));
+        release.countDown();
+
+        while (callback.get() == null) {
+            sleepQuietly(5);
+        }
+        sleepQuietly(50);
+        assertThat(queued.isDone(), is(false));
+        assertThat(scheduled.getOutstandingTaskCount(), is(2));
+        callback.get().run();
+        assertThat(queued.get(), is("www.example.com"));
+        scheduled.awaitQuiescence();
+    }
+
+    private static final class HostAsyncTask implements AsyncTask, HostTask {
+
+        private final String host;
+        private final AtomicReference<Runnable> callback;
+
+        HostAsyncTask(String host, AtomicReference<Runnable> callback) {
+            this.host = host;
+            this.callback = callback;
+        }
+
+        @Override
+        public void start(Runnable finished) {
+            callback.set(finished);
+        }
+
+        @Override
+        public String getHost() {
+            return host;
+        }
+    }
+
+    private static final class HostCallable implements Callable<String>, HostTask {
+
+        private final String host;
+        private final CountDownLatch release;
+
+        HostCallable(String host, CountDownLatch release) {
+            this.host = host;
+            this.release = release;
+        }
+
+        @Override
+        public String call() throws Exception {
+            release.await();
+            return host;
+        }
+
+        @Override
+        public String getHost() {
+            return host;
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void waitForNoOutstandingTasks() throws InterruptedException {
+        crawlExecutorService.awaitQuiescence();
+        assertThat(crawlExecutorService.getOutstandingTaskCount(), is(0));
+    }
+}
@@ -0,0 +1,120 @@
+package service;
+
+import frontier.Frontier;
+import http.CachingDnsResolver;
+import http.HttpClient;
+import http.WebPageParser;
+import metrics.ProcessingMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import sitemap.Sitemap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link CrawlMetrics}.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class CrawlMetricsTest {
+
+    @Mock
+    private CrawlExecutorService executorService;
+
+    private ProcessingMetrics processingMetrics;
+    private Frontier frontier;
+    private Sitemap sitemap;
+    private CrawlMetrics crawlMetrics;
+
+    @Before
+    public void setUp() {
+        processingMetrics = new ProcessingMetrics();
+        frontier = new Frontier();
+        sitemap = new Sitemap();
+        crawlMetrics = new CrawlMetrics(processingMetrics, new WebPageParser(new HttpClient(null)), frontier, sitemap,
+                executorService, null);
+    }
+
+    @After
+    public void tearDown() {
+        crawlMetrics.unregister();
+    }
+
+    @Test
+    public void shouldReadTheMeasurementsOfTheCrawl() {
+        processingMetrics.recordPage(System.nanoTime() - 2_000_000, 3);
+        frontier.offer("http://www.example.com/");
+        frontier.offer("http://www.example.com/");
+        sitemap.addLinks("http://www.example.com/", Collections.singletonList("http://www.example.com/a"));
+        when(executorService.getOutstandingTaskCount()).thenReturn(4);
+
+        assertThat(crawlMetrics.getPagesProcessed(), is(1L));
+        assertThat(crawlMetrics.getOffDomainLinks(), is(3L));
+        assertThat(crawlMetrics.getPageTimeP50Millis() >= 2, is(true));
+        assertThat(crawlMetrics.getDuplicateRate(), is(0.5));
+        assertThat(crawlMetrics.getQueueDepth(), is(1L));
+        assertThat(crawlMetrics.getOutstandingTasks(), is(4));
+        assertThat(crawlMetrics.getSitemapPages(), is(1L));
+        assertThat(crawlMetrics.getLeasedConnections(), is(0));
+    }
+
+    @Test
+    public void shouldFormatTheMeasurementsAsJson() {
+        processingMetrics.recordPage(System.nanoTime(), 3);
+        frontier.offer("http://www.example.com/");
+
+        String json = crawlMetrics.toJson();
+
+        assertThat(json, containsString("\"pages\":{\"processed\":1,"));
+        assertThat(json, containsString("\"offDomainLinks\":3"));
+        assertThat(json, containsString("\"frontier\":{\"accepted\":1,\"duplicates\":0,"));
+        assertThat(json, containsString("\"statusCodes\":{}"));
+        assertThat(json.startsWith("{") && json.endsWith("}"), is(true));
+    }
+
+    @Test
+    public void shouldIncludeTheDnsCacheWhenThereIsOne() throws Exception {
+        CachingDnsResolver dnsResolver = new CachingDnsResolver(
+                host -> new InetAddress[]{InetAddress.getLoopbackAddress()}, 60000, 1000,
+                Executors.newSingleThreadExecutor());
+        crawlMetrics = new CrawlMetrics(processingMetrics, new WebPageParser(new HttpClient(null)), frontier, sitemap,
+                executorService, null, null, dnsResolver);
+        dnsResolver.resolve("www.example.com");
+        dnsResolver.resolve("www.example.com");
+        dnsResolver.close();
+
+        assertThat(crawlMetrics.getDnsCacheHits(), is(1L));
+        assertThat(crawlMetrics.getDnsCacheMisses(), is(1L));
+        assertThat(crawlMetrics.toJson(), containsString("\"dns\":{\"hits\":1,\"misses\":1,"));
+    }
+
+    @Test
+    public void shouldPublishTheMeasurementsThroughJmx() throws Exception {
+        processingMetrics.recordPage(System.nanoTime(), 0);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(CrawlMetrics.OBJECT_NAME);
+
+        crawlMetrics.register();
+        // A later crawl replaces the metrics of an earlier one
+        crawlMetrics.register();
+
+        assertThat(server.getAttribute(name, "PagesProcessed"), is(1L));
+
+        crawlMetrics.unregister();
+
+        assertThat(server.isRegistered(name), is(false));
+    }
+}
@@ -0,0 +1,311 @@
+package service;
+
+import frontier.CrawlOrder;
+import frontier.Frontier;
+import http.HttpClient;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link CrawlOptions}.
+ */
+public class CrawlOptionsTest {
+
+    @Test
+    public void shouldUseTheDefaultsWhenOnlyTheUrlIsGiven() {
+        CrawlOptions options = CrawlOptions.parse(new String[]{"http://www.example.com"});
+
+        assertThat(options.getStartUrl(), is("http://www.example.com"));
+        assertThat(options.getExecutionMode(), is(ExecutionMode.FIXED_POOL));
+        assertThat(options.getFetcherMode(), is(FetcherMode.BLOCKING));
+        assertThat(options.getNumberOfThreads(), is(10));
+        assertThat(options.getNumberOfConnections(), is(10));
+        assertThat(options.getStrippedQueryParameters(), is(Collections.<String>emptyList()));
+        assertThat(options.isSortQueryParameters(), is(false));
+        assertThat(options.getSitemapDirectory(), is(nullValue()));
+        assertThat(options.getCacheFile(), is(nullValue()));
+        assertThat(options.getCheckpointFile(), is(nullValue()));
+        assertThat(options.isResume(), is(false));
+        assertThat(options.getXmlSitemapDirectory(), is(nullValue()));
+        assertThat(options.getJsonLinesFile(), is(nullValue()));
+        assertThat(options.getCsvFile(), is(nullValue()));
+        assertThat(options.isGzipOutput(), is(false));
+        assertThat(options.getHostConcurrency(), is(4));
+        assertThat(options.getHostDelayMillis(), is(0));
+    }
+
+    @Test
+    public void shouldParseThePolitenessOptions() {
+        CrawlOptions options = CrawlOptions.parse(
+                new String[]{"--host-concurrency=2", "--host-delay=250", "http://www.example.com"});
+
+        assertThat(options.getHostConcurrency(), is(2));
+        assertThat(options.getHostDelayMillis(), is(250));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectANegativeHostDelay() {
+        CrawlOptions.parse(new String[]{"--host-delay=-1", "http://www.example.com"});
+    }
+
+    @Test
+    public void shouldParseTheSitemapDirectory() {
+        CrawlOptions options = CrawlOptions.parse(new String[]{"--sitemap-dir=/tmp/sitemap", "http://www.example.com"});
+
+        assertThat(options.getSitemapDirectory(), is("/tmp/sitemap"));
+    }
+
+    @Test
+    public void shouldParseTheCacheFile() {
+        CrawlOptions options = CrawlOptions.parse(new String[]{"--cache-file=/tmp/pages.cache", "http://www.example.com"});
+
+        assertThat(options.getCacheFile(), is("/tmp/pages.cache"));
+    }
+
+    @Test
+    public void shouldParseTheCheckpointOptions() {
+        CrawlOptions options = CrawlOptions.parse(
+                new String[]{"--checkpoint-file=/tmp/crawl.checkpoint", "--resume", "http://www.example.com"});
+
+        assertThat(options.getCheckpointFile(), is("/tmp/crawl.checkpoint"));
+        assertThat(options.isResume(), is(true));
+    }
+
+    @Test
+    public void shouldParseTheOutputOptions() {
+        CrawlOptions options = CrawlOptions.parse(new String[]{"--xml-sitemap=/tmp/site", "--jsonl=/tmp/site.jsonl",
+                "--csv=/tmp/site.csv", "--gzip", "http://www.example.com"});
+
+        assertThat(options.getXmlSitemapDirectory(), is("/tmp/site"));
+        assertThat(options.getJsonLinesFile(), is("/tmp/site.jsonl"));
+        assertThat(options.getCsvFile(), is("/tmp/site.csv"));
+        assertThat(options.isGzipOutput(), is(true));
+    }
+
+    @Test
+    public void shouldParseTheStatsPort() {
+        assertThat(CrawlOptions.parse(new String[]{"--stats-port=8099", "http://www.example.com"}).getStatsPort(), is(8099));
+        assertThat(CrawlOptions.parse(new String[]{"http://www.example.com"}).getStatsPort(), is(-1));
+    }
+
+    @Test
+    public void shouldParseTheMaximumPageSize() {
+        assertThat(CrawlOptions.parse(new String[]{"--max-page-size=65536", "http://www.example.com"}).getMaxPageBytes(),
+                is(65536L));
+        assertThat(CrawlOptions.parse(new String[]{"http://www.example.com"}).getMaxPageBytes(),
+                is(HttpClient.DEFAULT_MAX_PAGE_BYTES));
+    }
+
+    @Test
+    public void shouldParseTheTimeouts() {
+        CrawlOptions options = CrawlOptions.parse(new String[]{"--connect-timeout=1000", "--socket-timeout=2000",
+                "--lease-timeout=0", "--request-timeout=5000", "http://www.example.com"});
+
+        assertThat(options.getConnectTimeoutMillis(), is(1000));
+        assertThat(options.getSocketTimeoutMillis(), is(2000));
+        assertThat(options.getLeaseTimeoutMillis(), is(0));
+        assertThat(options.getRequestTimeoutMillis(), is(5000));
+    }
+
+    @Test
+    public void shouldBoundEveryRequestByDefault() {
+        CrawlOptions options = CrawlOptions.parse(new String[]{"http://www.example.com"});
+
+        assertThat(options.getConnectTimeoutMillis(), is(CrawlOptions.DEFAULT_CONNECT_TIMEOUT_MILLIS));
+        assertThat(options.getSocketTimeoutMillis(), is(CrawlOptions.DEFAULT_SOCKET_TIMEOUT_MILLIS));
+        assertThat(options.getLeaseTimeoutMillis(), is(CrawlOptions.DEFAULT_LEASE_TIMEOUT_MILLIS));
+        assertThat(options.getRequestTimeoutMillis(), is(CrawlOptions.DEFAULT_REQUEST_TIMEOUT_MILLIS));
+    }
+
+    @Test
+    public void shouldParseTheCrawlBounds() {
+        CrawlOptions options = CrawlOptions.parse(
+                new String[]{"--max-depth=3", "--max-pages=500", "--order=segments", "http://www.example.com"});
+
+        assertThat(options.getMaxDepth(), is(3));
+        assertThat(options.getMaxPages(), is(500L));
+        assertThat(options.getCrawlOrder(), is(CrawlOrder.FEWEST_SEGMENTS));
+    }
+
+    @Test
+    public void shouldCrawlTheWholeSiteBreadthFirstByDefault() {
+        CrawlOptions options = CrawlOptions.parse(new String[]{"http://www.example.com"});
+
+        assertThat(options.getMaxDepth(), is(Frontier.UNLIMITED_DEPTH));
+        assertThat(options.getMaxPages(), is(Frontier.UNLIMITED_PAGES));
+        assertThat(options.getCrawlOrder(), is(CrawlOrder.BREADTH_FIRST));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectAnUnknownCrawlOrder() {
+        CrawlOptions.parse(new String[]{"--order=random", "http://www.example.com"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectANegativeTimeout() {
+        CrawlOptions.parse(new String[]{"--request-timeout=-1", "http://www.example.com"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectAnEmptyOutputFile() {
+        CrawlOptions.parse(new String[]{"--jsonl=", "http://www.example.com"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectResumeWithoutACheckpointFile() {
+        CrawlOptions.parse(new String[]{"--resume", "http://www.example.com"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectAnEmptyCacheFile() {
+        CrawlOptions.parse(new String[]{"--cache-file=", "http://www.example.com"});
+    }
+
+    @Test
+    public void shouldParseTheUrlNormalisationOptions() {
+        CrawlOptions options = CrawlOptions.parse(
+                new String[]{"--strip-params=utm_*,sessionid", "--sort-params", "http://www.example.com"});
+
+        assertThat(options.getStrippedQueryParameters(), is(Arrays.asList("utm_*", "sessionid")));
+        assertThat(options.isSortQueryParameters(), is(true));
+    }
+
+    @Test
+    public void shouldParseTheExecutionOptions() {
+        CrawlOptions options = CrawlOptions.parse(
+                new String[]{"--mode=virtual", "--threads=4", "--connections=200", "http://www.example.com"});
+
+        assertThat(options.getExecutionMode(), is(ExecutionMode.VIRTUAL_THREADS));
+        assertThat(options.getNumberOfThreads(), is(4));
+        assertThat(options.getNumberOfConnections(), is(200));
+    }
+
+    @Test
+    public void shouldParseTheFetcherOption() {
+        CrawlOptions options = CrawlOptions.parse(
+                new String[]{"--fetcher=async", "--parsers=2", "http://www.example.com"});
+
+        assertThat(options.getFetcherMode(), is(FetcherMode.ASYNC));
+        assertThat(options.getParserThreads(), is(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectAnUnknownFetcher() {
+        CrawlOptions.parse(new String[]{"--fetcher=nio", "http://www.example.com"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectTheAsyncFetcherWithThePipeline() {
+        CrawlOptions.parse(new String[]{"--fetcher=async", "--pipeline", "http://www.example.com"});
+    }
+
+    @Test
+    public void shouldParseThePipelineOptions() {
+        CrawlOptions options = CrawlOptions.parse(
+                new String[]{"--pipeline", "--parsers=3", "--pipeline-queue=16", "http://www.example.com"});
+
+        assertThat(options.isPipelined(), is(true));
+        assertThat(options.getParserThreads(), is(3));
+        assertThat(options.getPipelineQueueCapacity(), is(16));
+    }
+
+    @Test
+    public void shouldDefaultThePipelineQueueToTwiceTheParsers() {
+        CrawlOptions options = CrawlOptions.parse(new String[]{"--parsers=5", "http://www.example.com"});
+
+        assertThat(options.isPipelined(), is(false));
+        assertThat(options.getPipelineQueueCapacity(), is(10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectANonPositiveNumberOfParsers() {
+        CrawlOptions.parse(new String[]{"--pipeline", "--parsers=0", "http://www.example.com"});
+    }
+
+    @Test
+    public void shouldParseTheFrontierMemoryOptions() {
+        CrawlOptions options = CrawlOptions.parse(
+                new String[]{"--frontier-memory=10000", "--spill-dir=/tmp/spill", "http://www.example.com"});
+        CrawlOptions defaults = CrawlOptions.parse(new String[]{"http://www.example.com"});
+
+        assertThat(options.getFrontierMemoryPages(), is(10000));
+        assertThat(options.getSpillDirectory(), is("/tmp/spill"));
+        assertThat(defaults.getFrontierMemoryPages(), is(0));
+        assertThat(defaults.getSpillDirectory(), is((String) null));
+    }
+
+    @Test
+    public void shouldParseTheAdaptiveConcurrencyOptions() {
+        CrawlOptions options = CrawlOptions.parse(
+                new String[]{"--adaptive", "--min-concurrency=4", "--max-concurrency=64", "http://www.example.com"});
+        CrawlOptions defaults = CrawlOptions.parse(new String[]{"http://www.example.com"});
+
+        assertThat(options.isAdaptive(), is(true));
+        assertThat(options.getMinConcurrency(), is(4));
+        assertThat(options.getMaxConcurrency(), is(64));
+        assertThat(defaults.isAdaptive(), is(false));
+        assertThat(defaults.getMinConcurrency(), is(CrawlOptions.DEFAULT_MIN_CONCURRENCY));
+        assertThat(defaults.getMaxConcurrency(), is(CrawlOptions.DEFAULT_MAX_CONCURRENCY));
+    }
+
+    @Test
+    public void shouldParseTheRetryAndCircuitBreakerOptions() {
+        CrawlOptions options = CrawlOptions.parse(new String[]{"--retries=3", "--retry-delay=200",
+                "--circuit-breaker=5", "--circuit-open=10000", "http://www.example.com"});
+        CrawlOptions defaults = CrawlOptions.parse(new String[]{"http://www.example.com"});
+
+        assertThat(options.getMaxRetries(), is(3));
+        assertThat(options.getRetryDelayMillis(), is(200));
+        assertThat(options.getCircuitBreakerFailures(), is(5));
+        assertThat(options.getCircuitOpenMillis(), is(10000));
+        assertThat(defaults.getMaxRetries(), is(0));
+        assertThat(defaults.getRetryDelayMillis(), is(CrawlOptions.DEFAULT_RETRY_DELAY_MILLIS));
+        assertThat(defaults.getCircuitBreakerFailures(), is(0));
+        assertThat(defaults.getCircuitOpenMillis(), is(CrawlOptions.DEFAULT_CIRCUIT_OPEN_MILLIS));
+    }
+
+    @Test
+    public void shouldParseTheDnsTimeToLive() {
+        assertThat(CrawlOptions.parse(new String[]{"--dns-ttl=0", "http://www.example.com"}).getDnsTtlSeconds(), is(0));
+        assertThat(CrawlOptions.parse(new String[]{"http://www.example.com"}).getDnsTtlSeconds(),
+                is(CrawlOptions.DEFAULT_DNS_TTL_SECONDS));
+    }
+
+    @Test
+    public void shouldParseTheEventsFile() {
+        assertThat(CrawlOptions.parse(new String[]{"--events=events.jsonl", "http://www.example.com"}).getEventsFile(),
+                is("events.jsonl"));
+        assertThat(CrawlOptions.parse(new String[]{"http://www.example.com"}).getEventsFile(), is(nullValue()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectAMinimumConcurrencyAboveTheMaximum() {
+        CrawlOptions.parse(new String[]{"--adaptive", "--min-concurrency=10", "--max-concurrency=5", "http://www.example.com"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectAMissingUrl() {
+        CrawlOptions.parse(new String[]{"--mode=fixed"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectAnInvalidUrl() {
+        CrawlOptions.parse(new String[]{"http://www.example.com/ invalid"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectAnUnknownMode() {
+        CrawlOptions.parse(new String[]{"--mode=turbo", "http://www.example.com"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectANonPositiveNumberOfConnections() {
+        CrawlOptions.parse(new String[]{"--connections=0", "http://www.example.com"});
+    }
+}
@@ -0,0 +1,151 @@
+package service;
+
+import checkpoint.CrawlJournal;
+import frontier.CrawlOrder;
+import frontier.FingerprintSet;
+import frontier.Frontier;
+import frontier.PriorityUpdater;
+import http.FetchedPage;
+import http.PageAssets;
+import http.WebPageParser;
+import metrics.ProcessingMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import sitemap.Sitemap;
+import url.UrlNormaliser;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link CrawlPipeline}.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class CrawlPipelineTest {
+
+    private static final String ROOT = "http://www.example.com/";
+
+    @Mock
+    private WebPageParser webPageParser;
+
+    private final Map<String, List<String>> site = new HashMap<>();
+    private ExecutorService workers;
+    private Sitemap sitemap;
+    private ProcessingMetrics processingMetrics;
+    private CrawlPipeline crawlPipeline;
+
+    @Before
+    public void setUp() {
+        workers = Executors.newFixedThreadPool(4);
+        sitemap = new Sitemap();
+        processingMetrics = new ProcessingMetrics();
+        site.put(ROOT, Arrays.asList(ROOT + "a", ROOT + "b"));
+        site.put(ROOT + "a", Arrays.asList(ROOT + "b", ROOT + "c"));
+        site.put(ROOT + "b", Collections.singletonList(ROOT));
+        site.put(ROOT + "c", Collections.emptyList());
+        when(webPageParser.fetchPage(anyString())).thenAnswer(invocation -> {
+            String url = (String) invocation.getArguments()[0];
+            return FetchedPage.withAssets(url, new PageAssets(site.get(url), Collections.emptyList()));
+        });
+        when(webPageParser.parsePage(Matchers.any(FetchedPage.class)))
+                .thenAnswer(invocation -> ((FetchedPage) invocation.getArguments()[0]).getAssets());
+    }
+
+    @After
+    public void tearDown() {
+        if (crawlPipeline != null) {
+            crawlPipeline.close();
+        }
+        workers.shutdownNow();
+    }
+
+    @Test
+    public void shouldFetchParseAndProcessTheLinksOfEveryPageOnce() throws Exception {
+        Frontier frontier = new Frontier();
+        crawlPipeline = createPipeline(frontier, 2, 2);
+
+        crawlFrom(frontier);
+
+        assertThat(sitemap.getPageCount(), is(4L));
+        assertThat(sitemap.getSiteLinks().get(ROOT + "a"), is(Arrays.asList(ROOT + "b", ROOT + "c")));
+        assertThat(processingMetrics.getPagesProcessed(), is(4L));
+        assertThat(crawlPipeline.getOutstandingPageCount(), is(0));
+        verify(webPageParser, times(1)).fetchPage(ROOT + "b");
+        verify(webPageParser, times(4)).parsePage(Matchers.any(FetchedPage.class));
+    }
+
+    @Test
+    public void shouldQueueTheLinksOfAPageOneLevelDeeper() throws Exception {
+        Frontier frontier = new Frontier(new FingerprintSet(), CrawlOrder.BREADTH_FIRST, 1, Frontier.UNLIMITED_PAGES,
+                PriorityUpdater.DIRECT);
+        crawlPipeline = createPipeline(frontier, 1, 1);
+
+        crawlFrom(frontier);
+
+        assertThat(sitemap.getSiteLinks().keySet(), is(new HashSet<>(Arrays.asList(ROOT, ROOT + "a", ROOT + "b"))));
+        // The links from /a to /b and /c and from /b back to the start URL are all two levels deep
+        assertThat(frontier.getDepthLimitedCount(), is(3L));
+    }
+
+    @Test
+    public void shouldHoldBackTheFetchersWhenTheParsersFallBehind() throws Exception {
+        CountDownLatch parsersReleased = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            parsersReleased.await();
+            return new PageAssets();
+        }).when(webPageParser).parsePage(Matchers.any(FetchedPage.class));
+        Frontier frontier = new Frontier();
+        crawlPipeline = createPipeline(frontier, 1, 1);
+        crawlPipeline.start();
+
+        for (int i = 0; i < 4; i++) {
+            crawlPipeline.submit(frontier.offer(ROOT + "page" + i, 0));
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (crawlPipeline.getParseQueueSize() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+
+        assertThat(crawlPipeline.getParseQueueSize(), is(1));
+        assertThat(crawlPipeline.getOutstandingPageCount(), is(4));
+        assertThat(sitemap.getPageCount(), is(0L));
+
+        parsersReleased.countDown();
+        crawlPipeline.awaitCompletion();
+
+        assertThat(sitemap.getPageCount(), is(4L));
+        assertThat(crawlPipeline.getFetcherBlockedMillis() > 0, is(true));
+    }
+
+    private CrawlPipeline createPipeline(Frontier frontier, int parserCount, int queueCapacity) {
+        return new CrawlPipeline(new CrawlExecutorService(workers), webPageParser, sitemap, frontier,
+                new UrlNormaliser(), CrawlJournal.NONE, processingMetrics, parserCount, queueCapacity);
+    }
+
+    private void crawlFrom(Frontier frontier) throws Exception {
+        crawlPipeline.start();
+        crawlPipeline.submit(frontier.offer(ROOT, 0));
+        crawlPipeline.awaitCompletion();
+    }
+}
@@ -0,0 +1,135 @@
+package service;
+
+import exception.FailedToGetPageContentException;
+import exception.RequestTimeoutException;
+import exception.RetryLaterException;
+import frontier.Frontier;
+import frontier.FrontierEntry;
+import frontier.HostScheduler;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link CrawlRetries}.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class CrawlRetriesTest {
+
+    private static final String HOST = "www.example.com";
+
+    @Mock
+    private CrawlExecutorService executorService;
+    @Mock
+    private HostScheduler hostScheduler;
+
+    private Frontier frontier;
+    private FrontierEntry entry;
+    private CrawlRetries crawlRetries;
+
+    @Before
+    public void setUp() {
+        frontier = new Frontier();
+        entry = frontier.offer("http://" + HOST + "/page", 1);
+        frontier.startProcessing(entry);
+        crawlRetries = new CrawlRetries(executorService, hostScheduler, frontier, 2, 100, 1000);
+    }
+
+    @Test
+    public void shouldRetryATimeoutAfterABackoffAndCountItAgainstTheHost() {
+        Runnable resubmission = () -> { };
+
+        assertThat(crawlRetries.retry(entry, timeout(), resubmission), is(true));
+
+        ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+        verify(executorService).schedule(eq(resubmission), delay.capture());
+        assertTrue(delay.getValue() >= 50 && delay.getValue() <= 100);
+        verify(hostScheduler).recordFailure(HOST);
+        assertThat(frontier.getRequeuedCount(), is(1L));
+        assertThat(crawlRetries.getRetriesScheduled(), is(1L));
+    }
+
+    @Test
+    public void shouldWaitAtLeastAsLongAsTheServerAsks() {
+        crawlRetries.retry(entry, new RetryLaterException("Too busy", 5000), () -> { });
+
+        verify(executorService).schedule(any(Runnable.class), eq(5000L));
+    }
+
+    @Test
+    public void shouldDoubleTheBackoffUpToTheMaximum() {
+        for (int attempt = 1; attempt <= 6; attempt++) {
+            long delay = crawlRetries.getDelayMillis(attempt, timeout());
+            long cap = Math.min(1000, 100L << (attempt - 1));
+            assertTrue(delay >= cap / 2 && delay <= cap);
+        }
+    }
+
+    @Test
+    public void shouldGiveUpAfterTheMostRetries() {
+        crawlRetries.retry(entry, timeout(), () -> { });
+        crawlRetries.retry(entry, timeout(), () -> { });
+
+        assertThat(crawlRetries.retry(entry, timeout(), () -> { }), is(false));
+
+        assertThat(crawlRetries.getRetriesScheduled(), is(2L));
+        assertThat(crawlRetries.getRetriesExhausted(), is(1L));
+    }
+
+    @Test
+    public void shouldStartCountingAgainOnceThePageHasBeenDownloaded() {
+        crawlRetries.retry(entry, timeout(), () -> { });
+        crawlRetries.retry(entry, timeout(), () -> { });
+        crawlRetries.succeeded(entry);
+
+        assertThat(crawlRetries.retry(entry, timeout(), () -> { }), is(true));
+        verify(hostScheduler).recordSuccess(HOST);
+    }
+
+    @Test
+    public void shouldNotRetryAnErrorResponseAndCountItAsAResponseFromTheHost() {
+        FailedToGetPageContentException notFound = new FailedToGetPageContentException("Response code is: 404");
+
+        assertThat(crawlRetries.retry(entry, notFound, () -> { }), is(false));
+
+        verify(executorService, never()).schedule(any(Runnable.class), anyLong());
+        verify(hostScheduler).recordSuccess(HOST);
+        verify(hostScheduler, never()).recordFailure(HOST);
+    }
+
+    @Test
+    public void shouldRetryAFailedConnection() {
+        FailedToGetPageContentException refused = new FailedToGetPageContentException("Unable to get Page Content",
+                new IOException("Connection refused"));
+
+        assertThat(crawlRetries.retry(entry, refused, () -> { }), is(true));
+    }
+
+    @Test
+    public void shouldNotFetchThePagesOfAnAbandonedHost() {
+        when(hostScheduler.isAbandoned(HOST)).thenReturn(true);
+
+        assertThat(crawlRetries.shouldFetch(entry), is(false));
+        assertThat(crawlRetries.getAbandonedPages(), is(1L));
+    }
+
+    private static FailedToGetPageContentException timeout() {
+        return new RequestTimeoutException("Timed out", new SocketTimeoutException());
+    }
+}
@@ -0,0 +1,48 @@
+package service;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link ExecutionMode}.
+ */
+public class ExecutionModeTest {
+
+    @Test
+    public void shouldCreateAFixedThreadPool() {
+        ExecutorService executorService = ExecutionMode.FIXED_POOL.createExecutorService(3);
+
+        assertThat(executorService, instanceOf(ThreadPoolExecutor.class));
+        assertThat(((ThreadPoolExecutor) executorService).getMaximumPoolSize(), is(3));
+        executorService.shutdown();
+    }
+
+    @Test
+    public void shouldRunTasksOnVirtualThreadsWhenSupported() throws Exception {
+        ExecutorService executorService;
+        try {
+            executorService = ExecutionMode.VIRTUAL_THREADS.createExecutorService(1);
+        } catch (IllegalStateException e) {
+            // Running on a Java version before 21
+            return;
+        }
+
+        String threadDescription = executorService.submit(() -> Thread.currentThread().toString()).get(5, TimeUnit.SECONDS);
+
+        assertThat(threadDescription.startsWith("VirtualThread"), is(true));
+        executorService.shutdown();
+    }
+
+    @Test
+    public void shouldFindTheModeForAnOptionName() {
+        assertThat(ExecutionMode.fromOptionName("fixed"), is(ExecutionMode.FIXED_POOL));
+        assertThat(ExecutionMode.fromOptionName("VIRTUAL"), is(ExecutionMode.VIRTUAL_THREADS));
+    }
+}
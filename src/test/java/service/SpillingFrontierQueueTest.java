@@ -0,0 +1,159 @@
+package service;
+
+import exception.FrontierSpillException;
+import frontier.Frontier;
+import frontier.FrontierEntry;
+import frontier.HostTask;
+import frontier.SpillQueue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link SpillingFrontierQueue}.
+ */
+public class SpillingFrontierQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExecutorService singleThread;
+    private CrawlExecutorService executorService;
+    private Frontier frontier;
+    private final List<String> crawled = Collections.synchronizedList(new ArrayList<>());
+    private SpillingFrontierQueue linkingQueue;
+
+    @Before
+    public void setUp() {
+        singleThread = Executors.newSingleThreadExecutor();
+        executorService = new CrawlExecutorService(singleThread);
+        frontier = new Frontier();
+    }
+
+    @After
+    public void tearDown() {
+        singleThread.shutdownNow();
+    }
+
+    @Test
+    public void shouldSpillTheEntriesBeyondTheMemoryLimitAndCrawlThemInOrder() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try (SpillingFrontierQueue frontierQueue = new SpillingFrontierQueue(executorService, entry -> () -> {
+            awaitQuietly(release);
+            crawled.add(entry.getUrl());
+        }, frontier, newSpillQueue(), 2)) {
+
+            for (int i = 0; i < 5; i++) {
+                frontierQueue.submit(frontier.offer("http://www.example.com/page" + i, 1));
+            }
+
+            assertThat(frontierQueue.getInMemoryCount(), is(2));
+            assertThat(frontierQueue.getSpilledCount(), is(3L));
+            assertThat(executorService.getOutstandingTaskCount(), is(2));
+            assertThat(frontier.getSpilledCount(), is(3L));
+
+            release.countDown();
+            executorService.awaitQuiescence();
+
+            assertThat(crawled, is(Arrays.asList("http://www.example.com/page0", "http://www.example.com/page1",
+                    "http://www.example.com/page2", "http://www.example.com/page3", "http://www.example.com/page4")));
+            assertThat(frontierQueue.getInMemoryCount(), is(0));
+            assertThat(frontierQueue.getSpilledCount(), is(0L));
+            assertThat(frontierQueue.getTotalSpilledCount(), is(3L));
+        }
+    }
+
+    @Test
+    public void shouldQueueTheEntriesSubmittedByTheTasksUntilTheCrawlIsComplete() throws Exception {
+        linkingQueue = new SpillingFrontierQueue(executorService, entry -> () -> {
+            crawled.add(entry.getUrl());
+            // Every page links to two pages one level deeper, down to depth 5
+            for (int i = 0; entry.getDepth() < 5 && i < 2; i++) {
+                linkingQueue.submit(frontier.offer(entry.getUrl() + "/" + i, entry.getDepth() + 1));
+            }
+        }, frontier, newSpillQueue(), 3);
+
+        linkingQueue.submit(frontier.offer("http://www.example.com", 0));
+        executorService.awaitQuiescence();
+
+        assertThat(crawled.size(), is(63));
+        assertThat(linkingQueue.getTotalSpilledCount() > 0, is(true));
+        linkingQueue.close();
+    }
+
+    @Test
+    public void shouldStartTheEntriesReadBeforeASpilledEntryFailsToBeRead() throws Exception {
+        List<Runnable> tasks = new ArrayList<>();
+        AtomicBoolean rejecting = new AtomicBoolean();
+        Executor executor = task -> {
+            if (rejecting.get()) {
+                throw new RejectedExecutionException();
+            }
+            tasks.add(task);
+        };
+        Path spillDirectory = folder.getRoot().toPath().resolve("spill");
+        // Two entries fit in each segment
+        SpillingFrontierQueue frontierQueue = new SpillingFrontierQueue(executor, entry -> () -> { }, frontier,
+                new SpillQueue(spillDirectory, 80), 3);
+        for (int i = 0; i < 6; i++) {
+            frontierQueue.submit(frontier.offer("http://www.example.com/page" + i, 1));
+        }
+        Files.delete(spillDirectory.resolve("frontier-000001.spill"));
+
+        // The executor refuses page3, leaving room for two entries when the next task finishes
+        rejecting.set(true);
+        try {
+            tasks.get(0).run();
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        rejecting.set(false);
+        assertThat(frontierQueue.getInMemoryCount(), is(2));
+
+        // page4 is read from the first segment, then page5 cannot be read as its segment has gone
+        try {
+            tasks.get(1).run();
+            fail("Expected the spilled entries to fail to be read");
+        } catch (FrontierSpillException e) {
+            // expected
+        }
+
+        assertThat(((HostTask) tasks.get(tasks.size() - 1)).getFrontierEntry().getUrl(),
+                is("http://www.example.com/page4"));
+        assertThat(tasks.size(), is(4));
+        assertThat(frontierQueue.getInMemoryCount(), is(2));
+        frontierQueue.close();
+    }
+
+    private SpillQueue newSpillQueue() throws Exception {
+        return new SpillQueue(folder.getRoot().toPath().resolve("spill"), 256);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package service;
+
+import frontier.Frontier;
+import http.HttpClient;
+import http.WebPageParser;
+import metrics.ProcessingMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import sitemap.Sitemap;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Scanner;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link StatsServer}.
+ */
+public class StatsServerTest {
+
+    private ProcessingMetrics processingMetrics;
+    private StatsServer statsServer;
+
+    @Before
+    public void setUp() throws Exception {
+        processingMetrics = new ProcessingMetrics();
+        CrawlMetrics crawlMetrics = new CrawlMetrics(processingMetrics, new WebPageParser(new HttpClient(null)),
+                new Frontier(), new Sitemap(), Mockito.mock(CrawlExecutorService.class), null);
+        statsServer = StatsServer.start(0, crawlMetrics);
+    }
+
+    @After
+    public void tearDown() {
+        statsServer.close();
+    }
+
+    @Test
+    public void shouldServeTheMetricsAsJson() throws Exception {
+        processingMetrics.recordPage(System.nanoTime(), 0);
+
+        HttpURLConnection connection = open("/stats");
+
+        assertThat(connection.getResponseCode(), is(200));
+        assertThat(connection.getContentType(), is("application/json"));
+        try (InputStream in = connection.getInputStream(); Scanner scanner = new Scanner(in, "UTF-8")) {
+            assertThat(scanner.useDelimiter("\\A").next(), containsString("\"processed\":1"));
+        }
+    }
+
+    @Test
+    public void shouldAnswerOtherPathsWithNotFound() throws Exception {
+        HttpURLConnection connection = open("/other");
+
+        assertThat(connection.getResponseCode(), is(404));
+    }
+
+    private HttpURLConnection open(String path) throws Exception {
+        return (HttpURLConnection) new URL("http://localhost:" + statsServer.getPort() + path).openConnection();
+    }
+}
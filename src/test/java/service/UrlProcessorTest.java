@@ -1,21 +1,46 @@
 package service;
 
+import checkpoint.CrawlJournal;
+import exception.FailedToGetPageContentException;
+import frontier.AsyncTask;
+import frontier.CrawlOrder;
+import frontier.FingerprintSet;
+import frontier.Frontier;
+import frontier.FrontierEntry;
+import frontier.HostTask;
+import frontier.PriorityUpdater;
 import http.PageAssets;
 import http.WebPageParser;
+import metrics.CrawlEvent;
+import metrics.EventJournal;
+import metrics.ProcessingMetrics;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import sitemap.Sitemap;
+import url.UrlNormaliser;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
@@ -32,16 +57,24 @@ public class UrlProcessorTest {
     private ExecutorService executorService;
     @Mock
     private WebPageParser webPageParser;
+    @Mock
+    private CrawlJournal crawlJournal;
+    @Mock
+    private EventJournal eventJournal;
 
     private Sitemap sitemap;
+    private Frontier frontier;
+    private UrlNormaliser urlNormaliser;
 
     @Before
     public void setUp() {
         sitemap = new Sitemap();
+        frontier = new Frontier();
+        urlNormaliser = new UrlNormaliser();
     }
 
     @Test
-    public void shouldAddAllAssetsToSitemapAfterProcessingPage() {
+    public void shouldAddAllAssetsToSitemapAfterProcessingPage() throws Exception {
         String url = "http://www.example.com";
         List<String> links = new ArrayList<>();
         links.add("http://www.example.com/link1");
@@ -49,9 +82,9 @@ public class UrlProcessorTest {
         List<String> staticContent = new ArrayList<>();
         staticContent.add("http://www.example.com/image1.jpg");
 
-        when(webPageParser.getAssetsFromPage(url)).thenReturn(new PageAssets(links, staticContent));
+        when(webPageParser.fetchAssets(url)).thenReturn(new PageAssets(links, staticContent));
 
-        UrlProcessor urlProcessor = new UrlProcessor(executorService, webPageParser, url, sitemap);
+        UrlProcessor urlProcessor = newUrlProcessor(url);
 
         urlProcessor.call();
 
@@ -63,7 +96,52 @@ public class UrlProcessorTest {
     }
 
     @Test
-    public void shouldProcessLinksFromPage() {
+    public void shouldJournalTheQueuedLinksBeforeThePageIsCompleted() throws Exception {
+        String url = "http://www.example.com/";
+        String link1 = "http://www.example.com/link1";
+        when(webPageParser.fetchAssets(url)).thenReturn(new PageAssets(Arrays.asList(link1, link1, "http://other.com/"),
+                Collections.singletonList("http://www.example.com/image1.jpg")));
+
+        new UrlProcessor(crawl(frontier).crawlJournal(crawlJournal).build(), new FrontierEntry(url, 0)).call();
+
+        InOrder inOrder = inOrder(crawlJournal);
+        inOrder.verify(crawlJournal).queued(link1, 1);
+        inOrder.verify(crawlJournal).completed(url,
+                Arrays.asList(link1, link1, "http://other.com/", "http://www.example.com/image1.jpg"));
+        verify(crawlJournal, times(1)).queued(link1, 1);
+        verify(executorService, times(1)).submit(
+                new UrlProcessor(crawl(frontier).crawlJournal(crawlJournal).build(), new FrontierEntry(link1, 0)));
+    }
+
+    @Test
+    public void shouldNotJournalAPageThatHasAlreadyBeenProcessed() {
+        String url = "http://www.example.com/";
+        sitemap.addLinks(url, Collections.emptyList());
+
+        new UrlProcessor(crawl(frontier).crawlJournal(crawlJournal).build(), new FrontierEntry(url, 0)).call();
+
+        verifyZeroInteractions(crawlJournal);
+    }
+
+    @Test
+    public void shouldMeasureTheProcessedPageAndItsOffDomainLinks() throws Exception {
+        String url = "http://www.example.com/";
+        when(webPageParser.fetchAssets(url)).thenReturn(new PageAssets(
+                Arrays.asList("http://www.example.com/link1", "http://other.com/", "https://another.org/"),
+                Collections.emptyList()));
+        ProcessingMetrics processingMetrics = new ProcessingMetrics();
+        CrawlContext context = crawl(frontier).crawlJournal(crawlJournal).processingMetrics(processingMetrics).build();
+
+        new UrlProcessor(context, new FrontierEntry(url, 0)).call();
+        new UrlProcessor(context, new FrontierEntry(url, 0)).call();
+
+        assertThat(processingMetrics.getPagesProcessed(), is(1L));
+        assertThat(processingMetrics.getPageTime().getCount(), is(1L));
+        assertThat(processingMetrics.getOffDomainLinks(), is(2L));
+    }
+
+    @Test
+    public void shouldProcessLinksFromPage() throws Exception {
         String url = "http://www.example.com";
         String link1 = "http://www.example.com/link1";
         String link2 = "http://www.example.com/link2";
@@ -71,27 +149,59 @@ public class UrlProcessorTest {
         links.add(link1);
         links.add(link2);
 
-        when(webPageParser.getAssetsFromPage(url)).thenReturn(new PageAssets(links, Collections.EMPTY_LIST));
+        when(webPageParser.fetchAssets(url)).thenReturn(new PageAssets(links, Collections.EMPTY_LIST));
 
-        UrlProcessor urlProcessor = new UrlProcessor(executorService, webPageParser, url, sitemap);
+        UrlProcessor urlProcessor = newUrlProcessor(url);
 
         urlProcessor.call();
 
-        verify(executorService, times(1)).submit(new UrlProcessor(executorService, webPageParser, link1, sitemap));
-        verify(executorService, times(1)).submit(new UrlProcessor(executorService, webPageParser, link2, sitemap));
+        verify(executorService, times(1)).submit(newUrlProcessor(link1));
+        verify(executorService, times(1)).submit(newUrlProcessor(link2));
+    }
+
+    @Test
+    public void shouldQueueLinksOneLevelDeeperThanThePage() throws Exception {
+        String url = "http://www.example.com/link1";
+        String link2 = "http://www.example.com/link2";
+        when(webPageParser.fetchAssets(url)).thenReturn(
+                new PageAssets(Collections.singletonList(link2), Collections.emptyList()));
+        ArgumentCaptor<UrlProcessor> submitted = ArgumentCaptor.forClass(UrlProcessor.class);
+
+        new UrlProcessor(crawl(frontier).crawlJournal(crawlJournal).build(), new FrontierEntry(url, 2)).call();
+
+        verify(executorService).submit(submitted.capture());
+        assertThat(submitted.getValue().getFrontierEntry().getUrl(), is(link2));
+        assertThat(submitted.getValue().getFrontierEntry().getDepth(), is(3));
+    }
+
+    @Test
+    public void shouldNotFetchAPageOnceThePageBudgetIsSpent() throws Exception {
+        Frontier limited = new Frontier(new FingerprintSet(), CrawlOrder.BREADTH_FIRST, Frontier.UNLIMITED_DEPTH, 1,
+                PriorityUpdater.DIRECT);
+        String url = "http://www.example.com";
+        when(webPageParser.fetchAssets(url)).thenReturn(new PageAssets());
+
+        CrawlContext context = crawl(limited).build();
+
+        new UrlProcessor(context, new FrontierEntry(url, 0)).call();
+        String result = new UrlProcessor(context, new FrontierEntry("http://www.example.com/link1", 0)).call();
+
+        assertThat(result, is("skipped"));
+        verify(webPageParser, times(1)).fetchAssets(anyString());
+        assertThat(sitemap.getSiteLinks().size(), is(1));
     }
 
     @Test
-    public void shouldNotProcessPageIfItHasAlreadyBeenProcessed() {
+    public void shouldNotProcessPageIfItHasAlreadyBeenProcessed() throws Exception {
         String url = "http://www.example.com";
         String link1 = "http://www.example.com/link1";
         List<String> links = new ArrayList<>();
         links.add(link1);
 
-        when(webPageParser.getAssetsFromPage(url)).thenReturn(new PageAssets(links, Collections.EMPTY_LIST));
+        when(webPageParser.fetchAssets(url)).thenReturn(new PageAssets(links, Collections.EMPTY_LIST));
 
         sitemap.addLinks(url, new ArrayList<>());
-        UrlProcessor urlProcessor = new UrlProcessor(executorService, webPageParser, url, sitemap);
+        UrlProcessor urlProcessor = newUrlProcessor(url);
 
         urlProcessor.call();
 
@@ -99,15 +209,15 @@ public class UrlProcessorTest {
     }
 
     @Test
-    public void shouldNotFollowLinksToOtherDomains() {
+    public void shouldNotFollowLinksToOtherDomains() throws Exception {
         String url = "http://www.example.com";
         String link1 = "http://www.somewhereelse.com/link1";
         List<String> links = new ArrayList<>();
         links.add(link1);
 
-        when(webPageParser.getAssetsFromPage(url)).thenReturn(new PageAssets(links, Collections.EMPTY_LIST));
+        when(webPageParser.fetchAssets(url)).thenReturn(new PageAssets(links, Collections.EMPTY_LIST));
 
-        UrlProcessor urlProcessor = new UrlProcessor(executorService, webPageParser, url, sitemap);
+        UrlProcessor urlProcessor = newUrlProcessor(url);
 
         urlProcessor.call();
 
@@ -115,21 +225,200 @@ public class UrlProcessorTest {
     }
 
     @Test
-    public void shouldNotFollowImageLinks() {
+    public void shouldNotFollowImageLinks() throws Exception {
         String url = "http://www.example.com";
         String image = "http://www.somewhereelse.com/image.jpg";
         List<String> images = new ArrayList<>();
         images.add(image);
 
-        when(webPageParser.getAssetsFromPage(url)).thenReturn(new PageAssets(Collections.EMPTY_LIST, images));
+        when(webPageParser.fetchAssets(url)).thenReturn(new PageAssets(Collections.EMPTY_LIST, images));
+
+        UrlProcessor urlProcessor = newUrlProcessor(url);
+
+        urlProcessor.call();
+
+        verifyZeroInteractions(executorService);
+    }
+
+    @Test
+    public void shouldOnlyProcessALinkOnceWhenItIsOnMoreThanOnePage() throws Exception {
+        String url = "http://www.example.com";
+        String link1 = "http://www.example.com/link1";
+        List<String> links = new ArrayList<>();
+        links.add(link1);
+        links.add(link1);
+
+        when(webPageParser.fetchAssets(url)).thenReturn(new PageAssets(links, Collections.EMPTY_LIST));
+        when(webPageParser.fetchAssets(link1)).thenReturn(new PageAssets(links, Collections.EMPTY_LIST));
+
+        newUrlProcessor(url).call();
+        newUrlProcessor(link1).call();
+
+        verify(executorService, times(1)).submit(newUrlProcessor(link1));
+        assertThat(frontier.getAcceptedCount(), is(1L));
+        assertThat(frontier.getDuplicateCount(), is(3L));
+    }
+
+    @Test
+    public void shouldNotFollowLinksWithoutAHost() throws Exception {
+        String url = "http://www.example.com";
+        List<String> links = new ArrayList<>();
+        links.add("mailto:someone@example.com");
+        links.add("javascript:void(0)");
+        links.add("");
+
+        when(webPageParser.fetchAssets(url)).thenReturn(new PageAssets(links, Collections.EMPTY_LIST));
 
-        UrlProcessor urlProcessor = new UrlProcessor(executorService, webPageParser, url, sitemap);
+        UrlProcessor urlProcessor = newUrlProcessor(url);
 
         urlProcessor.call();
 
         verifyZeroInteractions(executorService);
     }
 
+    @Test
+    public void shouldFollowLinksToTheSameDomainWithOrWithoutWww() throws Exception {
+        String url = "http://www.example.com/";
+        List<String> links = new ArrayList<>();
+        links.add("http://EXAMPLE.com/link1");
+
+        when(webPageParser.fetchAssets(url)).thenReturn(new PageAssets(links, Collections.EMPTY_LIST));
+
+        newUrlProcessor(url).call();
+
+        verify(executorService, times(1)).submit(
+                newUrlProcessor("http://example.com/link1"));
+    }
+
+    @Test
+    public void shouldProcessLinksInCanonicalFormOnlyOnce() throws Exception {
+        String url = "http://www.example.com/";
+        List<String> links = new ArrayList<>();
+        links.add("http://www.example.com/a/../link1#section");
+        links.add("HTTP://www.example.com:80/link1");
+
+        when(webPageParser.fetchAssets(url)).thenReturn(new PageAssets(links, Collections.EMPTY_LIST));
+
+        newUrlProcessor(url).call();
+
+        verify(executorService, times(1)).submit(newUrlProcessor("http://www.example.com/link1"));
+        assertThat(frontier.getDuplicateCount(), is(1L));
+    }
+
+    @Test
+    public void shouldJournalWhatHappenedToEachPage() throws Exception {
+        Frontier limited = new Frontier(new FingerprintSet(), CrawlOrder.BREADTH_FIRST, Frontier.UNLIMITED_DEPTH, 3,
+                PriorityUpdater.DIRECT);
+        String url = "http://www.example.com/";
+        String missing = "http://www.example.com/missing";
+        when(webPageParser.fetchAssets(url)).thenReturn(new PageAssets());
+        when(webPageParser.fetchAssets(missing)).thenThrow(new FailedToGetPageContentException("Not found"));
+        CrawlContext context = crawl(limited).crawlJournal(crawlJournal)
+                .processingMetrics(new ProcessingMetrics(eventJournal)).build();
+
+        new UrlProcessor(context, new FrontierEntry(url, 0)).call();
+        new UrlProcessor(context, new FrontierEntry(url, 0)).call();
+        new UrlProcessor(context, new FrontierEntry(missing, 0)).call();
+        new UrlProcessor(context, new FrontierEntry("http://www.example.com/over", 0)).call();
+
+        InOrder inOrder = inOrder(eventJournal);
+        inOrder.verify(eventJournal).record(eq(CrawlEvent.Type.FETCHED), eq(url), anyLong(), isNull(String.class));
+        inOrder.verify(eventJournal).record(CrawlEvent.Type.DUPLICATE, url, 0, null);
+        inOrder.verify(eventJournal).record(eq(CrawlEvent.Type.FAILED), eq(missing), anyLong(), eq("Not found"));
+        inOrder.verify(eventJournal).record(CrawlEvent.Type.SKIPPED, "http://www.example.com/over", 0,
+                UrlProcessor.PAGE_BUDGET_SPENT);
+        assertThat(sitemap.getSiteLinks().get(missing).isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldProcessAPageAsynchronouslyInTheSameWayAsABlockingProcessor() throws Exception {
+        String url = "http://www.example.com/";
+        String link1 = "http://www.example.com/link1";
+        CompletableFuture<PageAssets> assets = new CompletableFuture<>();
+        when(webPageParser.fetchAssetsAsync(url)).thenReturn(assets);
+        CrawlContext context = crawl(frontier).crawlJournal(crawlJournal).asynchronous(true).build();
+
+        CompletableFuture<String> result = new UrlProcessor(context, new FrontierEntry(url, 0)).callAsync();
+
+        assertThat(result.isDone(), is(false));
+        assets.complete(new PageAssets(Collections.singletonList(link1),
+                Collections.singletonList("http://www.example.com/image1.jpg")));
+        assertThat(result.get(), is("complete"));
+        assertThat(sitemap.getSiteLinks().get(url),
+                is(Arrays.asList(link1, "http://www.example.com/image1.jpg")));
+        verify(crawlJournal).completed(url, Arrays.asList(link1, "http://www.example.com/image1.jpg"));
+        verify(executorService).execute(any(AsyncTask.class));
+        verify(executorService, times(0)).submit(any(UrlProcessor.class));
+    }
+
+    @Test
+    public void shouldRecordAPageThatCouldNotBeFetchedAsynchronously() throws Exception {
+        String missing = "http://www.example.com/missing";
+        CompletableFuture<PageAssets> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new FailedToGetPageContentException("Not found"));
+        when(webPageParser.fetchAssetsAsync(missing)).thenReturn(failed);
+        CrawlContext context = crawl(frontier).crawlJournal(crawlJournal)
+                .processingMetrics(new ProcessingMetrics(eventJournal)).asynchronous(true).build();
+
+        String result = new UrlProcessor(context, new FrontierEntry(missing, 0)).callAsync().get();
+
+        assertThat(result, is("complete"));
+        verify(eventJournal).record(eq(CrawlEvent.Type.FAILED), eq(missing), anyLong(), eq("Not found"));
+        assertThat(sitemap.getSiteLinks().get(missing).isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldFinishAnAsyncTaskOnceItsPageHasBeenProcessed() {
+        String url = "http://www.example.com/";
+        CompletableFuture<PageAssets> assets = new CompletableFuture<>();
+        when(webPageParser.fetchAssetsAsync(url)).thenReturn(assets);
+        AsyncTask task = new UrlProcessor(crawl(frontier).asynchronous(true).build(), new FrontierEntry(url, 0))
+                .toAsyncTask();
+        AtomicBoolean finished = new AtomicBoolean();
+
+        task.start(() -> finished.set(true));
+
+        assertThat(finished.get(), is(false));
+        assets.complete(new PageAssets());
+        assertThat(finished.get(), is(true));
+        assertThat(sitemap.hasBeenProcessed(url), is(true));
+        assertThat(((HostTask) task).getHost(), is("www.example.com"));
+    }
+
+    @Test
+    public void shouldOnlyBeEqualToAProcessorThatSubmitsItsLinksTheSameWay() {
+        FrontierEntry entry = new FrontierEntry("http://www.example.com/", 0);
+        Consumer<FrontierEntry> linkSubmitter = link -> { };
+        UrlProcessor submitting = new UrlProcessor(submittingTo(linkSubmitter), entry);
+
+        assertThat(submitting.equals(new UrlProcessor(submittingTo(linkSubmitter), entry)), is(true));
+        assertThat(submitting.equals(new UrlProcessor(submittingTo(link -> { }), entry)), is(false));
+        assertThat(submitting.equals(new UrlProcessor(crawl(frontier).crawlJournal(crawlJournal).build(), entry)),
+                is(false));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldNotBuildACrawlContextWithoutSomewhereToSubmitTheLinks() {
+        CrawlContext.builder(webPageParser, sitemap, frontier, urlNormaliser).build();
+    }
 
+    @Test
+    public void shouldBeScheduledByTheHostOfTheUrl() {
+        UrlProcessor urlProcessor = newUrlProcessor("http://www.example.com:8080/link1");
+
+        assertThat(urlProcessor.getHost(), is("www.example.com:8080"));
+    }
 
-}
\ No newline at end of file
+    private CrawlContext.Builder crawl(Frontier frontier) {
+        return CrawlContext.builder(webPageParser, sitemap, frontier, urlNormaliser).executorService(executorService);
+    }
+
+    private CrawlContext submittingTo(Consumer<FrontierEntry> linkSubmitter) {
+        return CrawlContext.builder(webPageParser, sitemap, frontier, urlNormaliser).linkSubmitter(linkSubmitter)
+                .crawlJournal(crawlJournal).build();
+    }
+
+    private UrlProcessor newUrlProcessor(String url) {
+        return new UrlProcessor(crawl(frontier).build(), new FrontierEntry(url, 0));
+    }
+}
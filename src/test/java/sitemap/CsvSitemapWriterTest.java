@@ -0,0 +1,38 @@
+package sitemap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link CsvSitemapWriter}.
+ */
+public class CsvSitemapWriterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldWriteARowForEachLink() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("site.csv");
+
+        try (CsvSitemapWriter writer = new CsvSitemapWriter(file, false)) {
+            writer.writePage("http://www.example.com/", Arrays.asList("http://www.example.com/a", "http://www.example.com/b,\"c\""));
+            writer.writePage("http://www.example.com/a", Collections.emptyList());
+        }
+
+        assertThat(new String(Files.readAllBytes(file), StandardCharsets.UTF_8), is("source,target\r\n"
+                + "http://www.example.com/,http://www.example.com/a\r\n"
+                + "http://www.example.com/,\"http://www.example.com/b,\"\"c\"\"\"\r\n"
+                + "http://www.example.com/a,\r\n"));
+    }
+}
@@ -0,0 +1,37 @@
+package sitemap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link JsonLinesSitemapWriter}.
+ */
+public class JsonLinesSitemapWriterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldWriteOneJsonObjectPerPage() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("site.jsonl");
+
+        try (JsonLinesSitemapWriter writer = new JsonLinesSitemapWriter(file, false)) {
+            writer.writePage("http://www.example.com/", Arrays.asList("http://www.example.com/a", "http://www.example.com/caf\u00e9"));
+            writer.writePage("http://www.example.com/\"q\"\\\t", Collections.emptyList());
+        }
+
+        assertThat(new String(Files.readAllBytes(file), StandardCharsets.UTF_8), is(
+                "{\"url\":\"http://www.example.com/\",\"links\":[\"http://www.example.com/a\",\"http://www.example.com/caf\u00e9\"]}\n"
+                        + "{\"url\":\"http://www.example.com/\\\"q\\\"\\\\\\u0009\",\"links\":[]}\n"));
+    }
+}
@@ -0,0 +1,172 @@
+package sitemap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link MappedSitemapStore}.
+ */
+public class MappedSitemapStoreTest {
+
+    // Small segments so that records cross segment boundaries
+    private static final int SEGMENT_SIZE = 256;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path directory;
+    private MappedSitemapStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = temporaryFolder.getRoot().toPath().resolve("sitemap");
+        store = new MappedSitemapStore(directory, SEGMENT_SIZE);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Test
+    public void shouldGiveTheSameIdToTheSameUrl() {
+        int id1 = store.intern("http://www.example.com/link1");
+        int id2 = store.intern("http://www.example.com/link2");
+
+        assertThat(id1, is(0));
+        assertThat(id2, is(1));
+        assertThat(store.intern("http://www.example.com/link1"), is(id1));
+        assertThat(store.lookup("http://www.example.com/link2"), is(id2));
+        assertThat(store.lookup("http://www.example.com/link3"), is(SitemapStore.NOT_FOUND));
+    }
+
+    @Test
+    public void shouldStoreUrlsAcrossSegments() {
+        StringBuilder longUrl = new StringBuilder("http://www.example.com/caf\u00e9/");
+        for (int i = 0; i < 1000; i++) {
+            longUrl.append('a');
+        }
+        for (int i = 0; i < 5000; i++) {
+            assertThat(store.intern("http://www.example.com/page/" + i), is(i));
+        }
+        int id = store.intern(longUrl.toString());
+
+        assertThat(store.getUrl(id), is(longUrl.toString()));
+        assertThat(store.lookup(longUrl.toString()), is(id));
+        for (int i = 0; i < 5000; i++) {
+            assertThat(store.lookup("http://www.example.com/page/" + i), is(i));
+            assertThat(store.getUrl(i), is("http://www.example.com/page/" + i));
+        }
+    }
+
+    @Test
+    public void shouldOnlyClaimAPageOnce() {
+        int pageId = store.intern("http://www.example.com");
+
+        assertThat(store.claim(pageId), is(true));
+        assertThat(store.claim(pageId), is(false));
+    }
+
+    @Test
+    public void shouldNotClaimAPageWithLinks() {
+        int pageId = store.intern("http://www.example.com");
+        store.putLinks(pageId, new int[]{pageId});
+
+        assertThat(store.claim(pageId), is(false));
+    }
+
+    @Test
+    public void shouldReturnTheLinksInASnapshot() {
+        int pageId = store.intern("http://www.example.com");
+        int linkId = store.intern("http://www.example.com/link1");
+        store.claim(pageId);
+        store.putLinks(pageId, new int[]{linkId, pageId});
+
+        SitemapStore.PageLinks snapshot = store.snapshot();
+
+        assertThat(snapshot.getUrlCount(), is(2));
+        assertThat(snapshot.getPageCount(), is(1));
+        assertThat(snapshot.getLinks(pageId), is(new int[]{linkId, pageId}));
+        assertThat(snapshot.getLinks(linkId), is(nullValue()));
+    }
+
+    @Test
+    public void shouldLeaveLinksAddedAfterTheSnapshotOutOfIt() {
+        int pageId = store.intern("http://www.example.com");
+        int linkId = store.intern("http://www.example.com/link1");
+        SitemapStore.PageLinks snapshot = store.snapshot();
+
+        store.putLinks(pageId, new int[]{linkId});
+
+        assertThat(snapshot.getLinks(pageId), is(nullValue()));
+        assertThat(snapshot.getPageCount(), is(0));
+    }
+
+    @Test
+    public void shouldKeepTheSitemapAfterItIsClosed() throws IOException {
+        Sitemap sitemap = new Sitemap(store);
+        sitemap.addLinks("http://www.example.com", Arrays.asList("http://www.example.com/link1", "http://www.example.com/a.png"));
+        sitemap.hasBeenProcessed("http://www.example.com/link1");
+        sitemap.close();
+
+        store = new MappedSitemapStore(directory, SEGMENT_SIZE);
+        Map<String, List<String>> siteLinks = new Sitemap(store).getSiteLinks();
+
+        assertThat(siteLinks.size(), is(2));
+        assertThat(siteLinks.get("http://www.example.com"),
+                is(Arrays.asList("http://www.example.com/link1", "http://www.example.com/a.png")));
+        assertThat(siteLinks.get("http://www.example.com/link1"), is(Collections.<String>emptyList()));
+        assertThat(store.claim(store.intern("http://www.example.com/link1")), is(false));
+        assertThat(store.intern("http://www.example.com/a.png"), is(2));
+        assertThat(store.intern("http://www.example.com/link2"), is(3));
+    }
+
+    @Test
+    public void shouldReleaseAClaimedPageAfterItIsReopened() throws IOException {
+        store.claim(store.intern("http://www.example.com"));
+        store.close();
+
+        store = new MappedSitemapStore(directory, SEGMENT_SIZE);
+        int pageId = store.lookup("http://www.example.com");
+        store.release(pageId);
+
+        assertThat(store.snapshot().getPageCount(), is(0));
+        assertThat(store.claim(pageId), is(true));
+    }
+
+    @Test
+    public void shouldStartAgainWhenNotReopeningTheSitemap() throws IOException {
+        store.claim(store.intern("http://www.example.com"));
+        store.putLinks(store.lookup("http://www.example.com"), new int[0]);
+        store.close();
+
+        store = new MappedSitemapStore(directory, SEGMENT_SIZE, false);
+
+        assertThat(store.lookup("http://www.example.com"), is(SitemapStore.NOT_FOUND));
+        assertThat(store.snapshot().getUrlCount(), is(0));
+        assertThat(store.claim(store.intern("http://www.example.com")), is(true));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectADirectoryThatDoesNotContainASitemap() throws IOException {
+        Path other = temporaryFolder.newFolder("other").toPath();
+        Files.write(other.resolve(MappedSitemapStore.PAGES_FILE), "not a sitemap".getBytes("UTF-8"));
+
+        new MappedSitemapStore(other, SEGMENT_SIZE);
+    }
+}
@@ -4,8 +4,14 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 /**
@@ -47,4 +53,100 @@ public class SitemapTest {
         assertThat(check2, is(true));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void shouldCountThePagesLinksAndAlreadyProcessedChecks() {
+        String url = "http://www.example.com/link1";
+        sitemap.hasBeenProcessed(url);
+        sitemap.addLinks(url, Arrays.asList("http://www.example.com/link2", "http://www.example.com/a.png"));
+        sitemap.hasBeenProcessed(url);
+
+        assertThat(sitemap.getPageCount(), is(1L));
+        assertThat(sitemap.getLinkCount(), is(2L));
+        assertThat(sitemap.getAlreadyProcessedCount(), is(1L));
+    }
+
+    @Test
+    public void shouldWriteEachPageToTheWriter() throws Exception {
+        sitemap.addLinks("http://www.example.com", Arrays.asList("http://www.example.com/link1", "http://www.example.com/a.png"));
+        sitemap.addLinks("http://www.example.com/link1", new ArrayList<>());
+        Map<String, List<String>> written = new LinkedHashMap<>();
+
+        sitemap.writeTo(new SitemapWriter() {
+            @Override
+            public void writePage(String url, List<String> links) {
+                written.put(url, new ArrayList<>(links));
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        assertThat(written.size(), is(2));
+        assertThat(written.get("http://www.example.com"),
+                is(Arrays.asList("http://www.example.com/link1", "http://www.example.com/a.png")));
+        assertThat(written.get("http://www.example.com/link1"), is(Collections.<String>emptyList()));
+    }
+
+    @Test
+    public void shouldProcessAReleasedPageAgain() {
+        String url = "http://www.example.com/link1";
+        sitemap.hasBeenProcessed(url);
+
+        sitemap.release(url);
+
+        assertThat(sitemap.hasBeenProcessed(url), is(false));
+        assertThat(sitemap.getSiteLinks().size(), is(1));
+    }
+
+    @Test
+    public void shouldNotReleaseAPageWithLinks() {
+        String url = "http://www.example.com/link1";
+        sitemap.addLinks(url, new ArrayList<>());
+
+        sitemap.release(url);
+        sitemap.release("http://www.example.com/unknown");
+
+        assertThat(sitemap.hasBeenProcessed(url), is(true));
+    }
+
+    @Test
+    public void shouldReturnTheLinksOfEachPage() {
+        sitemap.addLinks("http://www.example.com", Arrays.asList("http://www.example.com/link1", "http://www.example.com/a.png"));
+        sitemap.addLinks("http://www.example.com/link1", Arrays.asList("http://www.example.com"));
+
+        Map<String, List<String>> siteLinks = sitemap.getSiteLinks();
+
+        assertThat(siteLinks.size(), is(2));
+        assertThat(siteLinks.get("http://www.example.com"),
+                is(Arrays.asList("http://www.example.com/link1", "http://www.example.com/a.png")));
+        assertThat(siteLinks.get("http://www.example.com/link1"), is(Arrays.asList("http://www.example.com")));
+        assertThat(siteLinks.get("http://www.example.com/a.png"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldIncludePagesBeingProcessedWithNoLinks() {
+        sitemap.hasBeenProcessed("http://www.example.com");
+
+        assertThat(sitemap.getSiteLinks().get("http://www.example.com"), is(Collections.<String>emptyList()));
+    }
+
+    @Test
+    public void shouldNotChangeTheSiteLinksAlreadyReturned() {
+        sitemap.addLinks("http://www.example.com", Arrays.asList("http://www.example.com/link1"));
+        Map<String, List<String>> siteLinks = sitemap.getSiteLinks();
+
+        sitemap.addLinks("http://www.example.com/link1", Arrays.asList("http://www.example.com"));
+
+        assertThat(siteLinks.size(), is(1));
+        assertThat(siteLinks.containsKey("http://www.example.com/link1"), is(false));
+    }
+
+    @Test
+    public void shouldListEachPageAndItsLinks() {
+        sitemap.addLinks("http://www.example.com", Arrays.asList("http://www.example.com/link1", "http://www.example.com/a.png"));
+
+        assertThat(sitemap.toString(), is("Sitemap{\nsiteLinks=http://www.example.com : "
+                + "[http://www.example.com/link1, http://www.example.com/a.png]\n\n\n}"));
+    }
+}
@@ -0,0 +1,111 @@
+package sitemap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link UrlStore}.
+ */
+public class UrlStoreTest {
+
+    private UrlStore urlStore;
+
+    @Before
+    public void setUp() {
+        urlStore = new UrlStore();
+    }
+
+    @Test
+    public void shouldGiveTheSameIdToTheSameUrl() {
+        int id1 = urlStore.intern("http://www.example.com/link1");
+        int id2 = urlStore.intern("http://www.example.com/link2");
+        int id3 = urlStore.intern(new String("http://www.example.com/link1"));
+
+        assertThat(id1, is(0));
+        assertThat(id2, is(1));
+        assertThat(id3, is(id1));
+        assertThat(urlStore.size(), is(2));
+    }
+
+    @Test
+    public void shouldDecodeTheUrlForAnId() {
+        int id = urlStore.intern("http://www.example.com/caf\u00e9?q=\u65e5\u672c");
+
+        assertThat(urlStore.get(id), is("http://www.example.com/caf\u00e9?q=\u65e5\u672c"));
+        assertThat(urlStore.lookup("http://www.example.com/caf\u00e9?q=\u65e5\u672c"), is(id));
+        assertThat(urlStore.lookup("http://www.example.com/cafe?q=\u65e5\u672c"), is(UrlStore.NOT_FOUND));
+    }
+
+    @Test
+    public void shouldNotConfuseUrlsThatArePrefixesOfEachOther() {
+        int id1 = urlStore.intern("http://www.example.com/a");
+        int id2 = urlStore.intern("http://www.example.com/ab");
+
+        assertThat(id1, is(not(id2)));
+        assertThat(urlStore.lookup("http://www.example.com/"), is(UrlStore.NOT_FOUND));
+    }
+
+    @Test
+    public void shouldStoreUrlsLongerThanAPage() {
+        StringBuilder longUrl = new StringBuilder("http://www.example.com/");
+        for (int i = 0; i < 100000; i++) {
+            longUrl.append('a');
+        }
+        int before = urlStore.intern("http://www.example.com/before");
+        int id = urlStore.intern(longUrl.toString());
+        int after = urlStore.intern("http://www.example.com/after");
+
+        assertThat(urlStore.get(before), is("http://www.example.com/before"));
+        assertThat(urlStore.get(id), is(longUrl.toString()));
+        assertThat(urlStore.get(after), is("http://www.example.com/after"));
+    }
+
+    @Test
+    public void shouldKeepAllUrlsWhenGrowing() {
+        for (int i = 0; i < 100000; i++) {
+            assertThat(urlStore.intern("http://www.example.com/page/" + i), is(i));
+        }
+
+        for (int i = 0; i < 100000; i++) {
+            assertThat(urlStore.lookup("http://www.example.com/page/" + i), is(i));
+            assertThat(urlStore.get(i), is("http://www.example.com/page/" + i));
+        }
+    }
+
+    @Test
+    public void shouldGiveEachUrlOneIdWhenInternedConcurrently() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<int[]>> results = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                Callable<int[]> task = () -> {
+                    int[] ids = new int[10000];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = urlStore.intern("http://www.example.com/page/" + i);
+                    }
+                    return ids;
+                };
+                results.add(executorService.submit(task));
+            }
+
+            int[] expected = results.get(0).get();
+            for (Future<int[]> result : results) {
+                assertThat(result.get(), is(expected));
+            }
+            assertThat(urlStore.size(), is(10000));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+}
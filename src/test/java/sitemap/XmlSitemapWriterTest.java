@@ -0,0 +1,136 @@
+package sitemap;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link XmlSitemapWriter}.
+ */
+public class XmlSitemapWriterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path directory;
+
+    @Before
+    public void setUp() {
+        directory = temporaryFolder.getRoot().toPath().resolve("site");
+    }
+
+    @Test
+    public void shouldWriteASingleSitemapFile() throws Exception {
+        try (XmlSitemapWriter writer = new XmlSitemapWriter(directory, "http://www.example.com", false)) {
+            writer.writePage("http://www.example.com/", Arrays.asList("http://www.example.com/a"));
+            writer.writePage("http://www.example.com/a?x=1&y=<2>", Collections.emptyList());
+        }
+
+        assertThat(read(directory.resolve("sitemap.xml")), is("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n"
+                + "<url><loc>http://www.example.com/</loc></url>\n"
+                + "<url><loc>http://www.example.com/a?x=1&amp;y=&lt;2&gt;</loc></url>\n"
+                + "</urlset>\n"));
+        assertThat(Files.exists(directory.resolve("sitemap-1.xml")), is(false));
+    }
+
+    @Test
+    public void shouldWriteAnEmptySitemap() throws Exception {
+        new XmlSitemapWriter(directory, "http://www.example.com", false).close();
+
+        assertThat(read(directory.resolve("sitemap.xml")).endsWith("<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n"
+                + "</urlset>\n"), is(true));
+    }
+
+    @Test
+    public void shouldSplitTheSitemapAtTheUrlLimitAndWriteAnIndex() throws Exception {
+        XmlSitemapWriter writer = new XmlSitemapWriter(directory, "http://www.example.com/", true, 2, Long.MAX_VALUE);
+        for (int i = 0; i < 5; i++) {
+            writer.writePage("http://www.example.com/" + i, Collections.emptyList());
+        }
+        writer.close();
+
+        assertThat(writer.getFileCount(), is(3));
+        assertThat(Files.exists(directory.resolve("sitemap.xml")), is(false));
+        assertThat(readGzip(directory.resolve("sitemap.xml.gz")), is("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n"
+                + "<sitemap><loc>http://www.example.com/sitemap-1.xml.gz</loc></sitemap>\n"
+                + "<sitemap><loc>http://www.example.com/sitemap-2.xml.gz</loc></sitemap>\n"
+                + "<sitemap><loc>http://www.example.com/sitemap-3.xml.gz</loc></sitemap>\n"
+                + "</sitemapindex>\n"));
+        assertThat(readGzip(directory.resolve("sitemap-3.xml.gz")).contains("<url><loc>http://www.example.com/4</loc></url>\n"),
+                is(true));
+        assertThat(readGzip(directory.resolve("sitemap-2.xml.gz")).contains("http://www.example.com/4"), is(false));
+    }
+
+    @Test
+    public void shouldSplitTheSitemapAtTheSizeLimit() throws Exception {
+        String header = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n";
+        String entry = "<url><loc>http://www.example.com/caf\u00e9</loc></url>\n";
+        long entryBytes = entry.getBytes(StandardCharsets.UTF_8).length;
+        long maxBytes = header.length() + 2 * entryBytes + "</urlset>\n".length();
+
+        XmlSitemapWriter writer = new XmlSitemapWriter(directory, "http://www.example.com/", false, 100, maxBytes);
+        for (int i = 0; i < 3; i++) {
+            writer.writePage("http://www.example.com/caf\u00e9", Collections.emptyList());
+        }
+        writer.close();
+
+        assertThat(writer.getFileCount(), is(2));
+        assertThat(Files.size(directory.resolve("sitemap-1.xml")), is(maxBytes));
+    }
+
+    @Test
+    public void shouldDeleteTheSitemapFilesOfAnEarlierCrawl() throws Exception {
+        XmlSitemapWriter earlier = new XmlSitemapWriter(directory, "http://www.example.com/", false, 1, Long.MAX_VALUE);
+        for (int i = 0; i < 4; i++) {
+            earlier.writePage("http://www.example.com/" + i, Collections.emptyList());
+        }
+        earlier.close();
+        Files.write(directory.resolve("sitemap-9.xml.gz"), new byte[0]);
+        Files.write(directory.resolve("robots.txt"), new byte[0]);
+
+        XmlSitemapWriter writer = new XmlSitemapWriter(directory, "http://www.example.com/", true, 1, Long.MAX_VALUE);
+        for (int i = 0; i < 2; i++) {
+            writer.writePage("http://www.example.com/" + i, Collections.emptyList());
+        }
+        writer.close();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList()),
+                    is(Arrays.asList("robots.txt", "sitemap-1.xml.gz", "sitemap-2.xml.gz", "sitemap.xml.gz")));
+        }
+    }
+
+    private static String read(Path file) throws Exception {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    private static String readGzip(Path file) throws Exception {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
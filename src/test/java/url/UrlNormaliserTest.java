@@ -0,0 +1,79 @@
+package url;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link UrlNormaliser}.
+ */
+public class UrlNormaliserTest {
+
+    private final UrlNormaliser urlNormaliser = new UrlNormaliser();
+
+    @Test
+    public void shouldLowerCaseTheSchemeAndHost() {
+        assertThat(urlNormaliser.normalise("HTTP://WWW.Example.COM/Path"), is("http://www.example.com/Path"));
+    }
+
+    @Test
+    public void shouldDropDefaultPortsAndFragments() {
+        assertThat(urlNormaliser.normalise("http://www.example.com:80/link1#top"), is("http://www.example.com/link1"));
+        assertThat(urlNormaliser.normalise("https://www.example.com:443/"), is("https://www.example.com/"));
+        assertThat(urlNormaliser.normalise("https://www.example.com:80/"), is("https://www.example.com:80/"));
+        assertThat(urlNormaliser.normalise("http://www.example.com:/"), is("http://www.example.com/"));
+    }
+
+    @Test
+    public void shouldUseASlashForAnEmptyPath() {
+        assertThat(urlNormaliser.normalise("http://www.example.com"), is("http://www.example.com/"));
+        assertThat(urlNormaliser.normalise("http://www.example.com?q=1"), is("http://www.example.com/?q=1"));
+        assertThat(urlNormaliser.normalise("http://www.example.com/?"), is("http://www.example.com/"));
+    }
+
+    @Test
+    public void shouldResolveDotSegments() {
+        assertThat(urlNormaliser.normalise("http://www.example.com/a/./b/../c"), is("http://www.example.com/a/c"));
+        assertThat(urlNormaliser.normalise("http://www.example.com/a/b/.."), is("http://www.example.com/a/"));
+        assertThat(urlNormaliser.normalise("http://www.example.com/a/b/."), is("http://www.example.com/a/b/"));
+        assertThat(urlNormaliser.normalise("http://www.example.com/../../a"), is("http://www.example.com/a"));
+        assertThat(urlNormaliser.normalise("http://www.example.com/a/..b/.c"), is("http://www.example.com/a/..b/.c"));
+    }
+
+    @Test
+    public void shouldKeepUserInfoAndNonDefaultPorts() {
+        assertThat(urlNormaliser.normalise("http://User@Example.com:8080/a"), is("http://User@example.com:8080/a"));
+    }
+
+    @Test
+    public void shouldLeaveUrlsWithoutAnAuthorityUnchanged() {
+        assertThat(urlNormaliser.normalise("mailto:Someone@Example.com"), is("mailto:Someone@Example.com"));
+        assertThat(urlNormaliser.normalise("/relative"), is("/relative"));
+    }
+
+    @Test
+    public void shouldStripAndSortConfiguredQueryParameters() {
+        UrlNormaliser configured = new UrlNormaliser(Arrays.asList("utm_*", "sessionid"), true);
+
+        assertThat(configured.normalise("http://www.example.com/p?b=2&utm_source=x&a=1&sessionid=abc&utm_medium=y"),
+                is("http://www.example.com/p?a=1&b=2"));
+        assertThat(configured.normalise("http://www.example.com/p?utm_source=x"), is("http://www.example.com/p"));
+    }
+
+    @Test
+    public void shouldLeaveTheQueryAloneByDefault() {
+        assertThat(urlNormaliser.normalise("http://www.example.com/p?b=2&a=1&&utm_source=x"),
+                is("http://www.example.com/p?b=2&a=1&&utm_source=x"));
+    }
+
+    @Test
+    public void shouldReturnCanonicalUrlsUnchanged() {
+        String url = "https://www.example.com:8443/a/b.html?q=1";
+
+        assertThat(urlNormaliser.normalise(url), is(sameInstance(url)));
+    }
+}